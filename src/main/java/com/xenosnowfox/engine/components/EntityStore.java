@@ -0,0 +1,447 @@
+package com.xenosnowfox.engine.components;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Positions, rotations, scales, model matrices and mesh ids of many entities, each kept in one contiguous primitive
+ * array so systems walk memory in order instead of chasing a {@link Vector3f} per item.
+ *
+ * <p>Entities are packed: the live ones occupy indices {@code 0 .. size() - 1}, and removing one moves the last
+ * entity into its place. Callers keep the handle returned by {@link #create()}, which stays valid across such moves
+ * and is recognised as stale once its entity is removed; {@link #indexOf(int)} maps it to the current index.
+ *
+ * <p>Arrays returned by the getters are the live storage, three floats per entity for vectors and sixteen column
+ * major floats per matrix. They are replaced when the store grows, so they must be fetched again after
+ * {@link #create()}. Code that writes positions, rotations or scales straight into them has to call
+ * {@link #markDirty(int)} for the index.
+ */
+public class EntityStore {
+
+	/**
+	 * A system run over a range of entity indices.
+	 */
+	@FunctionalInterface
+	public interface EntitySystem {
+
+		/**
+		 * Updates the entities from index {@code from} inclusive to {@code to} exclusive.
+		 */
+		void update(EntityStore store, int from, int to);
+	}
+
+	/** Mesh id of entities without a mesh. */
+	public static final int NO_MESH = -1;
+
+	private static final int INDEX_BITS = 24;
+
+	private static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+
+	private static final int GENERATION_MASK = (1 << (31 - INDEX_BITS)) - 1;
+
+	private final Matrix4f matrix = new Matrix4f();
+
+	private final Matrix4f modelViewMatrix = new Matrix4f();
+
+	private float[] positions;
+
+	private float[] rotations;
+
+	private float[] scales;
+
+	private float[] modelMatrices;
+
+	private boolean[] dirty;
+
+	private int[] meshes;
+
+	/** Slot of the handle of each entity, by index. */
+	private int[] slots;
+
+	/** Index of the entity of each slot, or -1 for a free slot. */
+	private int[] slotIndices;
+
+	private int[] slotGenerations;
+
+	private int[] freeSlots;
+
+	private int freeSlotCount;
+
+	private int slotCount;
+
+	private int size;
+
+	public EntityStore(int initialCapacity) {
+		final int capacity = Math.max(1, initialCapacity);
+		positions = new float[capacity * 3];
+		rotations = new float[capacity * 3];
+		scales = new float[capacity * 3];
+		modelMatrices = new float[capacity * 16];
+		dirty = new boolean[capacity];
+		meshes = new int[capacity];
+		slots = new int[capacity];
+		slotIndices = new int[capacity];
+		slotGenerations = new int[capacity];
+		freeSlots = new int[capacity];
+	}
+
+	/**
+	 * Adds an entity at the origin with unit scale, no rotation and no mesh.
+	 *
+	 * @return its handle.
+	 */
+	public int create() {
+		if (size == dirty.length) {
+			grow(size * 2);
+		}
+		final int slot = freeSlotCount > 0 ? freeSlots[--freeSlotCount] : slotCount++;
+		if (slot > INDEX_MASK) {
+			throw new IllegalStateException("Entity store is limited to " + (INDEX_MASK + 1) + " entities");
+		}
+		final int index = size++;
+		slots[index] = slot;
+		slotIndices[slot] = index;
+
+		Arrays.fill(positions, index * 3, index * 3 + 3, 0f);
+		Arrays.fill(rotations, index * 3, index * 3 + 3, 0f);
+		Arrays.fill(scales, index * 3, index * 3 + 3, 1f);
+		meshes[index] = NO_MESH;
+		dirty[index] = true;
+		return slotGenerations[slot] << INDEX_BITS | slot;
+	}
+
+	/**
+	 * Removes an entity, moving the last entity into its index. Its handle, and any view of it, becomes stale.
+	 */
+	public void remove(int handle) {
+		final int index = indexOf(handle);
+		final int slot = handle & INDEX_MASK;
+		final int last = --size;
+		if (index != last) {
+			System.arraycopy(positions, last * 3, positions, index * 3, 3);
+			System.arraycopy(rotations, last * 3, rotations, index * 3, 3);
+			System.arraycopy(scales, last * 3, scales, index * 3, 3);
+			System.arraycopy(modelMatrices, last * 16, modelMatrices, index * 16, 16);
+			dirty[index] = dirty[last];
+			meshes[index] = meshes[last];
+			slots[index] = slots[last];
+			slotIndices[slots[index]] = index;
+		}
+		slotIndices[slot] = -1;
+		slotGenerations[slot] = (slotGenerations[slot] + 1) & GENERATION_MASK;
+		freeSlots[freeSlotCount++] = slot;
+	}
+
+	public boolean isAlive(int handle) {
+		final int slot = handle & INDEX_MASK;
+		return handle >= 0 && slot < slotCount && slotIndices[slot] >= 0
+				&& slotGenerations[slot] == handle >>> INDEX_BITS;
+	}
+
+	/**
+	 * Current index of an entity.
+	 *
+	 * @throws IllegalArgumentException if the entity has been removed.
+	 */
+	public int indexOf(int handle) {
+		if (!isAlive(handle)) {
+			throw new IllegalArgumentException("Stale entity handle " + handle);
+		}
+		return slotIndices[handle & INDEX_MASK];
+	}
+
+	/**
+	 * Handle of the entity currently at an index.
+	 */
+	public int handleAt(int index) {
+		final int slot = slots[index];
+		return slotGenerations[slot] << INDEX_BITS | slot;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void setPosition(int index, float x, float y, float z) {
+		set(positions, index, x, y, z);
+	}
+
+	public void setRotation(int index, float x, float y, float z) {
+		set(rotations, index, x, y, z);
+	}
+
+	public void setScale(int index, float x, float y, float z) {
+		set(scales, index, x, y, z);
+	}
+
+	private void set(float[] values, int index, float x, float y, float z) {
+		final int offset = index * 3;
+		values[offset] = x;
+		values[offset + 1] = y;
+		values[offset + 2] = z;
+		dirty[index] = true;
+	}
+
+	public int getMesh(int index) {
+		return meshes[index];
+	}
+
+	/**
+	 * Sets the mesh of an entity, as an id into the caller's own mesh table.
+	 */
+	public void setMesh(int index, int mesh) {
+		meshes[index] = mesh;
+	}
+
+	public void markDirty(int index) {
+		dirty[index] = true;
+	}
+
+	public boolean isDirty(int index) {
+		return dirty[index];
+	}
+
+	public float[] getPositions() {
+		return positions;
+	}
+
+	public float[] getRotations() {
+		return rotations;
+	}
+
+	public float[] getScales() {
+		return scales;
+	}
+
+	public int[] getMeshes() {
+		return meshes;
+	}
+
+	/**
+	 * Model matrices, up to date only for indices that are not dirty; see {@link #updateModelMatrices(int, int)}.
+	 */
+	public float[] getModelMatrices() {
+		return modelMatrices;
+	}
+
+	/**
+	 * Runs a system over all entities in one call.
+	 */
+	public void run(EntitySystem system) {
+		system.update(this, 0, size);
+	}
+
+	/**
+	 * Runs a system over all entities in ranges of at most {@code batchSize} indices.
+	 */
+	public void run(EntitySystem system, int batchSize) {
+		for (int from = 0; from < size; from += batchSize) {
+			system.update(this, from, Math.min(size, from + batchSize));
+		}
+	}
+
+	/**
+	 * Rebuilds the model matrices of the dirty entities of a range, from the position, Euler angles in degrees and
+	 * scale, in the same way as {@code Transformation.buildModelMatrix}.
+	 */
+	public void updateModelMatrices(int from, int to) {
+		updateModelMatrices(from, to, matrix);
+	}
+
+	/**
+	 * As {@link #updateModelMatrices(int, int)}, building in a caller-owned matrix so disjoint ranges can be updated
+	 * from several threads.
+	 */
+	public void updateModelMatrices(int from, int to, Matrix4f scratch) {
+		for (int i = from; i < to; i++) {
+			if (dirty[i]) {
+				buildModelMatrix(i, scratch);
+			}
+		}
+	}
+
+	/**
+	 * Rebuilds the model matrix of one entity into {@code target} and stores it.
+	 */
+	private Matrix4f buildModelMatrix(int index, Matrix4f target) {
+		final int offset = index * 3;
+		target.translation(positions[offset], positions[offset + 1], positions[offset + 2])
+				.rotateXYZ((float) Math.toRadians(-rotations[offset]), (float) Math.toRadians(-rotations[offset + 1]),
+						(float) Math.toRadians(-rotations[offset + 2]))
+				.scale(scales[offset], scales[offset + 1], scales[offset + 2])
+				.get(modelMatrices, index * 16);
+		dirty[index] = false;
+		return target;
+	}
+
+	/**
+	 * Model matrix of an entity, rebuilt first if dirty.
+	 *
+	 * @return {@code target}.
+	 */
+	public Matrix4f getModelMatrix(int index, Matrix4f target) {
+		updateModelMatrices(index, index + 1);
+		return target.set(modelMatrices, index * 16);
+	}
+
+	/**
+	 * Writes the model-view matrices of all entities, 16 floats each, from the current position of a buffer on, and
+	 * advances the position past them.
+	 */
+	public void writeModelViewMatrices(Matrix4f viewMatrix, FloatBuffer target) {
+		int position = target.position();
+		for (int i = 0; i < size; i++) {
+			final Matrix4f modelMatrix = dirty[i] ? buildModelMatrix(i, matrix) : matrix.set(modelMatrices, i * 16);
+			viewMatrix.mul(modelMatrix, modelViewMatrix).get(position, target);
+			position += 16;
+		}
+		target.position(position);
+	}
+
+	/**
+	 * A {@link Transformation3f} view of one entity, for code written against the component interfaces. The view
+	 * follows its entity across removals of others.
+	 *
+	 * <p>The vectors it returns are copies owned by the view: changing them in place does not change the entity, so
+	 * pass them back through a setter.
+	 */
+	public Entity view(int handle) {
+		indexOf(handle);
+		return new Entity(handle);
+	}
+
+	private void grow(int capacity) {
+		positions = Arrays.copyOf(positions, capacity * 3);
+		rotations = Arrays.copyOf(rotations, capacity * 3);
+		scales = Arrays.copyOf(scales, capacity * 3);
+		modelMatrices = Arrays.copyOf(modelMatrices, capacity * 16);
+		dirty = Arrays.copyOf(dirty, capacity);
+		meshes = Arrays.copyOf(meshes, capacity);
+		slots = Arrays.copyOf(slots, capacity);
+		slotIndices = Arrays.copyOf(slotIndices, capacity);
+		slotGenerations = Arrays.copyOf(slotGenerations, capacity);
+		freeSlots = Arrays.copyOf(freeSlots, capacity);
+	}
+
+	/**
+	 * See {@link #view(int)}.
+	 */
+	public final class Entity implements Transformation3f {
+
+		private final int handle;
+
+		private final Vector3f position = new Vector3f();
+
+		private final Vector3f rotation = new Vector3f();
+
+		private final Vector3f scale = new Vector3f();
+
+		private final Matrix4f modelMatrix = new Matrix4f();
+
+		private Entity(int handle) {
+			this.handle = handle;
+		}
+
+		public int getHandle() {
+			return handle;
+		}
+
+		public int getMesh() {
+			return meshes[indexOf(handle)];
+		}
+
+		public void setMesh(int mesh) {
+			meshes[indexOf(handle)] = mesh;
+		}
+
+		@Override
+		public Vector3f getPosition() {
+			return get(positions, position);
+		}
+
+		@Override
+		public void setPosition(Vector3f withVector) {
+			setPosition(withVector.x, withVector.y, withVector.z);
+		}
+
+		@Override
+		public void setPosition(float withX, float withY, float withZ) {
+			set(positions, indexOf(handle), withX, withY, withZ);
+		}
+
+		/**
+		 * Moves within the plane of the z rotation, as {@code GameItem.movePosition} does.
+		 */
+		@Override
+		public void movePosition(float offsetX, float offsetY, float offsetZ) {
+			final int index = indexOf(handle);
+			final int offset = index * 3;
+			final float rotationZ = rotations[offset + 2];
+			if (offsetY != 0) {
+				positions[offset] += (float) Math.sin(Math.toRadians(rotationZ)) * -1.0f * offsetY;
+				positions[offset + 1] += (float) Math.cos(Math.toRadians(rotationZ)) * offsetY;
+			}
+			if (offsetX != 0) {
+				positions[offset] += (float) Math.sin(Math.toRadians(rotationZ - 90)) * -1.0f * offsetX;
+				positions[offset + 1] += (float) Math.cos(Math.toRadians(rotationZ - 90)) * offsetX;
+			}
+			positions[offset + 2] += offsetZ;
+			dirty[index] = true;
+		}
+
+		@Override
+		public Vector3f getRotation() {
+			return get(rotations, rotation);
+		}
+
+		@Override
+		public void setRotation(float x, float y, float z) {
+			set(rotations, indexOf(handle), x, y, z);
+		}
+
+		@Override
+		public void moveRotation(float offsetX, float offsetY, float offsetZ) {
+			move(rotations, offsetX, offsetY, offsetZ);
+		}
+
+		@Override
+		public Vector3f getScale() {
+			return get(scales, scale);
+		}
+
+		@Override
+		public void setScale(float x, float y, float z) {
+			set(scales, indexOf(handle), x, y, z);
+		}
+
+		@Override
+		public void moveScale(float offsetX, float offsetY, float offsetZ) {
+			move(scales, offsetX, offsetY, offsetZ);
+		}
+
+		/**
+		 * A copy of the entity's model matrix, owned by the view.
+		 */
+		@Override
+		public Matrix4f getModelMatrix() {
+			return EntityStore.this.getModelMatrix(indexOf(handle), modelMatrix);
+		}
+
+		private Vector3f get(float[] values, Vector3f target) {
+			final int offset = indexOf(handle) * 3;
+			return target.set(values[offset], values[offset + 1], values[offset + 2]);
+		}
+
+		private void move(float[] values, float offsetX, float offsetY, float offsetZ) {
+			final int index = indexOf(handle);
+			final int offset = index * 3;
+			values[offset] += offsetX;
+			values[offset + 1] += offsetY;
+			values[offset + 2] += offsetZ;
+			dirty[index] = true;
+		}
+	}
+}
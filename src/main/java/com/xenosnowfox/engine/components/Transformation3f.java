@@ -1,4 +1,12 @@
 package com.xenosnowfox.engine.components;
 
+import org.joml.Matrix4f;
+
 public interface Transformation3f extends Position3f, Rotation3f, Scale3f {
+
+	/**
+	 * The model matrix of the current position, rotation and scale. Implementations cache it and only rebuild it
+	 * after a change, so it must not be modified by the caller.
+	 */
+	Matrix4f getModelMatrix();
 }
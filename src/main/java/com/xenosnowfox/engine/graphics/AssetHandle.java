@@ -0,0 +1,84 @@
+package com.xenosnowfox.engine.graphics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Result of an asynchronous {@link AssetLoader} request. Completion and the callbacks happen on the GL thread
+ * while {@link AssetLoader#processUploads()} runs, so a ready asset can be used right away.
+ */
+public class AssetHandle<T> {
+
+    private final String name;
+
+    private volatile T asset;
+
+    private volatile Exception failure;
+
+    private final List<Consumer<T>> callbacks = new ArrayList<>();
+
+    AssetHandle(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isReady() {
+        return asset != null;
+    }
+
+    public boolean isFailed() {
+        return failure != null;
+    }
+
+    public Exception getFailure() {
+        return failure;
+    }
+
+    /**
+     * @return the asset, or {@code null} while it is still loading.
+     */
+    public T get() {
+        return asset;
+    }
+
+    public T getOrDefault(T placeholder) {
+        T value = asset;
+        return value != null ? value : placeholder;
+    }
+
+    /**
+     * Registers a callback run on the GL thread once the asset is uploaded, or immediately if it already is. Must
+     * be called from the GL thread.
+     */
+    public AssetHandle<T> onReady(Consumer<T> callback) {
+        if (asset != null) {
+            callback.accept(asset);
+        } else {
+            callbacks.add(callback);
+        }
+        return this;
+    }
+
+    void complete(T value) {
+        asset = value;
+        for (Consumer<T> callback : callbacks) {
+            callback.accept(value);
+        }
+        callbacks.clear();
+    }
+
+    /**
+     * Ignored once the asset is ready, so a handle is never both.
+     */
+    void fail(Exception exception) {
+        if (asset != null) {
+            return;
+        }
+        failure = exception;
+        callbacks.clear();
+    }
+}
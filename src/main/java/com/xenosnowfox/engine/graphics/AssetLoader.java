@@ -0,0 +1,405 @@
+package com.xenosnowfox.engine.graphics;
+
+import org.joml.Vector4f;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Loads meshes and textures in the background and uploads them on the GL thread under a per-frame budget.
+ *
+ * <p>File I/O, OBJ parsing (or mapping the {@link MeshCache}), MTL reading and PNG decoding run on a small pool of
+ * daemon threads. Each finished asset becomes an upload job on a lock-free queue; the render thread calls
+ * {@link #processUploads()} once per frame, which runs jobs until either the time or the byte budget is used up.
+ * The first job of a frame always runs, so an asset larger than the byte budget still gets through.
+ *
+ * <p>Textures are shared through a {@link TextureCache}; files it already holds are not decoded again. The loader
+ * also reloads the textures the cache evicted once they are bound again, under the same budget.
+ */
+public class AssetLoader {
+
+    private final ExecutorService executor;
+
+    private final Queue<Upload> uploads = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final long budgetNanos;
+
+    private final long budgetBytes;
+
+    private final TextureCache textureCache;
+
+    /**
+     * @param threads
+     * 		number of background loader threads.
+     * @param budgetNanos
+     * 		GL upload time allowed per frame.
+     * @param budgetBytes
+     * 		GL upload volume allowed per frame.
+     * @param textureCache
+     * 		shares the loaded textures.
+     */
+    public AssetLoader(int threads, long budgetNanos, long budgetBytes, TextureCache textureCache) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "asset-loader-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.budgetNanos = budgetNanos;
+        this.budgetBytes = budgetBytes;
+        this.textureCache = textureCache;
+        textureCache.setReloader(this::reloadTexture);
+    }
+
+    public AssetHandle<Texture> loadTexture(String fileName) {
+        AssetHandle<Texture> handle = new AssetHandle<>(fileName);
+        submit(handle, () -> uploadTexture(fileName, handle, texture -> handle.complete(texture)));
+        return handle;
+    }
+
+    /**
+     * Loads a model like {@link OBJLoader#loadMeshFile(String)}. The mesh is handed out as soon as its buffers are
+     * uploaded; the textures of its MTL materials follow as separate uploads, the materials draw untextured until
+     * then, or for good should a texture fail to load.
+     */
+    public AssetHandle<Mesh> loadMesh(String fileName) {
+        return loadMesh(fileName, VertexLayout.STANDARD);
+    }
+
+    /**
+     * Loads a model like {@link #loadMesh(String)}, uploading its vertices in the given layout.
+     */
+    public AssetHandle<Mesh> loadMesh(String fileName, VertexLayout layout) {
+        AssetHandle<Mesh> handle = new AssetHandle<>(fileName);
+        submit(handle, () -> {
+            MeshCache.CachedMesh cachedMesh = MeshCache.open(fileName, false);
+            MeshData meshData = null;
+            SubMesh[] subMeshes;
+            List<String> libraries;
+            int vertexCount;
+            int indexCount;
+            if (cachedMesh != null) {
+                subMeshes = cachedMesh.getSubMeshes();
+                libraries = cachedMesh.getMaterialLibraries();
+                vertexCount = cachedMesh.getVertexCount();
+                indexCount = cachedMesh.getIndexCount();
+            } else {
+                meshData = OBJLoader.loadAndCacheMeshData(fileName);
+                subMeshes = meshData.getSubMeshes();
+                libraries = meshData.getMaterialLibraries();
+                vertexCount = meshData.getVertexCount();
+                indexCount = meshData.getIndexCount();
+            }
+            long bytes = (long) vertexCount * layout.getStride()
+                    + (long) indexCount * VertexLayout.indexSize(VertexLayout.indexTypeFor(vertexCount));
+            OBJLoader.resolveMaterials(fileName, libraries, subMeshes);
+
+            final MeshData uploadData = meshData;
+            uploads.add(new Upload(bytes, handle, () -> handle.complete(
+                    uploadData != null ? new Mesh(uploadData, layout) : new Mesh(cachedMesh, layout))));
+
+            uploadMaterialTextures(subMeshes);
+        });
+        return handle;
+    }
+
+    /**
+     * Loads a model like {@link #loadMesh(String, VertexLayout)} and generates its levels of detail with
+     * {@link MeshSimplifier#generateLods} on the loader thread; all levels are uploaded in one job.
+     *
+     * @param ratio
+     * 		share of the previous level's triangles each level aims for.
+     * @param maxRelativeError
+     * 		largest error of any level, relative to the diagonal of the mesh bounds.
+     */
+    public AssetHandle<LodGroup> loadMeshLods(String fileName, VertexLayout layout, int maxLevels, float ratio,
+            float maxRelativeError) {
+        AssetHandle<LodGroup> handle = new AssetHandle<>(fileName);
+        submit(handle, () -> {
+            MeshCache.CachedMesh cachedMesh = MeshCache.open(fileName, false);
+            MeshData meshData = cachedMesh != null ? cachedMesh.toMeshData() : OBJLoader.loadAndCacheMeshData(fileName);
+            SubMesh[] subMeshes = meshData.getSubMeshes();
+            // resolved first, so the submeshes of every level share these materials
+            OBJLoader.resolveMaterials(fileName, meshData.getMaterialLibraries(), subMeshes);
+
+            List<MeshSimplifier.Level> levels = MeshSimplifier.generateLods(meshData, maxLevels, ratio, maxRelativeError);
+            MeshData[] levelData = new MeshData[levels.size()];
+            float[] errors = new float[levels.size()];
+            long bytes = 0;
+            for (int i = 0; i < levelData.length; i++) {
+                MeshData level = levels.get(i).getMeshData();
+                levelData[i] = i == 0 ? level : MeshOptimizer.optimize(level);
+                errors[i] = levels.get(i).getError();
+                bytes += (long) level.getVertexCount() * layout.getStride() + (long) level.getIndexCount()
+                        * VertexLayout.indexSize(VertexLayout.indexTypeFor(level.getVertexCount()));
+            }
+
+            uploads.add(new Upload(bytes, handle, () -> {
+                Mesh[] meshes = new Mesh[levelData.length];
+                meshes[0] = cachedMesh != null ? new Mesh(cachedMesh, layout) : new Mesh(levelData[0], layout);
+                for (int i = 1; i < meshes.length; i++) {
+                    meshes[i] = new Mesh(levelData[i], layout);
+                }
+                handle.complete(new LodGroup(meshes, errors));
+            }));
+            uploadMaterialTextures(subMeshes);
+        });
+        return handle;
+    }
+
+    /**
+     * Loads the triangles of a model as an {@link Occluder}. Nothing is uploaded; the handle still completes on the
+     * GL thread, like every other asset.
+     */
+    public AssetHandle<Occluder> loadOccluder(String fileName) {
+        AssetHandle<Occluder> handle = new AssetHandle<>(fileName);
+        submit(handle, () -> {
+            MeshCache.CachedMesh cachedMesh = MeshCache.open(fileName, false);
+            Occluder occluder = Occluder.of(cachedMesh != null ? cachedMesh.toMeshData() : OBJLoader.loadAndCacheMeshData(fileName));
+            uploads.add(new Upload(0, handle, () -> handle.complete(occluder)));
+        });
+        return handle;
+    }
+
+    /**
+     * Decodes every distinct diffuse map of the submesh materials once, and queues each one as its own upload. A
+     * texture that fails to decode is reported and skipped; its materials stay untextured.
+     */
+    private void uploadMaterialTextures(SubMesh[] subMeshes) {
+        Map<String, List<Material>> materialsPerTexture = new LinkedHashMap<>();
+        for (SubMesh subMesh : subMeshes) {
+            Material material = subMesh.getMaterial();
+            if (material != null && material.getTextureFile() != null) {
+                List<Material> users = materialsPerTexture.computeIfAbsent(material.getTextureFile(), file -> new ArrayList<>());
+                if (!users.contains(material)) {
+                    users.add(material);
+                }
+            }
+        }
+        for (Map.Entry<String, List<Material>> entry : materialsPerTexture.entrySet()) {
+            List<Material> users = entry.getValue();
+            try {
+                uploadTexture(entry.getKey(), null, texture -> {
+                    users.get(0).setTexture(texture);
+                    // one reference per material, released again by Mesh.cleanUp()
+                    for (int i = 1; i < users.size(); i++) {
+                        users.get(i).setTexture(acquire(entry.getKey(), null));
+                    }
+                });
+            } catch (Exception exception) {
+                System.err.println("Unable to load texture `" + entry.getKey() + "`: " + exception);
+            }
+        }
+    }
+
+    /**
+     * Decodes a texture on the calling loader thread unless the cache already holds it, and queues acquiring it
+     * on the GL thread.
+     *
+     * @param handle
+     * 		failed should the upload fail; {@code null} for the textures of a mesh, which keeps drawing untextured.
+     */
+    private void uploadTexture(String fileName, AssetHandle<?> handle, Consumer<Texture> consumer) throws Exception {
+        if (textureCache.isCached(fileName)) {
+            // should it be dropped before the upload runs, the cache decodes the file itself
+            uploads.add(new Upload(0, handle, () -> consumer.accept(acquire(fileName, null))));
+            return;
+        }
+        TextureData textureData = TextureData.decode(fileName);
+        uploads.add(new Upload(textureData.getByteSize(), handle, () -> {
+            try {
+                consumer.accept(acquire(fileName, textureData));
+            } finally {
+                textureData.free();
+            }
+        }, textureData::free));
+    }
+
+    /**
+     * Decodes an evicted texture on a loader thread and queues uploading it again.
+     */
+    private void reloadTexture(Texture texture) {
+        executor.execute(() -> {
+            TextureData textureData;
+            try {
+                textureData = TextureData.decode(texture.getFileName());
+            } catch (Exception exception) {
+                uploads.add(new Upload(0, null, () -> textureCache.reloadFailed(texture, exception)));
+                return;
+            }
+            uploads.add(new Upload(textureData.getByteSize(), null, () -> {
+                try {
+                    textureCache.reloaded(texture, textureData);
+                } finally {
+                    textureData.free();
+                }
+            }, textureData::free));
+        });
+    }
+
+    private Texture acquire(String fileName, TextureData textureData) {
+        try {
+            return textureData != null ? textureCache.acquire(fileName, textureData) : textureCache.acquire(fileName);
+        } catch (Exception exception) {
+            throw new IllegalStateException("Unable to load texture `" + fileName + "`", exception);
+        }
+    }
+
+    private <T> void submit(AssetHandle<T> handle, LoadTask task) {
+        pending.incrementAndGet();
+        executor.execute(() -> {
+            try {
+                task.run();
+            } catch (Exception exception) {
+                // report on the GL thread like every other completion
+                uploads.add(new Upload(0, null, () -> {
+                    System.err.println("Unable to load asset `" + handle.getName() + "`: " + exception);
+                    handle.fail(exception);
+                }));
+            } finally {
+                // counted down even when dropped by shutdown()
+                uploads.add(new Upload(0, null, pending::decrementAndGet, pending::decrementAndGet));
+            }
+        });
+    }
+
+    /**
+     * Runs queued GL uploads until the per-frame time or byte budget is exhausted. Must be called from the GL
+     * thread, typically once per frame. An upload that throws fails its handle, and the next one runs.
+     *
+     * @return the number of uploads performed.
+     */
+    public int processUploads() {
+        long start = System.nanoTime();
+        long bytes = 0;
+        int count = 0;
+        Upload upload;
+        while ((upload = uploads.peek()) != null) {
+            if (count > 0 && (bytes + upload.bytes > budgetBytes || System.nanoTime() - start > budgetNanos)) {
+                break;
+            }
+            uploads.poll();
+            try {
+                upload.action.run();
+            } catch (RuntimeException exception) {
+                String name = upload.handle != null ? upload.handle.getName() : "material texture";
+                System.err.println("Unable to upload asset `" + name + "`: " + exception);
+                if (upload.handle != null) {
+                    upload.handle.fail(exception);
+                }
+            }
+            bytes += upload.bytes;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Number of requests that have not finished uploading yet (textures following a mesh may still be queued).
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * Stops the loader threads; queued uploads are dropped, freeing the image data they hold.
+     */
+    public void shutdown() throws InterruptedException {
+        textureCache.setReloader(null);
+        executor.shutdownNow();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+        Upload upload;
+        while ((upload = uploads.poll()) != null) {
+            if (upload.discard != null) {
+                upload.discard.run();
+            }
+        }
+    }
+
+    /**
+     * A small grey unit cube that stands in for meshes that are still loading.
+     */
+    public static Mesh createPlaceholderMesh() {
+        // normal, then the two in-plane axes u and v with u x v = normal
+        float[][] faces = {
+                {1, 0, 0, 0, 1, 0, 0, 0, 1},
+                {-1, 0, 0, 0, 0, 1, 0, 1, 0},
+                {0, 1, 0, 0, 0, 1, 1, 0, 0},
+                {0, -1, 0, 1, 0, 0, 0, 0, 1},
+                {0, 0, 1, 1, 0, 0, 0, 1, 0},
+                {0, 0, -1, 0, 1, 0, 1, 0, 0}
+        };
+        // corners in clockwise order seen from outside, matching glFrontFace(GL_CW)
+        float[][] corners = {{-1, -1}, {-1, 1}, {1, 1}, {1, -1}};
+
+        float[] positions = new float[6 * 4 * 3];
+        float[] textCoords = new float[6 * 4 * 2];
+        float[] normals = new float[6 * 4 * 3];
+        int[] indices = new int[6 * 6];
+        for (int face = 0; face < 6; face++) {
+            float[] axes = faces[face];
+            for (int corner = 0; corner < 4; corner++) {
+                int vertex = face * 4 + corner;
+                float u = corners[corner][0];
+                float v = corners[corner][1];
+                for (int axis = 0; axis < 3; axis++) {
+                    positions[vertex * 3 + axis] = 0.5f * (axes[axis] + u * axes[3 + axis] + v * axes[6 + axis]);
+                    normals[vertex * 3 + axis] = axes[axis];
+                }
+                textCoords[vertex * 2] = (u + 1) / 2;
+                textCoords[vertex * 2 + 1] = (v + 1) / 2;
+            }
+            int[] quad = {0, 1, 2, 0, 2, 3};
+            for (int i = 0; i < quad.length; i++) {
+                indices[face * 6 + i] = face * 4 + quad[i];
+            }
+        }
+
+        Mesh mesh = new Mesh(positions, textCoords, normals, indices);
+        mesh.setMaterial(new Material(new Vector4f(0.5f, 0.5f, 0.5f, 1f), 0f));
+        return mesh;
+    }
+
+    private interface LoadTask {
+        void run() throws Exception;
+    }
+
+    private static class Upload {
+
+        private final long bytes;
+
+        /**
+         * Failed when the action throws; may be {@code null}.
+         */
+        private final AssetHandle<?> handle;
+
+        private final Runnable action;
+
+        /**
+         * Run instead of the action when the upload is dropped; may be {@code null}.
+         */
+        private final Runnable discard;
+
+        Upload(long bytes, AssetHandle<?> handle, Runnable action) {
+            this(bytes, handle, action, null);
+        }
+
+        Upload(long bytes, AssetHandle<?> handle, Runnable action, Runnable discard) {
+            this.bytes = bytes;
+            this.handle = handle;
+            this.action = action;
+            this.discard = discard;
+        }
+    }
+}
@@ -0,0 +1,863 @@
+package com.xenosnowfox.engine.graphics;
+
+import org.joml.FrustumIntersection;
+import org.joml.Vector3f;
+
+import java.util.Arrays;
+
+/**
+ * A dynamic bounding volume hierarchy over axis aligned boxes, one object per leaf, kept in flat primitive arrays.
+ *
+ * <p>The tree is built in one go with a binned surface area heuristic by {@link #build(float[], int[], int, int[])},
+ * and changes incrementally afterwards: {@link #insert(Bounds, int)} descends to the sibling with the lowest surface
+ * area cost, {@link #remove(int)} splices a leaf out, and both rebalance the path to the root with AVL style
+ * rotations. {@link #update(int, Bounds)} handles an object that moved: nothing happens while it stays inside its
+ * leaf box, which is grown by a margin for moving objects; a small move refits the leaf and its ancestors, and a
+ * large one reinserts the leaf.
+ *
+ * <p>Objects are identified by a proxy, the index of their leaf, which stays valid until the object is removed. Each
+ * leaf carries an int of user data, typically the index of the object in the caller's own arrays. Queries walk the
+ * tree with a preallocated stack and report hits to a {@link Visitor}, so they do not allocate.
+ *
+ * <p>Not thread safe, not even for queries alone: they all share that stack, so concurrent queries must be
+ * synchronized by the caller.
+ */
+public class BoundingVolumeHierarchy {
+
+    /**
+     * Receives the objects found by a query.
+     */
+    @FunctionalInterface
+    public interface Visitor {
+
+        /**
+         * @return {@code false} to end the query.
+         */
+        boolean visit(int proxy, int userData);
+    }
+
+    /**
+     * Receives the objects whose box a ray enters. At each node the child the ray enters first is searched first, so
+     * near objects tend to come early, but not strictly in order of distance.
+     */
+    @FunctionalInterface
+    public interface RayVisitor {
+
+        /**
+         * @param maxDistance
+         * 		current length of the ray.
+         * @return the new length of the ray: the distance of an exact hit to only look for closer ones,
+         * {@code maxDistance} to carry on, or 0 to end the query.
+         */
+        float visit(int proxy, int userData, float maxDistance);
+    }
+
+    public static final int NULL_NODE = -1;
+
+    private static final int BINS = 16;
+
+    /**
+     * Marks stack entries whose whole subtree is known to be inside the frustum.
+     */
+    private static final int INSIDE_FLAG = 1 << 30;
+
+    /**
+     * Entry distance of a box the ray misses.
+     */
+    private static final float MISS = Float.POSITIVE_INFINITY;
+
+    private final float margin;
+
+    /**
+     * Six floats per node: min x, y, z, max x, y, z. Leaves hold the object box grown by the margin.
+     */
+    private float[] bounds;
+
+    private int[] parents;
+
+    private int[] firstChildren;
+
+    private int[] secondChildren;
+
+    private int[] heights;
+
+    private int[] userData;
+
+    private int capacity;
+
+    private int nodeCount;
+
+    private int objectCount;
+
+    private int root = NULL_NODE;
+
+    /**
+     * Head of the list of free nodes, chained through {@link #parents}.
+     */
+    private int freeList = NULL_NODE;
+
+    private int[] stack = new int[64];
+
+    /**
+     * Entry distance of the ray into each node on the stack during a raycast.
+     */
+    private float[] entries = new float[64];
+
+    /**
+     * Origin, direction and inverse direction of the current ray.
+     */
+    private final float[] ray = new float[9];
+
+    private final float[] scratch = new float[6];
+
+    /**
+     * @param margin
+     * 		how far leaf boxes reach beyond their object, so small moves need no tree update; 0 for static scenes.
+     */
+    public BoundingVolumeHierarchy(float margin) {
+        this.margin = margin;
+        allocate(16);
+    }
+
+    private void allocate(int withCapacity) {
+        bounds = bounds == null ? new float[withCapacity * 6] : Arrays.copyOf(bounds, withCapacity * 6);
+        parents = parents == null ? new int[withCapacity] : Arrays.copyOf(parents, withCapacity);
+        firstChildren = firstChildren == null ? new int[withCapacity] : Arrays.copyOf(firstChildren, withCapacity);
+        secondChildren = secondChildren == null ? new int[withCapacity] : Arrays.copyOf(secondChildren, withCapacity);
+        heights = heights == null ? new int[withCapacity] : Arrays.copyOf(heights, withCapacity);
+        userData = userData == null ? new int[withCapacity] : Arrays.copyOf(userData, withCapacity);
+        capacity = withCapacity;
+    }
+
+    private int allocateNode() {
+        int node;
+        if (freeList != NULL_NODE) {
+            node = freeList;
+            freeList = parents[node];
+        } else {
+            if (nodeCount == capacity) {
+                allocate(capacity * 2);
+            }
+            node = nodeCount++;
+        }
+        parents[node] = NULL_NODE;
+        firstChildren[node] = NULL_NODE;
+        secondChildren[node] = NULL_NODE;
+        heights[node] = 0;
+        userData[node] = 0;
+        return node;
+    }
+
+    private void freeNode(int node) {
+        parents[node] = freeList;
+        heights[node] = -1;
+        freeList = node;
+    }
+
+    /**
+     * Removes every object; proxies handed out before become invalid.
+     */
+    public void clear() {
+        root = NULL_NODE;
+        freeList = NULL_NODE;
+        nodeCount = 0;
+        objectCount = 0;
+    }
+
+    /**
+     * Replaces the content of the tree with a top-down binned SAH build.
+     *
+     * @param objectBounds
+     * 		six floats per object, min x, y, z followed by max x, y, z.
+     * @param objectUserData
+     * 		user data per object.
+     * @param count
+     * 		number of objects.
+     * @param proxies
+     * 		receives the proxy of every object, in input order.
+     */
+    public void build(float[] objectBounds, int[] objectUserData, int count, int[] proxies) {
+        clear();
+        if (capacity < count * 2) {
+            allocate(count * 2);
+        }
+        objectCount = count;
+        if (count == 0) {
+            return;
+        }
+        int[] order = new int[count];
+        float[] centroids = new float[count * 3];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+            for (int axis = 0; axis < 3; axis++) {
+                centroids[i * 3 + axis] = (objectBounds[i * 6 + axis] + objectBounds[i * 6 + 3 + axis]) * 0.5f;
+            }
+        }
+        root = buildRange(objectBounds, objectUserData, centroids, order, 0, count, proxies, new BinScratch());
+    }
+
+    private int buildRange(float[] objectBounds, int[] objectUserData, float[] centroids, int[] order, int start,
+            int end, int[] proxies, BinScratch bins) {
+        int node = allocateNode();
+        if (end - start == 1) {
+            int object = order[start];
+            setLeafBounds(node, objectBounds, object * 6);
+            userData[node] = objectUserData[object];
+            proxies[object] = node;
+            return node;
+        }
+
+        int split = partition(objectBounds, centroids, order, start, end, bins);
+        int first = buildRange(objectBounds, objectUserData, centroids, order, start, split, proxies, bins);
+        int second = buildRange(objectBounds, objectUserData, centroids, order, split, end, proxies, bins);
+        firstChildren[node] = first;
+        secondChildren[node] = second;
+        parents[first] = node;
+        parents[second] = node;
+        heights[node] = 1 + Math.max(heights[first], heights[second]);
+        union(first, second, node);
+        return node;
+    }
+
+    /**
+     * Splits a range at the cheapest of the bin boundaries along the widest centroid axis, or in the middle when
+     * the centroids do not spread or the best split leaves a side empty.
+     *
+     * @return the first index of the second half.
+     */
+    private int partition(float[] objectBounds, float[] centroids, int[] order, int start, int end, BinScratch bins) {
+        float[] centroidBounds = bins.centroidBounds;
+        Arrays.fill(centroidBounds, 0, 3, Float.POSITIVE_INFINITY);
+        Arrays.fill(centroidBounds, 3, 6, Float.NEGATIVE_INFINITY);
+        for (int i = start; i < end; i++) {
+            int object = order[i];
+            for (int axis = 0; axis < 3; axis++) {
+                float value = centroids[object * 3 + axis];
+                centroidBounds[axis] = Math.min(centroidBounds[axis], value);
+                centroidBounds[axis + 3] = Math.max(centroidBounds[axis + 3], value);
+            }
+        }
+        int axis = 0;
+        for (int candidate = 1; candidate < 3; candidate++) {
+            if (centroidBounds[candidate + 3] - centroidBounds[candidate] > centroidBounds[axis + 3] - centroidBounds[axis]) {
+                axis = candidate;
+            }
+        }
+        float low = centroidBounds[axis];
+        float extent = centroidBounds[axis + 3] - low;
+        int middle = (start + end) >>> 1;
+        if (!(extent > 0f)) {
+            return middle;
+        }
+
+        // bin the objects
+        int[] counts = bins.counts;
+        float[] binBounds = bins.binBounds;
+        Arrays.fill(counts, 0);
+        for (int bin = 0; bin < BINS; bin++) {
+            resetBox(binBounds, bin * 6);
+        }
+        float scale = BINS / extent;
+        for (int i = start; i < end; i++) {
+            int object = order[i];
+            int bin = Math.min(BINS - 1, (int) ((centroids[object * 3 + axis] - low) * scale));
+            counts[bin]++;
+            growBox(binBounds, bin * 6, objectBounds, object * 6);
+        }
+
+        // sweep from the right to get the cost of every right side, then from the left to find the best split
+        float[] box = bins.box;
+        float[] rightAreas = bins.rightAreas;
+        int[] rightCounts = bins.rightCounts;
+        resetBox(box, 0);
+        int count = 0;
+        for (int bin = BINS - 1; bin > 0; bin--) {
+            growBox(box, 0, binBounds, bin * 6);
+            count += counts[bin];
+            rightAreas[bin] = surfaceArea(box, 0);
+            rightCounts[bin] = count;
+        }
+        resetBox(box, 0);
+        count = 0;
+        float bestCost = Float.POSITIVE_INFINITY;
+        int bestBin = -1;
+        for (int bin = 1; bin < BINS; bin++) {
+            growBox(box, 0, binBounds, (bin - 1) * 6);
+            count += counts[bin - 1];
+            if (count == 0 || rightCounts[bin] == 0) {
+                continue;
+            }
+            float cost = count * surfaceArea(box, 0) + rightCounts[bin] * rightAreas[bin];
+            if (cost < bestCost) {
+                bestCost = cost;
+                bestBin = bin;
+            }
+        }
+        if (bestBin < 0) {
+            return middle;
+        }
+
+        // move the objects of the left bins to the front
+        int left = start;
+        for (int i = start; i < end; i++) {
+            int object = order[i];
+            int bin = Math.min(BINS - 1, (int) ((centroids[object * 3 + axis] - low) * scale));
+            if (bin < bestBin) {
+                order[i] = order[left];
+                order[left] = object;
+                left++;
+            }
+        }
+        return left == start || left == end ? middle : left;
+    }
+
+    /**
+     * Reused arrays of the SAH build.
+     */
+    private static class BinScratch {
+
+        final float[] centroidBounds = new float[6];
+
+        final int[] counts = new int[BINS];
+
+        final float[] binBounds = new float[BINS * 6];
+
+        final float[] rightAreas = new float[BINS];
+
+        final int[] rightCounts = new int[BINS];
+
+        final float[] box = new float[6];
+    }
+
+    /**
+     * Adds an object.
+     *
+     * @return its proxy.
+     */
+    public int insert(Bounds objectBounds, int objectUserData) {
+        int leaf = allocateNode();
+        toArray(objectBounds, scratch);
+        setLeafBounds(leaf, scratch, 0);
+        userData[leaf] = objectUserData;
+        insertLeaf(leaf);
+        objectCount++;
+        return leaf;
+    }
+
+    public void remove(int proxy) {
+        removeLeaf(proxy);
+        freeNode(proxy);
+        objectCount--;
+    }
+
+    /**
+     * Moves an object to new bounds.
+     *
+     * @return {@code true} if the tree changed, {@code false} when the bounds are still inside the leaf box.
+     */
+    public boolean update(int proxy, Bounds objectBounds) {
+        toArray(objectBounds, scratch);
+        int offset = proxy * 6;
+        if (contains(bounds, offset, scratch, 0)) {
+            return false;
+        }
+        if (overlaps(bounds, offset, scratch, 0)) {
+            // a small move: grow the leaf and refit its ancestors in place
+            setLeafBounds(proxy, scratch, 0);
+            for (int node = parents[proxy]; node != NULL_NODE; node = parents[node]) {
+                union(firstChildren[node], secondChildren[node], node);
+            }
+        } else {
+            removeLeaf(proxy);
+            setLeafBounds(proxy, scratch, 0);
+            insertLeaf(proxy);
+        }
+        return true;
+    }
+
+    private void insertLeaf(int leaf) {
+        if (root == NULL_NODE) {
+            root = leaf;
+            parents[leaf] = NULL_NODE;
+            return;
+        }
+
+        // descend to the sibling whose union with the leaf adds the least surface area
+        int node = root;
+        while (!isLeaf(node)) {
+            float area = surfaceArea(bounds, node * 6);
+            float combinedArea = unionArea(node, leaf);
+            float cost = 2f * combinedArea;
+            float inheritanceCost = 2f * (combinedArea - area);
+            float firstCost = descendCost(firstChildren[node], leaf) + inheritanceCost;
+            float secondCost = descendCost(secondChildren[node], leaf) + inheritanceCost;
+            if (cost < firstCost && cost < secondCost) {
+                break;
+            }
+            node = firstCost < secondCost ? firstChildren[node] : secondChildren[node];
+        }
+
+        int sibling = node;
+        int oldParent = parents[sibling];
+        int newParent = allocateNode();
+        parents[newParent] = oldParent;
+        heights[newParent] = heights[sibling] + 1;
+        union(leaf, sibling, newParent);
+        if (oldParent != NULL_NODE) {
+            if (firstChildren[oldParent] == sibling) {
+                firstChildren[oldParent] = newParent;
+            } else {
+                secondChildren[oldParent] = newParent;
+            }
+        } else {
+            root = newParent;
+        }
+        firstChildren[newParent] = sibling;
+        secondChildren[newParent] = leaf;
+        parents[sibling] = newParent;
+        parents[leaf] = newParent;
+
+        refitAndBalance(parents[leaf]);
+    }
+
+    private float descendCost(int child, int leaf) {
+        float combinedArea = unionArea(child, leaf);
+        if (isLeaf(child)) {
+            return combinedArea;
+        }
+        return combinedArea - surfaceArea(bounds, child * 6);
+    }
+
+    private void removeLeaf(int leaf) {
+        if (leaf == root) {
+            root = NULL_NODE;
+            return;
+        }
+        int parent = parents[leaf];
+        int grandParent = parents[parent];
+        int sibling = firstChildren[parent] == leaf ? secondChildren[parent] : firstChildren[parent];
+        if (grandParent != NULL_NODE) {
+            if (firstChildren[grandParent] == parent) {
+                firstChildren[grandParent] = sibling;
+            } else {
+                secondChildren[grandParent] = sibling;
+            }
+            parents[sibling] = grandParent;
+            freeNode(parent);
+            refitAndBalance(grandParent);
+        } else {
+            root = sibling;
+            parents[sibling] = NULL_NODE;
+            freeNode(parent);
+        }
+        parents[leaf] = NULL_NODE;
+    }
+
+    private void refitAndBalance(int start) {
+        int node = start;
+        while (node != NULL_NODE) {
+            node = balance(node);
+            int first = firstChildren[node];
+            int second = secondChildren[node];
+            heights[node] = 1 + Math.max(heights[first], heights[second]);
+            union(first, second, node);
+            node = parents[node];
+        }
+    }
+
+    /**
+     * Rotates the taller grandchild of {@code a} up when its children's heights differ by more than one.
+     *
+     * @return the node now in the place of {@code a}.
+     */
+    private int balance(int a) {
+        if (isLeaf(a) || heights[a] < 2) {
+            return a;
+        }
+        int b = firstChildren[a];
+        int c = secondChildren[a];
+        int balance = heights[c] - heights[b];
+        if (balance > 1) {
+            rotateUp(a, c, b, false);
+            return c;
+        }
+        if (balance < -1) {
+            rotateUp(a, b, c, true);
+            return b;
+        }
+        return a;
+    }
+
+    /**
+     * Makes {@code up}, a child of {@code a}, the parent of {@code a}; {@code a} keeps {@code other} and takes the
+     * shorter child of {@code up}.
+     *
+     * @param upIsFirst
+     * 		whether {@code up} was the first child of {@code a}.
+     */
+    private void rotateUp(int a, int up, int other, boolean upIsFirst) {
+        int f = firstChildren[up];
+        int g = secondChildren[up];
+
+        firstChildren[up] = a;
+        parents[up] = parents[a];
+        parents[a] = up;
+        int parent = parents[up];
+        if (parent != NULL_NODE) {
+            if (firstChildren[parent] == a) {
+                firstChildren[parent] = up;
+            } else {
+                secondChildren[parent] = up;
+            }
+        } else {
+            root = up;
+        }
+
+        int taller = heights[f] > heights[g] ? f : g;
+        int shorter = taller == f ? g : f;
+        secondChildren[up] = taller;
+        if (upIsFirst) {
+            firstChildren[a] = shorter;
+        } else {
+            secondChildren[a] = shorter;
+        }
+        parents[shorter] = a;
+        union(other, shorter, a);
+        heights[a] = 1 + Math.max(heights[other], heights[shorter]);
+        union(a, taller, up);
+        heights[up] = 1 + Math.max(heights[a], heights[taller]);
+    }
+
+    /**
+     * Reports the objects whose leaf box is not outside the frustum; subtrees found completely inside are reported
+     * without further tests.
+     */
+    public void queryFrustum(FrustumIntersection frustum, Visitor visitor) {
+        if (root == NULL_NODE) {
+            return;
+        }
+        int top = push(0, root);
+        while (top > 0) {
+            int entry = stack[--top];
+            int node = entry & ~INSIDE_FLAG;
+            boolean inside = (entry & INSIDE_FLAG) != 0;
+            if (!inside) {
+                int offset = node * 6;
+                int result = frustum.intersectAab(bounds[offset], bounds[offset + 1], bounds[offset + 2],
+                        bounds[offset + 3], bounds[offset + 4], bounds[offset + 5]);
+                if (result >= 0) {
+                    // the index of the plane that culled the box
+                    continue;
+                }
+                inside = result == FrustumIntersection.INSIDE;
+            }
+            if (isLeaf(node)) {
+                if (!visitor.visit(node, userData[node])) {
+                    return;
+                }
+            } else {
+                int flag = inside ? INSIDE_FLAG : 0;
+                top = push(top, firstChildren[node] | flag);
+                top = push(top, secondChildren[node] | flag);
+            }
+        }
+    }
+
+    /**
+     * Reports the objects whose leaf box overlaps a box.
+     */
+    public void queryAabb(Bounds box, Visitor visitor) {
+        if (root == NULL_NODE) {
+            return;
+        }
+        toArray(box, scratch);
+        float minX = scratch[0];
+        float minY = scratch[1];
+        float minZ = scratch[2];
+        float maxX = scratch[3];
+        float maxY = scratch[4];
+        float maxZ = scratch[5];
+        int top = push(0, root);
+        while (top > 0) {
+            int node = stack[--top];
+            int offset = node * 6;
+            if (bounds[offset] > maxX || bounds[offset + 1] > maxY || bounds[offset + 2] > maxZ
+                    || bounds[offset + 3] < minX || bounds[offset + 4] < minY || bounds[offset + 5] < minZ) {
+                continue;
+            }
+            if (isLeaf(node)) {
+                if (!visitor.visit(node, userData[node])) {
+                    return;
+                }
+            } else {
+                top = push(top, firstChildren[node]);
+                top = push(top, secondChildren[node]);
+            }
+        }
+    }
+
+    /**
+     * Reports the objects whose leaf box overlaps a sphere.
+     */
+    public void querySphere(float centerX, float centerY, float centerZ, float radius, Visitor visitor) {
+        if (root == NULL_NODE) {
+            return;
+        }
+        float radiusSquared = radius * radius;
+        int top = push(0, root);
+        while (top > 0) {
+            int node = stack[--top];
+            int offset = node * 6;
+            float dx = Math.max(0f, Math.max(bounds[offset] - centerX, centerX - bounds[offset + 3]));
+            float dy = Math.max(0f, Math.max(bounds[offset + 1] - centerY, centerY - bounds[offset + 4]));
+            float dz = Math.max(0f, Math.max(bounds[offset + 2] - centerZ, centerZ - bounds[offset + 5]));
+            if (dx * dx + dy * dy + dz * dz > radiusSquared) {
+                continue;
+            }
+            if (isLeaf(node)) {
+                if (!visitor.visit(node, userData[node])) {
+                    return;
+                }
+            } else {
+                top = push(top, firstChildren[node]);
+                top = push(top, secondChildren[node]);
+            }
+        }
+    }
+
+    /**
+     * Reports the objects whose leaf box a ray passes through, e.g. for picking. The ray shortens as the visitor
+     * reports exact hits, which prunes the subtrees behind them.
+     *
+     * @param direction
+     * 		need not be normalized; distances are in multiples of its length.
+     */
+    public void raycast(Vector3f origin, Vector3f direction, float maxDistance, RayVisitor visitor) {
+        if (root == NULL_NODE) {
+            return;
+        }
+        ray[0] = origin.x;
+        ray[1] = origin.y;
+        ray[2] = origin.z;
+        ray[3] = direction.x;
+        ray[4] = direction.y;
+        ray[5] = direction.z;
+        ray[6] = 1f / direction.x;
+        ray[7] = 1f / direction.y;
+        ray[8] = 1f / direction.z;
+        float length = maxDistance;
+        float rootEntry = entryDistance(root, length);
+        if (rootEntry == MISS) {
+            return;
+        }
+        int top = push(0, root, rootEntry);
+        while (top > 0) {
+            int node = stack[--top];
+            if (entries[top] > length) {
+                // an earlier hit shortened the ray
+                continue;
+            }
+            if (isLeaf(node)) {
+                length = visitor.visit(node, userData[node], length);
+                if (length <= 0f) {
+                    return;
+                }
+                continue;
+            }
+            int near = firstChildren[node];
+            int far = secondChildren[node];
+            float nearEntry = entryDistance(near, length);
+            float farEntry = entryDistance(far, length);
+            if (farEntry < nearEntry) {
+                int child = near;
+                near = far;
+                far = child;
+                float entry = nearEntry;
+                nearEntry = farEntry;
+                farEntry = entry;
+            }
+            // the nearer child goes on top, so it is searched first
+            if (farEntry != MISS) {
+                top = push(top, far, farEntry);
+            }
+            if (nearEntry != MISS) {
+                top = push(top, near, nearEntry);
+            }
+        }
+    }
+
+    /**
+     * Slab test of the current ray against a node box.
+     *
+     * @return the distance at which the ray enters the box, 0 when it starts inside, or {@link #MISS}.
+     */
+    private float entryDistance(int node, float length) {
+        int offset = node * 6;
+        float entry = 0f;
+        float exit = length;
+        for (int axis = 0; axis < 3; axis++) {
+            float min = bounds[offset + axis];
+            float max = bounds[offset + 3 + axis];
+            float origin = ray[axis];
+            if (ray[3 + axis] == 0f) {
+                // parallel to the slab: inside it along the whole ray or never; the slab formula would give
+                // 0 * infinity, NaN, with the origin on a box face
+                if (origin < min || origin > max) {
+                    return MISS;
+                }
+                continue;
+            }
+            float inverse = ray[6 + axis];
+            float near = (min - origin) * inverse;
+            float far = (max - origin) * inverse;
+            entry = Math.max(entry, Math.min(near, far));
+            exit = Math.min(exit, Math.max(near, far));
+            if (entry > exit) {
+                return MISS;
+            }
+        }
+        return entry;
+    }
+
+    private int push(int top, int node, float entry) {
+        int next = push(top, node);
+        if (entries.length < stack.length) {
+            entries = Arrays.copyOf(entries, stack.length);
+        }
+        entries[top] = entry;
+        return next;
+    }
+
+    private int push(int top, int node) {
+        if (top == stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[top] = node;
+        return top + 1;
+    }
+
+    private boolean isLeaf(int node) {
+        return firstChildren[node] == NULL_NODE;
+    }
+
+    private void setLeafBounds(int node, float[] source, int sourceOffset) {
+        int offset = node * 6;
+        for (int axis = 0; axis < 3; axis++) {
+            bounds[offset + axis] = source[sourceOffset + axis] - margin;
+            bounds[offset + 3 + axis] = source[sourceOffset + 3 + axis] + margin;
+        }
+    }
+
+    private void union(int first, int second, int target) {
+        int a = first * 6;
+        int b = second * 6;
+        int t = target * 6;
+        for (int axis = 0; axis < 3; axis++) {
+            bounds[t + axis] = Math.min(bounds[a + axis], bounds[b + axis]);
+            bounds[t + 3 + axis] = Math.max(bounds[a + 3 + axis], bounds[b + 3 + axis]);
+        }
+    }
+
+    private float unionArea(int first, int second) {
+        int a = first * 6;
+        int b = second * 6;
+        float dx = Math.max(bounds[a + 3], bounds[b + 3]) - Math.min(bounds[a], bounds[b]);
+        float dy = Math.max(bounds[a + 4], bounds[b + 4]) - Math.min(bounds[a + 1], bounds[b + 1]);
+        float dz = Math.max(bounds[a + 5], bounds[b + 5]) - Math.min(bounds[a + 2], bounds[b + 2]);
+        return 2f * (dx * dy + dy * dz + dz * dx);
+    }
+
+    private static float surfaceArea(float[] box, int offset) {
+        float dx = box[offset + 3] - box[offset];
+        float dy = box[offset + 4] - box[offset + 1];
+        float dz = box[offset + 5] - box[offset + 2];
+        return 2f * (dx * dy + dy * dz + dz * dx);
+    }
+
+    private static void resetBox(float[] box, int offset) {
+        Arrays.fill(box, offset, offset + 3, Float.POSITIVE_INFINITY);
+        Arrays.fill(box, offset + 3, offset + 6, Float.NEGATIVE_INFINITY);
+    }
+
+    private static void growBox(float[] box, int offset, float[] source, int sourceOffset) {
+        for (int axis = 0; axis < 3; axis++) {
+            box[offset + axis] = Math.min(box[offset + axis], source[sourceOffset + axis]);
+            box[offset + 3 + axis] = Math.max(box[offset + 3 + axis], source[sourceOffset + 3 + axis]);
+        }
+    }
+
+    private static boolean contains(float[] outer, int outerOffset, float[] inner, int innerOffset) {
+        for (int axis = 0; axis < 3; axis++) {
+            if (inner[innerOffset + axis] < outer[outerOffset + axis]
+                    || inner[innerOffset + 3 + axis] > outer[outerOffset + 3 + axis]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean overlaps(float[] a, int aOffset, float[] b, int bOffset) {
+        for (int axis = 0; axis < 3; axis++) {
+            if (a[aOffset + axis] > b[bOffset + 3 + axis] || b[bOffset + axis] > a[aOffset + 3 + axis]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void toArray(Bounds source, float[] target) {
+        Vector3f min = source.getMin();
+        Vector3f max = source.getMax();
+        target[0] = min.x;
+        target[1] = min.y;
+        target[2] = min.z;
+        target[3] = max.x;
+        target[4] = max.y;
+        target[5] = max.z;
+    }
+
+    public int getUserData(int proxy) {
+        return userData[proxy];
+    }
+
+    /**
+     * Leaf box of an object, including the margin.
+     */
+    public Bounds getBounds(int proxy, Bounds target) {
+        int offset = proxy * 6;
+        return target.set(bounds[offset], bounds[offset + 1], bounds[offset + 2],
+                bounds[offset + 3], bounds[offset + 4], bounds[offset + 5]);
+    }
+
+    public int getObjectCount() {
+        return objectCount;
+    }
+
+    /**
+     * Height of the tree, 0 for a single leaf and -1 when empty.
+     */
+    public int getHeight() {
+        return root == NULL_NODE ? -1 : heights[root];
+    }
+
+    /**
+     * Surface area of all internal nodes relative to the root, a measure of query cost: lower is better.
+     */
+    public float getAreaRatio() {
+        if (root == NULL_NODE) {
+            return 0f;
+        }
+        float rootArea = surfaceArea(bounds, root * 6);
+        float total = 0f;
+        int top = push(0, root);
+        while (top > 0) {
+            int node = stack[--top];
+            if (!isLeaf(node)) {
+                total += surfaceArea(bounds, node * 6);
+                top = push(top, firstChildren[node]);
+                top = push(top, secondChildren[node]);
+            }
+        }
+        return rootArea > 0f ? total / rootArea : 0f;
+    }
+}
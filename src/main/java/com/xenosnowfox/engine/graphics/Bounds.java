@@ -0,0 +1,68 @@
+package com.xenosnowfox.engine.graphics;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+/**
+ * An axis aligned bounding box together with the bounding sphere around it.
+ */
+public class Bounds {
+
+    private final Vector3f min = new Vector3f();
+
+    private final Vector3f max = new Vector3f();
+
+    private final Vector3f center = new Vector3f();
+
+    private float radius;
+
+    /**
+     * Sets the box and derives the sphere: centred on the box, through its corners.
+     */
+    public Bounds set(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        min.set(minX, minY, minZ);
+        max.set(maxX, maxY, maxZ);
+        center.set(minX + maxX, minY + maxY, minZ + maxZ).mul(0.5f);
+        radius = center.distance(max);
+        return this;
+    }
+
+    /**
+     * Sets the box from min x, y, z followed by max x, y, z, as computed for meshes and caches.
+     */
+    public Bounds set(float[] minMax) {
+        return set(minMax[0], minMax[1], minMax[2], minMax[3], minMax[4], minMax[5]);
+    }
+
+    /**
+     * Bounds of these bounds after a transformation: the box around the transformed box, and the sphere moved and
+     * grown by the largest scale of the matrix.
+     *
+     * @return {@code target}.
+     */
+    public Bounds transform(Matrix4f matrix, Bounds target) {
+        matrix.transformAab(min, max, target.min, target.max);
+        matrix.transformPosition(center, target.center);
+        float scaleX = matrix.m00() * matrix.m00() + matrix.m01() * matrix.m01() + matrix.m02() * matrix.m02();
+        float scaleY = matrix.m10() * matrix.m10() + matrix.m11() * matrix.m11() + matrix.m12() * matrix.m12();
+        float scaleZ = matrix.m20() * matrix.m20() + matrix.m21() * matrix.m21() + matrix.m22() * matrix.m22();
+        target.radius = radius * (float) Math.sqrt(Math.max(scaleX, Math.max(scaleY, scaleZ)));
+        return target;
+    }
+
+    public Vector3f getMin() {
+        return min;
+    }
+
+    public Vector3f getMax() {
+        return max;
+    }
+
+    public Vector3f getCenter() {
+        return center;
+    }
+
+    public float getRadius() {
+        return radius;
+    }
+}
@@ -0,0 +1,203 @@
+package com.xenosnowfox.engine.graphics;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL15.glBindBuffer;
+import static org.lwjgl.opengl.GL15.glDeleteBuffers;
+import static org.lwjgl.opengl.GL15.glGenBuffers;
+import static org.lwjgl.opengl.GL30.GL_MAP_WRITE_BIT;
+import static org.lwjgl.opengl.GL30.glMapBufferRange;
+import static org.lwjgl.opengl.GL32.GL_SYNC_FLUSH_COMMANDS_BIT;
+import static org.lwjgl.opengl.GL32.GL_SYNC_GPU_COMMANDS_COMPLETE;
+import static org.lwjgl.opengl.GL32.GL_TIMEOUT_EXPIRED;
+import static org.lwjgl.opengl.GL32.GL_WAIT_FAILED;
+import static org.lwjgl.opengl.GL32.glClientWaitSync;
+import static org.lwjgl.opengl.GL32.glDeleteSync;
+import static org.lwjgl.opengl.GL32.glFenceSync;
+import static org.lwjgl.opengl.GL44.GL_MAP_COHERENT_BIT;
+import static org.lwjgl.opengl.GL44.GL_MAP_PERSISTENT_BIT;
+import static org.lwjgl.opengl.GL44.glBufferStorage;
+
+/**
+ * A buffer object mapped once for the life of the ring and split into {@link #FRAMES} regions, one per frame in
+ * flight. The CPU writes a frame into one region while the GPU may still read the previous two; a fence placed at
+ * {@link #endFrame()} guards each region, so {@link #beginFrame()} only blocks when the GPU is more than two frames
+ * behind.
+ *
+ * <p>Space within a frame is handed out by {@link #allocate(int)} as absolute offsets into the buffer, ready for
+ * {@code glBindBufferRange} or a base instance; the data is written straight into {@link #getBuffer()}.
+ */
+public class BufferRing {
+
+    /**
+     * Regions in the ring, i.e. triple buffering.
+     */
+    public static final int FRAMES = 3;
+
+    private static final int STORAGE_FLAGS = GL_MAP_WRITE_BIT | GL_MAP_PERSISTENT_BIT | GL_MAP_COHERENT_BIT;
+
+    private static final long WAIT_NANOS = 1_000_000L;
+
+    private final int target;
+
+    private final int alignment;
+
+    private final long[] fences = new long[FRAMES];
+
+    private int bufferId;
+
+    private ByteBuffer buffer;
+
+    private int frameBytes;
+
+    private int frame = FRAMES - 1;
+
+    private int frameStart;
+
+    private int cursor;
+
+    private int stalls;
+
+    /**
+     * @param target
+     * 		buffer binding target used while creating the storage, e.g. {@code GL_UNIFORM_BUFFER}.
+     * @param frameBytes
+     * 		initial size of each region.
+     * @param alignment
+     * 		alignment of every allocation, e.g. {@code GL_UNIFORM_BUFFER_OFFSET_ALIGNMENT}.
+     */
+    public BufferRing(int target, int frameBytes, int alignment) {
+        this.target = target;
+        this.alignment = alignment;
+        createStorage(align(frameBytes));
+    }
+
+    private void createStorage(int withFrameBytes) {
+        frameBytes = withFrameBytes;
+        bufferId = glGenBuffers();
+        glBindBuffer(target, bufferId);
+        glBufferStorage(target, (long) frameBytes * FRAMES, STORAGE_FLAGS);
+        buffer = glMapBufferRange(target, 0, (long) frameBytes * FRAMES, STORAGE_FLAGS);
+        glBindBuffer(target, 0);
+    }
+
+    private int align(int value) {
+        return (value + alignment - 1) / alignment * alignment;
+    }
+
+    /**
+     * Moves on to the next region, waiting for the GPU to finish the frame that last used it.
+     */
+    public void beginFrame() {
+        frame = (frame + 1) % FRAMES;
+        waitFor(frame);
+        frameStart = frame * frameBytes;
+        cursor = 0;
+    }
+
+    private void waitFor(int region) {
+        long fence = fences[region];
+        if (fence == 0) {
+            return;
+        }
+        int result = glClientWaitSync(fence, 0, 0);
+        if (result == GL_TIMEOUT_EXPIRED) {
+            stalls++;
+            do {
+                result = glClientWaitSync(fence, GL_SYNC_FLUSH_COMMANDS_BIT, WAIT_NANOS);
+            } while (result == GL_TIMEOUT_EXPIRED);
+        }
+        glDeleteSync(fence);
+        fences[region] = 0;
+        if (result == GL_WAIT_FAILED) {
+            throw new IllegalStateException("Waiting for a buffer ring fence failed");
+        }
+    }
+
+    /**
+     * Grows the regions to hold at least the given number of bytes per frame. Only allowed right after
+     * {@link #beginFrame()}; growing waits for every frame in flight and replaces the buffer object, so
+     * {@link #getBufferId()} changes.
+     */
+    public void ensureCapacity(int bytes) {
+        if (bytes <= frameBytes) {
+            return;
+        }
+        if (cursor != 0) {
+            throw new IllegalStateException("Buffer ring can only grow before the first allocation of a frame");
+        }
+        for (int region = 0; region < FRAMES; region++) {
+            waitFor(region);
+        }
+        int oldBufferId = bufferId;
+        // the new buffer is generated first so it never reuses the old name, which VAOs may still remember
+        createStorage(align(Math.max(bytes, frameBytes * 2)));
+        glDeleteBuffers(oldBufferId);
+        frameStart = frame * frameBytes;
+    }
+
+    /**
+     * Reserves space in the current frame's region.
+     *
+     * @return the absolute offset of the space in the buffer.
+     * @throws IllegalStateException
+     * 		when the region is full; size the ring with {@link #ensureCapacity(int)} instead.
+     */
+    public int allocate(int bytes) {
+        int size = align(bytes);
+        if (cursor + size > frameBytes) {
+            throw new IllegalStateException("Buffer ring region of " + frameBytes + " bytes is full");
+        }
+        int offset = frameStart + cursor;
+        cursor += size;
+        return offset;
+    }
+
+    /**
+     * Fences the current region; call after the draws reading it have been issued.
+     */
+    public void endFrame() {
+        fences[frame] = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+    }
+
+    /**
+     * The whole mapped buffer; write with absolute puts at offsets from {@link #allocate(int)}.
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public int getBufferId() {
+        return bufferId;
+    }
+
+    public int getFrameBytes() {
+        return frameBytes;
+    }
+
+    /**
+     * Bytes allocated in the current frame.
+     */
+    public int getUsedBytes() {
+        return cursor;
+    }
+
+    /**
+     * Times {@link #beginFrame()} had to wait for the GPU.
+     */
+    public int getStalls() {
+        return stalls;
+    }
+
+    public void cleanUp() {
+        for (int region = 0; region < FRAMES; region++) {
+            if (fences[region] != 0) {
+                glDeleteSync(fences[region]);
+                fences[region] = 0;
+            }
+        }
+        // deleting a mapped buffer unmaps it
+        glDeleteBuffers(bufferId);
+        buffer = null;
+    }
+}
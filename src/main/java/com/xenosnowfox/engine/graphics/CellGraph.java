@@ -0,0 +1,312 @@
+package com.xenosnowfox.engine.graphics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The cells of a building, its rooms and corridors, connected by portals, the doors and windows between them.
+ * {@link CellVisibility} walks the graph to find the cells the camera can see.
+ *
+ * <p>Cells are axis aligned boxes. Portals are flat convex polygons that connect two cells. A graph is declared
+ * either in an OBJ file of its own, through group or object names, or in a sidecar text file:
+ * <ul>
+ * <li>OBJ: the faces of a group {@code cell_<name>} span the box of cell {@code <name>}, and the faces of a group
+ * {@code portal_<first>__<second>} form the portal between two cells, e.g. a door modelled as a quad.</li>
+ * <li>Sidecar: one statement per line, {@code cell <name> <min x y z> <max x y z>} or
+ * {@code portal <first> <second> <x y z of each corner, in order around the polygon>}; {@code #} starts a
+ * comment.</li>
+ * </ul>
+ */
+public class CellGraph {
+
+    public static final String CELL_PREFIX = "cell_";
+
+    public static final String PORTAL_PREFIX = "portal_";
+
+    /**
+     * Separates the two cell names of a portal group.
+     */
+    public static final String PORTAL_SEPARATOR = "__";
+
+    private final List<String> cellNames;
+
+    /**
+     * Min x, y, z followed by max x, y, z of each cell.
+     */
+    private final float[] cellBounds;
+
+    /**
+     * The two cells of each portal.
+     */
+    private final int[] portalCells;
+
+    /**
+     * Corners of each portal as x, y, z triples.
+     */
+    private final float[][] portalPolygons;
+
+    /**
+     * Portals of each cell.
+     */
+    private final int[][] cellPortals;
+
+    public CellGraph(List<String> cellNames, float[] cellBounds, int[] portalCells, float[][] portalPolygons) {
+        if (cellBounds.length != cellNames.size() * 6 || portalCells.length != portalPolygons.length * 2) {
+            throw new IllegalArgumentException("Need six bounds per cell and two cells per portal");
+        }
+        this.cellNames = cellNames;
+        this.cellBounds = cellBounds;
+        this.portalCells = portalCells;
+        this.portalPolygons = portalPolygons;
+
+        int[] counts = new int[cellNames.size()];
+        for (int cell : portalCells) {
+            counts[cell]++;
+        }
+        cellPortals = new int[cellNames.size()][];
+        for (int cell = 0; cell < counts.length; cell++) {
+            cellPortals[cell] = new int[counts[cell]];
+            counts[cell] = 0;
+        }
+        for (int portal = 0; portal < portalPolygons.length; portal++) {
+            for (int side = 0; side < 2; side++) {
+                int cell = portalCells[portal * 2 + side];
+                cellPortals[cell][counts[cell]++] = portal;
+            }
+        }
+    }
+
+    /**
+     * Loads a graph from an OBJ file with cell and portal groups, or from a sidecar file with any other extension.
+     */
+    public static CellGraph load(String fileName) throws IOException {
+        if (fileName.toLowerCase(Locale.ROOT).endsWith(".obj")) {
+            return fromObj(ObjParser.parseFile(fileName));
+        }
+        return parse(Files.readAllLines(Paths.get(fileName), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Builds a graph from the {@code cell_} and {@code portal_} groups of parsed OBJ records; other groups are
+     * ignored.
+     */
+    public static CellGraph fromObj(ObjData objData) {
+        List<String> names = new ArrayList<>();
+        GrowableFloatArray bounds = new GrowableFloatArray(64);
+        List<String[]> portalNames = new ArrayList<>();
+        List<float[]> polygons = new ArrayList<>();
+
+        float[] positions = objData.getPositions().array();
+        int[] faces = objData.getFaces().array();
+        List<String> groupNames = objData.getGroupNames();
+        for (int group = 0; group < groupNames.size(); group++) {
+            String name = groupNames.get(group);
+            int firstFace = objData.getGroupFaceStarts().get(group);
+            int endFace = group + 1 < groupNames.size() ? objData.getGroupFaceStarts().get(group + 1) : objData.getFaceCount();
+            if (firstFace == endFace) {
+                continue;
+            }
+            int[] corners = new int[(endFace - firstFace) * 3];
+            for (int corner = 0; corner < corners.length; corner++) {
+                corners[corner] = faces[firstFace * ObjData.FACE_STRIDE + corner * 3];
+            }
+            if (name.startsWith(CELL_PREFIX)) {
+                names.add(name.substring(CELL_PREFIX.length()));
+                float[] box = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+                for (int position : corners) {
+                    for (int axis = 0; axis < 3; axis++) {
+                        box[axis] = Math.min(box[axis], positions[position * 3 + axis]);
+                        box[axis + 3] = Math.max(box[axis + 3], positions[position * 3 + axis]);
+                    }
+                }
+                bounds.add(box[0], box[1], box[2]);
+                bounds.add(box[3], box[4], box[5]);
+            } else if (name.startsWith(PORTAL_PREFIX)) {
+                String[] cells = name.substring(PORTAL_PREFIX.length()).split(PORTAL_SEPARATOR, 2);
+                if (cells.length != 2) {
+                    throw new IllegalArgumentException("Portal group without two cell names: " + name);
+                }
+                portalNames.add(cells);
+                polygons.add(outline(positions, corners));
+            }
+        }
+        return build(names, bounds.toArray(), portalNames, polygons);
+    }
+
+    /**
+     * Parses the statements of a sidecar file.
+     */
+    public static CellGraph parse(List<String> lines) {
+        List<String> names = new ArrayList<>();
+        GrowableFloatArray bounds = new GrowableFloatArray(64);
+        List<String[]> portalNames = new ArrayList<>();
+        List<float[]> polygons = new ArrayList<>();
+        for (String line : lines) {
+            int comment = line.indexOf('#');
+            String[] tokens = (comment < 0 ? line : line.substring(0, comment)).trim().split("\\s+");
+            if (tokens[0].isEmpty()) {
+                continue;
+            }
+            if (tokens[0].equals("cell") && tokens.length == 8) {
+                names.add(tokens[1]);
+                for (int i = 2; i < 8; i++) {
+                    bounds.add(Float.parseFloat(tokens[i]));
+                }
+            } else if (tokens[0].equals("portal") && tokens.length >= 12 && (tokens.length - 3) % 3 == 0) {
+                portalNames.add(new String[]{tokens[1], tokens[2]});
+                float[] polygon = new float[tokens.length - 3];
+                for (int i = 0; i < polygon.length; i++) {
+                    polygon[i] = Float.parseFloat(tokens[i + 3]);
+                }
+                polygons.add(polygon);
+            } else {
+                throw new IllegalArgumentException("Invalid cell graph statement: " + line);
+            }
+        }
+        return build(names, bounds.toArray(), portalNames, polygons);
+    }
+
+    private static CellGraph build(List<String> names, float[] bounds, List<String[]> portalNames, List<float[]> polygons) {
+        int[] portalCells = new int[portalNames.size() * 2];
+        for (int portal = 0; portal < portalNames.size(); portal++) {
+            for (int side = 0; side < 2; side++) {
+                int cell = names.indexOf(portalNames.get(portal)[side]);
+                if (cell < 0) {
+                    throw new IllegalArgumentException("Portal to unknown cell " + portalNames.get(portal)[side]);
+                }
+                portalCells[portal * 2 + side] = cell;
+            }
+        }
+        return new CellGraph(names, bounds, portalCells, polygons.toArray(new float[0][]));
+    }
+
+    /**
+     * The distinct corners of a group of faces, ordered around their centre in the plane of the first face.
+     */
+    private static float[] outline(float[] positions, int[] corners) {
+        int[] distinct = Arrays.stream(corners).distinct().toArray();
+        float[] centre = new float[3];
+        for (int position : distinct) {
+            for (int axis = 0; axis < 3; axis++) {
+                centre[axis] += positions[position * 3 + axis] / distinct.length;
+            }
+        }
+        float[] a = new float[3];
+        float[] b = new float[3];
+        for (int axis = 0; axis < 3; axis++) {
+            a[axis] = positions[corners[1] * 3 + axis] - positions[corners[0] * 3 + axis];
+            b[axis] = positions[corners[2] * 3 + axis] - positions[corners[0] * 3 + axis];
+        }
+        float[] normal = {a[1] * b[2] - a[2] * b[1], a[2] * b[0] - a[0] * b[2], a[0] * b[1] - a[1] * b[0]};
+        // a second axis in the plane, perpendicular to the first edge
+        float[] c = {normal[1] * a[2] - normal[2] * a[1], normal[2] * a[0] - normal[0] * a[2], normal[0] * a[1] - normal[1] * a[0]};
+
+        double[] angles = new double[distinct.length];
+        Integer[] order = new Integer[distinct.length];
+        for (int i = 0; i < distinct.length; i++) {
+            float u = 0f;
+            float v = 0f;
+            for (int axis = 0; axis < 3; axis++) {
+                float offset = positions[distinct[i] * 3 + axis] - centre[axis];
+                u += offset * a[axis];
+                v += offset * c[axis];
+            }
+            angles[i] = Math.atan2(v, u);
+            order[i] = i;
+        }
+        Arrays.sort(order, (first, second) -> Double.compare(angles[first], angles[second]));
+        float[] polygon = new float[distinct.length * 3];
+        for (int i = 0; i < order.length; i++) {
+            System.arraycopy(positions, distinct[order[i]] * 3, polygon, i * 3, 3);
+        }
+        return polygon;
+    }
+
+    public int getCellCount() {
+        return cellNames.size();
+    }
+
+    public String getCellName(int cell) {
+        return cellNames.get(cell);
+    }
+
+    /**
+     * @return the cell of that name, or -1.
+     */
+    public int indexOf(String cellName) {
+        return cellNames.indexOf(cellName);
+    }
+
+    /**
+     * @return {@code target}.
+     */
+    public Bounds getCellBounds(int cell, Bounds target) {
+        int offset = cell * 6;
+        return target.set(cellBounds[offset], cellBounds[offset + 1], cellBounds[offset + 2],
+                cellBounds[offset + 3], cellBounds[offset + 4], cellBounds[offset + 5]);
+    }
+
+    public int getPortalCount() {
+        return portalPolygons.length;
+    }
+
+    /**
+     * Corners of a portal as x, y, z triples, in order around it; not to be changed.
+     */
+    public float[] getPortalPolygon(int portal) {
+        return portalPolygons[portal];
+    }
+
+    /**
+     * Portals of a cell; not to be changed.
+     */
+    public int[] getCellPortals(int cell) {
+        return cellPortals[cell];
+    }
+
+    /**
+     * The cell on the other side of a portal of {@code cell}.
+     */
+    public int getOtherCell(int portal, int cell) {
+        int first = portalCells[portal * 2];
+        return first == cell ? portalCells[portal * 2 + 1] : first;
+    }
+
+    /**
+     * The smallest cell containing a point.
+     *
+     * @return the cell, or -1 when the point is outside all cells.
+     */
+    public int findCell(float x, float y, float z) {
+        int found = -1;
+        float smallest = Float.MAX_VALUE;
+        for (int cell = 0; cell < cellNames.size(); cell++) {
+            int offset = cell * 6;
+            if (x >= cellBounds[offset] && y >= cellBounds[offset + 1] && z >= cellBounds[offset + 2]
+                    && x <= cellBounds[offset + 3] && y <= cellBounds[offset + 4] && z <= cellBounds[offset + 5]) {
+                float volume = (cellBounds[offset + 3] - cellBounds[offset]) * (cellBounds[offset + 4] - cellBounds[offset + 1])
+                        * (cellBounds[offset + 5] - cellBounds[offset + 2]);
+                if (volume < smallest) {
+                    smallest = volume;
+                    found = cell;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * The cell of an item: the smallest cell containing the centre of its world bounds.
+     *
+     * @return the cell, or -1 for an item outside all cells.
+     */
+    public int findCell(Bounds worldBounds) {
+        return findCell(worldBounds.getCenter().x, worldBounds.getCenter().y, worldBounds.getCenter().z);
+    }
+}
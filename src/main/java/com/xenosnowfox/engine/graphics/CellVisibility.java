@@ -0,0 +1,334 @@
+package com.xenosnowfox.engine.graphics;
+
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Finds the cells of a {@link CellGraph} the camera can see through portals, so items in the other cells are never
+ * submitted.
+ *
+ * <p>Each frame starts in the camera's cell with the whole screen. Every portal of a visible cell is projected, its
+ * corners clipped against the near plane, and the screen rectangle around it intersected with the rectangle it was
+ * seen through; if anything is left, the cell behind it is visible through that smaller rectangle, and its portals
+ * are followed in turn. A cell keeps the union of the rectangles it was seen through, and items in it are only
+ * visible where their own rectangle overlaps that union. Rectangles are a conservative stand-in for the exact
+ * portal frustums.
+ *
+ * <p>With a {@link PotentiallyVisibleSet} set, the walk is replaced by a lookup of the camera cell's row, narrowed
+ * down to the cells whose bounds intersect the view frustum.
+ *
+ * <p>Items belong to the cell containing the centre of their bounds, see {@link CellGraph#findCell(Bounds)}. A
+ * camera outside all cells sees every cell, as do items outside all cells.
+ */
+public class CellVisibility {
+
+    /**
+     * Portals followed in a row at most, against pathological graphs.
+     */
+    private static final int MAX_DEPTH = 64;
+
+    /**
+     * Clip space w below which a point counts as behind the camera.
+     */
+    private static final float NEAR_W = 1e-5f;
+
+    private final CellGraph graph;
+
+    private final Matrix4f viewProjectionMatrix = new Matrix4f();
+
+    private final FrustumIntersection frustum = new FrustumIntersection();
+
+    private final Bounds cellBounds = new Bounds();
+
+    private final long[] visibleCells;
+
+    /**
+     * Union of the screen rectangles each visible cell was seen through, as min x, min y, max x, max y in NDC.
+     */
+    private final float[] cellRectangles;
+
+    /**
+     * Rectangle each cell was first entered through this frame; a later entry within it finds nothing new.
+     */
+    private final float[] enteredRectangles;
+
+    private final boolean[] portalOnPath;
+
+    /**
+     * Clip space x, y and w of the corners of the portal being projected.
+     */
+    private float[] clipCorners = new float[3 * 8];
+
+    private final float[] rectangle = new float[4];
+
+    private final float[][] rectangleStack = new float[MAX_DEPTH + 1][4];
+
+    private PotentiallyVisibleSet potentiallyVisibleSet;
+
+    private int cameraCell = -1;
+
+    private int visibleCount;
+
+    private int portalsTested;
+
+    private long totalVisible;
+
+    private long frames;
+
+    private long nanos;
+
+    public CellVisibility(CellGraph graph) {
+        this.graph = graph;
+        this.visibleCells = new long[(graph.getCellCount() + 63) / 64];
+        this.cellRectangles = new float[graph.getCellCount() * 4];
+        this.enteredRectangles = new float[graph.getCellCount() * 4];
+        this.portalOnPath = new boolean[graph.getPortalCount()];
+    }
+
+    /**
+     * Looks up visible cells in a precomputed set instead of walking the portals, or walks them again when
+     * {@code null}.
+     */
+    public void setPotentiallyVisibleSet(PotentiallyVisibleSet potentiallyVisibleSet) {
+        if (potentiallyVisibleSet != null && potentiallyVisibleSet.getCellCount() != graph.getCellCount()) {
+            throw new IllegalArgumentException("Set of " + potentiallyVisibleSet.getCellCount() + " cells for a graph of "
+                    + graph.getCellCount());
+        }
+        this.potentiallyVisibleSet = potentiallyVisibleSet;
+    }
+
+    public PotentiallyVisibleSet getPotentiallyVisibleSet() {
+        return potentiallyVisibleSet;
+    }
+
+    /**
+     * Finds the cells visible through {@code projection * view} from a camera at {@code cameraPosition}.
+     */
+    public void update(Matrix4f projectionMatrix, Matrix4f viewMatrix, Vector3f cameraPosition) {
+        long start = System.nanoTime();
+        projectionMatrix.mul(viewMatrix, viewProjectionMatrix);
+        Arrays.fill(visibleCells, 0L);
+        visibleCount = 0;
+        portalsTested = 0;
+        cameraCell = graph.findCell(cameraPosition.x, cameraPosition.y, cameraPosition.z);
+
+        if (cameraCell < 0) {
+            for (int cell = 0; cell < graph.getCellCount(); cell++) {
+                markVisible(cell, -1f, -1f, 1f, 1f);
+            }
+        } else if (potentiallyVisibleSet != null) {
+            frustum.set(viewProjectionMatrix);
+            for (int cell = potentiallyVisibleSet.nextVisible(cameraCell, 0); cell >= 0;
+                    cell = potentiallyVisibleSet.nextVisible(cameraCell, cell + 1)) {
+                if (FrustumCuller.intersects(frustum, graph.getCellBounds(cell, cellBounds))) {
+                    markVisible(cell, -1f, -1f, 1f, 1f);
+                }
+            }
+        } else {
+            float[] screen = rectangleStack[0];
+            screen[0] = -1f;
+            screen[1] = -1f;
+            screen[2] = 1f;
+            screen[3] = 1f;
+            visit(cameraCell, 0);
+        }
+
+        totalVisible += visibleCount;
+        frames++;
+        nanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Marks a cell visible through {@code rectangleStack[depth]} and follows its portals.
+     */
+    private void visit(int cell, int depth) {
+        float[] seenThrough = rectangleStack[depth];
+        int offset = cell * 4;
+        if (isVisible(cell)) {
+            if (seenThrough[0] >= enteredRectangles[offset] && seenThrough[1] >= enteredRectangles[offset + 1]
+                    && seenThrough[2] <= enteredRectangles[offset + 2] && seenThrough[3] <= enteredRectangles[offset + 3]) {
+                return;
+            }
+            cellRectangles[offset] = Math.min(cellRectangles[offset], seenThrough[0]);
+            cellRectangles[offset + 1] = Math.min(cellRectangles[offset + 1], seenThrough[1]);
+            cellRectangles[offset + 2] = Math.max(cellRectangles[offset + 2], seenThrough[2]);
+            cellRectangles[offset + 3] = Math.max(cellRectangles[offset + 3], seenThrough[3]);
+        } else {
+            markVisible(cell, seenThrough[0], seenThrough[1], seenThrough[2], seenThrough[3]);
+            System.arraycopy(seenThrough, 0, enteredRectangles, offset, 4);
+        }
+        if (depth == MAX_DEPTH) {
+            return;
+        }
+
+        for (int portal : graph.getCellPortals(cell)) {
+            if (portalOnPath[portal]) {
+                continue;
+            }
+            portalsTested++;
+            if (!project(graph.getPortalPolygon(portal))) {
+                continue;
+            }
+            float[] next = rectangleStack[depth + 1];
+            next[0] = Math.max(seenThrough[0], rectangle[0]);
+            next[1] = Math.max(seenThrough[1], rectangle[1]);
+            next[2] = Math.min(seenThrough[2], rectangle[2]);
+            next[3] = Math.min(seenThrough[3], rectangle[3]);
+            if (next[0] > next[2] || next[1] > next[3]) {
+                continue;
+            }
+            portalOnPath[portal] = true;
+            visit(graph.getOtherCell(portal, cell), depth + 1);
+            portalOnPath[portal] = false;
+        }
+    }
+
+    /**
+     * Projects a portal polygon, clipped to the part in front of the camera, into {@link #rectangle}.
+     *
+     * @return whether any of it is in front of the camera.
+     */
+    private boolean project(float[] polygon) {
+        int cornerCount = polygon.length / 3;
+        if (clipCorners.length < cornerCount * 3) {
+            clipCorners = new float[cornerCount * 3];
+        }
+        Matrix4f m = viewProjectionMatrix;
+        for (int corner = 0; corner < cornerCount; corner++) {
+            float x = polygon[corner * 3];
+            float y = polygon[corner * 3 + 1];
+            float z = polygon[corner * 3 + 2];
+            clipCorners[corner * 3] = m.m00() * x + m.m10() * y + m.m20() * z + m.m30();
+            clipCorners[corner * 3 + 1] = m.m01() * x + m.m11() * y + m.m21() * z + m.m31();
+            clipCorners[corner * 3 + 2] = m.m03() * x + m.m13() * y + m.m23() * z + m.m33();
+        }
+
+        rectangle[0] = Float.POSITIVE_INFINITY;
+        rectangle[1] = Float.POSITIVE_INFINITY;
+        rectangle[2] = Float.NEGATIVE_INFINITY;
+        rectangle[3] = Float.NEGATIVE_INFINITY;
+        boolean any = false;
+        // each corner in front of the camera, and each point where an edge crosses w = NEAR_W
+        for (int corner = 0; corner < cornerCount; corner++) {
+            int current = corner * 3;
+            int next = (corner + 1) % cornerCount * 3;
+            float w = clipCorners[current + 2];
+            float nextW = clipCorners[next + 2];
+            if (w >= NEAR_W) {
+                include(clipCorners[current], clipCorners[current + 1], w);
+                any = true;
+            }
+            if ((w >= NEAR_W) != (nextW >= NEAR_W)) {
+                float t = (NEAR_W - w) / (nextW - w);
+                include(clipCorners[current] + (clipCorners[next] - clipCorners[current]) * t,
+                        clipCorners[current + 1] + (clipCorners[next + 1] - clipCorners[current + 1]) * t, NEAR_W);
+            }
+        }
+        return any;
+    }
+
+    private void include(float clipX, float clipY, float w) {
+        float x = clipX / w;
+        float y = clipY / w;
+        rectangle[0] = Math.min(rectangle[0], x);
+        rectangle[1] = Math.min(rectangle[1], y);
+        rectangle[2] = Math.max(rectangle[2], x);
+        rectangle[3] = Math.max(rectangle[3], y);
+    }
+
+    private void markVisible(int cell, float minX, float minY, float maxX, float maxY) {
+        visibleCells[cell >>> 6] |= 1L << cell;
+        cellRectangles[cell * 4] = minX;
+        cellRectangles[cell * 4 + 1] = minY;
+        cellRectangles[cell * 4 + 2] = maxX;
+        cellRectangles[cell * 4 + 3] = maxY;
+        visibleCount++;
+    }
+
+    /**
+     * Whether a cell was found visible by the last {@link #update}; true for -1, outside all cells.
+     */
+    public boolean isVisible(int cell) {
+        return cell < 0 || (visibleCells[cell >>> 6] & 1L << cell) != 0;
+    }
+
+    /**
+     * Whether an item in {@code cell} may be seen: its cell is visible, and the screen rectangle of its world
+     * bounds overlaps the part of the screen the cell was seen through.
+     */
+    public boolean isVisible(int cell, Bounds worldBounds) {
+        if (cell < 0) {
+            return true;
+        }
+        if (!isVisible(cell)) {
+            return false;
+        }
+        Vector3f min = worldBounds.getMin();
+        Vector3f max = worldBounds.getMax();
+        float minX = Float.POSITIVE_INFINITY;
+        float minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY;
+        float maxY = Float.NEGATIVE_INFINITY;
+        Matrix4f m = viewProjectionMatrix;
+        for (int corner = 0; corner < 8; corner++) {
+            float x = (corner & 1) == 0 ? min.x : max.x;
+            float y = (corner & 2) == 0 ? min.y : max.y;
+            float z = (corner & 4) == 0 ? min.z : max.z;
+            float w = m.m03() * x + m.m13() * y + m.m23() * z + m.m33();
+            if (w < NEAR_W) {
+                return true;
+            }
+            float screenX = (m.m00() * x + m.m10() * y + m.m20() * z + m.m30()) / w;
+            float screenY = (m.m01() * x + m.m11() * y + m.m21() * z + m.m31()) / w;
+            minX = Math.min(minX, screenX);
+            minY = Math.min(minY, screenY);
+            maxX = Math.max(maxX, screenX);
+            maxY = Math.max(maxY, screenY);
+        }
+        int offset = cell * 4;
+        return minX <= cellRectangles[offset + 2] && maxX >= cellRectangles[offset]
+                && minY <= cellRectangles[offset + 3] && maxY >= cellRectangles[offset + 1];
+    }
+
+    public CellGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Cell the camera was in at the last {@link #update}, or -1.
+     */
+    public int getCameraCell() {
+        return cameraCell;
+    }
+
+    public int getVisibleCellCount() {
+        return visibleCount;
+    }
+
+    /**
+     * Portals projected by the last {@link #update}.
+     */
+    public int getPortalsTested() {
+        return portalsTested;
+    }
+
+    /**
+     * Average time {@link #update} took, in nanoseconds.
+     */
+    public long getAverageNanos() {
+        return frames == 0 ? 0 : nanos / frames;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%d of %d cells visible last frame from cell %d, %d portals tested; "
+                        + "%.1f cells and %.3f ms per frame on average%s",
+                visibleCount, graph.getCellCount(), cameraCell, portalsTested,
+                frames == 0 ? 0.0 : (double) totalVisible / frames, getAverageNanos() / 1e6,
+                potentiallyVisibleSet != null ? " from a precomputed set" : "");
+    }
+}
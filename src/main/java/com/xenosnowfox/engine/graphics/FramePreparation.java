@@ -0,0 +1,181 @@
+package com.xenosnowfox.engine.graphics;
+
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+
+/**
+ * Prepares the items of a frame on a {@link ForkJoinPool}: the items are split into chunks, and every chunk updates
+ * the model matrices of its items and tests their world bounds against the view frustum. The visible items are then
+ * compacted into a list of item indices, so the GL thread only walks the result; the matrices it needs are already
+ * rebuilt in the items' own caches, where the {@link RenderQueue} reads them.
+ *
+ * <p>The output is in item order whatever the number of threads: chunk results are concatenated in chunk order, not
+ * in the order the chunks finish.
+ *
+ * <p>Each item is touched by exactly one worker and the workers have finished when {@link #prepare} returns, so the
+ * lazily cached matrices of {@link GameItem} need no locking; items must not be changed, nor appear twice, while a
+ * frame is prepared.
+ */
+public class FramePreparation {
+
+    private final ForkJoinPool pool;
+
+    private final int chunkSize;
+
+    private final Function<GameItem, Bounds> localBounds;
+
+    private final FrustumIntersection frustum = new FrustumIntersection();
+
+    private final Matrix4f viewProjectionMatrix = new Matrix4f();
+
+    private final List<Chunk> chunks = new ArrayList<>();
+
+    private final List<Chunk> activeChunks = new ArrayList<>();
+
+    private final RecursiveAction cull = new RecursiveAction() {
+        @Override
+        protected void compute() {
+            invokeAll(activeChunks);
+        }
+    };
+
+    private GameItem[] items;
+
+    /**
+     * Indices of the items each chunk found visible, at the chunk's own range of item indices.
+     */
+    private int[] candidates = new int[0];
+
+    private int[] visible = new int[0];
+
+    private int visibleCount;
+
+    private long totalVisible;
+
+    private long totalCulled;
+
+    /**
+     * Prepares items with the bounds of their mesh; items without a mesh are always visible.
+     */
+    public FramePreparation(ForkJoinPool pool, int chunkSize) {
+        this(pool, chunkSize, gameItem -> gameItem.getMesh() != null ? gameItem.getMesh().getBounds() : null);
+    }
+
+    /**
+     * @param localBounds
+     * 		bounds of an item before its transformation, or {@code null} for an item that is always visible; called
+     * 		from the pool's threads.
+     */
+    public FramePreparation(ForkJoinPool pool, int chunkSize, Function<GameItem, Bounds> localBounds) {
+        this.pool = pool;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.localBounds = localBounds;
+    }
+
+    /**
+     * Culls the first {@code count} items against the frustum of {@code projection * view} and compacts the visible
+     * ones. Runs on the calling thread alone when the items fit one chunk.
+     */
+    public void prepare(GameItem[] withItems, int count, Matrix4f projectionMatrix, Matrix4f viewMatrix) {
+        items = withItems;
+        frustum.set(projectionMatrix.mul(viewMatrix, viewProjectionMatrix));
+        if (candidates.length < count) {
+            candidates = new int[count];
+            visible = new int[count];
+        }
+
+        activeChunks.clear();
+        for (int from = 0; from < count; from += chunkSize) {
+            int index = activeChunks.size();
+            if (index == chunks.size()) {
+                chunks.add(new Chunk());
+            }
+            Chunk chunk = chunks.get(index);
+            chunk.from = from;
+            chunk.to = Math.min(count, from + chunkSize);
+            activeChunks.add(chunk);
+        }
+
+        for (Chunk chunk : activeChunks) {
+            chunk.reinitialize();
+        }
+        if (activeChunks.size() == 1) {
+            activeChunks.get(0).compute();
+        } else if (!activeChunks.isEmpty()) {
+            cull.reinitialize();
+            pool.invoke(cull);
+        }
+        visibleCount = 0;
+        for (Chunk chunk : activeChunks) {
+            System.arraycopy(candidates, chunk.from, visible, visibleCount, chunk.count);
+            visibleCount += chunk.count;
+        }
+
+        totalVisible += visibleCount;
+        totalCulled += count - visibleCount;
+        items = null;
+    }
+
+    /**
+     * Items visible in the last prepared frame.
+     */
+    public int getVisibleCount() {
+        return visibleCount;
+    }
+
+    /**
+     * Index into the prepared item array of the {@code i}-th visible item, in ascending order.
+     */
+    public int getVisibleItem(int i) {
+        return visible[i];
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    @Override
+    public String toString() {
+        long total = totalVisible + totalCulled;
+        return String.format(Locale.ROOT, "%d visible last frame; %d of %d items culled overall (%.1f%%) on %d threads",
+                visibleCount, totalCulled, total, total == 0 ? 0.0 : 100.0 * totalCulled / total, getParallelism());
+    }
+
+    /**
+     * A range of items, culled into its own range of the candidates. Keeps its own scratch bounds, so workers share
+     * nothing they write.
+     */
+    private final class Chunk extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Bounds worldBounds = new Bounds();
+
+        private int from;
+
+        private int to;
+
+        private int count;
+
+        @Override
+        protected void compute() {
+            int found = from;
+            for (int i = from; i < to; i++) {
+                GameItem gameItem = items[i];
+                Matrix4f modelMatrix = gameItem.getModelMatrix();
+                Bounds bounds = localBounds.apply(gameItem);
+                if (bounds == null || FrustumCuller.intersects(frustum, bounds.transform(modelMatrix, worldBounds))) {
+                    candidates[found++] = i;
+                }
+            }
+            count = found - from;
+        }
+    }
+}
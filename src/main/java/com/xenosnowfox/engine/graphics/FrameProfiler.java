@@ -0,0 +1,349 @@
+package com.xenosnowfox.engine.graphics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+
+import static org.lwjgl.opengl.GL11.GL_FALSE;
+import static org.lwjgl.opengl.GL15.GL_QUERY_RESULT;
+import static org.lwjgl.opengl.GL15.GL_QUERY_RESULT_AVAILABLE;
+import static org.lwjgl.opengl.GL15.glBeginQuery;
+import static org.lwjgl.opengl.GL15.glDeleteQueries;
+import static org.lwjgl.opengl.GL15.glEndQuery;
+import static org.lwjgl.opengl.GL15.glGenQueries;
+import static org.lwjgl.opengl.GL15.glGetQueryObjecti;
+import static org.lwjgl.opengl.GL33.GL_TIME_ELAPSED;
+import static org.lwjgl.opengl.GL33.glGetQueryObjectui64;
+
+/**
+ * Times the phases of every frame on the CPU and, optionally, on the GPU, into a {@link LatencyHistogram} each.
+ *
+ * <p>A frame runs from one {@link #beginFrame()} to the next; its phases are bracketed by {@link #begin(int)} and
+ * {@link #end(int)}, possibly several times, e.g. for fixed update steps, and add up. The GPU time of a phase is the
+ * {@code GL_TIME_ELAPSED} of the commands issued within it. Its queries go into a ring of {@link #FRAMES_IN_FLIGHT}
+ * frames and are read once the GPU has their results, so timing never waits for the GPU; a frame whose results are
+ * not in by the time its slot comes round again is dropped. Nothing is allocated per frame.
+ *
+ * <p>Results can be written as CSV or JSON, in milliseconds.
+ */
+public class FrameProfiler {
+
+    public static final int FRAMES_IN_FLIGHT = 4;
+
+    private final String[] phases;
+
+    private final LatencyHistogram frameTimes = new LatencyHistogram();
+
+    private final LatencyHistogram[] cpuTimes;
+
+    private final LatencyHistogram[] gpuTimes;
+
+    private final long[] phaseStarts;
+
+    private final long[] phaseNanos;
+
+    private final long[] lastCpuNanos;
+
+    private final long[] lastGpuNanos;
+
+    private long lastFrameNanos;
+
+    /**
+     * Query of each phase in each slot of the ring, or {@code null} without GPU timing.
+     */
+    private final int[][] queries;
+
+    /**
+     * Phases queried in each slot, as bits; 0 once read.
+     */
+    private final int[] queried;
+
+    private int slot;
+
+    private int openQuery = -1;
+
+    private long frameStart = -1;
+
+    private long frames;
+
+    private long gpuDropped;
+
+    /**
+     * @param phases
+     * 		names of the phases, indexed by {@link #begin(int)} and {@link #end(int)}.
+     * @param gpu
+     * 		whether to time the phases on the GPU as well; needs a GL 3.3 context on the calling thread.
+     */
+    public FrameProfiler(String[] phases, boolean gpu) {
+        this.phases = phases.clone();
+        cpuTimes = new LatencyHistogram[phases.length];
+        gpuTimes = new LatencyHistogram[phases.length];
+        for (int phase = 0; phase < phases.length; phase++) {
+            cpuTimes[phase] = new LatencyHistogram();
+            gpuTimes[phase] = new LatencyHistogram();
+        }
+        phaseStarts = new long[phases.length];
+        phaseNanos = new long[phases.length];
+        lastCpuNanos = new long[phases.length];
+        lastGpuNanos = new long[phases.length];
+        queried = new int[FRAMES_IN_FLIGHT];
+        if (gpu) {
+            queries = new int[FRAMES_IN_FLIGHT][phases.length];
+            for (int[] slotQueries : queries) {
+                glGenQueries(slotQueries);
+            }
+        } else {
+            queries = null;
+        }
+    }
+
+    /**
+     * Ends the previous frame, recording its times, and starts the next.
+     */
+    public void beginFrame() {
+        long now = System.nanoTime();
+        if (frameStart >= 0) {
+            lastFrameNanos = now - frameStart;
+            frameTimes.record(lastFrameNanos);
+            for (int phase = 0; phase < phases.length; phase++) {
+                lastCpuNanos[phase] = phaseNanos[phase];
+                cpuTimes[phase].record(phaseNanos[phase]);
+            }
+            frames++;
+        }
+        frameStart = now;
+        for (int phase = 0; phase < phases.length; phase++) {
+            phaseNanos[phase] = 0;
+        }
+
+        if (queries != null) {
+            // the oldest frame first, ending with the one just finished
+            for (int i = 1; i <= FRAMES_IN_FLIGHT; i++) {
+                collect((slot + i) % FRAMES_IN_FLIGHT);
+            }
+            slot = (slot + 1) % FRAMES_IN_FLIGHT;
+            if (queried[slot] != 0) {
+                gpuDropped++;
+                queried[slot] = 0;
+            }
+        }
+    }
+
+    /**
+     * Records the GPU times of a slot's frame once all of them are available.
+     */
+    private void collect(int withSlot) {
+        int phasesQueried = queried[withSlot];
+        if (phasesQueried == 0) {
+            return;
+        }
+        for (int phase = 0; phase < phases.length; phase++) {
+            if ((phasesQueried & 1 << phase) != 0
+                    && glGetQueryObjecti(queries[withSlot][phase], GL_QUERY_RESULT_AVAILABLE) == GL_FALSE) {
+                return;
+            }
+        }
+        for (int phase = 0; phase < phases.length; phase++) {
+            if ((phasesQueried & 1 << phase) != 0) {
+                lastGpuNanos[phase] = glGetQueryObjectui64(queries[withSlot][phase], GL_QUERY_RESULT);
+                gpuTimes[phase].record(lastGpuNanos[phase]);
+            }
+        }
+        queried[withSlot] = 0;
+    }
+
+    /**
+     * Starts timing a phase; phases do not nest. On the GPU, only the first run of a phase in a frame is timed.
+     */
+    public void begin(int phase) {
+        if (queries != null && openQuery < 0 && (queried[slot] & 1 << phase) == 0) {
+            glBeginQuery(GL_TIME_ELAPSED, queries[slot][phase]);
+            openQuery = phase;
+        }
+        phaseStarts[phase] = System.nanoTime();
+    }
+
+    public void end(int phase) {
+        phaseNanos[phase] += System.nanoTime() - phaseStarts[phase];
+        if (openQuery == phase) {
+            glEndQuery(GL_TIME_ELAPSED);
+            queried[slot] |= 1 << phase;
+            openQuery = -1;
+        }
+    }
+
+    public int getPhaseCount() {
+        return phases.length;
+    }
+
+    public String getPhaseName(int phase) {
+        return phases[phase];
+    }
+
+    public boolean isGpuTimed() {
+        return queries != null;
+    }
+
+    /**
+     * Time from one {@link #beginFrame()} to the next.
+     */
+    public LatencyHistogram getFrameTimes() {
+        return frameTimes;
+    }
+
+    public LatencyHistogram getCpuTimes(int phase) {
+        return cpuTimes[phase];
+    }
+
+    public LatencyHistogram getGpuTimes(int phase) {
+        return gpuTimes[phase];
+    }
+
+    /**
+     * Duration of the last frame recorded.
+     */
+    public long getLastFrameNanos() {
+        return lastFrameNanos;
+    }
+
+    public long getLastCpuNanos(int phase) {
+        return lastCpuNanos[phase];
+    }
+
+    /**
+     * GPU time of a phase in the latest frame whose results are in, usually a few frames back.
+     */
+    public long getLastGpuNanos(int phase) {
+        return lastGpuNanos[phase];
+    }
+
+    /**
+     * Frames recorded so far.
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * Frames whose GPU times were still pending when their queries were needed again.
+     */
+    public long getGpuDropped() {
+        return gpuDropped;
+    }
+
+    /**
+     * Forgets all times recorded so far, e.g. after loading.
+     */
+    public void reset() {
+        frameTimes.reset();
+        for (int phase = 0; phase < phases.length; phase++) {
+            cpuTimes[phase].reset();
+            gpuTimes[phase].reset();
+        }
+        frames = 0;
+        gpuDropped = 0;
+    }
+
+    /**
+     * A row per histogram: {@code phase,clock,count,mean_ms,p50_ms,p95_ms,p99_ms,max_ms}; the frame row has clock
+     * {@code wall}.
+     */
+    public String toCsv() {
+        StringBuilder csv = new StringBuilder("phase,clock,count,mean_ms,p50_ms,p95_ms,p99_ms,max_ms\n");
+        appendCsv(csv, "frame", "wall", frameTimes);
+        for (int phase = 0; phase < phases.length; phase++) {
+            appendCsv(csv, phases[phase], "cpu", cpuTimes[phase]);
+            if (queries != null) {
+                appendCsv(csv, phases[phase], "gpu", gpuTimes[phase]);
+            }
+        }
+        return csv.toString();
+    }
+
+    private static void appendCsv(StringBuilder csv, String phase, String clock, LatencyHistogram histogram) {
+        csv.append(String.format(Locale.ROOT, "%s,%s,%d,%.4f,%.4f,%.4f,%.4f,%.4f%n", phase, clock,
+                histogram.getCount(), histogram.getMean() / 1e6, histogram.getPercentile(0.5) / 1e6,
+                histogram.getPercentile(0.95) / 1e6, histogram.getPercentile(0.99) / 1e6, histogram.getMax() / 1e6));
+    }
+
+    /**
+     * The frame times and the cpu and, when timed, gpu times of each phase, as objects of count, mean, p50, p95, p99
+     * and max in milliseconds.
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\n");
+        json.append(String.format(Locale.ROOT, "  \"frames\": %d,%n  \"gpuDropped\": %d,%n  \"frame\": ", frames,
+                gpuDropped));
+        appendJson(json, frameTimes);
+        json.append(",\n  \"phases\": [");
+        for (int phase = 0; phase < phases.length; phase++) {
+            json.append(phase == 0 ? "\n" : ",\n").append("    {\"name\": \"");
+            // names are plain identifiers; escape the two characters that would break the string anyway
+            json.append(phases[phase].replace("\\", "\\\\").replace("\"", "\\\"")).append("\", \"cpu\": ");
+            appendJson(json, cpuTimes[phase]);
+            if (queries != null) {
+                json.append(", \"gpu\": ");
+                appendJson(json, gpuTimes[phase]);
+            }
+            json.append('}');
+        }
+        return json.append("\n  ]\n}\n").toString();
+    }
+
+    private static void appendJson(StringBuilder json, LatencyHistogram histogram) {
+        json.append(String.format(Locale.ROOT,
+                "{\"count\": %d, \"mean\": %.4f, \"p50\": %.4f, \"p95\": %.4f, \"p99\": %.4f, \"max\": %.4f}",
+                histogram.getCount(), histogram.getMean() / 1e6, histogram.getPercentile(0.5) / 1e6,
+                histogram.getPercentile(0.95) / 1e6, histogram.getPercentile(0.99) / 1e6, histogram.getMax() / 1e6));
+    }
+
+    /**
+     * Writes {@link #toCsv()} and {@link #toJson()} next to each other, as {@code <prefix>.csv} and
+     * {@code <prefix>.json}; each file is replaced atomically.
+     *
+     * @return the CSV file.
+     */
+    public Path export(Path directory, String prefix) throws IOException {
+        Files.createDirectories(directory);
+        Path csv = directory.resolve(prefix + ".csv");
+        write(csv, toCsv());
+        write(directory.resolve(prefix + ".json"), toJson());
+        return csv;
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Path temporary = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temporary, content.getBytes(StandardCharsets.UTF_8));
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    public void cleanUp() {
+        if (queries != null) {
+            for (int[] slotQueries : queries) {
+                glDeleteQueries(slotQueries);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(String.format(Locale.ROOT, "%d frames: %s", frames, frameTimes));
+        for (int phase = 0; phase < phases.length; phase++) {
+            text.append("; ").append(phases[phase]).append(" cpu ").append(cpuTimes[phase]);
+            if (queries != null) {
+                text.append(", gpu ").append(gpuTimes[phase]);
+            }
+        }
+        if (queries != null) {
+            text.append("; ").append(gpuDropped).append(" frames without gpu times");
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,135 @@
+package com.xenosnowfox.engine.graphics;
+
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.util.Locale;
+
+/**
+ * Tests world space {@link Bounds} against the view frustum on the CPU, so items outside it never reach the draw
+ * queues. The bounding sphere rejects most items with a single test; only those it cannot decide are tested with
+ * their box.
+ */
+public class FrustumCuller {
+
+    private final FrustumIntersection frustum = new FrustumIntersection();
+
+    private final Matrix4f viewProjectionMatrix = new Matrix4f();
+
+    private final Transformation transformation = new Transformation();
+
+    private final Bounds worldBounds = new Bounds();
+
+    private final BoundingVolumeHierarchy.Visitor countingVisitor = this::countVisible;
+
+    private BoundingVolumeHierarchy.Visitor visibleVisitor;
+
+    private int visible;
+
+    private int culled;
+
+    private long totalVisible;
+
+    private long totalCulled;
+
+    /**
+     * Starts a frame: extracts the frustum planes of {@code projection * view} and resets the frame counts.
+     */
+    public void update(Matrix4f projectionMatrix, Matrix4f viewMatrix) {
+        frustum.set(projectionMatrix.mul(viewMatrix, viewProjectionMatrix));
+        visible = 0;
+        culled = 0;
+    }
+
+    /**
+     * Counts an item as visible or culled; items without a mesh are visible.
+     */
+    public boolean isVisible(GameItem gameItem) {
+        if (gameItem.getMesh() == null) {
+            return count(true);
+        }
+        return isVisible(gameItem.getWorldBounds(transformation, worldBounds));
+    }
+
+    /**
+     * Counts world space bounds as visible or culled.
+     */
+    public boolean isVisible(Bounds bounds) {
+        return count(intersects(frustum, bounds));
+    }
+
+    /**
+     * Whether bounds are at least partly inside a frustum: the sphere decides most cases, the box the rest. Only
+     * reads the frustum, so several threads may test against the same one.
+     */
+    static boolean intersects(FrustumIntersection frustum, Bounds bounds) {
+        Vector3f center = bounds.getCenter();
+        int sphere = frustum.intersectSphere(center.x, center.y, center.z, bounds.getRadius());
+        if (sphere != FrustumIntersection.INTERSECT) {
+            return sphere == FrustumIntersection.INSIDE;
+        }
+        Vector3f min = bounds.getMin();
+        Vector3f max = bounds.getMax();
+        return frustum.testAab(min.x, min.y, min.z, max.x, max.y, max.z);
+    }
+
+    /**
+     * Reports the objects of a hierarchy whose bounds are not outside the frustum, skipping whole subtrees at once,
+     * and counts the others as culled.
+     */
+    public void cull(BoundingVolumeHierarchy hierarchy, BoundingVolumeHierarchy.Visitor visitor) {
+        int visibleBefore = visible;
+        visibleVisitor = visitor;
+        hierarchy.queryFrustum(frustum, countingVisitor);
+        visibleVisitor = null;
+        int skipped = hierarchy.getObjectCount() - (visible - visibleBefore);
+        culled += skipped;
+        totalCulled += skipped;
+    }
+
+    private boolean countVisible(int proxy, int userData) {
+        count(true);
+        return visibleVisitor.visit(proxy, userData);
+    }
+
+    private boolean count(boolean isVisible) {
+        if (isVisible) {
+            visible++;
+            totalVisible++;
+        } else {
+            culled++;
+            totalCulled++;
+        }
+        return isVisible;
+    }
+
+    /**
+     * Items found visible since the last {@link #update(Matrix4f, Matrix4f)}.
+     */
+    public int getVisibleCount() {
+        return visible;
+    }
+
+    /**
+     * Items culled since the last {@link #update(Matrix4f, Matrix4f)}.
+     */
+    public int getCulledCount() {
+        return culled;
+    }
+
+    public long getTotalVisibleCount() {
+        return totalVisible;
+    }
+
+    public long getTotalCulledCount() {
+        return totalCulled;
+    }
+
+    @Override
+    public String toString() {
+        long total = totalVisible + totalCulled;
+        return String.format(Locale.ROOT, "%d visible, %d culled last frame; %d of %d tests culled overall (%.1f%%)",
+                visible, culled, totalCulled, total, total == 0 ? 0.0 : 100.0 * totalCulled / total);
+    }
+}
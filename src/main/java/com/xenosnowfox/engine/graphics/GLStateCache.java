@@ -0,0 +1,143 @@
+package com.xenosnowfox.engine.graphics;
+
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_2D;
+import static org.lwjgl.opengl.GL11.glBindTexture;
+import static org.lwjgl.opengl.GL13.GL_TEXTURE0;
+import static org.lwjgl.opengl.GL13.glActiveTexture;
+import static org.lwjgl.opengl.GL30.glBindVertexArray;
+
+/**
+ * Remembers the GL bindings made through it and drops calls that would not change them.
+ *
+ * <p>Only calls routed through the cache are seen, so it has to be {@link #invalidate() invalidated} whenever other
+ * code may have touched the same state, e.g. at the start of every frame.
+ */
+public class GLStateCache {
+
+    private int vaoId = -1;
+
+    private Texture texture;
+
+    private int textureId = -1;
+
+    private int shader = -1;
+
+    private Mesh mesh;
+
+    private Material material;
+
+    private int bindsIssued;
+
+    private int bindsSkipped;
+
+    /**
+     * Forgets all remembered state, so the next call of each kind is issued.
+     */
+    public void invalidate() {
+        vaoId = -1;
+        texture = null;
+        textureId = -1;
+        shader = -1;
+        mesh = null;
+        material = null;
+    }
+
+    public void resetCounters() {
+        bindsIssued = 0;
+        bindsSkipped = 0;
+    }
+
+    public void bindVertexArray(int withVaoId) {
+        if (vaoId == withVaoId) {
+            bindsSkipped++;
+            return;
+        }
+        glBindVertexArray(withVaoId);
+        vaoId = withVaoId;
+        bindsIssued++;
+    }
+
+    /**
+     * Binds a texture to unit 0; {@code null} leaves the current binding alone since untextured materials do not
+     * sample it. Compares the GL name too, as an evicted {@link TextureCache} texture comes back under a new one.
+     */
+    public void bindTexture(Texture withTexture) {
+        if (withTexture == null || (withTexture == texture && withTexture.getId() == textureId)) {
+            bindsSkipped++;
+            return;
+        }
+        glActiveTexture(GL_TEXTURE0);
+        withTexture.bind();
+        texture = withTexture;
+        textureId = withTexture.getId();
+        bindsIssued++;
+    }
+
+    /**
+     * Runs a shader binder unless the same shader is already bound. Switching shaders forgets the uploaded mesh and
+     * material uniforms, since they belong to the previous program.
+     */
+    public void bindShader(int withShader, IntConsumer binder) {
+        if (shader == withShader) {
+            bindsSkipped++;
+            return;
+        }
+        if (binder != null) {
+            binder.accept(withShader);
+        }
+        shader = withShader;
+        mesh = null;
+        material = null;
+        bindsIssued++;
+    }
+
+    /**
+     * Runs a per-mesh uniform binder unless the uniforms of the same mesh are already uploaded.
+     */
+    public void bindMesh(Mesh withMesh, Consumer<Mesh> binder) {
+        if (mesh == withMesh) {
+            bindsSkipped++;
+            return;
+        }
+        if (binder != null) {
+            binder.accept(withMesh);
+        }
+        mesh = withMesh;
+        bindsIssued++;
+    }
+
+    /**
+     * Runs a material uniform binder unless the uniforms of the same material are already uploaded.
+     */
+    public void bindMaterial(Material withMaterial, Consumer<Material> binder) {
+        if (material == withMaterial) {
+            bindsSkipped++;
+            return;
+        }
+        if (binder != null) {
+            binder.accept(withMaterial);
+        }
+        material = withMaterial;
+        bindsIssued++;
+    }
+
+    /**
+     * Unbinds the VAO and texture, leaving GL as code that does not use the cache expects it.
+     */
+    public void restore() {
+        glBindVertexArray(0);
+        glBindTexture(GL_TEXTURE_2D, 0);
+        invalidate();
+    }
+
+    public int getBindsIssued() {
+        return bindsIssued;
+    }
+
+    public int getBindsSkipped() {
+        return bindsSkipped;
+    }
+}
@@ -1,11 +1,17 @@
 package com.xenosnowfox.engine.graphics;
 
 import com.xenosnowfox.engine.components.Transformation3f;
+import org.joml.Matrix4f;
 import org.joml.Vector3f;
 
+/**
+ * A placed mesh. The model matrix is cached and only rebuilt after a setter or {@code move*} call; code that changes
+ * the vectors returned by {@link #getPosition()}, {@link #getRotation()} or {@link #getScale()} in place has to
+ * call {@link #markDirty()}. The cache is not synchronised; {@link FramePreparation} shows how workers may share it.
+ */
 public class GameItem implements Transformation3f {
 
-    private final Mesh mesh;
+    private Mesh mesh;
     
     private final Vector3f position;
     
@@ -13,6 +19,14 @@ public class GameItem implements Transformation3f {
 
     private final Vector3f rotation;
 
+    private final Matrix4f modelMatrix = new Matrix4f();
+
+    private boolean dirty = true;
+
+    private LodGroup lodGroup;
+
+    private int lodLevel;
+
     public GameItem(Mesh mesh) {
         this.mesh = mesh;
         position = new Vector3f();
@@ -28,6 +42,7 @@ public class GameItem implements Transformation3f {
         this.position.x = x;
         this.position.y = y;
         this.position.z = z;
+        dirty = true;
     }
 
     public Vector3f getScale() {
@@ -42,17 +57,83 @@ public class GameItem implements Transformation3f {
         this.rotation.x = x;
         this.rotation.y = y;
         this.rotation.z = z;
+        dirty = true;
     }
     
     public Mesh getMesh() {
         return mesh;
     }
 
+    /**
+     * World space bounds of the mesh as currently placed.
+     *
+     * @return {@code target}, untouched when the item has no mesh.
+     */
+    public Bounds getWorldBounds(Transformation transformation, Bounds target) {
+        if (mesh == null) {
+            return target;
+        }
+        return mesh.getBounds().transform(transformation.getModelMatrix(this), target);
+    }
+
+    /**
+     * Swaps the drawn mesh, e.g. to replace a placeholder once the real asset has been uploaded. Leaves the item's
+     * level of detail group.
+     */
+    public void setMesh(Mesh mesh) {
+        this.mesh = mesh;
+        this.lodGroup = null;
+        this.lodLevel = 0;
+    }
+
+    public LodGroup getLodGroup() {
+        return lodGroup;
+    }
+
+    /**
+     * Draws the levels of a group from now on, starting at full detail; see {@link LodSelector}.
+     */
+    public void setLodGroup(LodGroup lodGroup) {
+        this.mesh = lodGroup.getMesh(0);
+        this.lodGroup = lodGroup;
+        this.lodLevel = 0;
+    }
+
+    public int getLodLevel() {
+        return lodLevel;
+    }
+
+    /**
+     * Draws the given level of the item's group.
+     */
+    public void setLodLevel(int lodLevel) {
+        this.mesh = lodGroup.getMesh(lodLevel);
+        this.lodLevel = lodLevel;
+    }
+
+    @Override
+    public Matrix4f getModelMatrix() {
+        if (dirty) {
+            Transformation.buildModelMatrix(position, rotation, scale, modelMatrix);
+            dirty = false;
+        }
+        return modelMatrix;
+    }
+
+    /**
+     * Makes the next {@link #getModelMatrix()} rebuild the matrix, after the position, rotation or scale vector was
+     * changed in place.
+     */
+    public void markDirty() {
+        dirty = true;
+    }
+
     @Override
     public void setPosition(final Vector3f withVector) {
         this.position.x = withVector.x;
         this.position.y = withVector.y;
         this.position.z = withVector.z;
+        dirty = true;
     }
 
     @Override
@@ -66,6 +147,7 @@ public class GameItem implements Transformation3f {
             position.y += (float)Math.cos(Math.toRadians(rotation.z - 90)) * offsetX;
         }
         position.z += offsetZ;
+        dirty = true;
     }
 
     @Override
@@ -73,6 +155,7 @@ public class GameItem implements Transformation3f {
         rotation.x += offsetX;
         rotation.y += offsetY;
         rotation.z += offsetZ;
+        dirty = true;
     }
 
     @Override
@@ -80,6 +163,7 @@ public class GameItem implements Transformation3f {
         scale.x = x;
         scale.y = y;
         scale.z = z;
+        dirty = true;
     }
 
     @Override
@@ -87,5 +171,6 @@ public class GameItem implements Transformation3f {
         scale.x += offsetX;
         scale.y += offsetY;
         scale.z += offsetZ;
+        dirty = true;
     }
 }
\ No newline at end of file
@@ -0,0 +1,93 @@
+package com.xenosnowfox.engine.graphics;
+
+import java.util.Arrays;
+
+/**
+ * Append-only primitive {@code float} array that grows on demand, used by the loaders instead of boxed lists.
+ */
+public class GrowableFloatArray {
+
+    private float[] data;
+
+    private int size;
+
+    public GrowableFloatArray() {
+        this(1024);
+    }
+
+    public GrowableFloatArray(int initialCapacity) {
+        data = new float[Math.max(initialCapacity, 16)];
+    }
+
+    /**
+     * Wraps an existing array without copying it.
+     */
+    public GrowableFloatArray(float[] data, int size) {
+        this.data = data;
+        this.size = size;
+    }
+
+    public void add(float value) {
+        if (size == data.length) {
+            grow(size + 1);
+        }
+        data[size++] = value;
+    }
+
+    public void add(float x, float y) {
+        if (size + 2 > data.length) {
+            grow(size + 2);
+        }
+        data[size++] = x;
+        data[size++] = y;
+    }
+
+    public void add(float x, float y, float z) {
+        if (size + 3 > data.length) {
+            grow(size + 3);
+        }
+        data[size++] = x;
+        data[size++] = y;
+        data[size++] = z;
+    }
+
+    public void addAll(float[] values, int offset, int length) {
+        if (size + length > data.length) {
+            grow(size + length);
+        }
+        System.arraycopy(values, offset, data, size, length);
+        size += length;
+    }
+
+    public float get(int index) {
+        return data[index];
+    }
+
+    public void set(int index, float value) {
+        data[index] = value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Returns the backing array; only the first {@link #size()} elements are valid.
+     */
+    public float[] array() {
+        return data;
+    }
+
+    public float[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    private void grow(int minCapacity) {
+        int newCapacity = Math.max(minCapacity, data.length + (data.length >> 1));
+        data = Arrays.copyOf(data, newCapacity);
+    }
+}
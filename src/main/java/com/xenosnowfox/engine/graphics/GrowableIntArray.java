@@ -0,0 +1,93 @@
+package com.xenosnowfox.engine.graphics;
+
+import java.util.Arrays;
+
+/**
+ * Append-only primitive {@code int} array that grows on demand, used by the loaders instead of boxed lists.
+ */
+public class GrowableIntArray {
+
+    private int[] data;
+
+    private int size;
+
+    public GrowableIntArray() {
+        this(1024);
+    }
+
+    public GrowableIntArray(int initialCapacity) {
+        data = new int[Math.max(initialCapacity, 16)];
+    }
+
+    /**
+     * Wraps an existing array without copying it.
+     */
+    public GrowableIntArray(int[] data, int size) {
+        this.data = data;
+        this.size = size;
+    }
+
+    public void add(int value) {
+        if (size == data.length) {
+            grow(size + 1);
+        }
+        data[size++] = value;
+    }
+
+    public void add(int x, int y) {
+        if (size + 2 > data.length) {
+            grow(size + 2);
+        }
+        data[size++] = x;
+        data[size++] = y;
+    }
+
+    public void add(int x, int y, int z) {
+        if (size + 3 > data.length) {
+            grow(size + 3);
+        }
+        data[size++] = x;
+        data[size++] = y;
+        data[size++] = z;
+    }
+
+    public void addAll(int[] values, int offset, int length) {
+        if (size + length > data.length) {
+            grow(size + length);
+        }
+        System.arraycopy(values, offset, data, size, length);
+        size += length;
+    }
+
+    public int get(int index) {
+        return data[index];
+    }
+
+    public void set(int index, int value) {
+        data[index] = value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Returns the backing array; only the first {@link #size()} elements are valid.
+     */
+    public int[] array() {
+        return data;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    private void grow(int minCapacity) {
+        int newCapacity = Math.max(minCapacity, data.length + (data.length >> 1));
+        data = Arrays.copyOf(data, newCapacity);
+    }
+}
@@ -0,0 +1,93 @@
+package com.xenosnowfox.engine.graphics;
+
+import org.joml.Matrix4f;
+
+import static org.lwjgl.opengl.GL15.GL_ARRAY_BUFFER;
+
+/**
+ * Per-frame buffer of instance model matrices, read by the vertex shader as the {@code mat4} attribute at
+ * {@link #MODEL_MATRIX_LOCATION}. Meshes are pointed at it once with {@link #attach(Mesh)}; each draw selects its
+ * matrices with a base instance.
+ *
+ * <p>The matrices live in a persistently mapped {@link BufferRing}, so a frame writes its matrices straight into
+ * GPU visible memory and never waits for draws of the previous frames.
+ */
+public class InstanceBuffer {
+
+    /**
+     * First attribute location of the per-instance model matrix; a {@code mat4} takes four.
+     */
+    public static final int MODEL_MATRIX_LOCATION = 3;
+
+    private static final int MATRIX_BYTES = 16 * Float.BYTES;
+
+    private final BufferRing ring = new BufferRing(GL_ARRAY_BUFFER, 256 * MATRIX_BYTES, MATRIX_BYTES);
+
+    private int offset;
+
+    private int capacity;
+
+    private int count;
+
+    /**
+     * Starts filling the buffer for a new frame.
+     *
+     * @param maxInstances
+     * 		upper bound of the matrices the frame adds.
+     */
+    public void begin(int maxInstances) {
+        ring.beginFrame();
+        capacity = Math.max(1, maxInstances);
+        ring.ensureCapacity(capacity * MATRIX_BYTES);
+        offset = ring.allocate(capacity * MATRIX_BYTES);
+        count = 0;
+    }
+
+    /**
+     * Appends a model matrix.
+     *
+     * @return its instance number, to be used as the base instance of a draw.
+     */
+    public int add(Matrix4f modelMatrix) {
+        if (count == capacity) {
+            throw new IllegalStateException("More than " + capacity + " instances added this frame");
+        }
+        int byteOffset = offset + count * MATRIX_BYTES;
+        modelMatrix.get(byteOffset, ring.getBuffer());
+        count++;
+        return byteOffset / MATRIX_BYTES;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Fences this frame's matrices; call after the draws using them.
+     */
+    public void end() {
+        ring.endFrame();
+    }
+
+    /**
+     * Buffer the matrices are in; replaced when a frame needs more room than it has.
+     */
+    public int getBufferId() {
+        return ring.getBufferId();
+    }
+
+    public void attach(Mesh mesh) {
+        mesh.attachInstanceBuffer(ring.getBufferId(), MODEL_MATRIX_LOCATION, 4);
+    }
+
+    /**
+     * Times a frame had to wait for the GPU to release its region.
+     */
+    public int getStalls() {
+        return ring.getStalls();
+    }
+
+    public void cleanUp() {
+        ring.cleanUp();
+    }
+}
@@ -0,0 +1,126 @@
+package com.xenosnowfox.engine.graphics;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts durations in nanoseconds in log-linear buckets, for percentiles of frame and phase times.
+ *
+ * <p>Durations below 64 ns have a bucket each; above, every power of two is split into 32 buckets, so a percentile
+ * is off by at most 1/32 of its value. Durations beyond {@link #MAX_NANOS} count as that. Recording takes a few
+ * atomic increments into preallocated counters: it allocates nothing and never locks, so any thread may record while
+ * another reads percentiles, which then may lag a record or two.
+ */
+public class LatencyHistogram {
+
+    /**
+     * Largest duration told apart, about 18 minutes.
+     */
+    public static final long MAX_NANOS = (1L << 40) - 1;
+
+    private static final int SUB_BUCKET_BITS = 5;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Durations below this have a bucket each.
+     */
+    private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+
+    private final AtomicLongArray counts = new AtomicLongArray(bucketOf(MAX_NANOS) + 1);
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong sum = new AtomicLong();
+
+    private final AtomicLong max = new AtomicLong();
+
+    private static int bucketOf(long nanos) {
+        if (nanos < LINEAR_LIMIT) {
+            return (int) nanos;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(nanos);
+        // the leading one and the next SUB_BUCKET_BITS bits, from SUB_BUCKETS to 2 * SUB_BUCKETS - 1
+        int top = (int) (nanos >>> (magnitude - SUB_BUCKET_BITS));
+        return (magnitude - SUB_BUCKET_BITS) * SUB_BUCKETS + top;
+    }
+
+    /**
+     * Largest duration counted in a bucket.
+     */
+    private static long upperBoundOf(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        int magnitude = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long top = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((top + 1) << (magnitude - SUB_BUCKET_BITS)) - 1;
+    }
+
+    public void record(long nanos) {
+        long clamped = Math.max(0, Math.min(MAX_NANOS, nanos));
+        counts.incrementAndGet(bucketOf(clamped));
+        count.incrementAndGet();
+        sum.addAndGet(clamped);
+        long previous = max.get();
+        while (clamped > previous && !max.compareAndSet(previous, clamped)) {
+            previous = max.get();
+        }
+    }
+
+    /**
+     * Duration that the given fraction of the recorded durations do not exceed, as the upper bound of its bucket
+     * but never above {@link #getMax()}; 0 when nothing was recorded.
+     *
+     * @param fraction
+     * 		from 0 to 1, e.g. 0.99 for the 99th percentile.
+     */
+    public long getPercentile(double fraction) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int bucket = 0; bucket < counts.length(); bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(bucket), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long total = count.get();
+        return total == 0 ? 0 : (double) sum.get() / total;
+    }
+
+    /**
+     * Forgets all durations; records made meanwhile may be partly kept.
+     */
+    public void reset() {
+        for (int bucket = 0; bucket < counts.length(); bucket++) {
+            counts.set(bucket, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "p50 %.2f ms, p95 %.2f ms, p99 %.2f ms, max %.2f ms of %d",
+                getPercentile(0.5) / 1e6, getPercentile(0.95) / 1e6, getPercentile(0.99) / 1e6, getMax() / 1e6,
+                getCount());
+    }
+}
@@ -0,0 +1,130 @@
+package com.xenosnowfox.engine.graphics;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL11.glGetInteger;
+import static org.lwjgl.opengl.GL30.glBindBufferRange;
+import static org.lwjgl.opengl.GL43.GL_SHADER_STORAGE_BUFFER;
+import static org.lwjgl.opengl.GL43.GL_SHADER_STORAGE_BUFFER_OFFSET_ALIGNMENT;
+
+/**
+ * Writes the lights and clusters of {@link LightClusters} into std430 shader storage blocks in a persistently mapped
+ * {@link BufferRing}, and binds each block by offset.
+ *
+ * <p>The blocks and their binding points, matching {@code fragment.fs}:
+ * <ul>
+ * <li>{@link #LIGHTS_BINDING} {@code LightBlock}: view space position and intensity, colour and range, and
+ * attenuation of every light, 48 bytes each;</li>
+ * <li>{@link #CLUSTERS_BINDING} {@code ClusterBlock}: tiles, slices and light count, the slice scale, bias and the
+ * depth where the first slice ends, then the offset and count of each cluster's lights in the index block;</li>
+ * <li>{@link #LIGHT_INDICES_BINDING} {@code LightIndexBlock}: the light indices of all clusters, one after the
+ * other.</li>
+ * </ul>
+ */
+public class LightBuffers {
+
+    public static final int LIGHTS_BINDING = 0;
+
+    public static final int CLUSTERS_BINDING = 1;
+
+    public static final int LIGHT_INDICES_BINDING = 2;
+
+    private static final int LIGHT_BYTES = 48;
+
+    private static final int CLUSTER_HEADER_BYTES = 32;
+
+    private static final int CLUSTER_BYTES = 8;
+
+    private final BufferRing ring;
+
+    private final int alignment;
+
+    /**
+     * @param frameBytes
+     * 		initial bytes of light data per frame; grown by {@link #write(LightClusters, PointLight[])} when needed.
+     */
+    public LightBuffers(int frameBytes) {
+        alignment = glGetInteger(GL_SHADER_STORAGE_BUFFER_OFFSET_ALIGNMENT);
+        ring = new BufferRing(GL_SHADER_STORAGE_BUFFER, frameBytes, alignment);
+    }
+
+    /**
+     * Starts a frame, writes the lights and clusters of the last {@link LightClusters#update} and binds them;
+     * {@code lights} are the ones the clusters were updated with.
+     */
+    public void write(LightClusters clusters, PointLight[] lights) {
+        int lightCount = clusters.getLightCount();
+        int clusterCount = clusters.getClusterCount();
+        int lightBytes = Math.max(1, lightCount) * LIGHT_BYTES;
+        int clusterBytes = CLUSTER_HEADER_BYTES + clusterCount * CLUSTER_BYTES;
+        int indexBytes = Math.max(1, clusters.getAssignmentCount()) * Integer.BYTES;
+        ring.beginFrame();
+        ring.ensureCapacity(lightBytes + clusterBytes + indexBytes + alignment * 3);
+        ByteBuffer buffer = ring.getBuffer();
+
+        int lightOffset = ring.allocate(lightBytes);
+        float[] viewLights = clusters.getViewLights();
+        for (int light = 0; light < lightCount; light++) {
+            PointLight pointLight = lights[light];
+            int offset = lightOffset + light * LIGHT_BYTES;
+            buffer.putFloat(offset, viewLights[light * 4]);
+            buffer.putFloat(offset + 4, viewLights[light * 4 + 1]);
+            buffer.putFloat(offset + 8, viewLights[light * 4 + 2]);
+            buffer.putFloat(offset + 12, pointLight.getIntensity());
+            pointLight.getColor().get(offset + 16, buffer);
+            buffer.putFloat(offset + 28, viewLights[light * 4 + 3]);
+            PointLight.Attenuation attenuation = pointLight.getAttenuation();
+            buffer.putFloat(offset + 32, attenuation.getConstant());
+            buffer.putFloat(offset + 36, attenuation.getLinear());
+            buffer.putFloat(offset + 40, attenuation.getExponent());
+        }
+
+        int clusterOffset = ring.allocate(clusterBytes);
+        int indexOffset = ring.allocate(indexBytes);
+        buffer.putInt(clusterOffset, clusters.getTilesX());
+        buffer.putInt(clusterOffset + 4, clusters.getTilesY());
+        buffer.putInt(clusterOffset + 8, clusters.getSlices());
+        buffer.putInt(clusterOffset + 12, lightCount);
+        buffer.putFloat(clusterOffset + 16, clusters.getSliceScale());
+        buffer.putFloat(clusterOffset + 20, clusters.getSliceBias());
+        buffer.putFloat(clusterOffset + 24, clusters.getNearSlice());
+        int written = 0;
+        for (int cluster = 0; cluster < clusterCount; cluster++) {
+            int count = clusters.getClusterLightCount(cluster);
+            buffer.putInt(clusterOffset + CLUSTER_HEADER_BYTES + cluster * CLUSTER_BYTES, written);
+            buffer.putInt(clusterOffset + CLUSTER_HEADER_BYTES + cluster * CLUSTER_BYTES + 4, count);
+            for (int i = 0; i < count; i++) {
+                buffer.putInt(indexOffset + (written + i) * Integer.BYTES, clusters.getClusterLight(cluster, i));
+            }
+            written += count;
+        }
+
+        glBindBufferRange(GL_SHADER_STORAGE_BUFFER, LIGHTS_BINDING, ring.getBufferId(), lightOffset, lightBytes);
+        glBindBufferRange(GL_SHADER_STORAGE_BUFFER, CLUSTERS_BINDING, ring.getBufferId(), clusterOffset, clusterBytes);
+        glBindBufferRange(GL_SHADER_STORAGE_BUFFER, LIGHT_INDICES_BINDING, ring.getBufferId(), indexOffset, indexBytes);
+    }
+
+    /**
+     * Fences this frame's blocks; call after the draws reading them.
+     */
+    public void endFrame() {
+        ring.endFrame();
+    }
+
+    /**
+     * Times a frame had to wait for the GPU to release its region.
+     */
+    public int getStalls() {
+        return ring.getStalls();
+    }
+
+    public void cleanUp() {
+        ring.cleanUp();
+    }
+
+    @Override
+    public String toString() {
+        return ring.getUsedBytes() + " of " + ring.getFrameBytes() + " bytes used last frame, " + getStalls()
+                + " stalls";
+    }
+}
@@ -0,0 +1,484 @@
+package com.xenosnowfox.engine.graphics;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Assigns point lights to the clusters of the view frustum, so a fragment only shades the lights of its own cluster.
+ * The frustum is split into a grid of tiles on screen and into slices in depth: the first slice reaches from the near
+ * plane to a given depth, and the others are spaced exponentially from there up to the farthest lit depth, so
+ * clusters stay roughly cube shaped. Lights only reaching beyond that depth are not assigned, and fragments beyond it
+ * use the last slice.
+ *
+ * <p>A light reaches as far as {@link PointLight#getRange(float)} at {@link #CUTOFF}. Each frame, the lights are
+ * moved into view space and bounded by a range of tiles and slices in parallel chunks, then every slice, again in
+ * parallel, tests the lights in range against the view space box of each of its clusters. Each slice writes only its
+ * own clusters, and visits the lights in order, so the lists are the same whatever the number of threads.
+ *
+ * <p>Both the lights and the lights per cluster are capped, so a frame costs at most the lights times the clusters
+ * each covers; what does not fit is dropped and counted. The projection must be a perspective one.
+ */
+public class LightClusters {
+
+    /**
+     * Contribution below which a light is treated as not reaching a point.
+     */
+    public static final float CUTOFF = 1f / 256f;
+
+    private static final int LIGHTS_PER_CHUNK = 256;
+
+    private final ForkJoinPool pool;
+
+    private final int tilesX;
+
+    private final int tilesY;
+
+    private final int slices;
+
+    private final int maxLights;
+
+    private final int maxLightsPerCluster;
+
+    private final float nearSlice;
+
+    private final float farSlice;
+
+    /**
+     * View space x, y, z and range of each light.
+     */
+    private final float[] viewLights;
+
+    /**
+     * First and last tile in x, in y, and first and last slice of each light; empty when the first is past the last.
+     */
+    private final int[] lightBounds;
+
+    private final int[] clusterCounts;
+
+    /**
+     * Up to {@link #maxLightsPerCluster} light indices for each cluster.
+     */
+    private final int[] clusterLights;
+
+    private final List<LightChunk> lightChunks = new ArrayList<>();
+
+    private final List<Slice> sliceTasks = new ArrayList<>();
+
+    private final List<RecursiveAction> activeTasks = new ArrayList<>();
+
+    private final RecursiveAction phase = new RecursiveAction() {
+        @Override
+        protected void compute() {
+            invokeAll(activeTasks);
+        }
+    };
+
+    private final Matrix4f viewMatrix = new Matrix4f();
+
+    private PointLight[] lights;
+
+    private int lightCount;
+
+    private float m00;
+
+    private float m11;
+
+    private float m20;
+
+    private float m21;
+
+    private float near;
+
+    private float sliceScale;
+
+    private float sliceBias;
+
+    private int assignments;
+
+    private long frames;
+
+    private long nanos;
+
+    private long totalAssignments;
+
+    private long droppedAssignments;
+
+    private long droppedLights;
+
+    /**
+     * @param tilesX
+     * 		columns of clusters on screen.
+     * @param tilesY
+     * 		rows of clusters on screen.
+     * @param slices
+     * 		clusters in depth.
+     * @param nearSlice
+     * 		depth where the first slice ends.
+     * @param farSlice
+     * 		depth where the last slice ends, as far as lights are shaded.
+     * @param maxLights
+     * 		lights assigned per frame at most; later ones are dropped.
+     * @param maxLightsPerCluster
+     * 		lights listed per cluster at most.
+     */
+    public LightClusters(ForkJoinPool pool, int tilesX, int tilesY, int slices, float nearSlice, float farSlice,
+            int maxLights, int maxLightsPerCluster) {
+        if (slices < 2 || nearSlice <= 0f || farSlice <= nearSlice) {
+            throw new IllegalArgumentException("Need two slices or more, and 0 < nearSlice < farSlice");
+        }
+        this.pool = pool;
+        this.tilesX = tilesX;
+        this.tilesY = tilesY;
+        this.slices = slices;
+        this.nearSlice = nearSlice;
+        this.farSlice = farSlice;
+        this.sliceScale = (slices - 1) / (float) Math.log(farSlice / nearSlice);
+        this.sliceBias = sliceScale * (float) Math.log(nearSlice);
+        this.maxLights = maxLights;
+        this.maxLightsPerCluster = maxLightsPerCluster;
+        this.viewLights = new float[maxLights * 4];
+        this.lightBounds = new int[maxLights * 6];
+        this.clusterCounts = new int[tilesX * tilesY * slices];
+        this.clusterLights = new int[clusterCounts.length * maxLightsPerCluster];
+        for (int slice = 0; slice < slices; slice++) {
+            sliceTasks.add(new Slice(slice));
+        }
+    }
+
+    /**
+     * Assigns the first {@code count} lights to the clusters of {@code projection * view}.
+     */
+    public void update(Matrix4f projectionMatrix, Matrix4f viewMatrix, PointLight[] withLights, int count) {
+        long start = System.nanoTime();
+        lights = withLights;
+        lightCount = Math.min(count, maxLights);
+        droppedLights += count - lightCount;
+        this.viewMatrix.set(viewMatrix);
+        m00 = projectionMatrix.m00();
+        m11 = projectionMatrix.m11();
+        m20 = projectionMatrix.m20();
+        m21 = projectionMatrix.m21();
+        near = projectionMatrix.perspectiveNear();
+
+        activeTasks.clear();
+        for (int from = 0; from < lightCount; from += LIGHTS_PER_CHUNK) {
+            int index = activeTasks.size();
+            if (index == lightChunks.size()) {
+                lightChunks.add(new LightChunk());
+            }
+            LightChunk chunk = lightChunks.get(index);
+            chunk.from = from;
+            chunk.to = Math.min(lightCount, from + LIGHTS_PER_CHUNK);
+            activeTasks.add(chunk);
+        }
+        run();
+
+        activeTasks.clear();
+        activeTasks.addAll(sliceTasks);
+        run();
+        assignments = 0;
+        for (Slice slice : sliceTasks) {
+            assignments += slice.assigned;
+            droppedAssignments += slice.dropped;
+        }
+
+        lights = null;
+        totalAssignments += assignments;
+        frames++;
+        nanos += System.nanoTime() - start;
+    }
+
+    private void run() {
+        for (RecursiveAction task : activeTasks) {
+            task.reinitialize();
+        }
+        if (activeTasks.size() == 1) {
+            activeTasks.get(0).invoke();
+        } else if (!activeTasks.isEmpty()) {
+            phase.reinitialize();
+            pool.invoke(phase);
+        }
+    }
+
+    private int sliceOf(float depth) {
+        if (depth < nearSlice) {
+            return 0;
+        }
+        int slice = 1 + (int) Math.floor(Math.log(depth) * sliceScale - sliceBias);
+        return Math.max(1, Math.min(slices - 1, slice));
+    }
+
+    /**
+     * Depth where a slice starts.
+     */
+    private float sliceDepth(int slice) {
+        if (slice == 0) {
+            return near;
+        }
+        return slice == slices ? farSlice : (float) Math.exp((slice - 1 + sliceBias) / sliceScale);
+    }
+
+    private static int tileOf(float ndc, int tiles) {
+        int tile = (int) Math.floor((ndc + 1f) * 0.5f * tiles);
+        return Math.max(0, Math.min(tiles - 1, tile));
+    }
+
+    /**
+     * The cluster of a point, from its normalized device x and y and its distance in front of the camera; the
+     * shader finds its cluster the same way.
+     */
+    public int clusterOf(float ndcX, float ndcY, float viewDepth) {
+        return (sliceOf(viewDepth) * tilesY + tileOf(ndcY, tilesY)) * tilesX + tileOf(ndcX, tilesX);
+    }
+
+    public int getClusterCount() {
+        return clusterCounts.length;
+    }
+
+    public int getClusterLightCount(int cluster) {
+        return clusterCounts[cluster];
+    }
+
+    /**
+     * The {@code i}-th light of a cluster, as an index into the lights of the last {@link #update}.
+     */
+    public int getClusterLight(int cluster, int i) {
+        return clusterLights[cluster * maxLightsPerCluster + i];
+    }
+
+    /**
+     * Lights assigned by the last {@link #update}.
+     */
+    public int getLightCount() {
+        return lightCount;
+    }
+
+    /**
+     * View space x, y, z and range of each light of the last {@link #update}; not to be changed.
+     */
+    public float[] getViewLights() {
+        return viewLights;
+    }
+
+    public int getTilesX() {
+        return tilesX;
+    }
+
+    public int getTilesY() {
+        return tilesY;
+    }
+
+    public int getSlices() {
+        return slices;
+    }
+
+    /**
+     * Depths below this are in slice 0.
+     */
+    public float getNearSlice() {
+        return nearSlice;
+    }
+
+    public float getFarSlice() {
+        return farSlice;
+    }
+
+    /**
+     * Slice of a depth d from {@link #getNearSlice()} on is {@code 1 + floor(log(d) * scale - bias)}.
+     */
+    public float getSliceScale() {
+        return sliceScale;
+    }
+
+    public float getSliceBias() {
+        return sliceBias;
+    }
+
+    /**
+     * Light indices in all clusters after the last {@link #update}.
+     */
+    public int getAssignmentCount() {
+        return assignments;
+    }
+
+    /**
+     * Average time {@link #update} took, in nanoseconds.
+     */
+    public long getAverageNanos() {
+        return frames == 0 ? 0 : nanos / frames;
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%dx%dx%d clusters up to %.1f, %d lights and %d assignments last frame; "
+                        + "%.1f assignments and %.3f ms per frame on average, %d assignments and %d lights dropped, on %d threads",
+                tilesX, tilesY, slices, farSlice, lightCount, assignments, frames == 0 ? 0.0 : (double) totalAssignments / frames,
+                getAverageNanos() / 1e6, droppedAssignments, droppedLights, getParallelism());
+    }
+
+    /**
+     * A range of lights, moved into view space and bounded by tiles and slices.
+     */
+    private final class LightChunk extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Vector3f position = new Vector3f();
+
+        private int from;
+
+        private int to;
+
+        @Override
+        protected void compute() {
+            for (int light = from; light < to; light++) {
+                viewMatrix.transformPosition(lights[light].getPosition(), position);
+                float range = lights[light].getRange(CUTOFF);
+                viewLights[light * 4] = position.x;
+                viewLights[light * 4 + 1] = position.y;
+                viewLights[light * 4 + 2] = position.z;
+                viewLights[light * 4 + 3] = range;
+                bound(light, position, range, -position.z);
+            }
+        }
+
+        private void bound(int light, Vector3f position, float range, float depth) {
+            int offset = light * 6;
+            if (depth + range < near || depth - range > farSlice) {
+                lightBounds[offset + 4] = 1;
+                lightBounds[offset + 5] = 0;
+                return;
+            }
+            lightBounds[offset + 4] = sliceOf(Math.max(near, depth - range));
+            lightBounds[offset + 5] = sliceOf(Math.min(farSlice, depth + range));
+            if (depth - range <= near) {
+                // reaches behind the camera: may touch any tile
+                lightBounds[offset] = 0;
+                lightBounds[offset + 1] = tilesX - 1;
+                lightBounds[offset + 2] = 0;
+                lightBounds[offset + 3] = tilesY - 1;
+                return;
+            }
+            // the box around the light's sphere seen from its nearest and farthest depth
+            float nearest = 1f / (depth - range);
+            float farthest = 1f / (depth + range);
+            float left = m00 * (position.x - range);
+            float right = m00 * (position.x + range);
+            float bottom = m11 * (position.y - range);
+            float top = m11 * (position.y + range);
+            float minX = Math.min(left * nearest, left * farthest) - m20;
+            float maxX = Math.max(right * nearest, right * farthest) - m20;
+            float minY = Math.min(bottom * nearest, bottom * farthest) - m21;
+            float maxY = Math.max(top * nearest, top * farthest) - m21;
+            if (maxX < -1f || minX > 1f || maxY < -1f || minY > 1f) {
+                lightBounds[offset + 4] = 1;
+                lightBounds[offset + 5] = 0;
+                return;
+            }
+            lightBounds[offset] = tileOf(minX, tilesX);
+            lightBounds[offset + 1] = tileOf(maxX, tilesX);
+            lightBounds[offset + 2] = tileOf(minY, tilesY);
+            lightBounds[offset + 3] = tileOf(maxY, tilesY);
+        }
+    }
+
+    /**
+     * The clusters of one slice, filled with the lights whose sphere touches their view space box. Keeps its own
+     * tile boxes, so workers share nothing they write.
+     */
+    private final class Slice extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int slice;
+
+        private final float[] tileX;
+
+        private final float[] tileY;
+
+        private int assigned;
+
+        private int dropped;
+
+        private Slice(int slice) {
+            this.slice = slice;
+            this.tileX = new float[tilesX * 2];
+            this.tileY = new float[tilesY * 2];
+        }
+
+        @Override
+        protected void compute() {
+            float nearDepth = sliceDepth(slice);
+            float farDepth = sliceDepth(slice + 1);
+            tileBoxes(tileX, tilesX, m00, m20, nearDepth, farDepth);
+            tileBoxes(tileY, tilesY, m11, m21, nearDepth, farDepth);
+            int firstCluster = slice * tilesX * tilesY;
+            Arrays.fill(clusterCounts, firstCluster, firstCluster + tilesX * tilesY, 0);
+            assigned = 0;
+            dropped = 0;
+
+            for (int light = 0; light < lightCount; light++) {
+                int offset = light * 6;
+                if (slice < lightBounds[offset + 4] || slice > lightBounds[offset + 5]) {
+                    continue;
+                }
+                float x = viewLights[light * 4];
+                float y = viewLights[light * 4 + 1];
+                float depth = -viewLights[light * 4 + 2];
+                float range = viewLights[light * 4 + 3];
+                float distanceZ = distance(depth, nearDepth, farDepth);
+                float remaining = range * range - distanceZ * distanceZ;
+                if (remaining < 0f) {
+                    continue;
+                }
+                for (int tileRow = lightBounds[offset + 2]; tileRow <= lightBounds[offset + 3]; tileRow++) {
+                    float distanceY = distance(y, tileY[tileRow * 2], tileY[tileRow * 2 + 1]);
+                    float remainingY = remaining - distanceY * distanceY;
+                    if (remainingY < 0f) {
+                        continue;
+                    }
+                    for (int tile = lightBounds[offset]; tile <= lightBounds[offset + 1]; tile++) {
+                        float distanceX = distance(x, tileX[tile * 2], tileX[tile * 2 + 1]);
+                        if (distanceX * distanceX > remainingY) {
+                            continue;
+                        }
+                        int cluster = firstCluster + tileRow * tilesX + tile;
+                        if (clusterCounts[cluster] == maxLightsPerCluster) {
+                            dropped++;
+                            continue;
+                        }
+                        clusterLights[cluster * maxLightsPerCluster + clusterCounts[cluster]++] = light;
+                        assigned++;
+                    }
+                }
+            }
+        }
+
+        /**
+         * View space extent of each tile along one axis, over the depths of the slice.
+         */
+        private void tileBoxes(float[] boxes, int tiles, float scale, float shift, float nearDepth, float farDepth) {
+            for (int tile = 0; tile < tiles; tile++) {
+                float from = (-1f + 2f * tile / tiles + shift) / scale;
+                float to = (-1f + 2f * (tile + 1) / tiles + shift) / scale;
+                boxes[tile * 2] = Math.min(from * nearDepth, from * farDepth);
+                boxes[tile * 2 + 1] = Math.max(to * nearDepth, to * farDepth);
+            }
+        }
+
+        private float distance(float value, float min, float max) {
+            return value < min ? min - value : value > max ? value - max : 0f;
+        }
+    }
+}
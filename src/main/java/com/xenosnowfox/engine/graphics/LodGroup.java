@@ -0,0 +1,58 @@
+package com.xenosnowfox.engine.graphics;
+
+/**
+ * The levels of detail of one model, from full detail down, each with the largest distance its surface is off the
+ * full detail surface, in model units. Levels after the first share the materials of the first.
+ */
+public class LodGroup {
+
+    private final Mesh[] meshes;
+
+    private final float[] errors;
+
+    public LodGroup(Mesh[] meshes, float[] errors) {
+        if (meshes.length == 0 || meshes.length != errors.length) {
+            throw new IllegalArgumentException("Need one error per level, and at least one level");
+        }
+        this.meshes = meshes;
+        this.errors = errors;
+    }
+
+    public int getLevelCount() {
+        return meshes.length;
+    }
+
+    public Mesh getMesh(int level) {
+        return meshes[level];
+    }
+
+    public float getError(int level) {
+        return errors[level];
+    }
+
+    /**
+     * Errors of all levels, in non-decreasing order; not to be changed.
+     */
+    public float[] getErrors() {
+        return errors;
+    }
+
+    public int getTriangleCount(int level) {
+        return meshes[level].getTriangleCount();
+    }
+
+    /**
+     * Sets the fallback material of every level.
+     */
+    public void setMaterial(Material material) {
+        for (Mesh mesh : meshes) {
+            mesh.setMaterial(material);
+        }
+    }
+
+    public void cleanUp() {
+        for (Mesh mesh : meshes) {
+            mesh.cleanUp();
+        }
+    }
+}
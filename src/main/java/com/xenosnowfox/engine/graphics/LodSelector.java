@@ -0,0 +1,158 @@
+package com.xenosnowfox.engine.graphics;
+
+import org.joml.Vector3f;
+
+import java.util.Locale;
+
+/**
+ * Picks the level of detail of each {@link GameItem} with a {@link LodGroup} from its size on screen: a level is
+ * good enough while its error, projected at the distance of the item's bounding sphere, stays below a number of
+ * pixels. Switching to a coarser level needs the error to be a margin below that limit, so items near the switching
+ * distance do not flip between levels every frame.
+ *
+ * <p>Also counts the triangles of the selected levels against those of full detail, per frame and overall.
+ */
+public class LodSelector {
+
+    private final float pixelError;
+
+    private final float hysteresis;
+
+    private final Vector3f cameraPosition = new Vector3f();
+
+    private final Bounds worldBounds = new Bounds();
+
+    private boolean enabled = true;
+
+    private float pixelsPerUnit;
+
+    private int triangles;
+
+    private int fullTriangles;
+
+    private long totalTriangles;
+
+    private long totalFullTriangles;
+
+    private long frames;
+
+    private long switches;
+
+    /**
+     * @param pixelError
+     * 		largest error allowed on screen, in pixels.
+     * @param hysteresis
+     * 		share of {@code pixelError} a coarser level has to stay below before it is switched to.
+     */
+    public LodSelector(float pixelError, float hysteresis) {
+        this.pixelError = pixelError;
+        this.hysteresis = hysteresis;
+    }
+
+    /**
+     * Starts a frame seen through a vertical field of view of {@code fov} radians on a viewport {@code height}
+     * pixels high, as projected by {@link Transformation#getProjectionMatrix}, and resets the frame counts.
+     */
+    public void update(float fov, float height, Vector3f cameraPosition) {
+        this.pixelsPerUnit = height / (2f * (float) Math.tan(fov / 2f));
+        this.cameraPosition.set(cameraPosition);
+        frames++;
+        triangles = 0;
+        fullTriangles = 0;
+    }
+
+    /**
+     * Sets the level of an item for this frame and counts its triangles; items without a group keep their mesh.
+     *
+     * @return the selected level.
+     */
+    public int select(GameItem gameItem) {
+        LodGroup group = gameItem.getLodGroup();
+        if (group == null) {
+            if (gameItem.getMesh() != null) {
+                count(gameItem.getMesh().getTriangleCount(), gameItem.getMesh().getTriangleCount());
+            }
+            return 0;
+        }
+        int level = 0;
+        if (enabled) {
+            group.getMesh(0).getBounds().transform(gameItem.getModelMatrix(), worldBounds);
+            float distance = worldBounds.getCenter().distance(cameraPosition) - worldBounds.getRadius();
+            if (distance > 0f) {
+                level = selectLevel(group.getErrors(), gameItem.getLodLevel(), maxScale(gameItem) * pixelsPerUnit / distance,
+                        pixelError, hysteresis);
+            }
+        }
+        if (level != gameItem.getLodLevel()) {
+            gameItem.setLodLevel(level);
+            switches++;
+        }
+        count(group.getTriangleCount(level), group.getTriangleCount(0));
+        return level;
+    }
+
+    /**
+     * The coarsest level whose error stays within {@code pixelError} once projected; levels coarser than
+     * {@code current} have to stay within {@code pixelError * (1 - hysteresis)}.
+     *
+     * @param errors
+     * 		in model units, non-decreasing from level zero.
+     * @param pixelsPerModelUnit
+     * 		size on screen of one model unit at the item's distance.
+     */
+    public static int selectLevel(float[] errors, int current, float pixelsPerModelUnit, float pixelError, float hysteresis) {
+        for (int level = errors.length - 1; level > 0; level--) {
+            float limit = level > current ? pixelError * (1f - hysteresis) : pixelError;
+            if (errors[level] * pixelsPerModelUnit <= limit) {
+                return level;
+            }
+        }
+        return 0;
+    }
+
+    private static float maxScale(GameItem gameItem) {
+        Vector3f scale = gameItem.getScale();
+        return Math.max(Math.abs(scale.x), Math.max(Math.abs(scale.y), Math.abs(scale.z)));
+    }
+
+    private void count(int selected, int full) {
+        triangles += selected;
+        fullTriangles += full;
+        totalTriangles += selected;
+        totalFullTriangles += full;
+    }
+
+    /**
+     * With selection disabled every item is drawn at full detail, while the counts go on.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Triangles of the levels selected since the last {@link #update}.
+     */
+    public int getTriangleCount() {
+        return triangles;
+    }
+
+    /**
+     * Triangles the items selected since the last {@link #update} have at full detail.
+     */
+    public int getFullTriangleCount() {
+        return fullTriangles;
+    }
+
+    @Override
+    public String toString() {
+        long frameCount = Math.max(1, frames);
+        return String.format(Locale.ROOT, "%d of %d triangles last frame; %d instead of %d per frame on average "
+                        + "(%.1f%%), %d level switches",
+                triangles, fullTriangles, totalTriangles / frameCount, totalFullTriangles / frameCount,
+                totalFullTriangles == 0 ? 100.0 : 100.0 * totalTriangles / totalFullTriangles, switches);
+    }
+}
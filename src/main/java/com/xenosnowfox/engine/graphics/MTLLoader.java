@@ -0,0 +1,101 @@
+package com.xenosnowfox.engine.graphics;
+
+import org.joml.Vector4f;
+import spike.lwjglbuildingrenderer.Utils;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads Wavefront MTL files into {@link Material}s.
+ *
+ * <p>Supports {@code Ka}, {@code Kd}, {@code Ks}, {@code Ns}, {@code d} (stored as the alpha of the colours) and
+ * {@code map_Kd}. Textures are only located, not loaded, so the file can be read off the GL thread; see
+ * {@link OBJLoader#loadTextures}.
+ */
+public class MTLLoader {
+
+    public static Map<String, Material> loadMaterialFile(String withFileName) throws Exception {
+        File directory = new File(withFileName).getAbsoluteFile().getParentFile();
+        return loadMaterials(Utils.readAllFileLines(withFileName), directory);
+    }
+
+    private static Map<String, Material> loadMaterials(List<String> lines, File directory) {
+        Map<String, Material> materials = new LinkedHashMap<>();
+        Material material = null;
+        float alpha = 1f;
+
+        for (String rawLine : lines) {
+            String line = rawLine.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] tokens = line.split("\\s+");
+            if ("newmtl".equals(tokens[0])) {
+                applyAlpha(material, alpha);
+                material = new Material(new Vector4f(0.2f, 0.2f, 0.2f, 1f), new Vector4f(0.8f, 0.8f, 0.8f, 1f),
+                        new Vector4f(0f, 0f, 0f, 1f), null, 1f);
+                material.setName(line.substring(tokens[0].length()).trim());
+                materials.put(material.getName(), material);
+                alpha = 1f;
+                continue;
+            }
+            if (material == null) {
+                continue;
+            }
+            switch (tokens[0]) {
+                case "Ka":
+                    material.setAmbientColour(parseColour(tokens));
+                    break;
+                case "Kd":
+                    material.setDiffuseColour(parseColour(tokens));
+                    break;
+                case "Ks":
+                    material.setSpecularColour(parseColour(tokens));
+                    break;
+                case "Ns":
+                    material.setSpecularPower(Float.parseFloat(tokens[1]));
+                    break;
+                case "d":
+                    alpha = Float.parseFloat(tokens[1]);
+                    break;
+                case "Tr":
+                    // inverted dissolve used by some exporters
+                    alpha = 1f - Float.parseFloat(tokens[1]);
+                    break;
+                case "map_Kd":
+                    // options such as -s or -o precede the file name, which is always last
+                    material.setTextureFile(new File(directory, tokens[tokens.length - 1]).getPath());
+                    break;
+                default:
+                    // Ignore other statements
+                    break;
+            }
+        }
+        applyAlpha(material, alpha);
+        return materials;
+    }
+
+    private static Vector4f parseColour(String[] tokens) {
+        float r = Float.parseFloat(tokens[1]);
+        // a single value means a grey
+        float g = tokens.length > 2 ? Float.parseFloat(tokens[2]) : r;
+        float b = tokens.length > 3 ? Float.parseFloat(tokens[3]) : r;
+        return new Vector4f(r, g, b, 1f);
+    }
+
+    private static void applyAlpha(Material material, float alpha) {
+        if (material != null) {
+            material.getAmbientColour().w = alpha;
+            material.getDiffuseColour().w = alpha;
+            material.getSpecularColour().w = alpha;
+        }
+    }
+
+    /**
+     * Hidden constructor.
+     */
+    private MTLLoader() { }
+}
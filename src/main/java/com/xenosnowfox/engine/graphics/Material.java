@@ -6,6 +6,8 @@ public class Material {
 
     private static final Vector4f DEFAULT_COLOUR = new Vector4f(1.0f, 1.0f, 1.0f, 1.0f);
 
+    public static final float DEFAULT_SPECULAR_POWER = 5f;
+
     private Vector4f ambientColour;
 
     private Vector4f diffuseColour;
@@ -16,6 +18,14 @@ public class Material {
 
     private Texture texture;
 
+    private String textureFile;
+
+    private float specularPower = DEFAULT_SPECULAR_POWER;
+
+    private String name;
+
+    final SortId sortId = new SortId();
+
     public Material() {
         this.ambientColour = DEFAULT_COLOUR;
         this.diffuseColour = DEFAULT_COLOUR;
@@ -88,4 +98,31 @@ public class Material {
         this.texture = texture;
     }
 
+    /**
+     * Image file of the diffuse map ({@code map_Kd}) that is still to be loaded into {@link #getTexture()}.
+     */
+    public String getTextureFile() {
+        return textureFile;
+    }
+
+    public void setTextureFile(String textureFile) {
+        this.textureFile = textureFile;
+    }
+
+    public float getSpecularPower() {
+        return specularPower;
+    }
+
+    public void setSpecularPower(float specularPower) {
+        this.specularPower = specularPower;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
 }
@@ -1,11 +1,14 @@
 package com.xenosnowfox.engine.graphics;
 
+import org.joml.Vector3f;
 import org.lwjgl.system.MemoryUtil;
 
-import java.nio.FloatBuffer;
-import java.nio.IntBuffer;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import static org.lwjgl.opengl.GL11.GL_FLOAT;
 import static org.lwjgl.opengl.GL11.GL_TEXTURE_2D;
@@ -28,83 +31,139 @@ import static org.lwjgl.opengl.GL20.glVertexAttribPointer;
 import static org.lwjgl.opengl.GL30.glBindVertexArray;
 import static org.lwjgl.opengl.GL30.glDeleteVertexArrays;
 import static org.lwjgl.opengl.GL30.glGenVertexArrays;
+import static org.lwjgl.opengl.GL33.glVertexAttribDivisor;
+import static org.lwjgl.opengl.GL42.glDrawElementsInstancedBaseInstance;
 
 public class Mesh {
 
-    private final int vaoId;
+    private final List<Integer> vboIdList = new ArrayList<>();
 
-    private final List<Integer> vboIdList;
+    private int vaoId;
 
-    private final int vertexCount;
+    private int vertexCount;
+
+    private VertexLayout vertexLayout;
+
+    private int indexType;
+
+    private final Vector3f positionOffset = new Vector3f();
+
+    private final Vector3f positionScale = new Vector3f(1, 1, 1);
+
+    private final Bounds bounds = new Bounds();
 
     private Material material;
 
-    public Mesh(float[] positions, float[] textCoords, float[] normals, int[] indices) {
-        FloatBuffer posBuffer = null;
-        FloatBuffer textCoordsBuffer = null;
-        FloatBuffer vecNormalsBuffer = null;
-        IntBuffer indicesBuffer = null;
+    private SubMesh[] subMeshes;
+
+    private int instanceBufferId;
+
+    final SortId sortId = new SortId();
+
+    public Mesh(MeshData meshData) {
+        this(meshData, VertexLayout.STANDARD);
+    }
+
+    /**
+     * Uploads CPU-side arrays packed into the given layout, with 16-bit indices when the vertex count allows.
+     */
+    public Mesh(MeshData meshData, VertexLayout layout) {
+        float[] bounds = MeshCache.computeBounds(meshData.getPositions());
+        ByteBuffer vertices = null;
+        ByteBuffer indices = null;
         try {
-            vertexCount = indices.length;
-            vboIdList = new ArrayList<>();
-
-            vaoId = glGenVertexArrays();
-            glBindVertexArray(vaoId);
-
-            // Position VBO
-            int vboId = glGenBuffers();
-            vboIdList.add(vboId);
-            posBuffer = MemoryUtil.memAllocFloat(positions.length);
-            posBuffer.put(positions).flip();
-            glBindBuffer(GL_ARRAY_BUFFER, vboId);
-            glBufferData(GL_ARRAY_BUFFER, posBuffer, GL_STATIC_DRAW);
-            glEnableVertexAttribArray(0);
-            glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, 0);
-
-            // Texture coordinates VBO
-            vboId = glGenBuffers();
-            vboIdList.add(vboId);
-            textCoordsBuffer = MemoryUtil.memAllocFloat(textCoords.length);
-            textCoordsBuffer.put(textCoords).flip();
-            glBindBuffer(GL_ARRAY_BUFFER, vboId);
-            glBufferData(GL_ARRAY_BUFFER, textCoordsBuffer, GL_STATIC_DRAW);
-            glEnableVertexAttribArray(1);
-            glVertexAttribPointer(1, 2, GL_FLOAT, false, 0, 0);
-
-            // Vertex normals VBO
-            vboId = glGenBuffers();
-            vboIdList.add(vboId);
-            vecNormalsBuffer = MemoryUtil.memAllocFloat(normals.length);
-            vecNormalsBuffer.put(normals).flip();
-            glBindBuffer(GL_ARRAY_BUFFER, vboId);
-            glBufferData(GL_ARRAY_BUFFER, vecNormalsBuffer, GL_STATIC_DRAW);
-            glEnableVertexAttribArray(2);
-            glVertexAttribPointer(2, 3, GL_FLOAT, false, 0, 0);
-
-            // Index VBO
-            vboId = glGenBuffers();
-            vboIdList.add(vboId);
-            indicesBuffer = MemoryUtil.memAllocInt(indices.length);
-            indicesBuffer.put(indices).flip();
-            glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, vboId);
-            glBufferData(GL_ELEMENT_ARRAY_BUFFER, indicesBuffer, GL_STATIC_DRAW);
-
-            glBindBuffer(GL_ARRAY_BUFFER, 0);
-            glBindVertexArray(0);
+            vertices = layout.pack(meshData.getPositions(), meshData.getTextCoords(), meshData.getNormals(), bounds);
+            indices = VertexLayout.packIndices(meshData.getIndices(), meshData.getVertexCount());
+            upload(vertices, layout, bounds, indices, VertexLayout.indexTypeFor(meshData.getVertexCount()),
+                    meshData.getIndexCount());
         } finally {
-            if (posBuffer != null) {
-                MemoryUtil.memFree(posBuffer);
+            if (vertices != null) {
+                MemoryUtil.memFree(vertices);
+            }
+            if (indices != null) {
+                MemoryUtil.memFree(indices);
+            }
+        }
+        this.subMeshes = meshData.getSubMeshes();
+    }
+
+    public Mesh(float[] positions, float[] textCoords, float[] normals, int[] indices) {
+        this(new MeshData(positions, textCoords, normals, indices));
+    }
+
+    public Mesh(MeshCache.CachedMesh cachedMesh) {
+        this(cachedMesh, VertexLayout.STANDARD);
+    }
+
+    /**
+     * Uploads a memory-mapped cache: its vertex block as is for the {@link VertexLayout#STANDARD} layout and
+     * repacked otherwise, its indices narrowed to 16 bits when the vertex count allows.
+     */
+    public Mesh(MeshCache.CachedMesh cachedMesh, VertexLayout layout) {
+        int cachedVertexCount = cachedMesh.getVertexCount();
+        int cachedIndexType = VertexLayout.indexTypeFor(cachedVertexCount);
+        ByteBuffer vertices = null;
+        ByteBuffer indices = null;
+        try {
+            if (layout != VertexLayout.STANDARD) {
+                vertices = layout.pack(cachedMesh.getVertices(), cachedVertexCount, cachedMesh.getBounds());
             }
-            if (textCoordsBuffer != null) {
-                MemoryUtil.memFree(textCoordsBuffer);
+            if (cachedIndexType != GL_UNSIGNED_INT) {
+                indices = VertexLayout.packIndices(cachedMesh.getIndices(), cachedMesh.getIndexCount(), cachedVertexCount);
             }
-            if (vecNormalsBuffer != null) {
-                MemoryUtil.memFree(vecNormalsBuffer);
+            upload(vertices != null ? vertices : cachedMesh.getVertices(), layout, cachedMesh.getBounds(),
+                    indices != null ? indices : cachedMesh.getIndices(), cachedIndexType, cachedMesh.getIndexCount());
+        } finally {
+            if (vertices != null) {
+                MemoryUtil.memFree(vertices);
             }
-            if (indicesBuffer != null) {
-                MemoryUtil.memFree(indicesBuffer);
+            if (indices != null) {
+                MemoryUtil.memFree(indices);
             }
         }
+        this.subMeshes = cachedMesh.getSubMeshes();
+    }
+
+    /**
+     * Uploads an interleaved position / texture coordinate / normal float block, e.g. a memory-mapped cache, as is.
+     */
+    public Mesh(ByteBuffer interleavedVertices, ByteBuffer indices, int indexCount) {
+        upload(interleavedVertices, VertexLayout.STANDARD, null, indices, GL_UNSIGNED_INT, indexCount);
+    }
+
+    private void upload(ByteBuffer vertices, VertexLayout layout, float[] bounds, ByteBuffer indices, int indexType,
+            int indexCount) {
+        this.vertexCount = indexCount;
+        this.vertexLayout = layout;
+        this.indexType = indexType;
+        this.subMeshes = new SubMesh[]{new SubMesh(0, indexCount, null)};
+        if (bounds == null) {
+            bounds = MeshCache.computeBounds(vertices, VertexLayout.STANDARD.getStride());
+        }
+        this.bounds.set(bounds);
+        if (layout.isQuantized()) {
+            positionOffset.set(bounds[0], bounds[1], bounds[2]);
+            positionScale.set(bounds[3] - bounds[0], bounds[4] - bounds[1], bounds[5] - bounds[2]);
+        }
+
+        vaoId = glGenVertexArrays();
+        glBindVertexArray(vaoId);
+
+        // Interleaved vertex VBO
+        int vboId = glGenBuffers();
+        vboIdList.add(vboId);
+        glBindBuffer(GL_ARRAY_BUFFER, vboId);
+        glBufferData(GL_ARRAY_BUFFER, vertices, GL_STATIC_DRAW);
+        layout.bindAttributes();
+
+        // Index VBO
+        vboId = glGenBuffers();
+        vboIdList.add(vboId);
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, vboId);
+        glBufferData(GL_ELEMENT_ARRAY_BUFFER, indices, GL_STATIC_DRAW);
+
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glBindVertexArray(0);
     }
 
     public Material getMaterial() {
@@ -115,33 +174,198 @@ public class Mesh {
         this.material = material;
     }
 
+    /**
+     * Index ranges drawn per material; a range without a material of its own uses {@link #getMaterial()}.
+     */
+    public SubMesh[] getSubMeshes() {
+        return subMeshes;
+    }
+
+    /**
+     * Distinct materials used by this mesh, including the mesh's own material.
+     */
+    public Set<Material> getMaterials() {
+        Set<Material> materials = new LinkedHashSet<>();
+        for (SubMesh subMesh : subMeshes) {
+            materials.add(subMesh.getMaterial() != null ? subMesh.getMaterial() : material);
+        }
+        materials.remove(null);
+        return materials;
+    }
+
     public int getVaoId() {
         return vaoId;
     }
 
+    /**
+     * Triangles drawn by all submeshes together.
+     */
+    public int getTriangleCount() {
+        int indexCount = 0;
+        for (SubMesh subMesh : subMeshes) {
+            indexCount += subMesh.getIndexCount();
+        }
+        return indexCount / 3;
+    }
+
     public int getVertexCount() {
         return vertexCount;
     }
 
+    /**
+     * Buffer holding the interleaved vertices.
+     */
+    int getVertexBufferId() {
+        return vboIdList.get(0);
+    }
+
+    /**
+     * Buffer holding the {@link #getVertexCount()} indices.
+     */
+    int getIndexBufferId() {
+        return vboIdList.get(1);
+    }
+
+    public VertexLayout getVertexLayout() {
+        return vertexLayout;
+    }
+
+    /**
+     * {@code GL_UNSIGNED_SHORT} or {@code GL_UNSIGNED_INT}.
+     */
+    public int getIndexType() {
+        return indexType;
+    }
+
+    /**
+     * Minimum corner of the mesh bounds for quantized layouts, zero otherwise; the vertex shader computes
+     * {@code position * positionScale + positionOffset}.
+     */
+    public Vector3f getPositionOffset() {
+        return positionOffset;
+    }
+
+    /**
+     * Extent of the mesh bounds for quantized layouts, one otherwise.
+     */
+    public Vector3f getPositionScale() {
+        return positionScale;
+    }
+
+    /**
+     * Local bounds computed when the mesh was loaded.
+     */
+    public Bounds getBounds() {
+        return bounds;
+    }
+
     public void render() {
-        Texture texture = material.getTexture();
-        if (texture != null) {
-            // Activate firs texture bank
-            glActiveTexture(GL_TEXTURE0);
-            // Bind the texture
-            glBindTexture(GL_TEXTURE_2D, texture.getId());
-        }
+        render(null);
+    }
 
+    /**
+     * Draws every submesh from the one VAO; the material binder and texture bind only run when the material of
+     * consecutive submeshes changes.
+     *
+     * @param materialBinder
+     * 		optional, uploads the uniforms of a material before its first range is drawn.
+     */
+    public void render(Consumer<Material> materialBinder) {
+        draw(materialBinder, 0, 0);
+    }
+
+    /**
+     * Draws every submesh for a run of instances whose per-instance attributes start at {@code baseInstance} in
+     * the buffer set with {@link #attachInstanceBuffer(int, int, int)}.
+     */
+    public void renderInstanced(Consumer<Material> materialBinder, int instanceCount, int baseInstance) {
+        draw(materialBinder, instanceCount, baseInstance);
+    }
+
+    /**
+     * Number of draw calls one {@link #render(Consumer)} or {@link #renderInstanced(Consumer, int, int)} issues.
+     */
+    public int getDrawCallCount() {
+        return subMeshes.length;
+    }
+
+    private void draw(Consumer<Material> materialBinder, int instanceCount, int baseInstance) {
         // Draw the mesh
         glBindVertexArray(getVaoId());
 
-        glDrawElements(GL_TRIANGLES, getVertexCount(), GL_UNSIGNED_INT, 0);
+        int indexSize = VertexLayout.indexSize(indexType);
+        Material boundMaterial = null;
+        Texture boundTexture = null;
+        for (SubMesh subMesh : subMeshes) {
+            Material subMaterial = subMesh.getMaterial() != null ? subMesh.getMaterial() : material;
+            if (subMaterial != boundMaterial) {
+                if (materialBinder != null) {
+                    materialBinder.accept(subMaterial);
+                }
+                // groups without a usemtl, in a mesh without a material, have none
+                Texture texture = subMaterial != null ? subMaterial.getTexture() : null;
+                if (texture != null && texture != boundTexture) {
+                    // Activate firs texture bank
+                    glActiveTexture(GL_TEXTURE0);
+                    // Bind the texture
+                    texture.bind();
+                    boundTexture = texture;
+                }
+                boundMaterial = subMaterial;
+            }
+            long offset = (long) subMesh.getFirstIndex() * indexSize;
+            if (instanceCount > 0) {
+                glDrawElementsInstancedBaseInstance(GL_TRIANGLES, subMesh.getIndexCount(), indexType, offset,
+                        instanceCount, baseInstance);
+            } else {
+                glDrawElements(GL_TRIANGLES, subMesh.getIndexCount(), indexType, offset);
+            }
+        }
 
         // Restore state
         glBindVertexArray(0);
         glBindTexture(GL_TEXTURE_2D, 0);
     }
 
+    /**
+     * Material a submesh is drawn with: its own, or the mesh's if it has none.
+     */
+    public Material getSubMeshMaterial(int subMeshIndex) {
+        Material subMaterial = subMeshes[subMeshIndex].getMaterial();
+        return subMaterial != null ? subMaterial : material;
+    }
+
+    /**
+     * Issues the instanced draw of one submesh and nothing else: the VAO, textures and uniforms must already be set
+     * up by the caller, e.g. through a {@link GLStateCache}.
+     */
+    public void drawSubMesh(int subMeshIndex, int instanceCount, int baseInstance) {
+        SubMesh subMesh = subMeshes[subMeshIndex];
+        glDrawElementsInstancedBaseInstance(GL_TRIANGLES, subMesh.getIndexCount(), indexType,
+                (long) subMesh.getFirstIndex() * VertexLayout.indexSize(indexType), instanceCount, baseInstance);
+    }
+
+    /**
+     * Points the per-instance attribute locations {@code firstLocation} and up at a buffer of consecutive
+     * {@code mat4} columns, advancing once per instance. Only the first call per buffer does any GL work.
+     */
+    public void attachInstanceBuffer(int vboId, int firstLocation, int columns) {
+        if (instanceBufferId == vboId) {
+            return;
+        }
+        instanceBufferId = vboId;
+        glBindVertexArray(vaoId);
+        glBindBuffer(GL_ARRAY_BUFFER, vboId);
+        int stride = columns * 4 * Float.BYTES;
+        for (int column = 0; column < columns; column++) {
+            glEnableVertexAttribArray(firstLocation + column);
+            glVertexAttribPointer(firstLocation + column, 4, GL_FLOAT, false, stride, (long) column * 4 * Float.BYTES);
+            glVertexAttribDivisor(firstLocation + column, 1);
+        }
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glBindVertexArray(0);
+    }
+
     public void cleanUp() {
         glDisableVertexAttribArray(0);
 
@@ -151,10 +375,13 @@ public class Mesh {
             glDeleteBuffers(vboId);
         }
 
-        // Delete the texture
-        Texture texture = material.getTexture();
-        if (texture != null) {
-            texture.destroy();
+        // Release the textures of the materials loaded with the mesh; the mesh material belongs to the caller
+        for (SubMesh subMesh : subMeshes) {
+            Material subMaterial = subMesh.getMaterial();
+            if (subMaterial != null && subMaterial.getTexture() != null) {
+                subMaterial.getTexture().release();
+                subMaterial.setTexture(null);
+            }
         }
 
         // Delete the VAO
@@ -0,0 +1,462 @@
+package com.xenosnowfox.engine.graphics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Versioned binary cache of a parsed model, stored next to the source file with a {@value #EXTENSION} suffix.
+ *
+ * <p>Layout (little endian): a fixed header describing the source file (size, modification time, content hash)
+ * and the mesh (counts, bounds), the submesh index ranges, a string block (material libraries and the material
+ * name of every submesh, each as a length prefixed UTF-8 string), then a 16 byte aligned block of interleaved vertices
+ * (position, texture coordinate, normal as floats) followed by the 32-bit index block. Both blocks are exposed as
+ * slices of the memory-mapped file, so they can go straight into {@code glBufferData} without a heap copy.
+ */
+public class MeshCache {
+
+    public static final String EXTENSION = ".meshcache";
+
+    /**
+     * "SPKM" read as a little endian int.
+     */
+    private static final int MAGIC = 0x4D4B5053;
+
+    /**
+     * Bumped whenever the file layout or the processing of the stored mesh changes; 3 stores optimized meshes.
+     */
+    public static final int VERSION = 3;
+
+    public static final int VERTEX_STRIDE = VertexWelder.VERTEX_BYTES;
+
+    private static final int HEADER_BYTES = 80;
+
+    private static final int SUBMESH_BYTES = 8;
+
+    private static final int HASH_WINDOW = 64 * 1024 * 1024;
+
+    public static Path cachePathFor(String sourceFile) {
+        return Paths.get(sourceFile + EXTENSION);
+    }
+
+    /**
+     * Maps the cache of a source file.
+     *
+     * @param verifyContent
+     * 		when set, the content hash of the source is always compared; otherwise it is only computed when the
+     * 		size matches but the modification time does not (e.g. after a checkout), so an untouched source costs
+     * 		no extra read.
+     * @return the mapped cache, or {@code null} if there is none, it is stale or it is corrupt.
+     */
+    public static CachedMesh open(String sourceFile, boolean verifyContent) throws IOException {
+        Path source = Paths.get(sourceFile);
+        Path cache = cachePathFor(sourceFile);
+        if (!Files.isRegularFile(cache)) {
+            return null;
+        }
+
+        // the header is read and checked before anything is mapped: a mapping cannot be released before it is
+        // collected, and while it lives, some platforms refuse to replace the file with a rebuilt cache
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        long fileSize;
+        try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+            fileSize = channel.size();
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    return null;
+                }
+            }
+        }
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION || header.getInt(40) != VERTEX_STRIDE
+                || expectedSize(header) != fileSize) {
+            return null;
+        }
+
+        long sourceSize = Files.size(source);
+        long sourceModified = Files.getLastModifiedTime(source).toMillis();
+        if (header.getLong(8) != sourceSize) {
+            return null;
+        }
+        boolean sameModified = header.getLong(16) == sourceModified;
+        if (verifyContent || !sameModified) {
+            if (header.getLong(24) != contentHash(source)) {
+                return null;
+            }
+            if (!sameModified) {
+                // same content, remember the new time so the next start skips hashing
+                updateModified(cache, sourceModified);
+            }
+        }
+
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+            if (channel.size() != fileSize) {
+                return null;
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            return new CachedMesh(buffer);
+        } catch (IOException exception) {
+            return null;
+        }
+    }
+
+    /**
+     * Size of the file a header describes, or -1 when its counts cannot be right.
+     */
+    private static long expectedSize(ByteBuffer header) {
+        int vertexCount = header.getInt(32);
+        int indexCount = header.getInt(36);
+        int submeshCount = header.getInt(44);
+        int libraryCount = header.getInt(72);
+        int stringBytes = header.getInt(76);
+        if (vertexCount < 0 || indexCount < 0 || submeshCount < 0 || libraryCount < 0 || stringBytes < 0) {
+            return -1;
+        }
+        long vertexOffset = align16((long) HEADER_BYTES + (long) submeshCount * SUBMESH_BYTES + stringBytes);
+        long size = vertexOffset + (long) vertexCount * VERTEX_STRIDE + (long) indexCount * Integer.BYTES;
+        return size > Integer.MAX_VALUE ? -1 : size;
+    }
+
+    private static void updateModified(Path cache, long modified) {
+        ByteBuffer value = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).putLong(0, modified);
+        try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.WRITE)) {
+            channel.write(value, 16);
+        } catch (IOException exception) {
+            // read-only caches simply keep hashing on every start
+        }
+    }
+
+    /**
+     * Writes the cache of a source file; the file is replaced atomically so readers never see a partial cache.
+     */
+    public static void write(String sourceFile, MeshData meshData) throws IOException {
+        Path source = Paths.get(sourceFile);
+        Path cache = cachePathFor(sourceFile);
+        Path temporary = Files.createTempFile(cache.toAbsolutePath().getParent(), cache.getFileName().toString(), ".tmp");
+
+        try {
+            int vertexCount = meshData.getVertexCount();
+            int indexCount = meshData.getIndexCount();
+            SubMesh[] subMeshes = meshData.getSubMeshes();
+            int submeshCount = subMeshes.length;
+            byte[] strings = encodeStrings(meshData.getMaterialLibraries(), subMeshes);
+            int vertexOffset = align16(HEADER_BYTES + submeshCount * SUBMESH_BYTES + strings.length);
+            long totalBytes = vertexOffset + (long) vertexCount * VERTEX_STRIDE + (long) indexCount * Integer.BYTES;
+            if (totalBytes > Integer.MAX_VALUE) {
+                throw new IOException("Mesh too large to be cached as a single mapped buffer: " + totalBytes + " bytes");
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(vertexOffset).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC)
+                    .putInt(VERSION)
+                    .putLong(Files.size(source))
+                    .putLong(Files.getLastModifiedTime(source).toMillis())
+                    .putLong(contentHash(source))
+                    .putInt(vertexCount)
+                    .putInt(indexCount)
+                    .putInt(VERTEX_STRIDE)
+                    .putInt(submeshCount);
+            float[] bounds = computeBounds(meshData.getPositions());
+            for (float value : bounds) {
+                header.putFloat(value);
+            }
+            header.putInt(meshData.getMaterialLibraries().size())
+                    .putInt(strings.length);
+            for (SubMesh subMesh : subMeshes) {
+                header.putInt(subMesh.getFirstIndex()).putInt(subMesh.getIndexCount());
+            }
+            header.put(strings);
+            header.rewind();
+
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeFully(channel, header);
+
+                ByteBuffer block = ByteBuffer.allocateDirect(VERTEX_STRIDE * 8192).order(ByteOrder.LITTLE_ENDIAN);
+                float[] positions = meshData.getPositions();
+                float[] textCoords = meshData.getTextCoords();
+                float[] normals = meshData.getNormals();
+                for (int vertex = 0; vertex < vertexCount; vertex++) {
+                    if (block.remaining() < VERTEX_STRIDE) {
+                        block.flip();
+                        writeFully(channel, block);
+                        block.clear();
+                    }
+                    block.putFloat(positions[vertex * 3])
+                            .putFloat(positions[vertex * 3 + 1])
+                            .putFloat(positions[vertex * 3 + 2])
+                            .putFloat(textCoords[vertex * 2])
+                            .putFloat(textCoords[vertex * 2 + 1])
+                            .putFloat(normals[vertex * 3])
+                            .putFloat(normals[vertex * 3 + 1])
+                            .putFloat(normals[vertex * 3 + 2]);
+                }
+                int[] indices = meshData.getIndices();
+                for (int index : indices) {
+                    if (block.remaining() < Integer.BYTES) {
+                        block.flip();
+                        writeFully(channel, block);
+                        block.clear();
+                    }
+                    block.putInt(index);
+                }
+                block.flip();
+                writeFully(channel, block);
+            }
+            Files.move(temporary, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static byte[] encodeStrings(List<String> libraries, SubMesh[] subMeshes) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (String library : libraries) {
+            writeString(bytes, library);
+        }
+        for (SubMesh subMesh : subMeshes) {
+            writeString(bytes, subMesh.getMaterialName());
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(ByteArrayOutputStream bytes, String value) {
+        byte[] encoded = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+        int length = encoded == null ? -1 : encoded.length;
+        bytes.writeBytes(ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).putInt(length).array());
+        if (encoded != null) {
+            bytes.writeBytes(encoded);
+        }
+    }
+
+    /**
+     * CRC32C of the file contents, computed over memory-mapped windows.
+     */
+    public static long contentHash(Path file) throws IOException {
+        CRC32C crc = new CRC32C();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += HASH_WINDOW) {
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(HASH_WINDOW, size - position)));
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Axis aligned bounds of a position array as min x, y, z followed by max x, y, z.
+     */
+    static float[] computeBounds(float[] positions) {
+        float[] bounds = new float[6];
+        if (positions.length == 0) {
+            return bounds;
+        }
+        bounds[0] = bounds[3] = positions[0];
+        bounds[1] = bounds[4] = positions[1];
+        bounds[2] = bounds[5] = positions[2];
+        for (int i = 3; i < positions.length; i += 3) {
+            for (int axis = 0; axis < 3; axis++) {
+                float value = positions[i + axis];
+                bounds[axis] = Math.min(bounds[axis], value);
+                bounds[axis + 3] = Math.max(bounds[axis + 3], value);
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * Axis aligned bounds of interleaved vertices that start with three float position components, as
+     * {@link #computeBounds(float[])}.
+     */
+    static float[] computeBounds(ByteBuffer vertices, int stride) {
+        float[] bounds = new float[6];
+        int start = vertices.position();
+        int vertexCount = vertices.remaining() / stride;
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            for (int axis = 0; axis < 3; axis++) {
+                float value = vertices.getFloat(start + vertex * stride + axis * Float.BYTES);
+                bounds[axis] = vertex == 0 ? value : Math.min(bounds[axis], value);
+                bounds[axis + 3] = vertex == 0 ? value : Math.max(bounds[axis + 3], value);
+            }
+        }
+        return bounds;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static int align16(int value) {
+        return (value + 15) & ~15;
+    }
+
+    private static long align16(long value) {
+        return (value + 15) & ~15L;
+    }
+
+    /**
+     * A validated, memory-mapped cache file.
+     */
+    public static class CachedMesh {
+
+        private final ByteBuffer vertices;
+
+        private final ByteBuffer indices;
+
+        private final int vertexCount;
+
+        private final int indexCount;
+
+        private final float[] bounds = new float[6];
+
+        private final SubMesh[] subMeshes;
+
+        private final List<String> materialLibraries = new ArrayList<>();
+
+        /**
+         * @throws IOException
+         * 		when a block, string or submesh reaches outside the file, or an index outside the vertices.
+         */
+        CachedMesh(ByteBuffer buffer) throws IOException {
+            if (expectedSize(buffer) != buffer.capacity()) {
+                throw new IOException("Mesh cache size does not match its header");
+            }
+            vertexCount = buffer.getInt(32);
+            indexCount = buffer.getInt(36);
+            int submeshCount = buffer.getInt(44);
+            for (int i = 0; i < bounds.length; i++) {
+                bounds[i] = buffer.getFloat(48 + i * Float.BYTES);
+            }
+            int libraryCount = buffer.getInt(72);
+            int stringBytes = buffer.getInt(76);
+
+            ByteBuffer strings = slice(buffer, HEADER_BYTES + submeshCount * SUBMESH_BYTES, stringBytes);
+            for (int i = 0; i < libraryCount; i++) {
+                materialLibraries.add(readString(strings));
+            }
+            subMeshes = new SubMesh[submeshCount];
+            for (int i = 0; i < submeshCount; i++) {
+                int offset = HEADER_BYTES + i * SUBMESH_BYTES;
+                int firstIndex = buffer.getInt(offset);
+                int subMeshIndices = buffer.getInt(offset + Integer.BYTES);
+                if (firstIndex < 0 || subMeshIndices < 0 || (long) firstIndex + subMeshIndices > indexCount) {
+                    throw new IOException("Submesh " + i + " outside the index block");
+                }
+                subMeshes[i] = new SubMesh(firstIndex, subMeshIndices, readString(strings));
+            }
+
+            int vertexOffset = align16(HEADER_BYTES + submeshCount * SUBMESH_BYTES + stringBytes);
+            int indexOffset = vertexOffset + vertexCount * VERTEX_STRIDE;
+            vertices = slice(buffer, vertexOffset, vertexCount * VERTEX_STRIDE);
+            indices = slice(buffer, indexOffset, indexCount * Integer.BYTES);
+            for (int i = 0; i < indexCount; i++) {
+                // negative indices compare as huge
+                if (Integer.compareUnsigned(indices.getInt(i * Integer.BYTES), vertexCount) >= 0) {
+                    throw new IOException("Index " + i + " outside the vertex block");
+                }
+            }
+        }
+
+        private static String readString(ByteBuffer strings) throws IOException {
+            if (strings.remaining() < Integer.BYTES) {
+                throw new IOException("String block ends early");
+            }
+            int length = strings.getInt();
+            if (length < 0) {
+                return null;
+            }
+            if (length > strings.remaining()) {
+                throw new IOException("String of " + length + " bytes outside the string block");
+            }
+            byte[] bytes = new byte[length];
+            strings.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+            ByteBuffer duplicate = buffer.duplicate();
+            duplicate.position(offset).limit(offset + length);
+            return duplicate.slice().order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        /**
+         * Interleaved vertex block, {@link #VERTEX_STRIDE} bytes per vertex.
+         */
+        public ByteBuffer getVertices() {
+            return vertices;
+        }
+
+        public ByteBuffer getIndices() {
+            return indices;
+        }
+
+        public int getVertexCount() {
+            return vertexCount;
+        }
+
+        public int getIndexCount() {
+            return indexCount;
+        }
+
+        /**
+         * Min x, y, z followed by max x, y, z.
+         */
+        public float[] getBounds() {
+            return bounds;
+        }
+
+        /**
+         * Index range and material name of every submesh; materials still have to be resolved.
+         */
+        public SubMesh[] getSubMeshes() {
+            return subMeshes;
+        }
+
+        public List<String> getMaterialLibraries() {
+            return materialLibraries;
+        }
+
+        /**
+         * Copies the mapped vertices and indices into arrays, for processing that needs the whole mesh on the heap.
+         */
+        public MeshData toMeshData() {
+            float[] positions = new float[vertexCount * 3];
+            float[] textCoords = new float[vertexCount * 2];
+            float[] normals = new float[vertexCount * 3];
+            for (int vertex = 0; vertex < vertexCount; vertex++) {
+                int offset = vertex * VERTEX_STRIDE;
+                for (int i = 0; i < 3; i++) {
+                    positions[vertex * 3 + i] = vertices.getFloat(offset + i * Float.BYTES);
+                    normals[vertex * 3 + i] = vertices.getFloat(offset + (5 + i) * Float.BYTES);
+                }
+                textCoords[vertex * 2] = vertices.getFloat(offset + 3 * Float.BYTES);
+                textCoords[vertex * 2 + 1] = vertices.getFloat(offset + 4 * Float.BYTES);
+            }
+            int[] indexArray = new int[indexCount];
+            indices.duplicate().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(indexArray);
+            return new MeshData(positions, textCoords, normals, indexArray, subMeshes, materialLibraries);
+        }
+    }
+
+    /**
+     * Hidden constructor.
+     */
+    private MeshCache() { }
+}
@@ -0,0 +1,96 @@
+package com.xenosnowfox.engine.graphics;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * CPU-side vertex and index arrays of a mesh, as produced by the loaders before anything is uploaded to the GPU.
+ */
+public class MeshData {
+
+    private final float[] positions;
+
+    private final float[] textCoords;
+
+    private final float[] normals;
+
+    private final int[] indices;
+
+    private final SubMesh[] subMeshes;
+
+    private final List<String> materialLibraries;
+
+    public MeshData(float[] positions, float[] textCoords, float[] normals, int[] indices) {
+        this(positions, textCoords, normals, indices,
+                new SubMesh[]{new SubMesh(0, indices.length, null)}, Collections.emptyList());
+    }
+
+    public MeshData(float[] positions, float[] textCoords, float[] normals, int[] indices, SubMesh[] subMeshes,
+            List<String> materialLibraries) {
+        this.positions = positions;
+        this.textCoords = textCoords;
+        this.normals = normals;
+        this.indices = indices;
+        this.subMeshes = subMeshes;
+        this.materialLibraries = materialLibraries;
+    }
+
+    public float[] getPositions() {
+        return positions;
+    }
+
+    public float[] getTextCoords() {
+        return textCoords;
+    }
+
+    public float[] getNormals() {
+        return normals;
+    }
+
+    public int[] getIndices() {
+        return indices;
+    }
+
+    /**
+     * Index ranges per material, in the order the materials were first used.
+     */
+    public SubMesh[] getSubMeshes() {
+        return subMeshes;
+    }
+
+    /**
+     * MTL files referenced by the source, relative to it.
+     */
+    public List<String> getMaterialLibraries() {
+        return materialLibraries;
+    }
+
+    public int getVertexCount() {
+        return positions.length / 3;
+    }
+
+    public int getIndexCount() {
+        return indices.length;
+    }
+
+    /**
+     * Compares the raw float bits and indices, so two meshes are only equal if they would upload identical buffers.
+     */
+    public boolean contentEquals(MeshData other) {
+        return Arrays.equals(positions, other.positions)
+                && Arrays.equals(textCoords, other.textCoords)
+                && Arrays.equals(normals, other.normals)
+                && Arrays.equals(indices, other.indices)
+                && Arrays.equals(subMeshRanges(), other.subMeshRanges());
+    }
+
+    private int[] subMeshRanges() {
+        int[] ranges = new int[subMeshes.length * 2];
+        for (int i = 0; i < subMeshes.length; i++) {
+            ranges[i * 2] = subMeshes[i].getFirstIndex();
+            ranges[i * 2 + 1] = subMeshes[i].getIndexCount();
+        }
+        return ranges;
+    }
+}
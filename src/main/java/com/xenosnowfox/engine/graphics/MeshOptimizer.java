@@ -0,0 +1,551 @@
+package com.xenosnowfox.engine.graphics;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Reorders the triangles and vertices of a loaded mesh for the GPU, without changing what is drawn.
+ *
+ * <p>Three passes run in order:
+ * <ol>
+ *     <li>vertex cache: the triangles of every submesh are reordered with Tom Forsyth's linear-speed algorithm, so
+ *     consecutive triangles share recently transformed vertices;</li>
+ *     <li>overdraw (optional): the cache friendly sequence is cut into clusters where the cache would be cold anyway
+ *     or where cutting costs little, and the clusters are sorted to draw outward facing parts of the model
+ *     first;</li>
+ *     <li>vertex fetch: vertices are renumbered in the order the index buffer first uses them, so the vertex buffer
+ *     is read front to back.</li>
+ * </ol>
+ *
+ * <p>Triangles never move between submeshes, so material ranges stay valid. The effect is measured with a simulated
+ * FIFO post-transform cache, see {@link #analyze(int[], int, int, int, int)}.
+ */
+public class MeshOptimizer {
+
+    /**
+     * Cache size assumed by the Forsyth scoring; larger than most hardware caches on purpose, as recommended.
+     */
+    private static final int SCORING_CACHE_SIZE = 32;
+
+    /**
+     * FIFO cache size used for the ACMR / ATVR figures and for finding cluster boundaries.
+     */
+    public static final int SIMULATED_CACHE_SIZE = 16;
+
+    /**
+     * Default for {@link #optimize(MeshData, float, Stats)}: clusters may cost up to 5% more cache misses.
+     */
+    public static final float DEFAULT_OVERDRAW_THRESHOLD = 1.05f;
+
+    private static final float CACHE_DECAY_POWER = 1.5f;
+
+    private static final float LAST_TRIANGLE_SCORE = 0.75f;
+
+    private static final float VALENCE_BOOST_SCALE = 2.0f;
+
+    private static final float VALENCE_BOOST_POWER = 0.5f;
+
+    /**
+     * Score of a vertex by position in the scoring cache; the extra entries hold vertices pushed out while a
+     * triangle is added.
+     */
+    private static final float[] CACHE_SCORES = new float[SCORING_CACHE_SIZE + 3];
+
+    /**
+     * Valence boost by number of triangles still to emit.
+     */
+    private static final float[] VALENCE_SCORES = new float[64];
+
+    static {
+        for (int position = 0; position < CACHE_SCORES.length; position++) {
+            if (position >= SCORING_CACHE_SIZE) {
+                CACHE_SCORES[position] = 0;
+            } else if (position < 3) {
+                // the vertices of the last triangle get a fixed score so the next one does not simply reuse its edge
+                CACHE_SCORES[position] = LAST_TRIANGLE_SCORE;
+            } else {
+                float scale = 1f / (SCORING_CACHE_SIZE - 3);
+                CACHE_SCORES[position] = (float) Math.pow(1f - (position - 3) * scale, CACHE_DECAY_POWER);
+            }
+        }
+        for (int valence = 1; valence < VALENCE_SCORES.length; valence++) {
+            VALENCE_SCORES[valence] = VALENCE_BOOST_SCALE * (float) Math.pow(valence, -VALENCE_BOOST_POWER);
+        }
+    }
+
+    public static MeshData optimize(MeshData meshData) {
+        return optimize(meshData, DEFAULT_OVERDRAW_THRESHOLD, null);
+    }
+
+    /**
+     * @param overdrawThreshold
+     * 		how much worse than the cache optimal order the overdraw order may get, e.g. 1.05; {@code 0} skips the
+     * 		overdraw pass.
+     * @param stats
+     * 		optional, receives the cache figures before and after.
+     */
+    public static MeshData optimize(MeshData meshData, float overdrawThreshold, Stats stats) {
+        int vertexCount = meshData.getVertexCount();
+        int[] indices = meshData.getIndices().clone();
+        if (stats != null) {
+            stats.before = analyze(meshData.getIndices(), 0, indices.length, vertexCount, SIMULATED_CACHE_SIZE);
+        }
+
+        MeshOptimizer optimizer = new MeshOptimizer(vertexCount);
+        for (SubMesh subMesh : meshData.getSubMeshes()) {
+            optimizer.optimizeVertexCache(indices, subMesh.getFirstIndex(), subMesh.getIndexCount());
+            if (overdrawThreshold > 0) {
+                optimizer.optimizeOverdraw(indices, subMesh.getFirstIndex(), subMesh.getIndexCount(),
+                        meshData.getPositions(), overdrawThreshold);
+            }
+        }
+        MeshData result = optimizeVertexFetch(meshData, indices);
+
+        if (stats != null) {
+            stats.after = analyze(result.getIndices(), 0, indices.length, result.getVertexCount(), SIMULATED_CACHE_SIZE);
+        }
+        return result;
+    }
+
+    /**
+     * Per vertex state, shared by all submeshes of one mesh and reset after each.
+     */
+    private final int[] remaining;
+
+    private final int[] adjacencyStart;
+
+    private final int[] adjacencyFill;
+
+    private final int[] cachePosition;
+
+    private final float[] vertexScore;
+
+    private MeshOptimizer(int vertexCount) {
+        remaining = new int[vertexCount];
+        adjacencyStart = new int[vertexCount];
+        adjacencyFill = new int[vertexCount];
+        cachePosition = new int[vertexCount];
+        vertexScore = new float[vertexCount];
+    }
+
+    private static float score(int cachePosition, int remaining) {
+        if (remaining == 0) {
+            // nothing left to draw with this vertex
+            return -1;
+        }
+        float score = cachePosition < 0 ? 0 : CACHE_SCORES[cachePosition];
+        return score + VALENCE_SCORES[Math.min(remaining, VALENCE_SCORES.length - 1)];
+    }
+
+    private void optimizeVertexCache(int[] indices, int first, int count) {
+        int triangleCount = count / 3;
+        if (triangleCount < 2) {
+            return;
+        }
+
+        // vertex -> triangles adjacency in compressed rows
+        GrowableIntArray rangeVertices = new GrowableIntArray(Math.max(16, count / 3));
+        for (int i = first; i < first + count; i++) {
+            if (remaining[indices[i]]++ == 0) {
+                rangeVertices.add(indices[i]);
+            }
+        }
+        int offset = 0;
+        for (int i = 0; i < rangeVertices.size(); i++) {
+            int vertex = rangeVertices.get(i);
+            adjacencyStart[vertex] = offset;
+            offset += remaining[vertex];
+            cachePosition[vertex] = -1;
+            vertexScore[vertex] = score(-1, remaining[vertex]);
+        }
+        int[] adjacency = new int[count];
+        for (int i = 0; i < count; i++) {
+            int vertex = indices[first + i];
+            adjacency[adjacencyStart[vertex] + adjacencyFill[vertex]++] = i / 3;
+        }
+
+        float[] triangleScore = new float[triangleCount];
+        boolean[] emitted = new boolean[triangleCount];
+        int best = 0;
+        for (int triangle = 0; triangle < triangleCount; triangle++) {
+            int base = first + triangle * 3;
+            triangleScore[triangle] = vertexScore[indices[base]] + vertexScore[indices[base + 1]]
+                    + vertexScore[indices[base + 2]];
+            if (triangleScore[triangle] > triangleScore[best]) {
+                best = triangle;
+            }
+        }
+
+        int[] output = new int[count];
+        int[] cache = new int[SCORING_CACHE_SIZE + 3];
+        int[] nextCache = new int[SCORING_CACHE_SIZE + 3];
+        int cacheSize = 0;
+        int scanCursor = 0;
+        for (int emittedCount = 0; emittedCount < triangleCount; emittedCount++) {
+            if (best < 0) {
+                // nothing adjacent to the cache is left: continue with the next triangle in input order
+                while (emitted[scanCursor]) {
+                    scanCursor++;
+                }
+                best = scanCursor;
+            }
+            emitted[best] = true;
+            int base = first + best * 3;
+            int a = indices[base];
+            int b = indices[base + 1];
+            int c = indices[base + 2];
+            output[emittedCount * 3] = a;
+            output[emittedCount * 3 + 1] = b;
+            output[emittedCount * 3 + 2] = c;
+
+            // drop the triangle from the adjacency rows of its vertices
+            for (int corner = 0; corner < 3; corner++) {
+                int vertex = indices[base + corner];
+                int rowStart = adjacencyStart[vertex];
+                int rowEnd = rowStart + remaining[vertex];
+                for (int i = rowStart; i < rowEnd; i++) {
+                    if (adjacency[i] == best) {
+                        adjacency[i] = adjacency[rowEnd - 1];
+                        break;
+                    }
+                }
+                remaining[vertex]--;
+            }
+
+            // the triangle's vertices move to the front of the cache, the rest shifts back
+            int nextSize = 0;
+            nextCache[nextSize++] = a;
+            if (b != a) {
+                nextCache[nextSize++] = b;
+            }
+            if (c != a && c != b) {
+                nextCache[nextSize++] = c;
+            }
+            for (int i = 0; i < cacheSize; i++) {
+                int vertex = cache[i];
+                if (vertex != a && vertex != b && vertex != c) {
+                    nextCache[nextSize++] = vertex;
+                }
+            }
+            int[] swap = cache;
+            cache = nextCache;
+            nextCache = swap;
+
+            // rescore the cached vertices and the triangles they still belong to, including those just pushed out
+            for (int i = 0; i < nextSize; i++) {
+                int vertex = cache[i];
+                int position = i < SCORING_CACHE_SIZE ? i : -1;
+                cachePosition[vertex] = position;
+                float newScore = score(position, remaining[vertex]);
+                float delta = newScore - vertexScore[vertex];
+                vertexScore[vertex] = newScore;
+                int rowStart = adjacencyStart[vertex];
+                for (int j = rowStart; j < rowStart + remaining[vertex]; j++) {
+                    triangleScore[adjacency[j]] += delta;
+                }
+            }
+            cacheSize = Math.min(nextSize, SCORING_CACHE_SIZE);
+
+            // the next triangle is the best one touching the cache
+            best = -1;
+            float bestScore = -Float.MAX_VALUE;
+            for (int i = 0; i < cacheSize; i++) {
+                int vertex = cache[i];
+                int rowStart = adjacencyStart[vertex];
+                for (int j = rowStart; j < rowStart + remaining[vertex]; j++) {
+                    int triangle = adjacency[j];
+                    if (triangleScore[triangle] > bestScore) {
+                        bestScore = triangleScore[triangle];
+                        best = triangle;
+                    }
+                }
+            }
+        }
+        System.arraycopy(output, 0, indices, first, count);
+
+        for (int i = 0; i < rangeVertices.size(); i++) {
+            adjacencyFill[rangeVertices.get(i)] = 0;
+        }
+    }
+
+    private void optimizeOverdraw(int[] indices, int first, int count, float[] positions, float threshold) {
+        int triangleCount = count / 3;
+        if (triangleCount < 2) {
+            return;
+        }
+        FifoCache fifo = new FifoCache(SIMULATED_CACHE_SIZE);
+
+        // hard boundaries: triangles that miss the cache with all three vertices start afresh anyway
+        GrowableIntArray hardStarts = new GrowableIntArray();
+        for (int triangle = 0; triangle < triangleCount; triangle++) {
+            if (fifo.accessTriangle(indices, first + triangle * 3) == 3) {
+                hardStarts.add(triangle);
+            }
+        }
+        hardStarts.add(triangleCount);
+
+        // soft boundaries: cut a hard cluster, starting every piece cold, as soon as the piece's miss ratio is within
+        // the threshold of what the whole cluster achieves
+        GrowableIntArray clusterStarts = new GrowableIntArray();
+        for (int h = 0; h + 1 < hardStarts.size(); h++) {
+            int from = hardStarts.get(h);
+            int to = hardStarts.get(h + 1);
+            fifo.clear();
+            int clusterMisses = 0;
+            for (int triangle = from; triangle < to; triangle++) {
+                clusterMisses += fifo.accessTriangle(indices, first + triangle * 3);
+            }
+            float target = (float) clusterMisses / (to - from) * threshold;
+
+            fifo.clear();
+            int start = from;
+            int misses = 0;
+            clusterStarts.add(start);
+            for (int triangle = from; triangle + 1 < to; triangle++) {
+                misses += fifo.accessTriangle(indices, first + triangle * 3);
+                if (misses <= target * (triangle + 1 - start)) {
+                    start = triangle + 1;
+                    clusterStarts.add(start);
+                    misses = 0;
+                    fifo.clear();
+                }
+            }
+        }
+        int clusterCount = clusterStarts.size();
+        clusterStarts.add(triangleCount);
+        if (clusterCount < 2) {
+            return;
+        }
+
+        // mesh centroid of the range, then per cluster: area weighted centroid and normal
+        double meshX = 0;
+        double meshY = 0;
+        double meshZ = 0;
+        for (int i = first; i < first + count; i++) {
+            int vertex = indices[i] * 3;
+            meshX += positions[vertex];
+            meshY += positions[vertex + 1];
+            meshZ += positions[vertex + 2];
+        }
+        meshX /= count;
+        meshY /= count;
+        meshZ /= count;
+
+        long[] keys = new long[clusterCount];
+        for (int cluster = 0; cluster < clusterCount; cluster++) {
+            double centroidX = 0;
+            double centroidY = 0;
+            double centroidZ = 0;
+            double normalX = 0;
+            double normalY = 0;
+            double normalZ = 0;
+            double area = 0;
+            for (int triangle = clusterStarts.get(cluster); triangle < clusterStarts.get(cluster + 1); triangle++) {
+                int a = indices[first + triangle * 3] * 3;
+                int b = indices[first + triangle * 3 + 1] * 3;
+                int c = indices[first + triangle * 3 + 2] * 3;
+                double abX = positions[b] - positions[a];
+                double abY = positions[b + 1] - positions[a + 1];
+                double abZ = positions[b + 2] - positions[a + 2];
+                double acX = positions[c] - positions[a];
+                double acY = positions[c + 1] - positions[a + 1];
+                double acZ = positions[c + 2] - positions[a + 2];
+                double crossX = abY * acZ - abZ * acY;
+                double crossY = abZ * acX - abX * acZ;
+                double crossZ = abX * acY - abY * acX;
+                double triangleArea = Math.sqrt(crossX * crossX + crossY * crossY + crossZ * crossZ);
+                centroidX += (positions[a] + positions[b] + positions[c]) / 3.0 * triangleArea;
+                centroidY += (positions[a + 1] + positions[b + 1] + positions[c + 1]) / 3.0 * triangleArea;
+                centroidZ += (positions[a + 2] + positions[b + 2] + positions[c + 2]) / 3.0 * triangleArea;
+                normalX += crossX;
+                normalY += crossY;
+                normalZ += crossZ;
+                area += triangleArea;
+            }
+            double normalLength = Math.sqrt(normalX * normalX + normalY * normalY + normalZ * normalZ);
+            float outwardness = 0;
+            if (area > 0 && normalLength > 0) {
+                outwardness = (float) (((centroidX / area - meshX) * normalX
+                        + (centroidY / area - meshY) * normalY
+                        + (centroidZ / area - meshZ) * normalZ) / normalLength);
+            }
+            // the engine winds clockwise, so its cross products point inward: most negative means most outward
+            keys[cluster] = ((long) sortableBits(outwardness) << 32) | cluster;
+        }
+        Arrays.sort(keys);
+
+        int[] reordered = new int[count];
+        int cursor = 0;
+        for (long key : keys) {
+            int cluster = (int) key;
+            int from = first + clusterStarts.get(cluster) * 3;
+            int length = (clusterStarts.get(cluster + 1) - clusterStarts.get(cluster)) * 3;
+            System.arraycopy(indices, from, reordered, cursor, length);
+            cursor += length;
+        }
+        System.arraycopy(reordered, 0, indices, first, count);
+    }
+
+    /**
+     * Float bits as an {@code int} that sorts like the float itself.
+     */
+    private static int sortableBits(float value) {
+        int bits = Float.floatToIntBits(value);
+        return bits ^ ((bits >> 31) & 0x7FFFFFFF);
+    }
+
+    /**
+     * Renumbers vertices in order of first use; vertices no index refers to are dropped.
+     */
+    private static MeshData optimizeVertexFetch(MeshData meshData, int[] indices) {
+        int[] remap = new int[meshData.getVertexCount()];
+        Arrays.fill(remap, -1);
+        int next = 0;
+        for (int i = 0; i < indices.length; i++) {
+            int vertex = indices[i];
+            if (remap[vertex] < 0) {
+                remap[vertex] = next++;
+            }
+            indices[i] = remap[vertex];
+        }
+
+        float[] positions = new float[next * 3];
+        float[] textCoords = new float[next * 2];
+        float[] normals = new float[next * 3];
+        for (int vertex = 0; vertex < remap.length; vertex++) {
+            int target = remap[vertex];
+            if (target >= 0) {
+                System.arraycopy(meshData.getPositions(), vertex * 3, positions, target * 3, 3);
+                System.arraycopy(meshData.getTextCoords(), vertex * 2, textCoords, target * 2, 2);
+                System.arraycopy(meshData.getNormals(), vertex * 3, normals, target * 3, 3);
+            }
+        }
+        return new MeshData(positions, textCoords, normals, indices, meshData.getSubMeshes(),
+                meshData.getMaterialLibraries());
+    }
+
+    /**
+     * Simulates a FIFO post-transform cache over an index range.
+     *
+     * @return transformed vertex count, triangle count and distinct vertex count of the range.
+     */
+    public static CacheFigures analyze(int[] indices, int first, int count, int vertexCount, int cacheSize) {
+        FifoCache fifo = new FifoCache(cacheSize);
+        boolean[] seen = new boolean[vertexCount];
+        int transformed = 0;
+        int distinct = 0;
+        for (int i = first; i < first + count; i++) {
+            int vertex = indices[i];
+            if (!seen[vertex]) {
+                seen[vertex] = true;
+                distinct++;
+            }
+            transformed += fifo.access(vertex);
+        }
+        return new CacheFigures(transformed, count / 3, distinct);
+    }
+
+    /**
+     * Post-transform cache model: a vertex that misses is shaded and replaces the oldest entry.
+     */
+    private static class FifoCache {
+
+        private final int[] entries;
+
+        private int head;
+
+        FifoCache(int size) {
+            entries = new int[size];
+            clear();
+        }
+
+        void clear() {
+            Arrays.fill(entries, -1);
+            head = 0;
+        }
+
+        /**
+         * @return 1 on a miss, 0 on a hit.
+         */
+        int access(int vertex) {
+            for (int entry : entries) {
+                if (entry == vertex) {
+                    return 0;
+                }
+            }
+            entries[head] = vertex;
+            head = (head + 1) % entries.length;
+            return 1;
+        }
+
+        int accessTriangle(int[] indices, int base) {
+            return access(indices[base]) + access(indices[base + 1]) + access(indices[base + 2]);
+        }
+    }
+
+    /**
+     * Result of {@link #analyze(int[], int, int, int, int)}.
+     */
+    public static class CacheFigures {
+
+        private final int transformedVertices;
+
+        private final int triangles;
+
+        private final int vertices;
+
+        CacheFigures(int transformedVertices, int triangles, int vertices) {
+            this.transformedVertices = transformedVertices;
+            this.triangles = triangles;
+            this.vertices = vertices;
+        }
+
+        /**
+         * Number of vertex shader invocations.
+         */
+        public int getTransformedVertices() {
+            return transformedVertices;
+        }
+
+        /**
+         * Average cache miss ratio: transformed vertices per triangle, 0.5 at best and 3 at worst.
+         */
+        public double getAcmr() {
+            return triangles == 0 ? 0 : (double) transformedVertices / triangles;
+        }
+
+        /**
+         * Average transformed to vertex ratio: 1 means every vertex is shaded exactly once.
+         */
+        public double getAtvr() {
+            return vertices == 0 ? 0 : (double) transformedVertices / vertices;
+        }
+    }
+
+    /**
+     * Cache figures of an optimization run.
+     */
+    public static class Stats {
+
+        private CacheFigures before;
+
+        private CacheFigures after;
+
+        public CacheFigures getBefore() {
+            return before;
+        }
+
+        public CacheFigures getAfter() {
+            return after;
+        }
+
+        @Override
+        public String toString() {
+            if (before == null || after == null) {
+                return "no optimization recorded";
+            }
+            return String.format(Locale.ROOT, "FIFO %d: ACMR %.3f -> %.3f, ATVR %.3f -> %.3f",
+                    SIMULATED_CACHE_SIZE, before.getAcmr(), after.getAcmr(), before.getAtvr(), after.getAtvr());
+        }
+    }
+}
@@ -0,0 +1,699 @@
+package com.xenosnowfox.engine.graphics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Simplifies a loaded mesh by collapsing edges in order of their quadric error (Garland and Heckbert), to generate
+ * levels of detail.
+ *
+ * <p>A collapse moves one position onto a neighbouring one and keeps the vertices already there, so no vertex
+ * attributes are invented. Vertices that share a position but differ in texture coordinates or normals, at UV seams
+ * and hard edges, move together: a collapse is only made if each of them has a counterpart along the collapsed edge,
+ * which keeps seams and creases where they are. Open borders and the borders between submeshes only collapse along
+ * themselves, and carry extra quadrics that keep them straight. Triangles never change submesh.
+ *
+ * <p>Collapses run in passes: the candidate edges are sorted by error and applied cheapest first, skipping any edge
+ * whose surroundings already changed in the same pass, until the target triangle count or the error limit is
+ * reached.
+ */
+public class MeshSimplifier {
+
+    /**
+     * Weight of the planes keeping borders in place, relative to the planes of the triangles.
+     */
+    private static final double BORDER_WEIGHT = 10.0;
+
+    /**
+     * Smallest cosine between a triangle normal before and after a collapse; anything that turns further is treated
+     * as a fold.
+     */
+    private static final double MIN_NORMAL_COSINE = 0.25;
+
+    /**
+     * A level keeps at most this share of the previous level's triangles, or the chain ends.
+     */
+    private static final float MIN_LEVEL_REDUCTION = 0.9f;
+
+    private static final int MAX_PASSES = 200;
+
+    private static final int QUADRIC_SIZE = 11;
+
+    private static final byte INTERIOR = 0;
+
+    private static final byte BORDER = 1;
+
+    private static final byte LOCKED = 2;
+
+    /**
+     * Simplifies a mesh to about {@code targetIndexCount} indices, stopping early where the next collapse would move
+     * the surface further than {@code maxError}.
+     *
+     * @param maxError
+     * 		in model units.
+     * @param stats
+     * 		optional, receives the triangle counts and error of this run.
+     */
+    public static MeshData simplify(MeshData meshData, int targetIndexCount, float maxError, Stats stats) {
+        MeshSimplifier simplifier = new MeshSimplifier(meshData);
+        simplifier.run(targetIndexCount / 3, (double) maxError * maxError);
+        if (stats != null) {
+            stats.trianglesBefore = meshData.getIndexCount() / 3;
+            stats.trianglesAfter = simplifier.triangleCount;
+            stats.error = (float) Math.sqrt(simplifier.maxCost);
+            stats.passes = simplifier.passes;
+        }
+        return simplifier.toMeshData();
+    }
+
+    /**
+     * Generates a chain of levels, each simplified from the full mesh to {@code ratio} of the previous level's
+     * triangles. The chain ends after {@code maxLevels} levels, or earlier once the error limit stops a level from
+     * being meaningfully smaller than the one before.
+     *
+     * @param maxRelativeError
+     * 		largest error allowed, relative to the diagonal of the mesh bounds.
+     * @return the levels from full detail down, starting with the given mesh itself.
+     */
+    public static List<Level> generateLods(MeshData meshData, int maxLevels, float ratio, float maxRelativeError) {
+        float[] bounds = MeshCache.computeBounds(meshData.getPositions());
+        float diagonal = (float) Math.sqrt(square(bounds[3] - bounds[0]) + square(bounds[4] - bounds[1])
+                + square(bounds[5] - bounds[2]));
+
+        List<Level> levels = new ArrayList<>();
+        levels.add(new Level(meshData, 0f));
+        float target = meshData.getIndexCount();
+        while (levels.size() < maxLevels) {
+            Level previous = levels.get(levels.size() - 1);
+            target *= ratio;
+            Stats stats = new Stats();
+            MeshData simplified = simplify(meshData, (int) target, maxRelativeError * diagonal, stats);
+            if (simplified.getIndexCount() > previous.getMeshData().getIndexCount() * MIN_LEVEL_REDUCTION) {
+                break;
+            }
+            levels.add(new Level(simplified, Math.max(previous.getError(), stats.getError())));
+        }
+        return levels;
+    }
+
+    private static float square(float value) {
+        return value * value;
+    }
+
+    private final MeshData source;
+
+    private final float[] positions;
+
+    /**
+     * Lowest vertex with the same position as each vertex; identifies positions.
+     */
+    private final int[] positionOf;
+
+    /**
+     * Next vertex with the same position, in a circular list per position.
+     */
+    private final int[] nextWedge;
+
+    private final int[] remap;
+
+    private final double[] quadrics;
+
+    private final byte[] kinds;
+
+    private final int[] touched;
+
+    /**
+     * Vertex of the collapse target each vertex of the collapsing position moves to, while checking a collapse.
+     */
+    private final int[] wedgeTarget;
+
+    private final int[] indices;
+
+    private final int[] triangleSubMeshes;
+
+    /**
+     * Triangles in the index buffer.
+     */
+    private int bufferTriangles;
+
+    /**
+     * Triangles left once the collapses of the current pass are applied.
+     */
+    private int triangleCount;
+
+    /**
+     * Live triangles around every position, in compressed rows.
+     */
+    private final int[] adjacencyStart;
+
+    private int[] adjacency;
+
+    private double maxCost;
+
+    private int passes;
+
+    private MeshSimplifier(MeshData meshData) {
+        source = meshData;
+        positions = meshData.getPositions();
+        int vertexCount = meshData.getVertexCount();
+        positionOf = new int[vertexCount];
+        nextWedge = new int[vertexCount];
+        remap = new int[vertexCount];
+        quadrics = new double[vertexCount * QUADRIC_SIZE];
+        kinds = new byte[vertexCount];
+        touched = new int[vertexCount];
+        wedgeTarget = new int[vertexCount];
+        adjacencyStart = new int[vertexCount + 1];
+        Arrays.fill(wedgeTarget, -1);
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            remap[vertex] = vertex;
+        }
+
+        indices = meshData.getIndices().clone();
+        bufferTriangles = indices.length / 3;
+        triangleCount = bufferTriangles;
+        triangleSubMeshes = new int[triangleCount];
+        SubMesh[] subMeshes = meshData.getSubMeshes();
+        for (int subMesh = 0; subMesh < subMeshes.length; subMesh++) {
+            int first = subMeshes[subMesh].getFirstIndex() / 3;
+            Arrays.fill(triangleSubMeshes, first, first + subMeshes[subMesh].getIndexCount() / 3, subMesh);
+        }
+
+        linkPositions(vertexCount);
+        buildAdjacency();
+        classify();
+        addQuadrics();
+    }
+
+    /**
+     * Finds the vertices sharing a position by hashing the position bits.
+     */
+    private void linkPositions(int vertexCount) {
+        int size = Integer.highestOneBit(Math.max(2, vertexCount * 2 - 1)) << 1;
+        int mask = size - 1;
+        int[] table = new int[size];
+        Arrays.fill(table, -1);
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            int hash = (bits(vertex, 0) * 73856093) ^ (bits(vertex, 1) * 19349663) ^ (bits(vertex, 2) * 83492791);
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (table[slot] >= 0 && !samePosition(table[slot], vertex)) {
+                slot = (slot + 1) & mask;
+            }
+            if (table[slot] < 0) {
+                table[slot] = vertex;
+                positionOf[vertex] = vertex;
+                nextWedge[vertex] = vertex;
+            } else {
+                int first = table[slot];
+                positionOf[vertex] = first;
+                nextWedge[vertex] = nextWedge[first];
+                nextWedge[first] = vertex;
+            }
+        }
+    }
+
+    private int bits(int vertex, int axis) {
+        // adding zero turns -0 into +0
+        return Float.floatToIntBits(positions[vertex * 3 + axis] + 0f);
+    }
+
+    private boolean samePosition(int a, int b) {
+        return bits(a, 0) == bits(b, 0) && bits(a, 1) == bits(b, 1) && bits(a, 2) == bits(b, 2);
+    }
+
+    private void buildAdjacency() {
+        Arrays.fill(adjacencyStart, 0);
+        for (int i = 0; i < bufferTriangles * 3; i++) {
+            adjacencyStart[positionOf[indices[i]] + 1]++;
+        }
+        for (int position = 0; position < positionOf.length; position++) {
+            adjacencyStart[position + 1] += adjacencyStart[position];
+        }
+        if (adjacency == null || adjacency.length < bufferTriangles * 3) {
+            adjacency = new int[bufferTriangles * 3];
+        }
+        int[] fill = touched;
+        System.arraycopy(adjacencyStart, 0, fill, 0, positionOf.length);
+        for (int i = 0; i < bufferTriangles * 3; i++) {
+            adjacency[fill[positionOf[indices[i]]]++] = i / 3;
+        }
+        Arrays.fill(touched, -1);
+    }
+
+    /**
+     * Marks positions on an open or submesh border, and locks positions with an edge shared by more than two
+     * triangles.
+     */
+    private void classify() {
+        for (int position = 0; position < positionOf.length; position++) {
+            if (positionOf[position] != position) {
+                continue;
+            }
+            byte kind = INTERIOR;
+            for (int i = adjacencyStart[position]; i < adjacencyStart[position + 1] && kind != LOCKED; i++) {
+                int base = adjacency[i] * 3;
+                for (int corner = 0; corner < 3; corner++) {
+                    int other = positionOf[indices[base + corner]];
+                    if (other != position) {
+                        int edge = edgeKind(position, other);
+                        kind = (byte) Math.max(kind, edge);
+                    }
+                }
+            }
+            kinds[position] = kind;
+        }
+    }
+
+    /**
+     * {@link #INTERIOR} for an edge between two triangles of one submesh, {@link #BORDER} for an open edge or one
+     * between submeshes, {@link #LOCKED} for an edge shared by more triangles.
+     */
+    private byte edgeKind(int from, int to) {
+        int count = 0;
+        int subMesh = -1;
+        boolean mixed = false;
+        for (int i = adjacencyStart[from]; i < adjacencyStart[from + 1]; i++) {
+            int triangle = adjacency[i];
+            if (contains(triangle, to)) {
+                count++;
+                mixed |= subMesh >= 0 && triangleSubMeshes[triangle] != subMesh;
+                subMesh = triangleSubMeshes[triangle];
+            }
+        }
+        if (count > 2) {
+            return LOCKED;
+        }
+        return count == 1 || mixed ? BORDER : INTERIOR;
+    }
+
+    private boolean contains(int triangle, int position) {
+        int base = triangle * 3;
+        return positionOf[indices[base]] == position || positionOf[indices[base + 1]] == position
+                || positionOf[indices[base + 2]] == position;
+    }
+
+    /**
+     * Area weighted triangle planes at every position, plus a plane through every border edge perpendicular to its
+     * triangle.
+     */
+    private void addQuadrics() {
+        double[] normal = new double[3];
+        for (int triangle = 0; triangle < bufferTriangles; triangle++) {
+            int base = triangle * 3;
+            double area = normal(positionOf[indices[base]], positionOf[indices[base + 1]],
+                    positionOf[indices[base + 2]], -1, -1, normal);
+            if (area == 0) {
+                continue;
+            }
+            for (int corner = 0; corner < 3; corner++) {
+                int position = positionOf[indices[base + corner]];
+                addPlane(position, normal[0], normal[1], normal[2], position, area);
+            }
+            for (int corner = 0; corner < 3; corner++) {
+                int from = positionOf[indices[base + corner]];
+                int to = positionOf[indices[base + (corner + 1) % 3]];
+                if (edgeKind(from, to) != BORDER) {
+                    continue;
+                }
+                double ex = positions[to * 3] - positions[from * 3];
+                double ey = positions[to * 3 + 1] - positions[from * 3 + 1];
+                double ez = positions[to * 3 + 2] - positions[from * 3 + 2];
+                double length = Math.sqrt(ex * ex + ey * ey + ez * ez);
+                if (length == 0) {
+                    continue;
+                }
+                double px = ey * normal[2] - ez * normal[1];
+                double py = ez * normal[0] - ex * normal[2];
+                double pz = ex * normal[1] - ey * normal[0];
+                double weight = BORDER_WEIGHT * length * length;
+                addPlane(from, px / length, py / length, pz / length, from, weight);
+                addPlane(to, px / length, py / length, pz / length, from, weight);
+            }
+        }
+    }
+
+    /**
+     * Adds the plane with a unit normal through the position {@code through} to the quadric of {@code position}.
+     */
+    private void addPlane(int position, double a, double b, double c, int through, double weight) {
+        double d = -(a * positions[through * 3] + b * positions[through * 3 + 1] + c * positions[through * 3 + 2]);
+        int q = position * QUADRIC_SIZE;
+        quadrics[q] += weight * a * a;
+        quadrics[q + 1] += weight * a * b;
+        quadrics[q + 2] += weight * a * c;
+        quadrics[q + 3] += weight * a * d;
+        quadrics[q + 4] += weight * b * b;
+        quadrics[q + 5] += weight * b * c;
+        quadrics[q + 6] += weight * b * d;
+        quadrics[q + 7] += weight * c * c;
+        quadrics[q + 8] += weight * c * d;
+        quadrics[q + 9] += weight * d * d;
+        quadrics[q + 10] += weight;
+    }
+
+    /**
+     * Weighted mean squared distance of a position to the planes of two quadrics together.
+     */
+    private double cost(int from, int to) {
+        double x = positions[to * 3];
+        double y = positions[to * 3 + 1];
+        double z = positions[to * 3 + 2];
+        double error = evaluate(from * QUADRIC_SIZE, x, y, z) + evaluate(to * QUADRIC_SIZE, x, y, z);
+        double weight = quadrics[from * QUADRIC_SIZE + 10] + quadrics[to * QUADRIC_SIZE + 10];
+        return weight > 0 ? Math.max(0, error / weight) : 0;
+    }
+
+    private double evaluate(int q, double x, double y, double z) {
+        return quadrics[q] * x * x + 2 * quadrics[q + 1] * x * y + 2 * quadrics[q + 2] * x * z
+                + 2 * quadrics[q + 3] * x + quadrics[q + 4] * y * y + 2 * quadrics[q + 5] * y * z
+                + 2 * quadrics[q + 6] * y + quadrics[q + 7] * z * z + 2 * quadrics[q + 8] * z + quadrics[q + 9];
+    }
+
+    private void run(int targetTriangles, double maxCostAllowed) {
+        GrowableIntArray froms = new GrowableIntArray(256);
+        GrowableIntArray tos = new GrowableIntArray(256);
+        GrowableFloatArray costs = new GrowableFloatArray(256);
+        long[] order = new long[0];
+        while (triangleCount > targetTriangles && passes < MAX_PASSES) {
+            passes++;
+            // candidate collapses of this pass, each edge in its cheaper valid direction
+            froms.clear();
+            tos.clear();
+            costs.clear();
+            for (int i = 0; i < bufferTriangles * 3; i++) {
+                int from = positionOf[indices[i]];
+                int to = positionOf[indices[i - i % 3 + (i + 1) % 3]];
+                if (from > to) {
+                    continue;
+                }
+                double forward = canCollapse(from, to, false) ? cost(from, to) : Double.MAX_VALUE;
+                double backward = canCollapse(to, from, false) ? cost(to, from) : Double.MAX_VALUE;
+                double best = Math.min(forward, backward);
+                if (best <= maxCostAllowed) {
+                    froms.add(forward <= backward ? from : to);
+                    tos.add(forward <= backward ? to : from);
+                    costs.add((float) best);
+                }
+            }
+            if (froms.size() == 0) {
+                break;
+            }
+            if (order.length < froms.size()) {
+                order = new long[froms.size()];
+            }
+            for (int i = 0; i < froms.size(); i++) {
+                order[i] = (long) Float.floatToIntBits(costs.get(i)) << 32 | i;
+            }
+            Arrays.sort(order, 0, froms.size());
+
+            int collapses = 0;
+            for (int i = 0; i < froms.size() && triangleCount > targetTriangles; i++) {
+                int candidate = (int) order[i];
+                int from = froms.get(candidate);
+                int to = tos.get(candidate);
+                if (touched[from] == passes || touched[to] == passes || !canCollapse(from, to, true)) {
+                    continue;
+                }
+                collapse(from, to);
+                maxCost = Math.max(maxCost, costs.get(candidate));
+                collapses++;
+            }
+            compact();
+            if (collapses == 0) {
+                break;
+            }
+            buildAdjacency();
+        }
+    }
+
+    /**
+     * Whether moving {@code from} onto {@code to} keeps borders, seams and triangle orientation. With {@code keep},
+     * the vertex each vertex of {@code from} moves to is left in {@link #wedgeTarget} for {@link #collapse}.
+     */
+    private boolean canCollapse(int from, int to, boolean keep) {
+        if (kinds[from] == LOCKED || (kinds[from] == BORDER && edgeKind(from, to) != BORDER)) {
+            return false;
+        }
+        boolean valid = true;
+        // every vertex at from needs one counterpart at to, found on the triangles sharing the edge
+        for (int i = adjacencyStart[from]; i < adjacencyStart[from + 1] && valid; i++) {
+            int base = adjacency[i] * 3;
+            int fromVertex = -1;
+            int toVertex = -1;
+            for (int corner = 0; corner < 3; corner++) {
+                int vertex = indices[base + corner];
+                if (positionOf[vertex] == from) {
+                    fromVertex = vertex;
+                } else if (positionOf[vertex] == to) {
+                    toVertex = vertex;
+                }
+            }
+            if (toVertex >= 0) {
+                if (wedgeTarget[fromVertex] < 0) {
+                    wedgeTarget[fromVertex] = toVertex;
+                } else if (wedgeTarget[fromVertex] != toVertex) {
+                    valid = false;
+                }
+            }
+        }
+        double[] before = new double[3];
+        double[] after = new double[3];
+        for (int i = adjacencyStart[from]; i < adjacencyStart[from + 1] && valid; i++) {
+            int triangle = adjacency[i];
+            if (contains(triangle, to)) {
+                continue;
+            }
+            int base = triangle * 3;
+            int a = positionOf[indices[base]];
+            int b = positionOf[indices[base + 1]];
+            int c = positionOf[indices[base + 2]];
+            int fromVertex = a == from ? indices[base] : b == from ? indices[base + 1] : indices[base + 2];
+            if (wedgeTarget[fromVertex] < 0) {
+                // a vertex at from, e.g. across a seam, that has no counterpart at to
+                valid = false;
+                break;
+            }
+            double areaBefore = normal(a, b, c, -1, -1, before);
+            double areaAfter = normal(a, b, c, from, to, after);
+            valid = areaBefore == 0 || (areaAfter > 0 && before[0] * after[0] + before[1] * after[1]
+                    + before[2] * after[2] >= MIN_NORMAL_COSINE);
+        }
+        if (!valid || !keep) {
+            clearWedgeTargets(from);
+        }
+        return valid;
+    }
+
+    private void clearWedgeTargets(int position) {
+        int vertex = position;
+        do {
+            wedgeTarget[vertex] = -1;
+            vertex = nextWedge[vertex];
+        } while (vertex != position);
+    }
+
+    /**
+     * Unit normal of the triangle of three positions, with {@code replace} moved onto {@code with}.
+     *
+     * @return twice the triangle area.
+     */
+    private double normal(int a, int b, int c, int replace, int with, double[] target) {
+        a = a == replace ? with : a;
+        b = b == replace ? with : b;
+        c = c == replace ? with : c;
+        double abx = positions[b * 3] - positions[a * 3];
+        double aby = positions[b * 3 + 1] - positions[a * 3 + 1];
+        double abz = positions[b * 3 + 2] - positions[a * 3 + 2];
+        double acx = positions[c * 3] - positions[a * 3];
+        double acy = positions[c * 3 + 1] - positions[a * 3 + 1];
+        double acz = positions[c * 3 + 2] - positions[a * 3 + 2];
+        double nx = aby * acz - abz * acy;
+        double ny = abz * acx - abx * acz;
+        double nz = abx * acy - aby * acx;
+        double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (length == 0) {
+            target[0] = target[1] = target[2] = 0;
+            return 0;
+        }
+        target[0] = nx / length;
+        target[1] = ny / length;
+        target[2] = nz / length;
+        return length;
+    }
+
+    /**
+     * Moves a position onto another, after {@link #canCollapse(int, int, boolean)} left the vertex targets. Locks the
+     * surroundings for the rest of the pass, as their adjacency and triangles are now out of date.
+     */
+    private void collapse(int from, int to) {
+        int vertex = from;
+        do {
+            if (wedgeTarget[vertex] >= 0) {
+                remap[vertex] = wedgeTarget[vertex];
+            }
+            vertex = nextWedge[vertex];
+        } while (vertex != from);
+        clearWedgeTargets(from);
+
+        for (int i = 0; i < QUADRIC_SIZE; i++) {
+            quadrics[to * QUADRIC_SIZE + i] += quadrics[from * QUADRIC_SIZE + i];
+        }
+        for (int i = adjacencyStart[from]; i < adjacencyStart[from + 1]; i++) {
+            int triangle = adjacency[i];
+            if (contains(triangle, to)) {
+                triangleCount--;
+            }
+            for (int corner = 0; corner < 3; corner++) {
+                touched[positionOf[indices[triangle * 3 + corner]]] = passes;
+            }
+        }
+    }
+
+    /**
+     * Applies the collapses of a pass to the index buffer and drops the triangles that became degenerate.
+     */
+    private void compact() {
+        int kept = 0;
+        for (int triangle = 0; triangle < bufferTriangles; triangle++) {
+            int base = triangle * 3;
+            int a = resolve(indices[base]);
+            int b = resolve(indices[base + 1]);
+            int c = resolve(indices[base + 2]);
+            if (positionOf[a] == positionOf[b] || positionOf[b] == positionOf[c] || positionOf[a] == positionOf[c]) {
+                continue;
+            }
+            indices[kept * 3] = a;
+            indices[kept * 3 + 1] = b;
+            indices[kept * 3 + 2] = c;
+            triangleSubMeshes[kept] = triangleSubMeshes[triangle];
+            kept++;
+        }
+        bufferTriangles = kept;
+        triangleCount = kept;
+    }
+
+    private int resolve(int vertex) {
+        while (remap[vertex] != vertex) {
+            vertex = remap[vertex];
+        }
+        return vertex;
+    }
+
+    /**
+     * The remaining triangles grouped per submesh as before, with their vertices renumbered in order of first use.
+     */
+    private MeshData toMeshData() {
+        SubMesh[] sourceSubMeshes = source.getSubMeshes();
+        int[] firstTriangles = new int[sourceSubMeshes.length + 1];
+        for (int triangle = 0; triangle < triangleCount; triangle++) {
+            firstTriangles[triangleSubMeshes[triangle] + 1]++;
+        }
+        for (int subMesh = 0; subMesh < sourceSubMeshes.length; subMesh++) {
+            firstTriangles[subMesh + 1] += firstTriangles[subMesh];
+        }
+        SubMesh[] subMeshes = new SubMesh[sourceSubMeshes.length];
+        for (int subMesh = 0; subMesh < subMeshes.length; subMesh++) {
+            subMeshes[subMesh] = new SubMesh(firstTriangles[subMesh] * 3,
+                    (firstTriangles[subMesh + 1] - firstTriangles[subMesh]) * 3, sourceSubMeshes[subMesh].getMaterialName());
+            subMeshes[subMesh].setMaterial(sourceSubMeshes[subMesh].getMaterial());
+        }
+
+        int[] vertexMap = new int[positionOf.length];
+        Arrays.fill(vertexMap, -1);
+        int[] outputIndices = new int[triangleCount * 3];
+        int vertexCount = 0;
+        for (int triangle = 0; triangle < triangleCount; triangle++) {
+            int target = firstTriangles[triangleSubMeshes[triangle]]++ * 3;
+            for (int corner = 0; corner < 3; corner++) {
+                int vertex = indices[triangle * 3 + corner];
+                if (vertexMap[vertex] < 0) {
+                    vertexMap[vertex] = vertexCount++;
+                }
+                outputIndices[target + corner] = vertexMap[vertex];
+            }
+        }
+
+        float[] outputPositions = new float[vertexCount * 3];
+        float[] outputTextCoords = new float[vertexCount * 2];
+        float[] outputNormals = new float[vertexCount * 3];
+        float[] textCoords = source.getTextCoords();
+        float[] normals = source.getNormals();
+        for (int vertex = 0; vertex < vertexMap.length; vertex++) {
+            int target = vertexMap[vertex];
+            if (target >= 0) {
+                System.arraycopy(positions, vertex * 3, outputPositions, target * 3, 3);
+                System.arraycopy(textCoords, vertex * 2, outputTextCoords, target * 2, 2);
+                System.arraycopy(normals, vertex * 3, outputNormals, target * 3, 3);
+            }
+        }
+        return new MeshData(outputPositions, outputTextCoords, outputNormals, outputIndices, subMeshes,
+                source.getMaterialLibraries());
+    }
+
+    /**
+     * One level of a chain made by {@link #generateLods(MeshData, int, float, float)}.
+     */
+    public static class Level {
+
+        private final MeshData meshData;
+
+        private final float error;
+
+        Level(MeshData meshData, float error) {
+            this.meshData = meshData;
+            this.error = error;
+        }
+
+        public MeshData getMeshData() {
+            return meshData;
+        }
+
+        /**
+         * Estimated distance between this level's surface and the full mesh, in model units.
+         */
+        public float getError() {
+            return error;
+        }
+    }
+
+    /**
+     * Figures of a simplification run.
+     */
+    public static class Stats {
+
+        private int trianglesBefore;
+
+        private int trianglesAfter;
+
+        private float error;
+
+        private int passes;
+
+        public int getTrianglesBefore() {
+            return trianglesBefore;
+        }
+
+        public int getTrianglesAfter() {
+            return trianglesAfter;
+        }
+
+        /**
+         * Root of the largest quadric error accepted, in model units.
+         */
+        public float getError() {
+            return error;
+        }
+
+        public int getPasses() {
+            return passes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d -> %d triangles, error %.4g, %d passes",
+                    trianglesBefore, trianglesAfter, error, passes);
+        }
+    }
+}
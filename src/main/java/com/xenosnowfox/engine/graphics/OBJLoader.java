@@ -4,20 +4,194 @@ import org.joml.Vector2f;
 import org.joml.Vector3f;
 import spike.lwjglbuildingrenderer.Utils;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class OBJLoader {
 
+    /**
+     * Strategy used to read OBJ text.
+     */
+    public enum Mode {
+        /**
+         * Reads all lines into strings and splits them; kept as the reference implementation. Vertices are keyed on
+         * the position index only, so a position used with different texture coordinates or normals keeps just the
+         * last one.
+         */
+        LEGACY,
+        /**
+         * Tokenizes the memory-mapped bytes straight into primitive arrays, see {@link ObjParser}.
+         */
+        STREAMING,
+        /**
+         * Streams line aligned chunks of the file on the common fork/join pool, see {@link ParallelObjParser}.
+         */
+        PARALLEL
+    }
+
+    /**
+     * Loads a mesh through its binary {@link MeshCache}: a valid cache is memory-mapped and uploaded directly,
+     * otherwise the OBJ file is parsed, run through the {@link MeshOptimizer} and the cache (re)written for the next
+     * run.
+     */
     public static Mesh loadMeshFile(String withFileName) throws Exception {
-        return loadMesh(Utils.readAllFileLines(withFileName));
+        return loadMeshFile(withFileName, (TextureCache) null);
+    }
+
+    /**
+     * Loads a mesh like {@link #loadMeshFile(String)}, acquiring the textures of its materials from a shared cache.
+     *
+     * @param withTextureCache
+     * 		optional, textures are loaded privately without one.
+     */
+    public static Mesh loadMeshFile(String withFileName, TextureCache withTextureCache) throws Exception {
+        MeshCache.CachedMesh cachedMesh = MeshCache.open(withFileName, false);
+        if (cachedMesh != null) {
+            Mesh mesh = new Mesh(cachedMesh);
+            loadMaterials(withFileName, cachedMesh.getMaterialLibraries(), mesh, withTextureCache);
+            return mesh;
+        }
+        MeshData meshData = loadAndCacheMeshData(withFileName);
+        Mesh mesh = new Mesh(meshData);
+        loadMaterials(withFileName, meshData.getMaterialLibraries(), mesh, withTextureCache);
+        return mesh;
+    }
+
+    /**
+     * Parses an OBJ file, optimizes the result for the GPU and writes its {@link MeshCache}; a cache that cannot be
+     * written is reported and skipped.
+     */
+    static MeshData loadAndCacheMeshData(String withFileName) throws Exception {
+        MeshData meshData = MeshOptimizer.optimize(loadMeshDataFile(withFileName, Mode.PARALLEL));
+        try {
+            MeshCache.write(withFileName, meshData);
+        } catch (IOException exception) {
+            System.err.println("Unable to write mesh cache for `" + withFileName + "`: " + exception.getMessage());
+        }
+        return meshData;
+    }
+
+    public static Mesh loadMeshFile(String withFileName, Mode withMode) throws Exception {
+        MeshData meshData = loadMeshDataFile(withFileName, withMode);
+        Mesh mesh = new Mesh(meshData);
+        loadMaterials(withFileName, meshData.getMaterialLibraries(), mesh, null);
+        return mesh;
+    }
+
+    private static void loadMaterials(String withFileName, List<String> withLibraries, Mesh mesh,
+            TextureCache withTextureCache) throws Exception {
+        resolveMaterials(withFileName, withLibraries, mesh.getSubMeshes());
+        if (withTextureCache != null) {
+            loadTextures(mesh.getMaterials(), withTextureCache);
+        } else {
+            loadTextures(mesh.getMaterials());
+        }
+    }
+
+    /**
+     * Reads the MTL files referenced by a model and assigns the materials to its submeshes by name. Does not touch
+     * OpenGL; textures are only located.
+     */
+    public static void resolveMaterials(String withFileName, List<String> withLibraries, SubMesh[] subMeshes)
+            throws Exception {
+        if (withLibraries.isEmpty()) {
+            return;
+        }
+        File directory = new File(withFileName).getAbsoluteFile().getParentFile();
+        Map<String, Material> materials = new HashMap<>();
+        for (String library : withLibraries) {
+            File libraryFile = new File(directory, library);
+            if (!libraryFile.isFile()) {
+                System.err.println("Material library `" + libraryFile + "` not found.");
+                continue;
+            }
+            materials.putAll(MTLLoader.loadMaterialFile(libraryFile.getPath()));
+        }
+        for (SubMesh subMesh : subMeshes) {
+            if (subMesh.getMaterialName() != null) {
+                subMesh.setMaterial(materials.get(subMesh.getMaterialName()));
+            }
+        }
+    }
+
+    /**
+     * Loads the diffuse maps of materials that name one but have no texture yet, sharing textures between
+     * materials that use the same file.
+     */
+    public static void loadTextures(Collection<Material> withMaterials) throws Exception {
+        Map<String, Texture> textures = new HashMap<>();
+        for (Material material : withMaterials) {
+            if (material.getTexture() == null && material.getTextureFile() != null) {
+                Texture texture = textures.get(material.getTextureFile());
+                if (texture == null) {
+                    texture = new Texture(material.getTextureFile());
+                    textures.put(material.getTextureFile(), texture);
+                }
+                material.setTexture(texture);
+            }
+        }
+    }
+
+    /**
+     * Acquires the diffuse maps of materials that name one but have no texture yet from a shared cache, one
+     * reference per material.
+     */
+    public static void loadTextures(Collection<Material> withMaterials, TextureCache withTextureCache) throws Exception {
+        for (Material material : withMaterials) {
+            if (material.getTexture() == null && material.getTextureFile() != null) {
+                material.setTexture(withTextureCache.acquire(material.getTextureFile()));
+            }
+        }
     }
 
     public static Mesh loadMeshResource(String withResourceName) throws Exception {
-        return loadMesh(Utils.readAllLines(withResourceName));
+        return loadMeshResource(withResourceName, Mode.STREAMING);
+    }
+
+    public static Mesh loadMeshResource(String withResourceName, Mode withMode) throws Exception {
+        return new Mesh(loadMeshDataResource(withResourceName, withMode));
+    }
+
+    public static MeshData loadMeshDataFile(String withFileName, Mode withMode) throws Exception {
+        return loadMeshDataFile(withFileName, withMode, null);
+    }
+
+    /**
+     * Loads the CPU-side arrays of a mesh without touching OpenGL. Apart from {@link Mode#LEGACY}, the faces are
+     * welded into one vertex per unique (position, texture coordinate, normal) triple.
+     *
+     * @param withStats
+     * 		optional, receives the welding figures.
+     */
+    public static MeshData loadMeshDataFile(String withFileName, Mode withMode, VertexWelder.Stats withStats)
+            throws Exception {
+        switch (withMode) {
+            case LEGACY:
+                return loadMesh(Utils.readAllFileLines(withFileName));
+            case PARALLEL:
+                return VertexWelder.weld(ParallelObjParser.parseFile(withFileName), withStats);
+            default:
+                return VertexWelder.weld(ObjParser.parseFile(withFileName), withStats);
+        }
+    }
+
+    /**
+     * Resources are not memory-mappable, so {@link Mode#PARALLEL} falls back to {@link Mode#STREAMING} here.
+     */
+    public static MeshData loadMeshDataResource(String withResourceName, Mode withMode) throws Exception {
+        if (withMode == Mode.LEGACY) {
+            return loadMesh(Utils.readAllLines(withResourceName));
+        }
+        return VertexWelder.weld(ObjParser.parse(ByteBuffer.wrap(Utils.readAllBytes(withResourceName))));
     }
 
-    private static Mesh loadMesh(List<String> lines) throws Exception {
+    private static MeshData loadMesh(List<String> lines) throws Exception {
         List<Vector3f> vertices = new ArrayList<>();
         List<Vector2f> textures = new ArrayList<>();
         List<Vector3f> normals = new ArrayList<>();
@@ -61,7 +235,7 @@ public class OBJLoader {
         return reorderLists(vertices, textures, normals, faces);
     }
 
-    private static Mesh reorderLists(List<Vector3f> posList, List<Vector2f> textCoordList,
+    private static MeshData reorderLists(List<Vector3f> posList, List<Vector2f> textCoordList,
             List<Vector3f> normList, List<Face> facesList) {
 
         List<Integer> indices = new ArrayList<>();
@@ -86,8 +260,7 @@ public class OBJLoader {
         }
         int[] indicesArr = new int[indices.size()];
         indicesArr = indices.stream().mapToInt((Integer v) -> v).toArray();
-        Mesh mesh = new Mesh(posArr, textCoordArr, normArr, indicesArr);
-        return mesh;
+        return new MeshData(posArr, textCoordArr, normArr, indicesArr);
     }
 
     private static void processFaceVertex(IdxGroup indices, List<Vector2f> textCoordList,
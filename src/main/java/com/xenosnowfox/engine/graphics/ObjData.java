@@ -0,0 +1,189 @@
+package com.xenosnowfox.engine.graphics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Raw records of a parsed OBJ file, kept in primitive arrays exactly as they were declared.
+ */
+public class ObjData {
+
+    /**
+     * Number of ints stored per face: a (position, texture coordinate, normal) index triple for each of the three
+     * corners.
+     */
+    public static final int FACE_STRIDE = 9;
+
+    public static final int NO_VALUE = -1;
+
+    /**
+     * Most vertices presized for, whatever the size of the file; larger models grow from there.
+     */
+    private static final int MAX_EXPECTED_VERTICES = 1 << 16;
+
+    private final GrowableFloatArray positions;
+
+    private final GrowableFloatArray textCoords;
+
+    private final GrowableFloatArray normals;
+
+    private final GrowableIntArray faces;
+
+    private final GrowableIntArray relativeSlots;
+
+    private final List<String> materialLibraries = new ArrayList<>();
+
+    private final GrowableIntArray materialFaceStarts = new GrowableIntArray(16);
+
+    private final List<String> materialNames = new ArrayList<>();
+
+    private final GrowableIntArray groupFaceStarts = new GrowableIntArray(16);
+
+    private final List<String> groupNames = new ArrayList<>();
+
+    public ObjData() {
+        this(1024);
+    }
+
+    /**
+     * Guesses the vertex count of an OBJ text from its size, at roughly 40 bytes per position line in typical
+     * exports, but never more than {@value #MAX_EXPECTED_VERTICES}: faces are presized at 18 ints per vertex, and the
+     * guess for a file of gigabytes would not fit in memory before the first line is read.
+     */
+    public static int expectedVertices(long bytes) {
+        return (int) Math.min(bytes / 40 + 16, MAX_EXPECTED_VERTICES);
+    }
+
+    public ObjData(int expectedVertices) {
+        positions = new GrowableFloatArray(expectedVertices * 3);
+        textCoords = new GrowableFloatArray(expectedVertices * 2);
+        normals = new GrowableFloatArray(expectedVertices * 3);
+        faces = new GrowableIntArray(expectedVertices * 2 * FACE_STRIDE);
+        relativeSlots = new GrowableIntArray(16);
+    }
+
+    public ObjData(GrowableFloatArray positions, GrowableFloatArray textCoords, GrowableFloatArray normals,
+            GrowableIntArray faces) {
+        this.positions = positions;
+        this.textCoords = textCoords;
+        this.normals = normals;
+        this.faces = faces;
+        this.relativeSlots = new GrowableIntArray(16);
+    }
+
+    /**
+     * Positions as x, y, z triples.
+     */
+    public GrowableFloatArray getPositions() {
+        return positions;
+    }
+
+    /**
+     * Texture coordinates as u, v pairs, exactly as found in the file (not flipped).
+     */
+    public GrowableFloatArray getTextCoords() {
+        return textCoords;
+    }
+
+    /**
+     * Normals as x, y, z triples.
+     */
+    public GrowableFloatArray getNormals() {
+        return normals;
+    }
+
+    /**
+     * Zero based face indices, {@link #FACE_STRIDE} ints per triangle; missing components are {@link #NO_VALUE}.
+     */
+    public GrowableIntArray getFaces() {
+        return faces;
+    }
+
+    /**
+     * Offsets into {@link #getFaces()} of indices that were negative (relative) in the file and still need the
+     * counts of any preceding chunk added; only filled when parsing a chunk in isolation.
+     */
+    public GrowableIntArray getRelativeSlots() {
+        return relativeSlots;
+    }
+
+    /**
+     * Compares the parsed records element by element, using the raw float bits.
+     */
+    public boolean contentEquals(ObjData other) {
+        return equals(positions, other.positions) && equals(textCoords, other.textCoords)
+                && equals(normals, other.normals)
+                && Arrays.equals(faces.array(), 0, faces.size(), other.faces.array(), 0, other.faces.size())
+                && materialLibraries.equals(other.materialLibraries)
+                && materialNames.equals(other.materialNames)
+                && Arrays.equals(materialFaceStarts.toArray(), other.materialFaceStarts.toArray())
+                && groupNames.equals(other.groupNames)
+                && Arrays.equals(groupFaceStarts.toArray(), other.groupFaceStarts.toArray());
+    }
+
+    private static boolean equals(GrowableFloatArray a, GrowableFloatArray b) {
+        return Arrays.equals(a.array(), 0, a.size(), b.array(), 0, b.size());
+    }
+
+    /**
+     * File names given by {@code mtllib}, relative to the OBJ file.
+     */
+    public List<String> getMaterialLibraries() {
+        return materialLibraries;
+    }
+
+    /**
+     * Index of the first face of every {@code usemtl} switch, matching {@link #getMaterialNames()}.
+     */
+    public GrowableIntArray getMaterialFaceStarts() {
+        return materialFaceStarts;
+    }
+
+    public List<String> getMaterialNames() {
+        return materialNames;
+    }
+
+    /**
+     * Records a {@code usemtl} switch taking effect at the next face.
+     */
+    public void useMaterial(String name) {
+        materialFaceStarts.add(getFaceCount());
+        materialNames.add(name);
+    }
+
+    /**
+     * Index of the first face of every {@code g} or {@code o} statement, matching {@link #getGroupNames()}.
+     */
+    public GrowableIntArray getGroupFaceStarts() {
+        return groupFaceStarts;
+    }
+
+    public List<String> getGroupNames() {
+        return groupNames;
+    }
+
+    /**
+     * Records a {@code g} or {@code o} statement taking effect at the next face.
+     */
+    public void useGroup(String name) {
+        groupFaceStarts.add(getFaceCount());
+        groupNames.add(name);
+    }
+
+    public int getPositionCount() {
+        return positions.size() / 3;
+    }
+
+    public int getTextCoordCount() {
+        return textCoords.size() / 2;
+    }
+
+    public int getNormalCount() {
+        return normals.size() / 3;
+    }
+
+    public int getFaceCount() {
+        return faces.size() / FACE_STRIDE;
+    }
+}
@@ -0,0 +1,427 @@
+package com.xenosnowfox.engine.graphics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streaming OBJ tokenizer that works directly on the bytes of a (memory-mapped) buffer.
+ *
+ * <p>No {@code String}s, vectors or boxed integers are created per line: numbers are parsed by hand and written
+ * straight into the primitive arrays of an {@link ObjData}. Float parsing takes an exact fast path for the short
+ * decimals DCC tools export, and falls back to {@link Float#parseFloat(String)} for anything it cannot round
+ * exactly, so the parsed values are bit-identical to the line based loader.
+ */
+public class ObjParser {
+
+    /**
+     * Size of the file window mapped at a time; keeps the mapping well below the 2 GB limit of a single buffer.
+     */
+    private static final long MAP_WINDOW = 64L * 1024 * 1024;
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * Largest mantissa that is exactly representable in a double.
+     */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    /**
+     * Parses the whole file, mapping it window by window.
+     *
+     * @param fileName
+     * 		path of the OBJ file.
+     * @return the raw OBJ records.
+     */
+    public static ObjData parseFile(String fileName) throws IOException {
+        Path path = Paths.get(fileName);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ObjParser parser = new ObjParser(new ObjData(ObjData.expectedVertices(size)));
+
+            long position = 0;
+            long window = MAP_WINDOW;
+            while (position < size) {
+                long length = Math.min(window, size - position);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                int end = (int) length;
+                if (position + length < size) {
+                    end = lastLineBreak(buffer, end) + 1;
+                    if (end == 0) {
+                        // a single line longer than the window, map a bigger one
+                        window = Math.min(window * 2, Integer.MAX_VALUE);
+                        continue;
+                    }
+                }
+                parser.parse(buffer, 0, end);
+                position += end;
+            }
+            return parser.getData();
+        }
+    }
+
+    /**
+     * Parses a complete OBJ document held in a buffer.
+     */
+    public static ObjData parse(ByteBuffer buffer) {
+        ObjParser parser = new ObjParser(new ObjData());
+        parser.parse(buffer, buffer.position(), buffer.limit());
+        return parser.getData();
+    }
+
+    static int lastLineBreak(ByteBuffer buffer, int end) {
+        for (int i = end - 1; i >= 0; i--) {
+            if (buffer.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private final ObjData data;
+
+    private final boolean deferRelativeIndices;
+
+    private ByteBuffer buffer;
+
+    private int cursor;
+
+    private int limit;
+
+    public ObjParser(ObjData data) {
+        this(data, false);
+    }
+
+    /**
+     * @param deferRelativeIndices
+     * 		when set, negative indices are only made relative to this parser's own counts and their slots are
+     * 		recorded in {@link ObjData#getRelativeSlots()}, so a chunk can be rebased once the counts of the
+     * 		chunks before it are known.
+     */
+    public ObjParser(ObjData data, boolean deferRelativeIndices) {
+        this.data = data;
+        this.deferRelativeIndices = deferRelativeIndices;
+    }
+
+    public ObjData getData() {
+        return data;
+    }
+
+    /**
+     * Parses the lines held in {@code [from, to)} of the buffer. The range must end on a line boundary; state
+     * carries over between calls, so relative indices keep working across windows.
+     */
+    public void parse(ByteBuffer buffer, int from, int to) {
+        this.buffer = buffer;
+        this.cursor = from;
+        this.limit = to;
+        while (cursor < limit) {
+            parseLine();
+        }
+        this.buffer = null;
+    }
+
+    private void parseLine() {
+        skipBlanks();
+        if (cursor >= limit) {
+            return;
+        }
+        byte first = buffer.get(cursor);
+        byte second = cursor + 1 < limit ? buffer.get(cursor + 1) : (byte) '\n';
+        if (first == 'v') {
+            if (isBlank(second)) {
+                // Geometric vertex
+                cursor += 1;
+                data.getPositions().add(parseFloat(), parseFloat(), parseFloat());
+            } else if (second == 't' && isBlankAt(cursor + 2)) {
+                // Texture coordinate
+                cursor += 2;
+                data.getTextCoords().add(parseFloat(), parseFloat());
+            } else if (second == 'n' && isBlankAt(cursor + 2)) {
+                // Vertex normal
+                cursor += 2;
+                data.getNormals().add(parseFloat(), parseFloat(), parseFloat());
+            }
+        } else if (first == 'f' && isBlank(second)) {
+            cursor += 1;
+            parseFace();
+        } else if (first == 'u' && matchesKeyword("usemtl")) {
+            data.useMaterial(readRestOfLine());
+        } else if ((first == 'g' || first == 'o') && isBlank(second)) {
+            // groups and objects alike name the faces that follow, e.g. the cells of a CellGraph
+            cursor += 1;
+            data.useGroup(readRestOfLine().split("\\s+")[0]);
+        } else if (first == 'm' && matchesKeyword("mtllib")) {
+            for (String library : readRestOfLine().split("\\s+")) {
+                if (!library.isEmpty()) {
+                    data.getMaterialLibraries().add(library);
+                }
+            }
+        }
+        skipToNextLine();
+    }
+
+    private void parseFace() {
+        GrowableIntArray faces = data.getFaces();
+        // only the first three corners are used, exactly like the line based loader
+        for (int corner = 0; corner < 3; corner++) {
+            skipBlanks();
+            if (cursor >= limit || isLineEnd(buffer.get(cursor))) {
+                throw new IllegalArgumentException("Face with less than three vertices near byte " + cursor);
+            }
+            int slot = faces.size();
+            int position = resolve(parseInt(), data.getPositionCount(), slot);
+            int textCoord = ObjData.NO_VALUE;
+            int normal = ObjData.NO_VALUE;
+            if (cursor < limit && buffer.get(cursor) == '/') {
+                cursor++;
+                if (cursor < limit && buffer.get(cursor) != '/') {
+                    textCoord = resolve(parseInt(), data.getTextCoordCount(), slot + 1);
+                }
+                if (cursor < limit && buffer.get(cursor) == '/') {
+                    cursor++;
+                    normal = resolve(parseInt(), data.getNormalCount(), slot + 2);
+                }
+            }
+            faces.add(position, textCoord, normal);
+        }
+    }
+
+    /**
+     * Checks for a keyword followed by a blank at the cursor and skips it if present.
+     */
+    private boolean matchesKeyword(String keyword) {
+        int length = keyword.length();
+        if (cursor + length >= limit || !isBlank(buffer.get(cursor + length))) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(cursor + i) != keyword.charAt(i)) {
+                return false;
+            }
+        }
+        cursor += length;
+        return true;
+    }
+
+    /**
+     * Reads the trimmed remainder of the line; only used by the rare statements that carry names.
+     */
+    private String readRestOfLine() {
+        skipBlanks();
+        int start = cursor;
+        int end = start;
+        while (end < limit && buffer.get(end) != '\n' && buffer.get(end) != '#') {
+            end++;
+        }
+        while (end > start && isBlank(buffer.get(end - 1))) {
+            end--;
+        }
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        cursor = end;
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Converts a one based (or negative, relative) OBJ index into a zero based one.
+     */
+    private int resolve(int index, int count, int slot) {
+        if (index > 0) {
+            return index - 1;
+        }
+        if (index < 0) {
+            if (deferRelativeIndices) {
+                data.getRelativeSlots().add(slot);
+            }
+            return count + index;
+        }
+        throw new IllegalArgumentException("Invalid OBJ index 0 near byte " + cursor);
+    }
+
+    private int parseInt() {
+        boolean negative = false;
+        byte b = cursor < limit ? buffer.get(cursor) : 0;
+        if (b == '-' || b == '+') {
+            negative = b == '-';
+            cursor++;
+        }
+        int start = cursor;
+        int value = 0;
+        while (cursor < limit) {
+            int digit = buffer.get(cursor) - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+            value = value * 10 + digit;
+            cursor++;
+        }
+        if (cursor == start) {
+            throw new NumberFormatException("Expected an index near byte " + cursor);
+        }
+        return negative ? -value : value;
+    }
+
+    private float parseFloat() {
+        skipBlanks();
+        int start = cursor;
+        boolean negative = false;
+        byte b = cursor < limit ? buffer.get(cursor) : 0;
+        if (b == '-' || b == '+') {
+            negative = b == '-';
+            cursor++;
+        }
+
+        long mantissa = 0;
+        int significantDigits = 0;
+        int exponent = 0;
+        boolean anyDigit = false;
+        boolean truncated = false;
+
+        // integer part
+        while (cursor < limit) {
+            int digit = buffer.get(cursor) - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+            anyDigit = true;
+            if (significantDigits < 18) {
+                mantissa = mantissa * 10 + digit;
+                if (mantissa != 0) {
+                    significantDigits++;
+                }
+            } else {
+                exponent++;
+                truncated |= digit != 0;
+            }
+            cursor++;
+        }
+
+        // fraction
+        if (cursor < limit && buffer.get(cursor) == '.') {
+            cursor++;
+            while (cursor < limit) {
+                int digit = buffer.get(cursor) - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                anyDigit = true;
+                if (significantDigits < 18) {
+                    mantissa = mantissa * 10 + digit;
+                    if (mantissa != 0) {
+                        significantDigits++;
+                    }
+                    exponent--;
+                } else {
+                    truncated |= digit != 0;
+                }
+                cursor++;
+            }
+        }
+
+        // exponent
+        if (anyDigit && cursor < limit && (buffer.get(cursor) | 0x20) == 'e') {
+            cursor++;
+            boolean negativeExponent = false;
+            b = cursor < limit ? buffer.get(cursor) : 0;
+            if (b == '-' || b == '+') {
+                negativeExponent = b == '-';
+                cursor++;
+            }
+            int explicitExponent = 0;
+            int exponentStart = cursor;
+            while (cursor < limit) {
+                int digit = buffer.get(cursor) - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                if (explicitExponent < 100_000) {
+                    explicitExponent = explicitExponent * 10 + digit;
+                }
+                cursor++;
+            }
+            if (cursor == exponentStart) {
+                return parseFloatSlow(start);
+            }
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+
+        if (!anyDigit || truncated || (cursor < limit && !isBlank(buffer.get(cursor)))) {
+            return parseFloatSlow(start);
+        }
+        if (mantissa == 0) {
+            return negative ? -0.0f : 0.0f;
+        }
+        if (mantissa >= MAX_EXACT_MANTISSA || exponent < -22 || exponent > 22) {
+            return parseFloatSlow(start);
+        }
+
+        // both operands are exact, so the double is correctly rounded
+        double value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+        if (value < Float.MIN_NORMAL || value > Float.MAX_VALUE || isFloatMidpoint(value)) {
+            // rounding the double again could differ from rounding the decimal directly
+            return parseFloatSlow(start);
+        }
+        float result = (float) value;
+        return negative ? -result : result;
+    }
+
+    /**
+     * Whether the double lies exactly half way between two adjacent floats.
+     */
+    private static boolean isFloatMidpoint(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        return (bits & 0x1FFFFFFFL) == 0x10000000L;
+    }
+
+    private float parseFloatSlow(int start) {
+        cursor = start;
+        while (cursor < limit && !isBlank(buffer.get(cursor))) {
+            cursor++;
+        }
+        byte[] token = new byte[cursor - start];
+        for (int i = 0; i < token.length; i++) {
+            token[i] = buffer.get(start + i);
+        }
+        return Float.parseFloat(new String(token, StandardCharsets.US_ASCII));
+    }
+
+    private void skipBlanks() {
+        while (cursor < limit) {
+            byte b = buffer.get(cursor);
+            if (b != ' ' && b != '\t' && b != '\r') {
+                return;
+            }
+            cursor++;
+        }
+    }
+
+    private void skipToNextLine() {
+        while (cursor < limit && buffer.get(cursor) != '\n') {
+            cursor++;
+        }
+        cursor++;
+    }
+
+    private boolean isBlankAt(int index) {
+        return index >= limit || isBlank(buffer.get(index));
+    }
+
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    private static boolean isLineEnd(byte b) {
+        return b == '\n' || b == '\r' || b == '#';
+    }
+}
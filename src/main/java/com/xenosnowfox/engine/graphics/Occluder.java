@@ -0,0 +1,53 @@
+package com.xenosnowfox.engine.graphics;
+
+import org.joml.Matrix4f;
+
+/**
+ * A few large triangles that hide what is behind them, typically walls and floors simplified from a building, for
+ * {@link OcclusionCuller}. The triangles must not reach outside the surfaces they stand for, or items behind them
+ * would be culled while partly visible.
+ */
+public class Occluder {
+
+    private final float[] positions;
+
+    private final int[] indices;
+
+    private final Matrix4f modelMatrix = new Matrix4f();
+
+    public Occluder(float[] positions, int[] indices) {
+        this.positions = positions;
+        this.indices = indices;
+    }
+
+    /**
+     * An occluder made of the positions and triangles of a mesh; texture coordinates and normals are ignored.
+     */
+    public static Occluder of(MeshData meshData) {
+        return new Occluder(meshData.getPositions(), meshData.getIndices());
+    }
+
+    public float[] getPositions() {
+        return positions;
+    }
+
+    public int[] getIndices() {
+        return indices;
+    }
+
+    public int getTriangleCount() {
+        return indices.length / 3;
+    }
+
+    /**
+     * Placement of the occluder in the world, identity unless set.
+     */
+    public Matrix4f getModelMatrix() {
+        return modelMatrix;
+    }
+
+    public Occluder setModelMatrix(Matrix4f modelMatrix) {
+        this.modelMatrix.set(modelMatrix);
+        return this;
+    }
+}
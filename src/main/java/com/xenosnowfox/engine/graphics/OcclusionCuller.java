@@ -0,0 +1,459 @@
+package com.xenosnowfox.engine.graphics;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Culls items hidden behind {@link Occluder}s on the CPU, for scenes such as building interiors where walls hide most
+ * of what is inside the frustum.
+ *
+ * <p>Each frame, {@link #render} rasterizes the occluder triangles into a small depth buffer: the buffer is split
+ * into bands of rows, and the bands are filled in parallel on a {@link ForkJoinPool}, each by every triangle that
+ * overlaps it, so no two workers write the same texel. A hierarchical depth pyramid is then built from it, every
+ * texel holding the farthest depth of the four below it. {@link #isVisible(Bounds)} projects the box of an item,
+ * picks the level at which the box covers at most two by two texels, and culls the item only if its nearest point
+ * is behind all of them.
+ *
+ * <p>Texels are covered when their centre is, as on the GPU. Triangles that cross the near plane are left out,
+ * which can only let more items through, and so are items whose box reaches behind the camera.
+ */
+public class OcclusionCuller {
+
+    /**
+     * Rows per band; small enough that the bands of a buffer keep every worker busy.
+     */
+    private static final int BAND_ROWS = 8;
+
+    /**
+     * Clip space w below which a point counts as behind the camera.
+     */
+    private static final float NEAR_W = 1e-5f;
+
+    private static final int TRIANGLE_FLOATS = 9;
+
+    private final ForkJoinPool pool;
+
+    private final int width;
+
+    private final int height;
+
+    private final List<Occluder> occluders = new ArrayList<>();
+
+    private final Matrix4f viewProjectionMatrix = new Matrix4f();
+
+    private final Matrix4f modelViewProjectionMatrix = new Matrix4f();
+
+    /**
+     * Depth per texel from 0 at the near plane to 1 at the far plane, full resolution first.
+     */
+    private final float[][] levels;
+
+    private final int[] levelWidths;
+
+    private final int[] levelHeights;
+
+    private final List<Band> bands = new ArrayList<>();
+
+    private final RecursiveAction rasterization = new RecursiveAction() {
+        @Override
+        protected void compute() {
+            invokeAll(bands);
+        }
+    };
+
+    private final float[] corners = new float[24];
+
+    /**
+     * Screen space x, y and depth of the three corners of each triangle that is drawn this frame.
+     */
+    private float[] triangles = new float[TRIANGLE_FLOATS * 64];
+
+    private int triangleCount;
+
+    private float[] clipVertices = new float[4 * 64];
+
+    private int visible;
+
+    private int occluded;
+
+    private long totalVisible;
+
+    private long totalOccluded;
+
+    private long totalTriangles;
+
+    private long frames;
+
+    private long renderNanos;
+
+    /**
+     * @param width
+     * 		of the depth buffer in texels; a few hundred are plenty, the depth test works on coarse levels anyway.
+     */
+    public OcclusionCuller(ForkJoinPool pool, int width, int height) {
+        this.pool = pool;
+        this.width = width;
+        this.height = height;
+
+        int levelCount = 1;
+        for (int size = Math.max(width, height); size > 1; size = (size + 1) / 2) {
+            levelCount++;
+        }
+        levels = new float[levelCount][];
+        levelWidths = new int[levelCount];
+        levelHeights = new int[levelCount];
+        for (int level = 0, levelWidth = width, levelHeight = height; level < levelCount; level++) {
+            levels[level] = new float[levelWidth * levelHeight];
+            levelWidths[level] = levelWidth;
+            levelHeights[level] = levelHeight;
+            levelWidth = (levelWidth + 1) / 2;
+            levelHeight = (levelHeight + 1) / 2;
+        }
+        for (int from = 0; from < height; from += BAND_ROWS) {
+            bands.add(new Band(from, Math.min(height, from + BAND_ROWS)));
+        }
+    }
+
+    public void addOccluder(Occluder occluder) {
+        occluders.add(occluder);
+    }
+
+    public boolean removeOccluder(Occluder occluder) {
+        return occluders.remove(occluder);
+    }
+
+    public int getOccluderCount() {
+        return occluders.size();
+    }
+
+    /**
+     * Starts a frame seen through {@code projection * view}: rasterizes all occluders and builds the depth pyramid,
+     * and resets the frame counts.
+     */
+    public void render(Matrix4f projectionMatrix, Matrix4f viewMatrix) {
+        long start = System.nanoTime();
+        projectionMatrix.mul(viewMatrix, viewProjectionMatrix);
+        triangleCount = 0;
+        for (Occluder occluder : occluders) {
+            setUp(occluder);
+        }
+
+        for (Band band : bands) {
+            band.reinitialize();
+        }
+        if (bands.size() == 1) {
+            bands.get(0).compute();
+        } else {
+            rasterization.reinitialize();
+            pool.invoke(rasterization);
+        }
+        buildPyramid();
+
+        visible = 0;
+        occluded = 0;
+        frames++;
+        totalTriangles += triangleCount;
+        renderNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Projects the vertices of an occluder and keeps its triangles that lie entirely in front of the camera.
+     */
+    private void setUp(Occluder occluder) {
+        float[] positions = occluder.getPositions();
+        int[] indices = occluder.getIndices();
+        int vertexCount = positions.length / 3;
+        if (clipVertices.length < vertexCount * 4) {
+            clipVertices = new float[vertexCount * 4];
+        }
+        if (triangles.length < (triangleCount + indices.length / 3) * TRIANGLE_FLOATS) {
+            triangles = Arrays.copyOf(triangles, Math.max(triangles.length * 2, (triangleCount + indices.length / 3) * TRIANGLE_FLOATS));
+        }
+
+        Matrix4f matrix = viewProjectionMatrix.mul(occluder.getModelMatrix(), modelViewProjectionMatrix);
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            float x = positions[vertex * 3];
+            float y = positions[vertex * 3 + 1];
+            float z = positions[vertex * 3 + 2];
+            float w = matrix.m03() * x + matrix.m13() * y + matrix.m23() * z + matrix.m33();
+            int target = vertex * 4;
+            clipVertices[target + 3] = w;
+            if (w > NEAR_W) {
+                clipVertices[target] = toScreen(matrix.m00() * x + matrix.m10() * y + matrix.m20() * z + matrix.m30(), w, width);
+                clipVertices[target + 1] = toScreen(matrix.m01() * x + matrix.m11() * y + matrix.m21() * z + matrix.m31(), w, height);
+                clipVertices[target + 2] = toDepth(matrix.m02() * x + matrix.m12() * y + matrix.m22() * z + matrix.m32(), w);
+            }
+        }
+
+        for (int i = 0; i < indices.length; i += 3) {
+            int a = indices[i] * 4;
+            int b = indices[i + 1] * 4;
+            int c = indices[i + 2] * 4;
+            if (clipVertices[a + 3] <= NEAR_W || clipVertices[b + 3] <= NEAR_W || clipVertices[c + 3] <= NEAR_W) {
+                continue;
+            }
+            int target = triangleCount * TRIANGLE_FLOATS;
+            System.arraycopy(clipVertices, a, triangles, target, 3);
+            System.arraycopy(clipVertices, b, triangles, target + 3, 3);
+            System.arraycopy(clipVertices, c, triangles, target + 6, 3);
+            triangleCount++;
+        }
+    }
+
+    private static float toScreen(float clip, float w, int size) {
+        return (clip / w * 0.5f + 0.5f) * size;
+    }
+
+    private static float toDepth(float clipZ, float w) {
+        return clipZ / w * 0.5f + 0.5f;
+    }
+
+    private void buildPyramid() {
+        for (int level = 1; level < levels.length; level++) {
+            float[] source = levels[level - 1];
+            int sourceWidth = levelWidths[level - 1];
+            int sourceHeight = levelHeights[level - 1];
+            float[] target = levels[level];
+            int targetWidth = levelWidths[level];
+            for (int y = 0; y < levelHeights[level]; y++) {
+                int row = y * 2 * sourceWidth;
+                int nextRow = Math.min(y * 2 + 1, sourceHeight - 1) * sourceWidth;
+                for (int x = 0; x < targetWidth; x++) {
+                    int left = x * 2;
+                    int right = Math.min(left + 1, sourceWidth - 1);
+                    target[y * targetWidth + x] = Math.max(
+                            Math.max(source[row + left], source[row + right]),
+                            Math.max(source[nextRow + left], source[nextRow + right]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether any part of world space bounds may be seen past the occluders of the last {@link #render}; counts the
+     * bounds as visible or occluded.
+     */
+    public boolean isVisible(Bounds bounds) {
+        Vector3f min = bounds.getMin();
+        Vector3f max = bounds.getMax();
+        float minX = Float.POSITIVE_INFINITY;
+        float minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY;
+        float maxY = Float.NEGATIVE_INFINITY;
+        float nearest = Float.POSITIVE_INFINITY;
+        Matrix4f matrix = viewProjectionMatrix;
+        for (int corner = 0; corner < 8; corner++) {
+            float x = (corner & 1) == 0 ? min.x : max.x;
+            float y = (corner & 2) == 0 ? min.y : max.y;
+            float z = (corner & 4) == 0 ? min.z : max.z;
+            float w = matrix.m03() * x + matrix.m13() * y + matrix.m23() * z + matrix.m33();
+            if (w <= NEAR_W) {
+                return count(true);
+            }
+            float screenX = toScreen(matrix.m00() * x + matrix.m10() * y + matrix.m20() * z + matrix.m30(), w, width);
+            float screenY = toScreen(matrix.m01() * x + matrix.m11() * y + matrix.m21() * z + matrix.m31(), w, height);
+            minX = Math.min(minX, screenX);
+            maxX = Math.max(maxX, screenX);
+            minY = Math.min(minY, screenY);
+            maxY = Math.max(maxY, screenY);
+            nearest = Math.min(nearest, toDepth(matrix.m02() * x + matrix.m12() * y + matrix.m22() * z + matrix.m32(), w));
+        }
+        if (maxX < 0f || maxY < 0f || minX >= width || minY >= height) {
+            // outside the view, for the frustum culler to decide
+            return count(true);
+        }
+
+        int x0 = clamp((int) Math.floor(minX), width);
+        int x1 = clamp((int) Math.floor(maxX), width);
+        int y0 = clamp((int) Math.floor(minY), height);
+        int y1 = clamp((int) Math.floor(maxY), height);
+        int level = 0;
+        while ((x1 - x0 > 1 || y1 - y0 > 1) && level < levels.length - 1) {
+            x0 >>= 1;
+            x1 >>= 1;
+            y0 >>= 1;
+            y1 >>= 1;
+            level++;
+        }
+        float[] depths = levels[level];
+        int levelWidth = levelWidths[level];
+        for (int y = y0; y <= y1; y++) {
+            for (int x = x0; x <= x1; x++) {
+                if (nearest <= depths[y * levelWidth + x]) {
+                    return count(true);
+                }
+            }
+        }
+        return count(false);
+    }
+
+    private static int clamp(int value, int size) {
+        return Math.max(0, Math.min(size - 1, value));
+    }
+
+    private boolean count(boolean isVisible) {
+        if (isVisible) {
+            visible++;
+            totalVisible++;
+        } else {
+            occluded++;
+            totalOccluded++;
+        }
+        return isVisible;
+    }
+
+    /**
+     * Depth of a texel of the given pyramid level, level zero being the full resolution buffer.
+     */
+    public float getDepth(int level, int x, int y) {
+        return levels[level][y * levelWidths[level] + x];
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Occluder triangles drawn by the last {@link #render}.
+     */
+    public int getTriangleCount() {
+        return triangleCount;
+    }
+
+    /**
+     * Bounds found visible since the last {@link #render}.
+     */
+    public int getVisibleCount() {
+        return visible;
+    }
+
+    /**
+     * Bounds found occluded since the last {@link #render}.
+     */
+    public int getOccludedCount() {
+        return occluded;
+    }
+
+    /**
+     * Average time {@link #render} took, in nanoseconds.
+     */
+    public long getAverageRenderNanos() {
+        return frames == 0 ? 0 : renderNanos / frames;
+    }
+
+    @Override
+    public String toString() {
+        long total = totalVisible + totalOccluded;
+        return String.format(Locale.ROOT, "%d visible, %d occluded last frame; %d of %d tests occluded overall (%.1f%%), "
+                        + "%d triangles and %.3f ms per frame at %dx%d on %d threads",
+                visible, occluded, totalOccluded, total, total == 0 ? 0.0 : 100.0 * totalOccluded / total,
+                frames == 0 ? 0 : totalTriangles / frames, getAverageRenderNanos() / 1e6, width, height,
+                pool.getParallelism());
+    }
+
+    /**
+     * A range of rows, cleared and then filled by every triangle that overlaps it.
+     */
+    private final class Band extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+
+        private final int to;
+
+        private Band(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            float[] depths = levels[0];
+            Arrays.fill(depths, from * width, to * width, 1f);
+            for (int triangle = 0; triangle < triangleCount; triangle++) {
+                rasterize(depths, triangle * TRIANGLE_FLOATS);
+            }
+        }
+
+        private void rasterize(float[] depths, int offset) {
+            float ax = triangles[offset];
+            float ay = triangles[offset + 1];
+            float az = triangles[offset + 2];
+            float bx = triangles[offset + 3];
+            float by = triangles[offset + 4];
+            float bz = triangles[offset + 5];
+            float cx = triangles[offset + 6];
+            float cy = triangles[offset + 7];
+            float cz = triangles[offset + 8];
+
+            // texels whose centre may be inside, within this band
+            int minX = Math.max(0, (int) Math.ceil(Math.min(ax, Math.min(bx, cx)) - 0.5f));
+            int maxX = Math.min(width - 1, (int) Math.floor(Math.max(ax, Math.max(bx, cx)) - 0.5f));
+            int minY = Math.max(from, (int) Math.ceil(Math.min(ay, Math.min(by, cy)) - 0.5f));
+            int maxY = Math.min(to - 1, (int) Math.floor(Math.max(ay, Math.max(by, cy)) - 0.5f));
+            if (minX > maxX || minY > maxY) {
+                return;
+            }
+            float area = (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
+            if (Math.abs(area) < 1e-12f) {
+                return;
+            }
+            // both windings occlude; make the edge functions positive inside
+            float sign = area > 0f ? 1f : -1f;
+            float inverseArea = 1f / Math.abs(area);
+
+            // edge functions, and depth as a plane over the screen
+            float e0x = (by - cy) * sign;
+            float e0y = (cx - bx) * sign;
+            float e1x = (cy - ay) * sign;
+            float e1y = (ax - cx) * sign;
+            float e2x = (ay - by) * sign;
+            float e2y = (bx - ax) * sign;
+            float startX = minX + 0.5f;
+            float startY = minY + 0.5f;
+            float e0 = ((startX - bx) * (cy - by) - (startY - by) * (cx - bx)) * -sign;
+            float e1 = ((startX - cx) * (ay - cy) - (startY - cy) * (ax - cx)) * -sign;
+            float e2 = ((startX - ax) * (by - ay) - (startY - ay) * (bx - ax)) * -sign;
+            float depthX = (e0x * az + e1x * bz + e2x * cz) * inverseArea;
+            float depthY = (e0y * az + e1y * bz + e2y * cz) * inverseArea;
+            float depth = (e0 * az + e1 * bz + e2 * cz) * inverseArea;
+
+            for (int y = minY; y <= maxY; y++) {
+                float w0 = e0;
+                float w1 = e1;
+                float w2 = e2;
+                float z = depth;
+                int row = y * width;
+                for (int x = minX; x <= maxX; x++) {
+                    if (w0 >= 0f && w1 >= 0f && w2 >= 0f && z < depths[row + x]) {
+                        depths[row + x] = Math.max(0f, z);
+                    }
+                    w0 += e0x;
+                    w1 += e1x;
+                    w2 += e2x;
+                    z += depthX;
+                }
+                e0 += e0y;
+                e1 += e1y;
+                e2 += e2y;
+                depth += depthY;
+            }
+        }
+    }
+}
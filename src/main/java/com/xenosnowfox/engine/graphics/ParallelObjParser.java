@@ -0,0 +1,255 @@
+package com.xenosnowfox.engine.graphics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parses an OBJ file on a {@link ForkJoinPool} by splitting it into line aligned chunks.
+ *
+ * <p>Every chunk is memory-mapped and parsed into its own {@link ObjData}. Positive indices are absolute and need
+ * no fixing; negative (relative) ones are resolved against the chunk's own counts and remembered, and are rebased
+ * by the element counts of all preceding chunks while the chunks are merged. The merged result is identical to
+ * what {@link ObjParser#parseFile(String)} produces.
+ */
+public class ParallelObjParser {
+
+    /**
+     * Files smaller than this are not worth splitting.
+     */
+    private static final long MIN_CHUNK_SIZE = 4L * 1024 * 1024;
+
+    /**
+     * Upper bound that keeps every chunk mappable as a single buffer.
+     */
+    private static final long MAX_CHUNK_SIZE = 256L * 1024 * 1024;
+
+    public static ObjData parseFile(String fileName) throws IOException {
+        return parseFile(fileName, ForkJoinPool.commonPool());
+    }
+
+    public static ObjData parseFile(String fileName, ForkJoinPool pool) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            long size = channel.size();
+            // a few chunks per worker so uneven chunks still balance out
+            long chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, size / (pool.getParallelism() * 4L) + 1));
+            List<Chunk> chunks = split(channel, size, chunkSize);
+            if (chunks.size() == 1) {
+                return ObjParser.parseFile(fileName);
+            }
+
+            // parse every chunk independently
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks(chunks, Chunk::parse));
+                }
+            });
+
+            ObjData merged = merge(chunks, pool);
+            chunks.clear();
+            return merged;
+        }
+    }
+
+    private static List<Chunk> split(FileChannel channel, long size, long chunkSize) throws IOException {
+        List<Chunk> chunks = new ArrayList<>();
+        ByteBuffer probe = ByteBuffer.allocate(64 * 1024);
+        long start = 0;
+        while (start < size) {
+            long end = Math.min(size, start + chunkSize);
+            // move the end past the next line break so every chunk holds whole lines
+            while (end < size) {
+                probe.clear();
+                int read = channel.read(probe, end);
+                int lineBreak = -1;
+                for (int i = 0; i < read; i++) {
+                    if (probe.get(i) == '\n') {
+                        lineBreak = i;
+                        break;
+                    }
+                }
+                if (lineBreak >= 0) {
+                    end += lineBreak + 1;
+                    break;
+                }
+                end += Math.max(read, 0);
+                if (read <= 0) {
+                    end = size;
+                }
+            }
+            end = Math.min(end, size);
+            chunks.add(new Chunk(channel, start, end - start));
+            start = end;
+        }
+        return chunks;
+    }
+
+    private static ObjData merge(List<Chunk> chunks, ForkJoinPool pool) {
+        int positions = 0;
+        int textCoords = 0;
+        int normals = 0;
+        int faces = 0;
+        for (Chunk chunk : chunks) {
+            chunk.positionBase = positions;
+            chunk.textCoordBase = textCoords;
+            chunk.normalBase = normals;
+            chunk.faceBase = faces;
+            positions += chunk.data.getPositions().size();
+            textCoords += chunk.data.getTextCoords().size();
+            normals += chunk.data.getNormals().size();
+            faces += chunk.data.getFaces().size();
+        }
+
+        float[] positionArray = new float[positions];
+        float[] textCoordArray = new float[textCoords];
+        float[] normalArray = new float[normals];
+        int[] faceArray = new int[faces];
+
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks(chunks, chunk -> chunk.copyInto(positionArray, textCoordArray, normalArray, faceArray)));
+            }
+        });
+
+        ObjData merged = new ObjData(
+                new GrowableFloatArray(positionArray, positions),
+                new GrowableFloatArray(textCoordArray, textCoords),
+                new GrowableFloatArray(normalArray, normals),
+                new GrowableIntArray(faceArray, faces));
+
+        // material and group switches keep their order; a chunk's faces before its first switch continue the
+        // previous one
+        for (Chunk chunk : chunks) {
+            merged.getMaterialLibraries().addAll(chunk.materialLibraries);
+            for (int i = 0; i < chunk.materialNames.size(); i++) {
+                merged.getMaterialFaceStarts().add(chunk.faceBase / ObjData.FACE_STRIDE + chunk.materialFaceStarts.get(i));
+                merged.getMaterialNames().add(chunk.materialNames.get(i));
+            }
+            for (int i = 0; i < chunk.groupNames.size(); i++) {
+                merged.getGroupFaceStarts().add(chunk.faceBase / ObjData.FACE_STRIDE + chunk.groupFaceStarts.get(i));
+                merged.getGroupNames().add(chunk.groupNames.get(i));
+            }
+            chunk.release();
+        }
+        return merged;
+    }
+
+    private static List<ForkJoinTask<?>> tasks(List<Chunk> chunks, ChunkStep step) {
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(chunks.size());
+        for (Chunk chunk : chunks) {
+            tasks.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    try {
+                        step.run(chunk);
+                    } catch (IOException exception) {
+                        throw new IllegalStateException("Unable to read OBJ chunk at byte " + chunk.offset, exception);
+                    }
+                }
+            });
+        }
+        return tasks;
+    }
+
+    private interface ChunkStep {
+        void run(Chunk chunk) throws IOException;
+    }
+
+    private static class Chunk {
+
+        private final FileChannel channel;
+
+        private final long offset;
+
+        private final long length;
+
+        private ObjData data;
+
+        private int positionBase;
+
+        private int textCoordBase;
+
+        private int normalBase;
+
+        private int faceBase;
+
+        private List<String> materialLibraries;
+
+        private GrowableIntArray materialFaceStarts;
+
+        private List<String> materialNames;
+
+        private GrowableIntArray groupFaceStarts;
+
+        private List<String> groupNames;
+
+        Chunk(FileChannel channel, long offset, long length) {
+            this.channel = channel;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        void parse() throws IOException {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+            data = new ObjData(ObjData.expectedVertices(length));
+            new ObjParser(data, true).parse(buffer, 0, (int) length);
+            materialLibraries = data.getMaterialLibraries();
+            materialFaceStarts = data.getMaterialFaceStarts();
+            materialNames = data.getMaterialNames();
+            groupFaceStarts = data.getGroupFaceStarts();
+            groupNames = data.getGroupNames();
+        }
+
+        void copyInto(float[] positions, float[] textCoords, float[] normals, int[] faces) {
+            System.arraycopy(data.getPositions().array(), 0, positions, positionBase, data.getPositions().size());
+            System.arraycopy(data.getTextCoords().array(), 0, textCoords, textCoordBase, data.getTextCoords().size());
+            System.arraycopy(data.getNormals().array(), 0, normals, normalBase, data.getNormals().size());
+            System.arraycopy(data.getFaces().array(), 0, faces, faceBase, data.getFaces().size());
+
+            // rebase the relative indices by the element counts of the preceding chunks
+            GrowableIntArray relativeSlots = data.getRelativeSlots();
+            for (int i = 0; i < relativeSlots.size(); i++) {
+                int slot = relativeSlots.get(i);
+                switch (slot % 3) {
+                    case 0:
+                        faces[faceBase + slot] += positionBase / 3;
+                        break;
+                    case 1:
+                        faces[faceBase + slot] += textCoordBase / 2;
+                        break;
+                    default:
+                        faces[faceBase + slot] += normalBase / 3;
+                        break;
+                }
+            }
+            data = null;
+        }
+
+        /**
+         * Drops what is left of the chunk once it is merged.
+         */
+        void release() {
+            data = null;
+            materialLibraries = null;
+            materialFaceStarts = null;
+            materialNames = null;
+            groupFaceStarts = null;
+            groupNames = null;
+        }
+    }
+
+    /**
+     * Hidden constructor.
+     */
+    private ParallelObjParser() { }
+}
@@ -53,6 +53,23 @@ public class PointLight {
         this.intensity = intensity;
     }
 
+    /**
+     * Distance at which the light, its intensity over its attenuation, has faded to {@code cutoff}; infinite for a
+     * light that does not fade with distance.
+     */
+    public float getRange(float cutoff) {
+        float constant = attenuation.getConstant() - intensity / cutoff;
+        float linear = attenuation.getLinear();
+        float exponent = attenuation.getExponent();
+        if (constant >= 0f) {
+            return 0f;
+        }
+        if (exponent > 0f) {
+            return (float) ((-linear + Math.sqrt(linear * linear - 4.0 * exponent * constant)) / (2.0 * exponent));
+        }
+        return linear > 0f ? -constant / linear : Float.POSITIVE_INFINITY;
+    }
+
     public Attenuation getAttenuation() {
         return attenuation;
     }
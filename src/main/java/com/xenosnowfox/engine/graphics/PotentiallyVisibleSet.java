@@ -0,0 +1,164 @@
+package com.xenosnowfox.engine.graphics;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * For every cell of a {@link CellGraph}, the cells that can be seen from anywhere inside it, as one row of bits per
+ * cell.
+ *
+ * <p>The set is computed offline by {@link #compute(CellGraph, int)}: from a grid of points in each cell, a
+ * {@link CellVisibility} walk looks along all six axis directions with a 90 degree field of view, which together
+ * cover every direction. Points between the samples are not tested, so a cell only visible through a narrow gap may
+ * be missing; more samples make that less likely.
+ */
+public class PotentiallyVisibleSet {
+
+    /**
+     * "SPKV" read as a little endian int.
+     */
+    private static final int MAGIC = 0x564B5053;
+
+    public static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 12;
+
+    /**
+     * Forward and up directions of the six views around a sample point.
+     */
+    private static final float[][] VIEWS = {
+            {1, 0, 0, 0, 1, 0}, {-1, 0, 0, 0, 1, 0},
+            {0, 0, 1, 0, 1, 0}, {0, 0, -1, 0, 1, 0},
+            {0, 1, 0, 0, 0, 1}, {0, -1, 0, 0, 0, 1},
+    };
+
+    private final int cellCount;
+
+    private final int rowWords;
+
+    private final long[] bits;
+
+    public PotentiallyVisibleSet(int cellCount) {
+        this.cellCount = cellCount;
+        this.rowWords = (cellCount + 63) / 64;
+        this.bits = new long[cellCount * rowWords];
+    }
+
+    /**
+     * Samples {@code samplesPerAxis} cubed points spread over the inside of each cell, and records every cell
+     * visible from any of them. Every cell sees itself.
+     */
+    public static PotentiallyVisibleSet compute(CellGraph graph, int samplesPerAxis) {
+        PotentiallyVisibleSet set = new PotentiallyVisibleSet(graph.getCellCount());
+        CellVisibility visibility = new CellVisibility(graph);
+        Matrix4f projectionMatrix = new Matrix4f().setPerspective((float) Math.toRadians(90.0), 1f, 0.01f, 1000f);
+        Matrix4f viewMatrix = new Matrix4f();
+        Bounds bounds = new Bounds();
+        Vector3f position = new Vector3f();
+        for (int cell = 0; cell < graph.getCellCount(); cell++) {
+            graph.getCellBounds(cell, bounds);
+            Vector3f min = bounds.getMin();
+            Vector3f max = bounds.getMax();
+            for (int i = 0; i < samplesPerAxis * samplesPerAxis * samplesPerAxis; i++) {
+                // cell centres of a samplesPerAxis grid, so no sample lies on a wall
+                position.set(
+                        min.x + (max.x - min.x) * (i % samplesPerAxis + 0.5f) / samplesPerAxis,
+                        min.y + (max.y - min.y) * (i / samplesPerAxis % samplesPerAxis + 0.5f) / samplesPerAxis,
+                        min.z + (max.z - min.z) * (i / samplesPerAxis / samplesPerAxis + 0.5f) / samplesPerAxis);
+                for (float[] view : VIEWS) {
+                    viewMatrix.setLookAt(position.x, position.y, position.z,
+                            position.x + view[0], position.y + view[1], position.z + view[2], view[3], view[4], view[5]);
+                    visibility.update(projectionMatrix, viewMatrix, position);
+                    // a sample may lie in a smaller cell nested in this one
+                    int from = visibility.getCameraCell() >= 0 ? visibility.getCameraCell() : cell;
+                    for (int other = 0; other < graph.getCellCount(); other++) {
+                        if (visibility.isVisible(other)) {
+                            set.add(from, other);
+                        }
+                    }
+                }
+            }
+            set.add(cell, cell);
+        }
+        return set;
+    }
+
+    public void add(int from, int to) {
+        bits[from * rowWords + (to >>> 6)] |= 1L << to;
+    }
+
+    public boolean isVisible(int from, int to) {
+        return (bits[from * rowWords + (to >>> 6)] & 1L << to) != 0;
+    }
+
+    /**
+     * The first cell from {@code cell} on that is visible from {@code from}, or -1.
+     */
+    public int nextVisible(int from, int cell) {
+        int word = cell >>> 6;
+        if (word >= rowWords) {
+            return -1;
+        }
+        long bitsLeft = bits[from * rowWords + word] & -1L << cell;
+        while (bitsLeft == 0L) {
+            if (++word == rowWords) {
+                return -1;
+            }
+            bitsLeft = bits[from * rowWords + word];
+        }
+        return word * 64 + Long.numberOfTrailingZeros(bitsLeft);
+    }
+
+    /**
+     * Cells visible from a cell.
+     */
+    public int countVisible(int from) {
+        int count = 0;
+        for (int word = 0; word < rowWords; word++) {
+            count += Long.bitCount(bits[from * rowWords + word]);
+        }
+        return count;
+    }
+
+    public int getCellCount() {
+        return cellCount;
+    }
+
+    /**
+     * Size of the set as stored, in bytes.
+     */
+    public int getByteSize() {
+        return HEADER_BYTES + bits.length * Long.BYTES;
+    }
+
+    public void write(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(getByteSize()).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(cellCount);
+        buffer.asLongBuffer().put(bits);
+        Files.write(path, buffer.array());
+    }
+
+    public static PotentiallyVisibleSet read(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Not a potentially visible set of version " + VERSION + ": " + path);
+        }
+        PotentiallyVisibleSet set = new PotentiallyVisibleSet(buffer.getInt());
+        if (buffer.remaining() != set.bits.length * Long.BYTES) {
+            throw new IOException("Truncated potentially visible set: " + path);
+        }
+        buffer.asLongBuffer().get(set.bits);
+        return set;
+    }
+
+    public boolean contentEquals(PotentiallyVisibleSet other) {
+        return cellCount == other.cellCount && Arrays.equals(bits, other.bits);
+    }
+}
@@ -0,0 +1,105 @@
+package com.xenosnowfox.engine.graphics;
+
+import com.xenosnowfox.lwjglengine.GameLogic;
+import com.xenosnowfox.lwjglengine.display.Window;
+
+/**
+ * Wraps a {@link GameLogic} and times its phases with a {@link FrameProfiler}; a frame starts with
+ * {@link #input()}. When the overlay is shown it is drawn right after {@link #render()}, before the buffers are
+ * swapped.
+ */
+public class ProfiledGameLogic implements GameLogic {
+
+    public static final int INPUT = 0;
+
+    public static final int UPDATE = 1;
+
+    public static final int RENDER = 2;
+
+    public static final int POST_RENDER = 3;
+
+    private static final String[] PHASES = {"input", "update", "render", "postRender"};
+
+    private final GameLogic gameLogic;
+
+    private final Window window;
+
+    private final FrameProfiler profiler;
+
+    private final ProfilerOverlay overlay;
+
+    private boolean overlayVisible;
+
+    /**
+     * Creates the profiler, so a GL context must be current when timing on the GPU.
+     *
+     * @param gpu
+     * 		whether to time the phases on the GPU as well.
+     * @param overlay
+     * 		optional, drawn into the window while visible.
+     */
+    public ProfiledGameLogic(GameLogic gameLogic, Window window, boolean gpu, ProfilerOverlay overlay) {
+        this.gameLogic = gameLogic;
+        this.window = window;
+        this.profiler = new FrameProfiler(PHASES, gpu);
+        this.overlay = overlay;
+    }
+
+    public FrameProfiler getProfiler() {
+        return profiler;
+    }
+
+    public boolean isOverlayVisible() {
+        return overlayVisible;
+    }
+
+    public void setOverlayVisible(boolean visible) {
+        overlayVisible = visible && overlay != null;
+    }
+
+    @Override
+    public void initialize() throws Exception {
+        gameLogic.initialize();
+    }
+
+    @Override
+    public void input() {
+        profiler.beginFrame();
+        profiler.begin(INPUT);
+        gameLogic.input();
+        profiler.end(INPUT);
+    }
+
+    @Override
+    public void update(float interval) {
+        profiler.begin(UPDATE);
+        gameLogic.update(interval);
+        profiler.end(UPDATE);
+    }
+
+    @Override
+    public void render() {
+        profiler.begin(RENDER);
+        gameLogic.render();
+        profiler.end(RENDER);
+        if (overlayVisible) {
+            overlay.draw(profiler, window.getHeight());
+        }
+    }
+
+    @Override
+    public void postRender() {
+        profiler.begin(POST_RENDER);
+        gameLogic.postRender();
+        profiler.end(POST_RENDER);
+    }
+
+    /**
+     * Releases the profiler's queries, then destroys the wrapped logic; the recorded times stay readable.
+     */
+    @Override
+    public void destroy() {
+        profiler.cleanUp();
+        gameLogic.destroy();
+    }
+}
@@ -0,0 +1,106 @@
+package com.xenosnowfox.engine.graphics;
+
+import static org.lwjgl.opengl.GL11.GL_COLOR_BUFFER_BIT;
+import static org.lwjgl.opengl.GL11.GL_COLOR_CLEAR_VALUE;
+import static org.lwjgl.opengl.GL11.GL_SCISSOR_TEST;
+import static org.lwjgl.opengl.GL11.glClear;
+import static org.lwjgl.opengl.GL11.glClearColor;
+import static org.lwjgl.opengl.GL11.glDisable;
+import static org.lwjgl.opengl.GL11.glEnable;
+import static org.lwjgl.opengl.GL11.glGetFloatv;
+import static org.lwjgl.opengl.GL11.glIsEnabled;
+import static org.lwjgl.opengl.GL11.glScissor;
+
+/**
+ * Draws the times of a {@link FrameProfiler} as bars in the top left corner of the window, by clearing scissored
+ * rectangles, so it needs no shader, buffer or font.
+ *
+ * <p>The first row is the last frame, white; then a row per phase with its last CPU time and, when timed, a dimmer
+ * row with its last GPU time. A dark tick on each bar marks the 95th percentile, and a grey line across all rows the
+ * frame budget.
+ */
+public class ProfilerOverlay {
+
+    private static final int MARGIN = 8;
+
+    private static final int ROW_HEIGHT = 6;
+
+    private static final int ROW_GAP = 2;
+
+    private static final float[][] PHASE_COLOURS = {
+            {0.30f, 0.75f, 0.95f},
+            {0.45f, 0.90f, 0.40f},
+            {0.95f, 0.75f, 0.25f},
+            {0.85f, 0.40f, 0.85f},
+    };
+
+    private final long budgetNanos;
+
+    private final int budgetPixels;
+
+    private final float[] clearColour = new float[4];
+
+    /**
+     * @param budgetNanos
+     * 		frame time drawn at the budget line, e.g. 1/60 s.
+     * @param budgetPixels
+     * 		length of a bar at the budget.
+     */
+    public ProfilerOverlay(long budgetNanos, int budgetPixels) {
+        this.budgetNanos = budgetNanos;
+        this.budgetPixels = budgetPixels;
+    }
+
+    /**
+     * Draws over whatever is in the framebuffer, leaving the clear colour and scissor test as they were.
+     */
+    public void draw(FrameProfiler profiler, int windowHeight) {
+        glGetFloatv(GL_COLOR_CLEAR_VALUE, clearColour);
+        boolean scissorTest = glIsEnabled(GL_SCISSOR_TEST);
+        glEnable(GL_SCISSOR_TEST);
+
+        int row = 0;
+        bar(windowHeight, row++, profiler.getLastFrameNanos(), profiler.getFrameTimes(), 1f, 1f, 1f);
+        for (int phase = 0; phase < profiler.getPhaseCount(); phase++) {
+            float[] colour = PHASE_COLOURS[phase % PHASE_COLOURS.length];
+            bar(windowHeight, row++, profiler.getLastCpuNanos(phase), profiler.getCpuTimes(phase),
+                    colour[0], colour[1], colour[2]);
+            if (profiler.isGpuTimed()) {
+                bar(windowHeight, row++, profiler.getLastGpuNanos(phase), profiler.getGpuTimes(phase),
+                        colour[0] * 0.6f, colour[1] * 0.6f, colour[2] * 0.6f);
+            }
+        }
+        glClearColor(0.5f, 0.5f, 0.5f, 1f);
+        rectangle(windowHeight, MARGIN + budgetPixels, MARGIN, 1, row * (ROW_HEIGHT + ROW_GAP) - ROW_GAP);
+
+        glClearColor(clearColour[0], clearColour[1], clearColour[2], clearColour[3]);
+        if (!scissorTest) {
+            glDisable(GL_SCISSOR_TEST);
+        }
+    }
+
+    private void bar(int windowHeight, int row, long nanos, LatencyHistogram histogram, float red, float green,
+            float blue) {
+        int top = MARGIN + row * (ROW_HEIGHT + ROW_GAP);
+        glClearColor(red, green, blue, 1f);
+        rectangle(windowHeight, MARGIN, top, pixels(nanos), ROW_HEIGHT);
+        glClearColor(0.1f, 0.1f, 0.1f, 1f);
+        rectangle(windowHeight, MARGIN + pixels(histogram.getPercentile(0.95)), top, 2, ROW_HEIGHT);
+    }
+
+    private int pixels(long nanos) {
+        // four budgets at most, so a hitch stays on screen
+        return (int) (Math.min(nanos, budgetNanos * 4) * budgetPixels / budgetNanos);
+    }
+
+    /**
+     * Clears a rectangle given from the top left corner of the window.
+     */
+    private static void rectangle(int windowHeight, int left, int top, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        glScissor(left, windowHeight - top - height, width, height);
+        glClear(GL_COLOR_BUFFER_BIT);
+    }
+}
@@ -0,0 +1,382 @@
+package com.xenosnowfox.engine.graphics;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Locale;
+
+import static org.lwjgl.opengl.GL11.GL_FALSE;
+import static org.lwjgl.opengl.GL11.GL_NO_ERROR;
+import static org.lwjgl.opengl.GL11.GL_RENDERER;
+import static org.lwjgl.opengl.GL11.GL_TRUE;
+import static org.lwjgl.opengl.GL11.GL_VENDOR;
+import static org.lwjgl.opengl.GL11.GL_VERSION;
+import static org.lwjgl.opengl.GL11.glGetError;
+import static org.lwjgl.opengl.GL11.glGetInteger;
+import static org.lwjgl.opengl.GL11.glGetString;
+import static org.lwjgl.opengl.GL20.GL_COMPILE_STATUS;
+import static org.lwjgl.opengl.GL20.GL_LINK_STATUS;
+import static org.lwjgl.opengl.GL20.GL_SHADING_LANGUAGE_VERSION;
+import static org.lwjgl.opengl.GL20.glAttachShader;
+import static org.lwjgl.opengl.GL20.glCompileShader;
+import static org.lwjgl.opengl.GL20.glCreateProgram;
+import static org.lwjgl.opengl.GL20.glCreateShader;
+import static org.lwjgl.opengl.GL20.glDeleteProgram;
+import static org.lwjgl.opengl.GL20.glDeleteShader;
+import static org.lwjgl.opengl.GL20.glDetachShader;
+import static org.lwjgl.opengl.GL20.glGetProgramInfoLog;
+import static org.lwjgl.opengl.GL20.glGetProgrami;
+import static org.lwjgl.opengl.GL20.glGetShaderInfoLog;
+import static org.lwjgl.opengl.GL20.glGetShaderi;
+import static org.lwjgl.opengl.GL20.glLinkProgram;
+import static org.lwjgl.opengl.GL20.glShaderSource;
+import static org.lwjgl.opengl.GL41.GL_NUM_PROGRAM_BINARY_FORMATS;
+import static org.lwjgl.opengl.GL41.GL_PROGRAM_BINARY_LENGTH;
+import static org.lwjgl.opengl.GL41.GL_PROGRAM_BINARY_RETRIEVABLE_HINT;
+import static org.lwjgl.opengl.GL41.glGetProgramBinary;
+import static org.lwjgl.opengl.GL41.glProgramBinary;
+import static org.lwjgl.opengl.GL41.glProgramParameteri;
+
+/**
+ * Links GLSL programs, and keeps the driver's binary of each linked program on disk so later starts skip compiling.
+ *
+ * <p>A binary is stored under a SHA-256 key of everything that shapes it: the stage types and sources, the defines,
+ * the names of the uniforms and blocks the caller relies on, and the GL vendor, renderer, version and GLSL version.
+ * A new driver thus gets a new key; a binary the driver still rejects, e.g. after an update it does not announce in
+ * its version string, is deleted and the program compiled again.
+ *
+ * <p>Layout of a cache file (little endian): {@link #MAGIC}, {@link #VERSION}, the driver's binary format and the
+ * binary's length, then the binary. Drivers that offer no binary formats, such as some software rasterizers, always
+ * compile.
+ */
+public class ProgramCache {
+
+    public static final String EXTENSION = ".programbin";
+
+    /**
+     * "SPKP" read as a little endian int.
+     */
+    private static final int MAGIC = 0x504B5053;
+
+    public static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 16;
+
+    /**
+     * Most errors cleared before loading a binary; a lost context reports {@code GL_CONTEXT_LOST} forever.
+     */
+    private static final int MAX_STALE_ERRORS = 8;
+
+    private final Path directory;
+
+    private int hits;
+
+    private int misses;
+
+    private int rejected;
+
+    private String lastName;
+
+    private boolean lastHit;
+
+    private long lastNanos;
+
+    private long compileNanos;
+
+    private long loadNanos;
+
+    /**
+     * @param directory
+     * 		where binaries are kept, created when missing; {@code null} to always compile.
+     */
+    public ProgramCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Inserts a {@code #define} line for each define right after the {@code #version} line of a source, or at its
+     * start when it has none; a define may carry a value, e.g. {@code "MAX_LIGHTS 64"}.
+     */
+    public static String withDefines(String source, List<String> defines) {
+        if (defines.isEmpty()) {
+            return source;
+        }
+        StringBuilder lines = new StringBuilder();
+        for (String define : defines) {
+            lines.append("#define ").append(define).append('\n');
+        }
+        int version = source.startsWith("#version") ? 0 : source.indexOf("\n#version");
+        if (version < 0) {
+            return lines.append(source).toString();
+        }
+        int lineEnd = source.indexOf('\n', version + 1);
+        if (lineEnd < 0) {
+            return source + '\n' + lines;
+        }
+        return new StringBuilder(source).insert(lineEnd + 1, lines).toString();
+    }
+
+    /**
+     * Loads the program from its cached binary, or compiles and links it and caches the binary.
+     *
+     * @param name
+     * 		for messages.
+     * @param stageTypes
+     * 		shader type of each source, e.g. {@code GL_VERTEX_SHADER}.
+     * @param defines
+     * 		inserted into every source by {@link #withDefines(String, List)}.
+     * @param uniforms
+     * 		names of the uniforms and blocks the caller looks up or binds by.
+     * @return the program.
+     * @throws IllegalStateException
+     * 		when a shader does not compile or the program does not link; the message holds the info log.
+     */
+    public int link(String name, int[] stageTypes, String[] sources, List<String> defines, List<String> uniforms) {
+        long start = System.nanoTime();
+        lastName = name;
+        Path file = null;
+        if (directory != null && glGetInteger(GL_NUM_PROGRAM_BINARY_FORMATS) > 0) {
+            file = directory.resolve(key(stageTypes, sources, defines, uniforms) + EXTENSION);
+            int program = load(file);
+            if (program != 0) {
+                hits++;
+                lastHit = true;
+                lastNanos = System.nanoTime() - start;
+                loadNanos += lastNanos;
+                return program;
+            }
+        }
+
+        int program = compile(name, stageTypes, sources, defines, file != null);
+        misses++;
+        lastHit = false;
+        lastNanos = System.nanoTime() - start;
+        compileNanos += lastNanos;
+        if (file != null) {
+            try {
+                store(program, file);
+            } catch (IOException exception) {
+                System.err.println("Unable to write program cache for `" + name + "`: " + exception.getMessage());
+            }
+        }
+        return program;
+    }
+
+    /**
+     * @return the program, or 0 when there is no usable binary; a rejected binary is deleted.
+     */
+    private int load(Path file) {
+        if (!Files.isRegularFile(file)) {
+            return 0;
+        }
+        // read rather than mapped: a mapping outlives the channel, and would keep the file from being deleted or
+        // replaced on some platforms
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer binary = null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (!readFully(channel, header, 0) || header.getInt(0) != MAGIC || header.getInt(4) != VERSION
+                    || header.getInt(12) != size - HEADER_BYTES) {
+                return reject(file, 0);
+            }
+            binary = MemoryUtil.memAlloc(header.getInt(12));
+            if (!readFully(channel, binary, HEADER_BYTES)) {
+                return reject(file, 0);
+            }
+            binary.flip();
+
+            // clear earlier errors, so only the binary's own are seen
+            int staleErrors = 0;
+            while (glGetError() != GL_NO_ERROR) {
+                if (++staleErrors == MAX_STALE_ERRORS) {
+                    // the context is in no state to judge the binary
+                    return 0;
+                }
+            }
+            int program = glCreateProgram();
+            glProgramBinary(program, header.getInt(8), binary);
+            if (glGetError() != GL_NO_ERROR || glGetProgrami(program, GL_LINK_STATUS) == GL_FALSE) {
+                return reject(file, program);
+            }
+            return program;
+        } catch (IOException exception) {
+            return 0;
+        } finally {
+            MemoryUtil.memFree(binary);
+        }
+    }
+
+    /**
+     * Reads until the buffer is full.
+     *
+     * @return whether it was filled before the end of the file.
+     */
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int reject(Path file, int program) {
+        if (program != 0) {
+            glDeleteProgram(program);
+        }
+        rejected++;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException exception) {
+            // replaced by the next successful store, if that can write it
+            System.err.println("Unable to delete rejected program binary `" + file + "`: " + exception.getMessage());
+        }
+        return 0;
+    }
+
+    private static int compile(String name, int[] stageTypes, String[] sources, List<String> defines, boolean retrievable) {
+        int program = glCreateProgram();
+        int[] shaders = new int[sources.length];
+        try {
+            for (int stage = 0; stage < sources.length; stage++) {
+                shaders[stage] = glCreateShader(stageTypes[stage]);
+                glShaderSource(shaders[stage], withDefines(sources[stage], defines));
+                glCompileShader(shaders[stage]);
+                if (glGetShaderi(shaders[stage], GL_COMPILE_STATUS) == GL_FALSE) {
+                    throw new IllegalStateException("Unable to compile stage " + stage + " of `" + name + "`: "
+                            + glGetShaderInfoLog(shaders[stage]));
+                }
+                glAttachShader(program, shaders[stage]);
+            }
+            if (retrievable) {
+                glProgramParameteri(program, GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GL_TRUE);
+            }
+            glLinkProgram(program);
+            if (glGetProgrami(program, GL_LINK_STATUS) == GL_FALSE) {
+                throw new IllegalStateException("Unable to link `" + name + "`: " + glGetProgramInfoLog(program));
+            }
+        } catch (IllegalStateException exception) {
+            glDeleteProgram(program);
+            program = 0;
+            throw exception;
+        } finally {
+            for (int shader : shaders) {
+                if (shader != 0) {
+                    if (program != 0) {
+                        glDetachShader(program, shader);
+                    }
+                    glDeleteShader(shader);
+                }
+            }
+        }
+        return program;
+    }
+
+    /**
+     * Writes the binary of a linked program; the file is replaced atomically so readers never see a partial binary.
+     */
+    private static void store(int program, Path file) throws IOException {
+        int length = glGetProgrami(program, GL_PROGRAM_BINARY_LENGTH);
+        if (length <= 0) {
+            return;
+        }
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        ByteBuffer buffer = MemoryUtil.memAlloc(HEADER_BYTES + length).order(ByteOrder.LITTLE_ENDIAN);
+        Path temporary = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer written = stack.mallocInt(1);
+            IntBuffer format = stack.mallocInt(1);
+            buffer.position(HEADER_BYTES);
+            glGetProgramBinary(program, written, format, buffer);
+            buffer.putInt(0, MAGIC)
+                    .putInt(4, VERSION)
+                    .putInt(8, format.get(0))
+                    .putInt(12, written.get(0));
+            buffer.position(0).limit(HEADER_BYTES + written.get(0));
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            MemoryUtil.memFree(buffer);
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static String key(int[] stageTypes, String[] sources, List<String> defines, List<String> uniforms) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException(exception);
+        }
+        update(digest, "version " + VERSION);
+        for (int stage = 0; stage < sources.length; stage++) {
+            update(digest, "stage " + stageTypes[stage]);
+            update(digest, sources[stage]);
+        }
+        for (String define : defines) {
+            update(digest, "define " + define);
+        }
+        for (String uniform : uniforms) {
+            update(digest, "uniform " + uniform);
+        }
+        update(digest, glGetString(GL_VENDOR));
+        update(digest, glGetString(GL_RENDERER));
+        update(digest, glGetString(GL_VERSION));
+        update(digest, glGetString(GL_SHADING_LANGUAGE_VERSION));
+
+        StringBuilder hex = new StringBuilder();
+        for (byte value : digest.digest()) {
+            hex.append(String.format(Locale.ROOT, "%02x", value));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Adds a string and its length, so no two lists of strings digest alike.
+     */
+    private static void update(MessageDigest digest, String value) {
+        byte[] bytes = String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+        digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).array());
+        digest.update(bytes);
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+
+    /**
+     * Cached binaries the driver refused, each followed by a compile.
+     */
+    public int getRejected() {
+        return rejected;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "`%s` %s in %.1f ms; %d hits (%.1f ms), %d compiled (%.1f ms), %d rejected%s",
+                lastName, lastHit ? "loaded from cache" : "compiled", lastNanos / 1e6, hits, loadNanos / 1e6, misses,
+                compileNanos / 1e6, rejected, directory == null ? ", no cache" : "");
+    }
+}
@@ -0,0 +1,363 @@
+package com.xenosnowfox.engine.graphics;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * Collects the draws of a frame as packets with a 64-bit sort key, sorts them and submits them with as little GL
+ * state change as possible.
+ *
+ * <p>A key orders packets by shader, material, texture, mesh, submesh and finally view depth, front to back:
+ * <pre>
+ *  63    60 59        48 47        36 35         22 21     16 15         0
+ * | shader | material   | texture    | mesh        | submesh | depth      |
+ * </pre>
+ * Materials, textures and meshes get small ids the first time the queue sees them, kept on the objects themselves so
+ * the queue never holds on to them. When a field runs out of ids, the numbering starts over with the next frame; ids
+ * are only ever compared, and runs are detected on the objects themselves, so this merely reorders a frame. Packets are
+ * sorted with an LSD radix sort into reused primitive arrays, and consecutive packets drawing the same submesh with
+ * the same material become one instanced draw. All state changes go through a {@link GLStateCache}.
+ */
+public class RenderQueue {
+
+    private static final int SHADER_SHIFT = 60;
+
+    private static final int MATERIAL_SHIFT = 48;
+
+    private static final int TEXTURE_SHIFT = 36;
+
+    private static final int MESH_SHIFT = 22;
+
+    private static final int SUBMESH_SHIFT = 16;
+
+    private static final int SHADER_MASK = 0xF;
+
+    private static final int ID_MASK = 0xFFF;
+
+    private static final int MESH_MASK = 0x3FFF;
+
+    private static final int SUBMESH_MASK = 0x3F;
+
+    private static final int DEPTH_MASK = 0xFFFF;
+
+    private final float maxDepth;
+
+    private final GLStateCache stateCache = new GLStateCache();
+
+    private final InstanceBuffer instanceBuffer = new InstanceBuffer();
+
+    private final Transformation transformation = new Transformation();
+
+    /**
+     * Hands out a new numbering to every queue and every {@link #resetIds()}, so ids of another never pass as valid.
+     */
+    private static final AtomicInteger NUMBERINGS = new AtomicInteger();
+
+    private int numbering = NUMBERINGS.incrementAndGet();
+
+    private int nextMeshId = 1;
+
+    private int nextMaterialId = 1;
+
+    private int nextTextureId = 1;
+
+    private final Vector3f viewPosition = new Vector3f();
+
+    private Matrix4f viewMatrix;
+
+    private ToIntFunction<Material> materialShaders;
+
+    private GameItem[] packetItems = new GameItem[256];
+
+    private int[] packetShaders = new int[256];
+
+    private int[] packetSubMeshes = new int[256];
+
+    private long[] keys = new long[256];
+
+    private long[] sortedKeys = new long[256];
+
+    private int[] order = new int[256];
+
+    private int[] sortedOrder = new int[256];
+
+    /**
+     * Instance number of every sorted packet.
+     */
+    private int[] instances = new int[256];
+
+    private final int[] counts = new int[256];
+
+    private int packetCount;
+
+    private int drawCalls;
+
+    /**
+     * @param maxDepth
+     * 		view distance mapped onto the full depth field; anything further sorts as the furthest.
+     */
+    public RenderQueue(float maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Adds shader bits by material to every packet, e.g. the {@link ShaderFeature}s a material needs, so each
+     * submesh is drawn with the shader variant of its own material.
+     *
+     * @param withMaterialShaders
+     * 		given the material of a submesh, possibly {@code null}; {@code null} to use the submitted shader as is.
+     */
+    public void setMaterialShaders(ToIntFunction<Material> withMaterialShaders) {
+        materialShaders = withMaterialShaders;
+    }
+
+    /**
+     * Starts a frame seen through the given view matrix.
+     */
+    public void begin(Matrix4f withViewMatrix) {
+        viewMatrix = withViewMatrix;
+        packetCount = 0;
+        if (nextMeshId > MESH_MASK || nextMaterialId > ID_MASK || nextTextureId > ID_MASK) {
+            resetIds();
+        }
+    }
+
+    /**
+     * Queues one packet per submesh of an item's mesh.
+     *
+     * @param shader
+     * 		0 to 15, passed back to the shader binder of {@link #flush(IntConsumer, Consumer, Consumer)} with the bits
+     * 		of {@link #setMaterialShaders(ToIntFunction)} added.
+     */
+    public void submit(GameItem gameItem, int shader) {
+        Mesh mesh = gameItem.getMesh();
+        viewMatrix.transformPosition(gameItem.getPosition(), viewPosition);
+        long depth = (long) (Math.min(1f, Math.max(0f, -viewPosition.z / maxDepth)) * DEPTH_MASK);
+        long meshBits = (long) (meshId(mesh) & MESH_MASK) << MESH_SHIFT;
+
+        for (int subMesh = 0; subMesh < mesh.getSubMeshes().length; subMesh++) {
+            Material material = mesh.getSubMeshMaterial(subMesh);
+            Texture texture = material != null ? material.getTexture() : null;
+            int packetShader = materialShaders != null ? shader | materialShaders.applyAsInt(material) : shader;
+            packetShader &= SHADER_MASK;
+            long key = (long) packetShader << SHADER_SHIFT
+                    | (long) (materialId(material) & ID_MASK) << MATERIAL_SHIFT
+                    | (long) (textureId(texture) & ID_MASK) << TEXTURE_SHIFT
+                    | meshBits
+                    | (long) (subMesh & SUBMESH_MASK) << SUBMESH_SHIFT
+                    | depth;
+            add(gameItem, packetShader, subMesh, key);
+        }
+    }
+
+    private int meshId(Mesh mesh) {
+        SortId sortId = mesh.sortId;
+        if (sortId.numbering != numbering) {
+            sortId.numbering = numbering;
+            sortId.id = nextMeshId++;
+        }
+        return sortId.id;
+    }
+
+    private int materialId(Material material) {
+        if (material == null) {
+            return 0;
+        }
+        SortId sortId = material.sortId;
+        if (sortId.numbering != numbering) {
+            sortId.numbering = numbering;
+            sortId.id = nextMaterialId++;
+        }
+        return sortId.id;
+    }
+
+    private int textureId(Texture texture) {
+        if (texture == null) {
+            return 0;
+        }
+        SortId sortId = texture.sortId;
+        if (sortId.numbering != numbering) {
+            sortId.numbering = numbering;
+            sortId.id = nextTextureId++;
+        }
+        return sortId.id;
+    }
+
+    private void add(GameItem gameItem, int shader, int subMesh, long key) {
+        if (packetCount == keys.length) {
+            int capacity = packetCount * 2;
+            packetItems = Arrays.copyOf(packetItems, capacity);
+            packetShaders = Arrays.copyOf(packetShaders, capacity);
+            packetSubMeshes = Arrays.copyOf(packetSubMeshes, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+            sortedKeys = new long[capacity];
+            order = new int[capacity];
+            sortedOrder = new int[capacity];
+            instances = new int[capacity];
+        }
+        packetItems[packetCount] = gameItem;
+        packetShaders[packetCount] = shader;
+        packetSubMeshes[packetCount] = subMesh;
+        keys[packetCount] = key;
+        packetCount++;
+    }
+
+    /**
+     * Sorts and draws the queued packets.
+     *
+     * @param shaderBinder
+     * 		binds a shader and uploads its per-frame uniforms.
+     * @param meshBinder
+     * 		optional, uploads per-mesh uniforms.
+     * @param materialBinder
+     * 		optional, uploads the uniforms of a material.
+     */
+    public void flush(IntConsumer shaderBinder, Consumer<Mesh> meshBinder, Consumer<Material> materialBinder) {
+        stateCache.invalidate();
+        stateCache.resetCounters();
+        drawCalls = 0;
+        sort();
+
+        // matrices in sorted order, so every run of packets is a contiguous range of instances
+        instanceBuffer.begin(packetCount);
+        for (int i = 0; i < packetCount; i++) {
+            GameItem gameItem = packetItems[order[i]];
+            if (i > 0 && packetItems[order[i - 1]] == gameItem) {
+                instances[i] = instances[i - 1];
+            } else {
+                instances[i] = instanceBuffer.add(transformation.getModelMatrix(gameItem));
+            }
+        }
+
+        int runStart = 0;
+        while (runStart < packetCount) {
+            int packet = order[runStart];
+            Mesh mesh = packetItems[packet].getMesh();
+            int subMesh = packetSubMeshes[packet];
+            int shader = packetShaders[packet];
+            int runEnd = runStart + 1;
+            // the same submesh drawn for consecutive instances
+            while (runEnd < packetCount
+                    && packetItems[order[runEnd]].getMesh() == mesh
+                    && packetSubMeshes[order[runEnd]] == subMesh
+                    && packetShaders[order[runEnd]] == shader
+                    && instances[runEnd] == instances[runEnd - 1] + 1) {
+                runEnd++;
+            }
+
+            Material material = mesh.getSubMeshMaterial(subMesh);
+            stateCache.bindShader(shader, shaderBinder);
+            stateCache.bindMesh(mesh, meshBinder);
+            stateCache.bindMaterial(material, materialBinder);
+            stateCache.bindTexture(material != null ? material.getTexture() : null);
+            // attaching only does GL work on a mesh's first draw, before the cache could have bound its VAO
+            instanceBuffer.attach(mesh);
+            stateCache.bindVertexArray(mesh.getVaoId());
+            mesh.drawSubMesh(subMesh, runEnd - runStart, instances[runStart]);
+            drawCalls++;
+            runStart = runEnd;
+        }
+        instanceBuffer.end();
+        stateCache.restore();
+    }
+
+    /**
+     * LSD radix sort of the keys, a byte per pass; passes where every key has the same byte are skipped.
+     */
+    private void sort() {
+        for (int i = 0; i < packetCount; i++) {
+            order[i] = i;
+        }
+        long[] sourceKeys = keys;
+        int[] sourceOrder = order;
+        long[] targetKeys = sortedKeys;
+        int[] targetOrder = sortedOrder;
+        for (int shift = 0; shift < 64; shift += 8) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < packetCount; i++) {
+                counts[(int) (sourceKeys[i] >>> shift) & 0xFF]++;
+            }
+            if (counts[(int) (sourceKeys[0] >>> shift) & 0xFF] == packetCount) {
+                continue;
+            }
+            int offset = 0;
+            for (int bucket = 0; bucket < counts.length; bucket++) {
+                int count = counts[bucket];
+                counts[bucket] = offset;
+                offset += count;
+            }
+            for (int i = 0; i < packetCount; i++) {
+                int target = counts[(int) (sourceKeys[i] >>> shift) & 0xFF]++;
+                targetKeys[target] = sourceKeys[i];
+                targetOrder[target] = sourceOrder[i];
+            }
+            long[] swapKeys = sourceKeys;
+            sourceKeys = targetKeys;
+            targetKeys = swapKeys;
+            int[] swapOrder = sourceOrder;
+            sourceOrder = targetOrder;
+            targetOrder = swapOrder;
+        }
+        // keep the sorted result in keys / order for the caller
+        if (sourceKeys != keys) {
+            System.arraycopy(sourceKeys, 0, keys, 0, packetCount);
+            System.arraycopy(sourceOrder, 0, order, 0, packetCount);
+        }
+    }
+
+    /**
+     * Packets queued this frame, i.e. the draw calls needed without sorting and instancing.
+     */
+    public int getPacketCount() {
+        return packetCount;
+    }
+
+    /**
+     * Draw calls issued by the last {@link #flush(IntConsumer, Consumer, Consumer)}.
+     */
+    public int getDrawCalls() {
+        return drawCalls;
+    }
+
+    public int getBindsIssued() {
+        return stateCache.getBindsIssued();
+    }
+
+    public int getBindsSkipped() {
+        return stateCache.getBindsSkipped();
+    }
+
+    /**
+     * Frames that waited for the GPU before writing their instance matrices.
+     */
+    public int getStalls() {
+        return instanceBuffer.getStalls();
+    }
+
+    /**
+     * Forgets the ids handed out so far, e.g. after a level change; the key fields start filling up again.
+     */
+    public void resetIds() {
+        numbering = NUMBERINGS.incrementAndGet();
+        nextMeshId = 1;
+        nextMaterialId = 1;
+        nextTextureId = 1;
+    }
+
+    public void cleanUp() {
+        instanceBuffer.cleanUp();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%d packets, %d draw calls, %d binds issued, %d binds skipped, %d stalls",
+                packetCount, drawCalls, getBindsIssued(), getBindsSkipped(), getStalls());
+    }
+}
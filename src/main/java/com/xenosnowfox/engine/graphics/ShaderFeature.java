@@ -0,0 +1,80 @@
+package com.xenosnowfox.engine.graphics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Optional parts of the shaders, compiled in by a {@code #define} instead of branched on per fragment.
+ *
+ * <p>A set of features is an int with the {@link #bit()} of each feature, so it fits the shader field of a
+ * {@link RenderQueue} key and indexes the programs of {@link ShaderPermutations} directly.
+ */
+public enum ShaderFeature {
+    /**
+     * Colours come from {@code texture_sampler} instead of the material block.
+     */
+    TEXTURED("HAS_TEXTURE"),
+    /**
+     * Shades with the lights of the fragment's cluster, bound by {@link LightBuffers}, instead of the point light of
+     * the frame block.
+     */
+    CLUSTERED_LIGHTS("CLUSTERED_LIGHTS");
+
+    /**
+     * Number of feature sets, i.e. of possible variants of a shader.
+     */
+    public static final int PERMUTATIONS = 1 << values().length;
+
+    private final String define;
+
+    ShaderFeature(String define) {
+        this.define = define;
+    }
+
+    public String getDefine() {
+        return define;
+    }
+
+    public int bit() {
+        return 1 << ordinal();
+    }
+
+    public boolean isIn(int features) {
+        return (features & bit()) != 0;
+    }
+
+    /**
+     * Features a material needs.
+     */
+    public static int of(Material material) {
+        return material != null && material.isTextured() ? TEXTURED.bit() : 0;
+    }
+
+    /**
+     * Defines of a feature set, in declaration order.
+     */
+    public static List<String> defines(int features) {
+        List<String> defines = new ArrayList<>();
+        for (ShaderFeature feature : values()) {
+            if (feature.isIn(features)) {
+                defines.add(feature.define);
+            }
+        }
+        return defines;
+    }
+
+    /**
+     * Names a variant of a shader, e.g. {@code default+textured+clustered_lights}, or just the shader's name without
+     * features.
+     */
+    public static String variantName(String name, int features) {
+        StringBuilder variant = new StringBuilder(name);
+        for (ShaderFeature feature : values()) {
+            if (feature.isIn(features)) {
+                variant.append('+').append(feature.name().toLowerCase(Locale.ROOT));
+            }
+        }
+        return variant.toString();
+    }
+}
@@ -0,0 +1,263 @@
+package com.xenosnowfox.engine.graphics;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Locale;
+
+import static org.lwjgl.opengl.ARBGLSPIRV.GL_SHADER_BINARY_FORMAT_SPIR_V_ARB;
+import static org.lwjgl.opengl.ARBGLSPIRV.glSpecializeShaderARB;
+import static org.lwjgl.opengl.GL11.GL_FALSE;
+import static org.lwjgl.opengl.GL20.GL_COMPILE_STATUS;
+import static org.lwjgl.opengl.GL20.GL_LINK_STATUS;
+import static org.lwjgl.opengl.GL20.glAttachShader;
+import static org.lwjgl.opengl.GL20.glCreateProgram;
+import static org.lwjgl.opengl.GL20.glCreateShader;
+import static org.lwjgl.opengl.GL20.glDeleteProgram;
+import static org.lwjgl.opengl.GL20.glDeleteShader;
+import static org.lwjgl.opengl.GL20.glDetachShader;
+import static org.lwjgl.opengl.GL20.glGetProgramInfoLog;
+import static org.lwjgl.opengl.GL20.glGetProgrami;
+import static org.lwjgl.opengl.GL20.glGetShaderInfoLog;
+import static org.lwjgl.opengl.GL20.glGetShaderi;
+import static org.lwjgl.opengl.GL20.glLinkProgram;
+import static org.lwjgl.opengl.GL41.glShaderBinary;
+import static org.lwjgl.opengl.GL46.GL_SHADER_BINARY_FORMAT_SPIR_V;
+import static org.lwjgl.opengl.GL46.glSpecializeShader;
+
+/**
+ * The variants of a shader program, one per set of {@link ShaderFeature}s, each built the first time it is asked for.
+ *
+ * <p>A variant is loaded from SPIR-V modules compiled offline by {@link SpirvCompiler}, named by
+ * {@link #spirvFileName(String, int, int)}, when a directory is given, the driver takes SPIR-V (GL 4.6 or
+ * {@code ARB_gl_spirv}) and a module exists for every stage. Otherwise the GLSL sources are compiled with the
+ * feature defines through a {@link ProgramCache}, which keeps the linked binary for later starts. Modules the driver
+ * rejects, e.g. baked from older sources, fall back to GLSL as well.
+ */
+public class ShaderPermutations {
+
+    private final String name;
+
+    private final int[] stageTypes;
+
+    private final String[] sources;
+
+    private final List<String> uniforms;
+
+    private final ProgramCache programCache;
+
+    private final Path spirvDirectory;
+
+    /**
+     * Whether SPIR-V comes from {@code ARB_gl_spirv} on a context older than 4.6, whose core entry points are
+     * missing.
+     */
+    private final boolean arbSpirv;
+
+    private final int[] programs = new int[ShaderFeature.PERMUTATIONS];
+
+    private int spirvLoaded;
+
+    private int glslLinked;
+
+    private long nanos;
+
+    /**
+     * @param name
+     * 		of the program, for messages and the names of its SPIR-V modules.
+     * @param stageTypes
+     * 		shader type of each source, e.g. {@code GL_VERTEX_SHADER}.
+     * @param sources
+     * 		GLSL of each stage, with the features in {@code #ifdef} blocks.
+     * @param uniforms
+     * 		names of the uniforms and blocks the caller binds by, for the {@link ProgramCache} key.
+     * @param spirvDirectory
+     * 		holding the modules of the variants; {@code null} to always use the GLSL sources.
+     */
+    public ShaderPermutations(String name, int[] stageTypes, String[] sources, List<String> uniforms,
+            ProgramCache programCache, Path spirvDirectory) {
+        this.name = name;
+        this.stageTypes = stageTypes;
+        this.sources = sources;
+        this.uniforms = uniforms;
+        this.programCache = programCache;
+        GLCapabilities capabilities = GL.getCapabilities();
+        this.spirvDirectory = capabilities.OpenGL46 || capabilities.GL_ARB_gl_spirv ? spirvDirectory : null;
+        this.arbSpirv = !capabilities.OpenGL46;
+    }
+
+    /**
+     * File name of a stage's SPIR-V module for a variant, e.g. {@code default+textured.frag.spv}.
+     */
+    public static String spirvFileName(String name, int features, int stageType) {
+        return ShaderFeature.variantName(name, features) + "." + SpirvCompiler.stageExtension(stageType) + ".spv";
+    }
+
+    /**
+     * The program of a variant, built now if it is asked for the first time.
+     *
+     * @throws IllegalStateException
+     * 		when the variant does not compile or link.
+     */
+    public int getProgram(int features) {
+        int program = programs[features];
+        if (program == 0) {
+            long start = System.nanoTime();
+            if (spirvDirectory != null) {
+                try {
+                    program = loadSpirv(features);
+                } catch (IllegalStateException exception) {
+                    // e.g. modules baked from older sources; the GLSL sources are the reference
+                    System.err.println(exception.getMessage());
+                }
+            }
+            if (program != 0) {
+                spirvLoaded++;
+            } else {
+                program = programCache.link(ShaderFeature.variantName(name, features), stageTypes, sources,
+                        ShaderFeature.defines(features), uniforms);
+                glslLinked++;
+            }
+            nanos += System.nanoTime() - start;
+            programs[features] = program;
+        }
+        return program;
+    }
+
+    /**
+     * Builds every variant up front, so none is compiled in the middle of a frame.
+     */
+    public void buildAll() {
+        for (int features = 0; features < programs.length; features++) {
+            getProgram(features);
+        }
+    }
+
+    /**
+     * @return the program, or 0 when a module of the variant is missing.
+     */
+    private int loadSpirv(int features) {
+        ByteBuffer[] modules = new ByteBuffer[stageTypes.length];
+        try {
+            for (int stage = 0; stage < stageTypes.length; stage++) {
+                Path file = spirvDirectory.resolve(spirvFileName(name, features, stageTypes[stage]));
+                if (!Files.isRegularFile(file)) {
+                    return 0;
+                }
+                try {
+                    modules[stage] = readModule(file);
+                } catch (IOException exception) {
+                    System.err.println("Unable to read `" + file + "`: " + exception.getMessage());
+                    return 0;
+                }
+            }
+            return link(ShaderFeature.variantName(name, features), modules);
+        } finally {
+            for (ByteBuffer module : modules) {
+                MemoryUtil.memFree(module);
+            }
+        }
+    }
+
+    /**
+     * Reads a module into native memory, to be freed by the caller; read rather than mapped, as a mapping is only
+     * released once collected, and keeps a rebaked module from replacing the file on some platforms.
+     */
+    private static ByteBuffer readModule(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Module too large: " + size + " bytes");
+            }
+            ByteBuffer module = MemoryUtil.memAlloc((int) size);
+            try {
+                while (module.hasRemaining()) {
+                    if (channel.read(module) < 0) {
+                        throw new IOException("Module ended early");
+                    }
+                }
+            } catch (IOException exception) {
+                MemoryUtil.memFree(module);
+                throw exception;
+            }
+            return module.flip();
+        }
+    }
+
+    private int link(String variant, ByteBuffer[] modules) {
+        int program = glCreateProgram();
+        int[] shaders = new int[stageTypes.length];
+        try {
+            for (int stage = 0; stage < stageTypes.length; stage++) {
+                shaders[stage] = glCreateShader(stageTypes[stage]);
+                if (arbSpirv) {
+                    glShaderBinary(new int[]{shaders[stage]}, GL_SHADER_BINARY_FORMAT_SPIR_V_ARB, modules[stage]);
+                    glSpecializeShaderARB(shaders[stage], "main", new int[0], new int[0]);
+                } else {
+                    glShaderBinary(new int[]{shaders[stage]}, GL_SHADER_BINARY_FORMAT_SPIR_V, modules[stage]);
+                    glSpecializeShader(shaders[stage], "main", new int[0], new int[0]);
+                }
+                if (glGetShaderi(shaders[stage], GL_COMPILE_STATUS) == GL_FALSE) {
+                    throw new IllegalStateException("Unable to specialize stage " + stage + " of `" + variant + "`: "
+                            + glGetShaderInfoLog(shaders[stage]));
+                }
+                glAttachShader(program, shaders[stage]);
+            }
+            glLinkProgram(program);
+            if (glGetProgrami(program, GL_LINK_STATUS) == GL_FALSE) {
+                throw new IllegalStateException("Unable to link `" + variant + "`: " + glGetProgramInfoLog(program));
+            }
+        } catch (IllegalStateException exception) {
+            glDeleteProgram(program);
+            program = 0;
+            throw exception;
+        } finally {
+            for (int shader : shaders) {
+                if (shader != 0) {
+                    if (program != 0) {
+                        glDetachShader(program, shader);
+                    }
+                    glDeleteShader(shader);
+                }
+            }
+        }
+        return program;
+    }
+
+    /**
+     * Variants loaded from SPIR-V modules.
+     */
+    public int getSpirvLoaded() {
+        return spirvLoaded;
+    }
+
+    /**
+     * Variants compiled from GLSL, or loaded from the binary the program cache kept of an earlier compile.
+     */
+    public int getGlslLinked() {
+        return glslLinked;
+    }
+
+    public void cleanUp() {
+        for (int features = 0; features < programs.length; features++) {
+            if (programs[features] != 0) {
+                glDeleteProgram(programs[features]);
+                programs[features] = 0;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "`%s`: %d variants from SPIR-V, %d from GLSL in %.1f ms%s; %s", name,
+                spirvLoaded, glslLinked, nanos / 1e6, spirvDirectory == null ? ", no SPIR-V" : "", programCache);
+    }
+}
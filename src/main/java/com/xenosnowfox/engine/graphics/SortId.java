@@ -0,0 +1,16 @@
+package com.xenosnowfox.engine.graphics;
+
+/**
+ * The small id a {@link RenderQueue} packs into its sort keys for a mesh, material or texture. It is kept on the
+ * object itself, so the queue holds no reference to anything it has drawn; an id handed out by an earlier numbering
+ * of the queue, or by another queue, is stale and replaced on first use.
+ */
+final class SortId {
+
+    int id;
+
+    /**
+     * Numbering the id belongs to; 0 before the first.
+     */
+    int numbering;
+}
@@ -0,0 +1,141 @@
+package com.xenosnowfox.engine.graphics;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.lwjgl.opengl.GL20.GL_FRAGMENT_SHADER;
+import static org.lwjgl.opengl.GL20.GL_VERTEX_SHADER;
+import static org.lwjgl.opengl.GL32.GL_GEOMETRY_SHADER;
+import static org.lwjgl.opengl.GL43.GL_COMPUTE_SHADER;
+import static org.lwjgl.util.shaderc.Shaderc.shaderc_compilation_status_success;
+import static org.lwjgl.util.shaderc.Shaderc.shaderc_compile_into_spv;
+import static org.lwjgl.util.shaderc.Shaderc.shaderc_compile_options_add_macro_definition;
+import static org.lwjgl.util.shaderc.Shaderc.shaderc_compile_options_clone;
+import static org.lwjgl.util.shaderc.Shaderc.shaderc_compile_options_initialize;
+import static org.lwjgl.util.shaderc.Shaderc.shaderc_compile_options_release;
+import static org.lwjgl.util.shaderc.Shaderc.shaderc_compile_options_set_optimization_level;
+import static org.lwjgl.util.shaderc.Shaderc.shaderc_compile_options_set_target_env;
+import static org.lwjgl.util.shaderc.Shaderc.shaderc_compiler_initialize;
+import static org.lwjgl.util.shaderc.Shaderc.shaderc_compiler_release;
+import static org.lwjgl.util.shaderc.Shaderc.shaderc_env_version_opengl_4_5;
+import static org.lwjgl.util.shaderc.Shaderc.shaderc_glsl_compute_shader;
+import static org.lwjgl.util.shaderc.Shaderc.shaderc_glsl_fragment_shader;
+import static org.lwjgl.util.shaderc.Shaderc.shaderc_glsl_geometry_shader;
+import static org.lwjgl.util.shaderc.Shaderc.shaderc_glsl_vertex_shader;
+import static org.lwjgl.util.shaderc.Shaderc.shaderc_optimization_level_performance;
+import static org.lwjgl.util.shaderc.Shaderc.shaderc_result_get_bytes;
+import static org.lwjgl.util.shaderc.Shaderc.shaderc_result_get_compilation_status;
+import static org.lwjgl.util.shaderc.Shaderc.shaderc_result_get_error_message;
+import static org.lwjgl.util.shaderc.Shaderc.shaderc_result_release;
+import static org.lwjgl.util.shaderc.Shaderc.shaderc_target_env_opengl;
+
+/**
+ * Compiles GLSL into SPIR-V for OpenGL with shaderc, for {@link ShaderPermutations} to load through
+ * {@code glShaderBinary}. Needs no GL context, so variants can be compiled offline.
+ *
+ * <p>SPIR-V for OpenGL knows no names: every input, output and block of a stage needs an explicit location or
+ * binding, and uniforms outside blocks are limited to opaque types such as samplers.
+ */
+public class SpirvCompiler implements AutoCloseable {
+
+    private final long compiler;
+
+    private final long options;
+
+    public SpirvCompiler() {
+        compiler = shaderc_compiler_initialize();
+        options = shaderc_compile_options_initialize();
+        if (compiler == 0 || options == 0) {
+            close();
+            throw new IllegalStateException("Unable to initialize shaderc");
+        }
+        shaderc_compile_options_set_target_env(options, shaderc_target_env_opengl, shaderc_env_version_opengl_4_5);
+        shaderc_compile_options_set_optimization_level(options, shaderc_optimization_level_performance);
+    }
+
+    /**
+     * Compiles one stage.
+     *
+     * @param name
+     * 		file name of the source, for messages.
+     * @param stageType
+     * 		e.g. {@code GL_VERTEX_SHADER}.
+     * @param defines
+     * 		defined before the source, each a name optionally followed by a value, e.g. {@code "MAX_LIGHTS 64"}.
+     * @return the SPIR-V module.
+     * @throws IllegalStateException
+     * 		when the source does not compile; the message holds shaderc's errors.
+     */
+    public byte[] compile(String name, int stageType, String source, List<String> defines) {
+        long stageOptions = shaderc_compile_options_clone(options);
+        long result = 0;
+        try {
+            for (String define : defines) {
+                int space = define.indexOf(' ');
+                shaderc_compile_options_add_macro_definition(stageOptions,
+                        space < 0 ? define : define.substring(0, space),
+                        space < 0 ? "" : define.substring(space + 1).trim());
+            }
+            result = shaderc_compile_into_spv(compiler, source, kind(stageType), name, "main", stageOptions);
+            if (result == 0) {
+                throw new IllegalStateException("Unable to compile `" + name + "`: out of memory");
+            }
+            if (shaderc_result_get_compilation_status(result) != shaderc_compilation_status_success) {
+                throw new IllegalStateException("Unable to compile `" + name + "`: "
+                        + shaderc_result_get_error_message(result));
+            }
+            ByteBuffer bytes = shaderc_result_get_bytes(result);
+            byte[] module = new byte[bytes.remaining()];
+            bytes.get(module);
+            return module;
+        } finally {
+            if (result != 0) {
+                shaderc_result_release(result);
+            }
+            shaderc_compile_options_release(stageOptions);
+        }
+    }
+
+    /**
+     * File extension shaderc and glslang use for a stage, e.g. {@code frag}.
+     */
+    public static String stageExtension(int stageType) {
+        switch (stageType) {
+            case GL_VERTEX_SHADER:
+                return "vert";
+            case GL_FRAGMENT_SHADER:
+                return "frag";
+            case GL_GEOMETRY_SHADER:
+                return "geom";
+            case GL_COMPUTE_SHADER:
+                return "comp";
+            default:
+                throw new IllegalArgumentException("Unsupported shader type " + stageType);
+        }
+    }
+
+    private static int kind(int stageType) {
+        switch (stageType) {
+            case GL_VERTEX_SHADER:
+                return shaderc_glsl_vertex_shader;
+            case GL_FRAGMENT_SHADER:
+                return shaderc_glsl_fragment_shader;
+            case GL_GEOMETRY_SHADER:
+                return shaderc_glsl_geometry_shader;
+            case GL_COMPUTE_SHADER:
+                return shaderc_glsl_compute_shader;
+            default:
+                throw new IllegalArgumentException("Unsupported shader type " + stageType);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (options != 0) {
+            shaderc_compile_options_release(options);
+        }
+        if (compiler != 0) {
+            shaderc_compiler_release(compiler);
+        }
+    }
+}
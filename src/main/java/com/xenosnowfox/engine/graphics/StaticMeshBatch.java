@@ -0,0 +1,421 @@
+package com.xenosnowfox.engine.graphics;
+
+import org.joml.Vector3f;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.lwjgl.opengl.GL11.GL_FLOAT;
+import static org.lwjgl.opengl.GL11.GL_TRIANGLES;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_INT;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_SHORT;
+import static org.lwjgl.opengl.GL13.GL_TEXTURE0;
+import static org.lwjgl.opengl.GL13.glActiveTexture;
+import static org.lwjgl.opengl.GL15.GL_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15.GL_BUFFER_SIZE;
+import static org.lwjgl.opengl.GL15.GL_ELEMENT_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15.GL_STATIC_DRAW;
+import static org.lwjgl.opengl.GL15.glBindBuffer;
+import static org.lwjgl.opengl.GL15.glBufferData;
+import static org.lwjgl.opengl.GL15.glDeleteBuffers;
+import static org.lwjgl.opengl.GL15.glGenBuffers;
+import static org.lwjgl.opengl.GL15.glGetBufferParameteri;
+import static org.lwjgl.opengl.GL20.glEnableVertexAttribArray;
+import static org.lwjgl.opengl.GL20.glVertexAttribPointer;
+import static org.lwjgl.opengl.GL30.glBindVertexArray;
+import static org.lwjgl.opengl.GL30.glDeleteVertexArrays;
+import static org.lwjgl.opengl.GL30.glGenVertexArrays;
+import static org.lwjgl.opengl.GL31.GL_COPY_READ_BUFFER;
+import static org.lwjgl.opengl.GL31.GL_COPY_WRITE_BUFFER;
+import static org.lwjgl.opengl.GL31.glCopyBufferSubData;
+import static org.lwjgl.opengl.GL33.glVertexAttribDivisor;
+import static org.lwjgl.opengl.GL40.GL_DRAW_INDIRECT_BUFFER;
+import static org.lwjgl.opengl.GL43.glMultiDrawElementsIndirect;
+
+/**
+ * Static meshes packed into one shared vertex buffer and one shared index buffer, drawn with
+ * {@code glMultiDrawElementsIndirect}.
+ *
+ * <p>{@link #add(Mesh)} copies a mesh's buffers on the GPU and remembers its base vertex and first index. Each frame
+ * {@link #submit(GameItem)} queues an instance, and {@link #flush(Consumer)} writes one
+ * {@code DrawElementsIndirectCommand} per submesh of every instance into a {@link BufferRing}. The commands are grouped
+ * by material and index type, so the whole batch takes one VAO bind and one multi-draw per group, however many
+ * objects it holds.
+ *
+ * <p>All meshes must share the batch's {@link VertexLayout}. Quantized layouts are rejected because their position
+ * decoding differs per mesh. 16 and 32 bit indices are copied as they are, each aligned to its own size, and drawn
+ * in separate groups.
+ */
+public class StaticMeshBatch {
+
+    /**
+     * {@code count, instanceCount, firstIndex, baseVertex, baseInstance}.
+     */
+    private static final int COMMAND_BYTES = 5 * Integer.BYTES;
+
+    private static final Vector3f POSITION_OFFSET = new Vector3f();
+
+    private static final Vector3f POSITION_SCALE = new Vector3f(1, 1, 1);
+
+    private final VertexLayout layout;
+
+    private final InstanceBuffer instanceBuffer = new InstanceBuffer();
+
+    private final BufferRing commandRing = new BufferRing(GL_DRAW_INDIRECT_BUFFER, 256 * COMMAND_BYTES, Integer.BYTES);
+
+    private final Transformation transformation = new Transformation();
+
+    private final Map<Mesh, Integer> slots = new IdentityHashMap<>();
+
+    private final List<Mesh> meshes = new ArrayList<>();
+
+    private final Map<Material, Integer> materialIds = new IdentityHashMap<>();
+
+    private final List<Material> materials = new ArrayList<>();
+
+    private int vaoId;
+
+    private int vertexBufferId;
+
+    private int indexBufferId;
+
+    private int vertexCapacity;
+
+    private int indexCapacity;
+
+    private int vertexBytes;
+
+    private int indexBytes;
+
+    private int instanceBufferId;
+
+    private int[] baseVertices = new int[16];
+
+    private int[] firstIndices = new int[16];
+
+    private int subMeshCount;
+
+    private int[] instanceSlots = new int[64];
+
+    private int[] instanceNumbers = new int[64];
+
+    private int instanceCount;
+
+    private int[] groupCounts = new int[8];
+
+    private int[] groupOffsets = new int[8];
+
+    private int commandCount;
+
+    private int multiDraws;
+
+    public StaticMeshBatch(VertexLayout layout) {
+        if (layout.isQuantized()) {
+            throw new IllegalArgumentException("Quantized vertex layouts cannot share a static batch");
+        }
+        this.layout = layout;
+        materials.add(null);
+        allocateBuffers(64 * 1024, 64 * 1024);
+    }
+
+    private void allocateBuffers(int withVertexCapacity, int withIndexCapacity) {
+        int newVertexBufferId = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, newVertexBufferId);
+        glBufferData(GL_ARRAY_BUFFER, withVertexCapacity, GL_STATIC_DRAW);
+        int newIndexBufferId = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, newIndexBufferId);
+        glBufferData(GL_ARRAY_BUFFER, withIndexCapacity, GL_STATIC_DRAW);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+
+        // keep what was packed so far
+        if (vertexBufferId != 0) {
+            copy(vertexBufferId, 0, newVertexBufferId, 0, vertexBytes);
+            copy(indexBufferId, 0, newIndexBufferId, 0, indexBytes);
+            glDeleteBuffers(vertexBufferId);
+            glDeleteBuffers(indexBufferId);
+            glDeleteVertexArrays(vaoId);
+        }
+        vertexBufferId = newVertexBufferId;
+        indexBufferId = newIndexBufferId;
+        vertexCapacity = withVertexCapacity;
+        indexCapacity = withIndexCapacity;
+
+        vaoId = glGenVertexArrays();
+        glBindVertexArray(vaoId);
+        glBindBuffer(GL_ARRAY_BUFFER, vertexBufferId);
+        layout.bindAttributes();
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, indexBufferId);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glBindVertexArray(0);
+        instanceBufferId = 0;
+    }
+
+    private static void copy(int sourceId, int sourceOffset, int targetId, int targetOffset, int bytes) {
+        if (bytes == 0) {
+            return;
+        }
+        glBindBuffer(GL_COPY_READ_BUFFER, sourceId);
+        glBindBuffer(GL_COPY_WRITE_BUFFER, targetId);
+        glCopyBufferSubData(GL_COPY_READ_BUFFER, GL_COPY_WRITE_BUFFER, sourceOffset, targetOffset, bytes);
+        glBindBuffer(GL_COPY_READ_BUFFER, 0);
+        glBindBuffer(GL_COPY_WRITE_BUFFER, 0);
+    }
+
+    /**
+     * Copies a mesh into the batch; adding the same mesh twice returns its existing slot. The mesh keeps its own
+     * buffers, and its materials are read again on every flush, so textures that stream in later still show.
+     *
+     * @return the slot of the mesh.
+     * @throws IllegalArgumentException
+     * 		when the mesh uses a different vertex layout.
+     */
+    public int add(Mesh mesh) {
+        Integer existing = slots.get(mesh);
+        if (existing != null) {
+            return existing;
+        }
+        if (mesh.getVertexLayout() != layout) {
+            throw new IllegalArgumentException("Mesh layout " + mesh.getVertexLayout() + " does not match the batch layout "
+                    + layout);
+        }
+        int stride = layout.getStride();
+        int indexSize = VertexLayout.indexSize(mesh.getIndexType());
+        glBindBuffer(GL_ARRAY_BUFFER, mesh.getVertexBufferId());
+        int meshVertexBytes = glGetBufferParameteri(GL_ARRAY_BUFFER, GL_BUFFER_SIZE);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        int meshIndexBytes = mesh.getVertexCount() * indexSize;
+        // indices start at a multiple of their own size, so the first index can be given in elements
+        int indexOffset = (indexBytes + indexSize - 1) / indexSize * indexSize;
+
+        if (vertexBytes + meshVertexBytes > vertexCapacity || indexOffset + meshIndexBytes > indexCapacity) {
+            allocateBuffers(Math.max(vertexCapacity * 2, vertexBytes + meshVertexBytes),
+                    Math.max(indexCapacity * 2, indexOffset + meshIndexBytes));
+        }
+        copy(mesh.getVertexBufferId(), 0, vertexBufferId, vertexBytes, meshVertexBytes);
+        copy(mesh.getIndexBufferId(), 0, indexBufferId, indexOffset, meshIndexBytes);
+
+        int slot = meshes.size();
+        if (slot == baseVertices.length) {
+            baseVertices = Arrays.copyOf(baseVertices, slot * 2);
+            firstIndices = Arrays.copyOf(firstIndices, slot * 2);
+        }
+        baseVertices[slot] = vertexBytes / stride;
+        firstIndices[slot] = indexOffset / indexSize;
+        vertexBytes += meshVertexBytes;
+        indexBytes = indexOffset + meshIndexBytes;
+        subMeshCount += mesh.getSubMeshes().length;
+        meshes.add(mesh);
+        slots.put(mesh, slot);
+        return slot;
+    }
+
+    public boolean contains(Mesh mesh) {
+        return slots.containsKey(mesh);
+    }
+
+    /**
+     * Starts a frame that submits at most the given number of instances.
+     */
+    public void begin(int maxInstances) {
+        instanceBuffer.begin(maxInstances);
+        instanceCount = 0;
+        if (instanceSlots.length < maxInstances) {
+            instanceSlots = new int[maxInstances];
+            instanceNumbers = new int[maxInstances];
+        }
+    }
+
+    /**
+     * Queues an item whose mesh has been {@link #add(Mesh) added}.
+     */
+    public void submit(GameItem gameItem) {
+        int instance = instanceBuffer.add(transformation.getModelMatrix(gameItem));
+        instanceSlots[instanceCount] = slots.get(gameItem.getMesh());
+        instanceNumbers[instanceCount] = instance;
+        instanceCount++;
+    }
+
+    /**
+     * Writes the draw commands of the queued instances and draws them, one multi-draw per material and index type.
+     * The shader and its frame uniforms must already be bound, with the position decoding of
+     * {@link #getPositionOffset()} and {@link #getPositionScale()}.
+     *
+     * @param materialBinder
+     * 		optional, uploads the uniforms of a material.
+     */
+    public void flush(Consumer<Material> materialBinder) {
+        commandCount = 0;
+        multiDraws = 0;
+
+        // group by material and index type: count, then place the commands of every group contiguously
+        Arrays.fill(groupCounts, 0);
+        int groups = 0;
+        for (int i = 0; i < instanceCount; i++) {
+            Mesh mesh = meshes.get(instanceSlots[i]);
+            for (int subMesh = 0; subMesh < mesh.getSubMeshes().length; subMesh++) {
+                int group = group(mesh, subMesh);
+                if (group >= groupCounts.length) {
+                    groupCounts = Arrays.copyOf(groupCounts, Math.max(group + 1, groupCounts.length * 2));
+                    groupOffsets = new int[groupCounts.length];
+                }
+                groupCounts[group]++;
+                groups = Math.max(groups, group + 1);
+                commandCount++;
+            }
+        }
+
+        commandRing.beginFrame();
+        commandRing.ensureCapacity(Math.max(1, commandCount) * COMMAND_BYTES);
+        int start = commandRing.allocate(Math.max(1, commandCount) * COMMAND_BYTES);
+        int offset = start;
+        for (int group = 0; group < groups; group++) {
+            groupOffsets[group] = offset;
+            offset += groupCounts[group] * COMMAND_BYTES;
+        }
+        ByteBuffer commands = commandRing.getBuffer();
+        for (int i = 0; i < instanceCount; i++) {
+            int slot = instanceSlots[i];
+            Mesh mesh = meshes.get(slot);
+            for (int subMesh = 0; subMesh < mesh.getSubMeshes().length; subMesh++) {
+                SubMesh part = mesh.getSubMeshes()[subMesh];
+                int group = group(mesh, subMesh);
+                int command = groupOffsets[group];
+                groupOffsets[group] += COMMAND_BYTES;
+                commands.putInt(command, part.getIndexCount());
+                commands.putInt(command + 4, 1);
+                commands.putInt(command + 8, firstIndices[slot] + part.getFirstIndex());
+                commands.putInt(command + 12, baseVertices[slot]);
+                commands.putInt(command + 16, instanceNumbers[i]);
+            }
+        }
+
+        attachInstances();
+        glBindVertexArray(vaoId);
+        glBindBuffer(GL_DRAW_INDIRECT_BUFFER, commandRing.getBufferId());
+        offset = start;
+        for (int group = 0; group < groups; group++) {
+            int count = groupCounts[group];
+            if (count == 0) {
+                continue;
+            }
+            Material material = materials.get(group >> 1);
+            if (material != null) {
+                if (materialBinder != null) {
+                    materialBinder.accept(material);
+                }
+                if (material.getTexture() != null) {
+                    glActiveTexture(GL_TEXTURE0);
+                    material.getTexture().bind();
+                }
+            }
+            int indexType = (group & 1) == 0 ? GL_UNSIGNED_SHORT : GL_UNSIGNED_INT;
+            glMultiDrawElementsIndirect(GL_TRIANGLES, indexType, offset, count, 0);
+            multiDraws++;
+            offset += count * COMMAND_BYTES;
+        }
+        glBindBuffer(GL_DRAW_INDIRECT_BUFFER, 0);
+        glBindVertexArray(0);
+
+        commandRing.endFrame();
+        instanceBuffer.end();
+    }
+
+    /**
+     * Group of a submesh: its material id times two, plus one for 32 bit indices.
+     */
+    private int group(Mesh mesh, int subMesh) {
+        Material material = mesh.getSubMeshMaterial(subMesh);
+        int materialId = 0;
+        if (material != null) {
+            Integer id = materialIds.get(material);
+            if (id == null) {
+                id = materials.size();
+                materials.add(material);
+                materialIds.put(material, id);
+            }
+            materialId = id;
+        }
+        return materialId << 1 | (mesh.getIndexType() == GL_UNSIGNED_INT ? 1 : 0);
+    }
+
+    /**
+     * Points the model matrix attributes of the batch VAO at the instance buffer, again whenever it was replaced.
+     */
+    private void attachInstances() {
+        if (instanceBufferId == instanceBuffer.getBufferId()) {
+            return;
+        }
+        instanceBufferId = instanceBuffer.getBufferId();
+        glBindVertexArray(vaoId);
+        glBindBuffer(GL_ARRAY_BUFFER, instanceBufferId);
+        int stride = 16 * Float.BYTES;
+        for (int column = 0; column < 4; column++) {
+            int location = InstanceBuffer.MODEL_MATRIX_LOCATION + column;
+            glEnableVertexAttribArray(location);
+            glVertexAttribPointer(location, 4, GL_FLOAT, false, stride, (long) column * 4 * Float.BYTES);
+            glVertexAttribDivisor(location, 1);
+        }
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glBindVertexArray(0);
+    }
+
+    /**
+     * Position decoding to bind for the batch: none, as quantized layouts are not batched.
+     */
+    public Vector3f getPositionOffset() {
+        return POSITION_OFFSET;
+    }
+
+    public Vector3f getPositionScale() {
+        return POSITION_SCALE;
+    }
+
+    public int getMeshCount() {
+        return meshes.size();
+    }
+
+    /**
+     * Submeshes of all added meshes, an upper bound of the material binds one flush makes.
+     */
+    public int getSubMeshCount() {
+        return subMeshCount;
+    }
+
+    public int getInstanceCount() {
+        return instanceCount;
+    }
+
+    /**
+     * Indirect commands written by the last flush, i.e. the draw calls a per-object path would have issued.
+     */
+    public int getCommandCount() {
+        return commandCount;
+    }
+
+    /**
+     * {@code glMultiDrawElementsIndirect} calls issued by the last flush.
+     */
+    public int getMultiDraws() {
+        return multiDraws;
+    }
+
+    public void cleanUp() {
+        glDeleteVertexArrays(vaoId);
+        glDeleteBuffers(vertexBufferId);
+        glDeleteBuffers(indexBufferId);
+        commandRing.cleanUp();
+        instanceBuffer.cleanUp();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%d meshes, %d KiB vertices, %d KiB indices, %d commands in %d multi-draws",
+                meshes.size(), vertexBytes / 1024, indexBytes / 1024, commandCount, multiDraws);
+    }
+}
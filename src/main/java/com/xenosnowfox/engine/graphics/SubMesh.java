@@ -0,0 +1,47 @@
+package com.xenosnowfox.engine.graphics;
+
+/**
+ * Contiguous range of a mesh's index buffer that is drawn with one material.
+ */
+public class SubMesh {
+
+    private final int firstIndex;
+
+    private final int indexCount;
+
+    private final String materialName;
+
+    private Material material;
+
+    public SubMesh(int firstIndex, int indexCount, String materialName) {
+        this.firstIndex = firstIndex;
+        this.indexCount = indexCount;
+        this.materialName = materialName;
+    }
+
+    public int getFirstIndex() {
+        return firstIndex;
+    }
+
+    public int getIndexCount() {
+        return indexCount;
+    }
+
+    /**
+     * Name given by {@code usemtl}, or {@code null} for faces declared before any material.
+     */
+    public String getMaterialName() {
+        return materialName;
+    }
+
+    /**
+     * Resolved material, or {@code null} to fall back to the mesh's material.
+     */
+    public Material getMaterial() {
+        return material;
+    }
+
+    public void setMaterial(Material material) {
+        this.material = material;
+    }
+}
@@ -1,33 +1,22 @@
 package com.xenosnowfox.engine.graphics;
 
 import org.lwjgl.opengl.GL46;
-import org.lwjgl.system.MemoryStack;
-import org.lwjgl.stb.STBImage;
-
-import java.nio.ByteBuffer;
-import java.nio.IntBuffer;
 
 public class Texture {
 
 	public static int loadFromFile(String withFileName) throws Exception {
-		int width;
-		int height;
-		ByteBuffer buf;
-		// Load Texture file
-		try (MemoryStack stack = MemoryStack.stackPush()) {
-			IntBuffer w = stack.mallocInt(1);
-			IntBuffer h = stack.mallocInt(1);
-			IntBuffer channels = stack.mallocInt(1);
-
-			buf = STBImage.stbi_load(withFileName, w, h, channels, 4);
-			if (buf == null) {
-				throw new Exception("Image file [" + withFileName + "] not loaded: " + STBImage.stbi_failure_reason());
-			}
-
-			width = w.get();
-			height = h.get();
+		TextureData textureData = TextureData.decode(withFileName);
+		try {
+			return upload(textureData);
+		} finally {
+			textureData.free();
 		}
+	}
 
+	/**
+	 * Creates an OpenGL texture from decoded pixels; must run on the GL thread.
+	 */
+	public static int upload(TextureData withTextureData) {
 		// Create a new OpenGL texture
 		int textureId = GL46.glGenTextures();
 		// Bind the texture
@@ -40,35 +29,124 @@ public class Texture {
 		//glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
 
 		// Upload the texture data
-		GL46.glTexImage2D(GL46.GL_TEXTURE_2D, 0, GL46.GL_RGBA, width, height, 0,
-				GL46.GL_RGBA, GL46.GL_UNSIGNED_BYTE, buf);
+		GL46.glTexImage2D(GL46.GL_TEXTURE_2D, 0, GL46.GL_RGBA, withTextureData.getWidth(), withTextureData.getHeight(), 0,
+				GL46.GL_RGBA, GL46.GL_UNSIGNED_BYTE, withTextureData.getPixels());
 		// Generate Mip Map
 		GL46.glGenerateMipmap(GL46.GL_TEXTURE_2D);
 
-		STBImage.stbi_image_free(buf);
-
 		return textureId;
 	}
 
-	private final int id;
+	/**
+	 * Bytes used by an RGBA8 texture including its full mip chain.
+	 */
+	public static long byteSizeWithMipmaps(final int width, final int height) {
+		long bytes = 0;
+		int levelWidth = width;
+		int levelHeight = height;
+		while (true) {
+			bytes += (long) levelWidth * levelHeight * 4;
+			if (levelWidth == 1 && levelHeight == 1) {
+				return bytes;
+			}
+			levelWidth = Math.max(1, levelWidth / 2);
+			levelHeight = Math.max(1, levelHeight / 2);
+		}
+	}
+
+	private int id;
+
+	private final String fileName;
+
+	private final long byteSize;
+
+	/**
+	 * Owning cache, {@code null} for textures created directly.
+	 */
+	private final TextureCache cache;
+
+	int referenceCount;
+
+	long lastBoundFrame = -1;
+
+	/**
+	 * Whether a reload of the evicted texture is under way.
+	 */
+	boolean reloading;
+
+	final SortId sortId = new SortId();
 
 	private Texture(final int withId) {
+		this(withId, null, 0, null);
+	}
+
+	Texture(final int withId, final String withFileName, final long withByteSize, final TextureCache withCache) {
 		this.id = withId;
+		this.fileName = withFileName;
+		this.byteSize = withByteSize;
+		this.cache = withCache;
 	}
 
 	public Texture(final String withFileName) throws Exception {
 		this(loadFromFile(withFileName));
 	}
 
+	public Texture(final TextureData withTextureData) {
+		this(upload(withTextureData));
+	}
+
 	public int getId() {
 		return this.id;
 	}
 
+	void setId(final int withId) {
+		this.id = withId;
+	}
+
+	/**
+	 * Source file of a cached texture, {@code null} otherwise.
+	 */
+	public String getFileName() {
+		return this.fileName;
+	}
+
+	/**
+	 * Video memory used including mipmaps; only tracked for cached textures.
+	 */
+	public long getByteSize() {
+		return this.byteSize;
+	}
+
+	/**
+	 * Whether the texture currently has GPU storage; a cached texture evicted under memory pressure is reloaded
+	 * on its next {@link #bind()}.
+	 */
+	public boolean isResident() {
+		return this.id != 0;
+	}
+
 	public void bind() {
+		if (this.cache != null) {
+			this.cache.touch(this);
+		}
 		GL46.glBindTexture(GL46.GL_TEXTURE_2D, this.getId());
 	}
 
+	/**
+	 * Gives up one reference: cached textures go back to their {@link TextureCache}, others are destroyed.
+	 */
+	public void release() {
+		if (this.cache != null) {
+			this.cache.release(this);
+		} else {
+			destroy();
+		}
+	}
+
 	public void destroy() {
-		GL46.glDeleteTextures(this.getId());
+		if (this.id != 0) {
+			GL46.glDeleteTextures(this.getId());
+			this.id = 0;
+		}
 	}
 }
@@ -0,0 +1,285 @@
+package com.xenosnowfox.engine.graphics;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Shares {@link Texture}s between their users by canonical file path and keeps their video memory under a budget.
+ *
+ * <p>Every {@link #acquire(String)} adds a reference that is given back with {@link Texture#release()}. Textures
+ * without references stay cached, so a file that is used again soon is not decoded twice. Whenever the resident
+ * textures exceed the budget the least recently bound ones are evicted: unreferenced textures are dropped, then
+ * referenced textures not bound in the last {@value #RECENT_FRAMES} frames give up their GPU storage. Textures in
+ * use are never evicted, so a working set larger than the budget goes over it rather than reloading every frame.
+ *
+ * <p>An evicted texture is reloaded when it is bound again, through the reloader, typically an {@link AssetLoader},
+ * so decoding happens off the GL thread and the upload counts against the loader's budget; it binds as no texture
+ * until then. Without a reloader it is decoded and uploaded right away.
+ *
+ * <p>GL work only happens on the calling thread, which must be the GL thread for everything but
+ * {@link #isCached(String)}.
+ */
+public class TextureCache {
+
+    /**
+     * Number of frames before the current one whose textures are kept resident.
+     */
+    static final int RECENT_FRAMES = 2;
+
+    private final long budgetBytes;
+
+    /**
+     * Textures by canonical path, least recently bound first.
+     */
+    private final Map<String, Texture> textures = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long residentBytes;
+
+    private long frame;
+
+    private long hitCount;
+
+    private long missCount;
+
+    private long evictionCount;
+
+    private long reloadCount;
+
+    private Consumer<Texture> reloader;
+
+    /**
+     * @param budgetBytes
+     * 		video memory the cached textures may occupy, including their mipmaps.
+     */
+    public TextureCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    public static String canonicalPath(String fileName) throws IOException {
+        return new File(fileName).getCanonicalPath();
+    }
+
+    /**
+     * Sets what reloads evicted textures when they are bound again; {@code null} to reload them on the spot.
+     */
+    public synchronized void setReloader(Consumer<Texture> reloader) {
+        this.reloader = reloader;
+    }
+
+    /**
+     * Returns the shared texture of a file, decoding and uploading it on a miss.
+     */
+    public synchronized Texture acquire(String fileName) throws Exception {
+        String key = canonicalPath(fileName);
+        Texture texture = lookup(key);
+        if (texture != null) {
+            return texture;
+        }
+        TextureData textureData = TextureData.decode(key);
+        try {
+            return insert(key, textureData);
+        } finally {
+            textureData.free();
+        }
+    }
+
+    /**
+     * Returns the shared texture of a file, uploading already decoded pixels on a miss. The pixels stay owned by
+     * the caller.
+     */
+    public synchronized Texture acquire(String fileName, TextureData textureData) throws IOException {
+        String key = canonicalPath(fileName);
+        Texture texture = lookup(key);
+        return texture != null ? texture : insert(key, textureData);
+    }
+
+    /**
+     * Whether a file is cached, so loaders can skip decoding it; safe to call from any thread.
+     */
+    public synchronized boolean isCached(String fileName) throws IOException {
+        return textures.containsKey(canonicalPath(fileName));
+    }
+
+    private Texture lookup(String key) {
+        Texture texture = textures.get(key);
+        if (texture == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        texture.referenceCount++;
+        texture.lastBoundFrame = frame;
+        return texture;
+    }
+
+    private Texture insert(String key, TextureData textureData) {
+        long byteSize = Texture.byteSizeWithMipmaps(textureData.getWidth(), textureData.getHeight());
+        Texture texture = new Texture(Texture.upload(textureData), key, byteSize, this);
+        texture.referenceCount = 1;
+        // keep the new texture out of this frame's evictions
+        texture.lastBoundFrame = frame;
+        textures.put(key, texture);
+        residentBytes += byteSize;
+        evict();
+        return texture;
+    }
+
+    synchronized void release(Texture texture) {
+        if (texture.referenceCount <= 0) {
+            throw new IllegalStateException("Texture `" + texture.getFileName() + "` released more often than acquired.");
+        }
+        texture.referenceCount--;
+        if (texture.referenceCount == 0 && !texture.isResident()) {
+            // nothing left to keep
+            textures.remove(texture.getFileName());
+        }
+        evict();
+    }
+
+    /**
+     * Marks a texture as bound in the current frame, requesting a reload if it was evicted.
+     */
+    synchronized void touch(Texture texture) {
+        textures.get(texture.getFileName());
+        texture.lastBoundFrame = frame;
+        if (texture.isResident() || texture.reloading) {
+            return;
+        }
+        if (reloader == null) {
+            try {
+                TextureData textureData = TextureData.decode(texture.getFileName());
+                try {
+                    reloaded(texture, textureData);
+                } finally {
+                    textureData.free();
+                }
+            } catch (Exception exception) {
+                System.err.println("Unable to reload texture `" + texture.getFileName() + "`: " + exception.getMessage());
+            }
+            return;
+        }
+        texture.reloading = true;
+        reloader.accept(texture);
+    }
+
+    /**
+     * Uploads the pixels of an evicted texture again; skipped if it was dropped from the cache in the meantime.
+     * The pixels stay owned by the caller.
+     */
+    synchronized void reloaded(Texture texture, TextureData textureData) {
+        texture.reloading = false;
+        if (texture.isResident() || textures.get(texture.getFileName()) != texture) {
+            return;
+        }
+        texture.setId(Texture.upload(textureData));
+        residentBytes += texture.getByteSize();
+        reloadCount++;
+        evict();
+    }
+
+    /**
+     * Gives up on reloading a texture for now; its next bind tries again.
+     */
+    synchronized void reloadFailed(Texture texture, Exception exception) {
+        texture.reloading = false;
+        System.err.println("Unable to reload texture `" + texture.getFileName() + "`: " + exception.getMessage());
+    }
+
+    /**
+     * Starts a new frame: textures not bound in the last {@value #RECENT_FRAMES} frames become candidates for
+     * eviction.
+     */
+    public synchronized void beginFrame() {
+        frame++;
+        evict();
+    }
+
+    private void evict() {
+        if (residentBytes <= budgetBytes) {
+            return;
+        }
+        // drop unreferenced textures first, least recently bound first
+        Iterator<Texture> iterator = textures.values().iterator();
+        while (residentBytes > budgetBytes && iterator.hasNext()) {
+            Texture texture = iterator.next();
+            if (texture.referenceCount == 0) {
+                iterator.remove();
+                unload(texture);
+            }
+        }
+        // then release the storage of referenced textures that have not been in use lately
+        iterator = textures.values().iterator();
+        while (residentBytes > budgetBytes && iterator.hasNext()) {
+            Texture texture = iterator.next();
+            if (texture.isResident() && texture.lastBoundFrame < frame - RECENT_FRAMES) {
+                unload(texture);
+            }
+        }
+    }
+
+    private void unload(Texture texture) {
+        if (texture.isResident()) {
+            texture.destroy();
+            residentBytes -= texture.getByteSize();
+            evictionCount++;
+        }
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public synchronized long getResidentBytes() {
+        return residentBytes;
+    }
+
+    /**
+     * Number of cached textures, resident or not.
+     */
+    public synchronized int size() {
+        return textures.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Number of evicted textures that were uploaded again because they were bound.
+     */
+    public synchronized long getReloadCount() {
+        return reloadCount;
+    }
+
+    /**
+     * Deletes every cached texture regardless of outstanding references.
+     */
+    public synchronized void destroy() {
+        for (Texture texture : new ArrayList<>(textures.values())) {
+            texture.destroy();
+        }
+        textures.clear();
+        residentBytes = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.ROOT,
+                "%d textures, %d / %d KB resident, %d hits, %d misses, %d evictions, %d reloads",
+                textures.size(), residentBytes / 1024, budgetBytes / 1024, hitCount, missCount, evictionCount, reloadCount);
+    }
+}
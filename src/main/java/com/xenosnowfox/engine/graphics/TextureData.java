@@ -0,0 +1,73 @@
+package com.xenosnowfox.engine.graphics;
+
+import org.lwjgl.stb.STBImage;
+import org.lwjgl.system.MemoryStack;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Decoded RGBA pixels of an image file, ready to be uploaded by {@link Texture}. Decoding does not need an OpenGL
+ * context, so it can run on any thread.
+ */
+public class TextureData {
+
+	public static TextureData decode(String withFileName) throws Exception {
+		try (MemoryStack stack = MemoryStack.stackPush()) {
+			IntBuffer w = stack.mallocInt(1);
+			IntBuffer h = stack.mallocInt(1);
+			IntBuffer channels = stack.mallocInt(1);
+
+			ByteBuffer buf = STBImage.stbi_load(withFileName, w, h, channels, 4);
+			if (buf == null) {
+				throw new Exception("Image file [" + withFileName + "] not loaded: " + STBImage.stbi_failure_reason());
+			}
+			return new TextureData(withFileName, buf, w.get(), h.get());
+		}
+	}
+
+	private final String fileName;
+
+	private ByteBuffer pixels;
+
+	private final int width;
+
+	private final int height;
+
+	private TextureData(final String withFileName, final ByteBuffer withPixels, final int withWidth, final int withHeight) {
+		this.fileName = withFileName;
+		this.pixels = withPixels;
+		this.width = withWidth;
+		this.height = withHeight;
+	}
+
+	public String getFileName() {
+		return this.fileName;
+	}
+
+	public ByteBuffer getPixels() {
+		return this.pixels;
+	}
+
+	public int getWidth() {
+		return this.width;
+	}
+
+	public int getHeight() {
+		return this.height;
+	}
+
+	/**
+	 * Size of the pixel data in bytes.
+	 */
+	public long getByteSize() {
+		return (long) this.width * this.height * 4;
+	}
+
+	public void free() {
+		if (this.pixels != null) {
+			STBImage.stbi_image_free(this.pixels);
+			this.pixels = null;
+		}
+	}
+}
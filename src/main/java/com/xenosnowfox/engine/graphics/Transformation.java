@@ -5,18 +5,23 @@ import com.xenosnowfox.lwjglengine.projection.Camera;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
 
+import java.nio.FloatBuffer;
+
 public class Transformation {
 
     private final Matrix4f projectionMatrix;
 
-    private final Matrix4f modelViewMatrix;
+    private final Matrix4f modelMatrix;
     
     private final Matrix4f viewMatrix;
 
+    private final Matrix4f modelViewMatrix;
+
     public Transformation() {
         projectionMatrix = new Matrix4f();
-        modelViewMatrix = new Matrix4f();
+        modelMatrix = new Matrix4f();
         viewMatrix = new Matrix4f();
+        modelViewMatrix = new Matrix4f();
     }
 
     public final Matrix4f getProjectionMatrix(float fov, float width, float height, float zNear, float zFar) {
@@ -27,24 +32,57 @@ public class Transformation {
         Vector3f cameraPos = camera.position();
         Vector3f rotation = camera.rotation();
         
-        viewMatrix.identity();
-        // First do the rotation so camera rotates over its position
-        viewMatrix.rotate((float)Math.toRadians(rotation.x), new Vector3f(1, 0, 0))
-                .rotate((float)Math.toRadians(rotation.y), new Vector3f(0, 1, 0));
-        // Then do the translation
-        viewMatrix.translate(-cameraPos.x, -cameraPos.y, -cameraPos.z);
-        return viewMatrix;
+        // First do the rotation so camera rotates over its position, then do the translation
+        return viewMatrix.rotationX((float)Math.toRadians(rotation.x))
+                .rotateY((float)Math.toRadians(rotation.y))
+                .translate(-cameraPos.x, -cameraPos.y, -cameraPos.z);
+    }
+
+    /**
+     * Builds a model matrix from a position, Euler angles in degrees and a scale.
+     *
+     * @return {@code target}.
+     */
+    public static Matrix4f buildModelMatrix(Vector3f position, Vector3f rotation, Vector3f scale, Matrix4f target) {
+        return target.translation(position)
+                .rotateXYZ((float)Math.toRadians(-rotation.x), (float)Math.toRadians(-rotation.y),
+                        (float)Math.toRadians(-rotation.z))
+                .scale(scale);
     }
 
+    /**
+     * Model matrix of an item; the item's own cached matrix, so it must not be modified.
+     */
+    public Matrix4f getModelMatrix(Transformation3f gameItem) {
+        return gameItem.getModelMatrix();
+    }
+
+    /**
+     * Builds the model matrix of an item from scratch into a matrix owned by this instance, overwritten by the next
+     * call, bypassing the item's cache.
+     */
+    public Matrix4f buildModelMatrix(Transformation3f gameItem) {
+        return buildModelMatrix(gameItem.getPosition(), gameItem.getRotation(), gameItem.getScale(), modelMatrix);
+    }
+
+    /**
+     * Model-view matrix of an item, in a matrix owned by this instance that the next call overwrites.
+     */
     public Matrix4f getModelViewMatrix(Transformation3f gameItem, Matrix4f viewMatrix) {
-        Vector3f rotation = gameItem.getRotation();
-        modelViewMatrix.identity()
-                .translate(gameItem.getPosition())
-                .rotateX((float)Math.toRadians(-rotation.x))
-                .rotateY((float)Math.toRadians(-rotation.y))
-                .rotateZ((float)Math.toRadians(-rotation.z))
-                .scale(gameItem.getScale());
-        Matrix4f viewCurr = new Matrix4f(viewMatrix);
-        return viewCurr.mul(modelViewMatrix);
-    }
-}
\ No newline at end of file
+        return viewMatrix.mul(gameItem.getModelMatrix(), modelViewMatrix);
+    }
+
+    /**
+     * Writes the model-view matrices of items, column major and 16 floats each, from the current position of a
+     * buffer on, and advances the position past them. Only items that changed since their last use rebuild their
+     * model matrix; nothing is allocated.
+     */
+    public void writeModelViewMatrices(Transformation3f[] items, int count, Matrix4f viewMatrix, FloatBuffer target) {
+        int position = target.position();
+        for (int i = 0; i < count; i++) {
+            viewMatrix.mul(items[i].getModelMatrix(), modelViewMatrix).get(position, target);
+            position += 16;
+        }
+        target.position(position);
+    }
+}
@@ -0,0 +1,149 @@
+package com.xenosnowfox.engine.graphics;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL11.glGetInteger;
+import static org.lwjgl.opengl.GL30.glBindBufferRange;
+import static org.lwjgl.opengl.GL31.GL_UNIFORM_BUFFER;
+import static org.lwjgl.opengl.GL31.GL_UNIFORM_BUFFER_OFFSET_ALIGNMENT;
+
+/**
+ * Writes the std140 uniform blocks of the shaders into a persistently mapped {@link BufferRing} and binds each block
+ * by offset. Every write goes straight into the mapped buffer, so a frame allocates nothing on the Java heap.
+ *
+ * <p>The blocks and their binding points, matching {@code vertex.vs} and {@code fragment.fs}:
+ * <ul>
+ * <li>{@link #FRAME_BINDING} {@code FrameBlock}: projection and view matrix, ambient light and point light, once per
+ * frame;</li>
+ * <li>{@link #MESH_BINDING} {@code MeshBlock}: position decoding of the mesh being drawn;</li>
+ * <li>{@link #MATERIAL_BINDING} {@code MaterialBlock}: colours, reflectance and specular power of a material.</li>
+ * </ul>
+ * The model matrices are per instance and come from the {@link InstanceBuffer} instead.
+ */
+public class UniformBlocks {
+
+    public static final int FRAME_BINDING = 0;
+
+    public static final int MESH_BINDING = 1;
+
+    public static final int MATERIAL_BINDING = 2;
+
+    private static final int FRAME_BYTES = 192;
+
+    private static final int MESH_BYTES = 32;
+
+    private static final int MATERIAL_BYTES = 64;
+
+    /**
+     * Uploaded for geometry without a material, like a submesh from an OBJ group without {@code usemtl}.
+     */
+    private static final Material DEFAULT_MATERIAL = new Material();
+
+    private final BufferRing ring;
+
+    private final int alignment;
+
+    private final Vector4f lightPosition = new Vector4f();
+
+    /**
+     * @param frameBytes
+     * 		initial bytes of uniform data per frame; grown by {@link #beginFrame(int, int)} when needed.
+     */
+    public UniformBlocks(int frameBytes) {
+        alignment = glGetInteger(GL_UNIFORM_BUFFER_OFFSET_ALIGNMENT);
+        ring = new BufferRing(GL_UNIFORM_BUFFER, frameBytes, alignment);
+    }
+
+    /**
+     * Starts a frame that binds at most the given number of meshes and materials.
+     */
+    public void beginFrame(int maxMeshes, int maxMaterials) {
+        ring.beginFrame();
+        // every block may be padded up to the offset alignment
+        ring.ensureCapacity(FRAME_BYTES + alignment + maxMeshes * (MESH_BYTES + alignment)
+                + maxMaterials * (MATERIAL_BYTES + alignment));
+    }
+
+    /**
+     * Writes and binds the per-frame block; the point light position is moved into view space.
+     */
+    public void bindFrame(Matrix4f projectionMatrix, Matrix4f viewMatrix, Vector3f ambientLight, PointLight pointLight) {
+        int offset = ring.allocate(FRAME_BYTES);
+        ByteBuffer buffer = ring.getBuffer();
+        projectionMatrix.get(offset, buffer);
+        viewMatrix.get(offset + 64, buffer);
+        ambientLight.get(offset + 128, buffer);
+
+        pointLight.getColor().get(offset + 144, buffer);
+        lightPosition.set(pointLight.getPosition(), 1f).mul(viewMatrix);
+        buffer.putFloat(offset + 160, lightPosition.x);
+        buffer.putFloat(offset + 164, lightPosition.y);
+        buffer.putFloat(offset + 168, lightPosition.z);
+        buffer.putFloat(offset + 172, pointLight.getIntensity());
+        PointLight.Attenuation attenuation = pointLight.getAttenuation();
+        buffer.putFloat(offset + 176, attenuation.getConstant());
+        buffer.putFloat(offset + 180, attenuation.getLinear());
+        buffer.putFloat(offset + 184, attenuation.getExponent());
+
+        glBindBufferRange(GL_UNIFORM_BUFFER, FRAME_BINDING, ring.getBufferId(), offset, FRAME_BYTES);
+    }
+
+    public void bindMesh(Mesh mesh) {
+        bindPositionDecoding(mesh.getPositionOffset(), mesh.getPositionScale());
+    }
+
+    /**
+     * Writes and binds the mesh block for geometry that is not a single {@link Mesh}, e.g. a
+     * {@link StaticMeshBatch}.
+     */
+    public void bindPositionDecoding(Vector3f positionOffset, Vector3f positionScale) {
+        int offset = ring.allocate(MESH_BYTES);
+        ByteBuffer buffer = ring.getBuffer();
+        positionOffset.get(offset, buffer);
+        positionScale.get(offset + 16, buffer);
+        glBindBufferRange(GL_UNIFORM_BUFFER, MESH_BINDING, ring.getBufferId(), offset, MESH_BYTES);
+    }
+
+    /**
+     * Writes and binds the material block; {@code null} binds the defaults of {@link Material#Material()}.
+     */
+    public void bindMaterial(Material withMaterial) {
+        Material material = withMaterial != null ? withMaterial : DEFAULT_MATERIAL;
+        int offset = ring.allocate(MATERIAL_BYTES);
+        ByteBuffer buffer = ring.getBuffer();
+        material.getAmbientColour().get(offset, buffer);
+        material.getDiffuseColour().get(offset + 16, buffer);
+        material.getSpecularColour().get(offset + 32, buffer);
+        buffer.putFloat(offset + 48, material.getReflectance());
+        buffer.putFloat(offset + 52, material.getSpecularPower());
+        glBindBufferRange(GL_UNIFORM_BUFFER, MATERIAL_BINDING, ring.getBufferId(), offset, MATERIAL_BYTES);
+    }
+
+    /**
+     * Fences this frame's blocks; call after the draws reading them.
+     */
+    public void endFrame() {
+        ring.endFrame();
+    }
+
+    /**
+     * Times a frame had to wait for the GPU to release its region.
+     */
+    public int getStalls() {
+        return ring.getStalls();
+    }
+
+    public void cleanUp() {
+        ring.cleanUp();
+    }
+
+    @Override
+    public String toString() {
+        return ring.getUsedBytes() + " of " + ring.getFrameBytes() + " bytes used last frame, " + getStalls()
+                + " stalls";
+    }
+}
@@ -0,0 +1,385 @@
+package com.xenosnowfox.engine.graphics;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Locale;
+
+import static org.lwjgl.opengl.GL11.GL_FLOAT;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_INT;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_SHORT;
+import static org.lwjgl.opengl.GL20.glEnableVertexAttribArray;
+import static org.lwjgl.opengl.GL20.glVertexAttribPointer;
+import static org.lwjgl.opengl.GL30.GL_HALF_FLOAT;
+import static org.lwjgl.opengl.GL33.GL_INT_2_10_10_10_REV;
+
+/**
+ * Describes how a {@link Mesh} interleaves its position, texture coordinate and normal into a single vertex buffer,
+ * and packs CPU-side vertices into it.
+ *
+ * <p>Attributes keep their shader locations (0 position, 1 texture coordinate, 2 normal) whatever their format, so
+ * every layout works with the same vertex shader. Quantized positions are the one exception: they arrive normalized
+ * to the mesh bounds and have to be scaled back with {@link Mesh#getPositionScale()} and
+ * {@link Mesh#getPositionOffset()}.
+ */
+public class VertexLayout {
+
+    public enum PositionFormat {
+        /**
+         * Three 32-bit floats.
+         */
+        FLOAT3(12),
+        /**
+         * Three unsigned normalized 16-bit values relative to the mesh bounds, padded to four.
+         */
+        UNORM16(8);
+
+        private final int bytes;
+
+        PositionFormat(int bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    public enum TextCoordFormat {
+        /**
+         * Two 32-bit floats.
+         */
+        FLOAT2(8),
+        /**
+         * Two 16-bit half floats; within 1/4096 inside [0, 1] and still usable for tiling coordinates.
+         */
+        HALF2(4);
+
+        private final int bytes;
+
+        TextCoordFormat(int bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    public enum NormalFormat {
+        /**
+         * Three 32-bit floats.
+         */
+        FLOAT3(12),
+        /**
+         * Signed normalized 10 bits per axis packed as {@code GL_INT_2_10_10_10_REV}.
+         */
+        INT_2_10_10_10_REV(4);
+
+        private final int bytes;
+
+        NormalFormat(int bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Full precision floats, 32 bytes per vertex; the layout of the {@link MeshCache} vertex block.
+     */
+    public static final VertexLayout STANDARD =
+            new VertexLayout(PositionFormat.FLOAT3, TextCoordFormat.FLOAT2, NormalFormat.FLOAT3);
+
+    /**
+     * Float positions with half float texture coordinates and packed normals, 20 bytes per vertex.
+     */
+    public static final VertexLayout COMPACT =
+            new VertexLayout(PositionFormat.FLOAT3, TextCoordFormat.HALF2, NormalFormat.INT_2_10_10_10_REV);
+
+    /**
+     * {@link #COMPACT} with positions quantized to the mesh bounds, 16 bytes per vertex.
+     */
+    public static final VertexLayout QUANTIZED =
+            new VertexLayout(PositionFormat.UNORM16, TextCoordFormat.HALF2, NormalFormat.INT_2_10_10_10_REV);
+
+    /**
+     * Largest vertex count that is indexed with 16-bit indices.
+     */
+    public static final int MAX_SHORT_INDEXED_VERTICES = 65535;
+
+    /**
+     * Looks up one of the predefined layouts by its name, e.g. from a properties file.
+     */
+    public static VertexLayout valueOf(String name) {
+        switch (name.trim().toLowerCase(Locale.ROOT)) {
+            case "standard":
+                return STANDARD;
+            case "compact":
+                return COMPACT;
+            case "quantized":
+                return QUANTIZED;
+            default:
+                throw new IllegalArgumentException("Unknown vertex layout `" + name + "`");
+        }
+    }
+
+    private final PositionFormat positionFormat;
+
+    private final TextCoordFormat textCoordFormat;
+
+    private final NormalFormat normalFormat;
+
+    public VertexLayout(PositionFormat positionFormat, TextCoordFormat textCoordFormat, NormalFormat normalFormat) {
+        this.positionFormat = positionFormat;
+        this.textCoordFormat = textCoordFormat;
+        this.normalFormat = normalFormat;
+    }
+
+    public PositionFormat getPositionFormat() {
+        return positionFormat;
+    }
+
+    public TextCoordFormat getTextCoordFormat() {
+        return textCoordFormat;
+    }
+
+    public NormalFormat getNormalFormat() {
+        return normalFormat;
+    }
+
+    public boolean isQuantized() {
+        return positionFormat == PositionFormat.UNORM16;
+    }
+
+    public int getStride() {
+        return positionFormat.bytes + textCoordFormat.bytes + normalFormat.bytes;
+    }
+
+    /**
+     * Points attributes 0 to 2 at the vertex buffer currently bound to {@code GL_ARRAY_BUFFER}.
+     */
+    public void bindAttributes() {
+        int stride = getStride();
+        int offset = 0;
+        glEnableVertexAttribArray(0);
+        if (positionFormat == PositionFormat.FLOAT3) {
+            glVertexAttribPointer(0, 3, GL_FLOAT, false, stride, offset);
+        } else {
+            glVertexAttribPointer(0, 3, GL_UNSIGNED_SHORT, true, stride, offset);
+        }
+        offset += positionFormat.bytes;
+
+        glEnableVertexAttribArray(1);
+        glVertexAttribPointer(1, 2, textCoordFormat == TextCoordFormat.FLOAT2 ? GL_FLOAT : GL_HALF_FLOAT, false,
+                stride, offset);
+        offset += textCoordFormat.bytes;
+
+        glEnableVertexAttribArray(2);
+        if (normalFormat == NormalFormat.FLOAT3) {
+            glVertexAttribPointer(2, 3, GL_FLOAT, false, stride, offset);
+        } else {
+            glVertexAttribPointer(2, 4, GL_INT_2_10_10_10_REV, true, stride, offset);
+        }
+    }
+
+    /**
+     * Packs separate attribute arrays into a new native buffer that the caller must release with
+     * {@link MemoryUtil#memFree(java.nio.Buffer)}.
+     *
+     * @param bounds
+     * 		min x, y, z and max x, y, z of the positions, only used by quantized layouts.
+     */
+    public ByteBuffer pack(float[] positions, float[] textCoords, float[] normals, float[] bounds) {
+        int vertexCount = positions.length / 3;
+        ByteBuffer buffer = MemoryUtil.memAlloc(vertexCount * getStride()).order(ByteOrder.nativeOrder());
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            int p = vertex * 3;
+            int t = vertex * 2;
+            putVertex(buffer, bounds,
+                    positions[p], positions[p + 1], positions[p + 2],
+                    textCoords[t], textCoords[t + 1],
+                    normals[p], normals[p + 1], normals[p + 2]);
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Repacks vertices stored in the {@link #STANDARD} layout, e.g. a memory-mapped {@link MeshCache} block, into a
+     * new native buffer that the caller must release.
+     */
+    public ByteBuffer pack(ByteBuffer standardVertices, int vertexCount, float[] bounds) {
+        ByteBuffer source = standardVertices.duplicate().order(standardVertices.order());
+        int base = source.position();
+        int sourceStride = STANDARD.getStride();
+        ByteBuffer buffer = MemoryUtil.memAlloc(vertexCount * getStride()).order(ByteOrder.nativeOrder());
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            int offset = base + vertex * sourceStride;
+            putVertex(buffer, bounds,
+                    source.getFloat(offset), source.getFloat(offset + 4), source.getFloat(offset + 8),
+                    source.getFloat(offset + 12), source.getFloat(offset + 16),
+                    source.getFloat(offset + 20), source.getFloat(offset + 24), source.getFloat(offset + 28));
+        }
+        return buffer.flip();
+    }
+
+    private void putVertex(ByteBuffer buffer, float[] bounds, float x, float y, float z, float u, float v,
+            float nx, float ny, float nz) {
+        if (positionFormat == PositionFormat.FLOAT3) {
+            buffer.putFloat(x).putFloat(y).putFloat(z);
+        } else {
+            buffer.putShort(quantizeUnorm16(x, bounds[0], bounds[3]))
+                    .putShort(quantizeUnorm16(y, bounds[1], bounds[4]))
+                    .putShort(quantizeUnorm16(z, bounds[2], bounds[5]))
+                    .putShort((short) 0);
+        }
+        if (textCoordFormat == TextCoordFormat.FLOAT2) {
+            buffer.putFloat(u).putFloat(v);
+        } else {
+            buffer.putShort(toHalf(u)).putShort(toHalf(v));
+        }
+        if (normalFormat == NormalFormat.FLOAT3) {
+            buffer.putFloat(nx).putFloat(ny).putFloat(nz);
+        } else {
+            buffer.putInt(packNormal(nx, ny, nz));
+        }
+    }
+
+    /**
+     * GL index type used for a mesh with the given number of vertices.
+     */
+    public static int indexTypeFor(int vertexCount) {
+        return vertexCount <= MAX_SHORT_INDEXED_VERTICES ? GL_UNSIGNED_SHORT : GL_UNSIGNED_INT;
+    }
+
+    public static int indexSize(int indexType) {
+        return indexType == GL_UNSIGNED_SHORT ? Short.BYTES : Integer.BYTES;
+    }
+
+    /**
+     * Packs indices into a new native buffer of {@link #indexTypeFor(int)}, which the caller must release.
+     */
+    public static ByteBuffer packIndices(int[] indices, int vertexCount) {
+        int indexType = indexTypeFor(vertexCount);
+        ByteBuffer buffer = MemoryUtil.memAlloc(indices.length * indexSize(indexType)).order(ByteOrder.nativeOrder());
+        if (indexType == GL_UNSIGNED_SHORT) {
+            for (int index : indices) {
+                buffer.putShort((short) index);
+            }
+        } else {
+            buffer.asIntBuffer().put(indices);
+            buffer.position(buffer.limit());
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Narrows 32-bit indices, e.g. from a memory-mapped {@link MeshCache}, into a new native buffer of
+     * {@link #indexTypeFor(int)}, which the caller must release.
+     */
+    public static ByteBuffer packIndices(ByteBuffer intIndices, int indexCount, int vertexCount) {
+        int indexType = indexTypeFor(vertexCount);
+        ByteBuffer source = intIndices.duplicate().order(intIndices.order());
+        int base = source.position();
+        ByteBuffer buffer = MemoryUtil.memAlloc(indexCount * indexSize(indexType)).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < indexCount; i++) {
+            int index = source.getInt(base + i * Integer.BYTES);
+            if (indexType == GL_UNSIGNED_SHORT) {
+                buffer.putShort((short) index);
+            } else {
+                buffer.putInt(index);
+            }
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Maps a coordinate between {@code min} and {@code max} onto the full unsigned 16-bit range.
+     */
+    public static short quantizeUnorm16(float value, float min, float max) {
+        float extent = max - min;
+        if (extent <= 0) {
+            return 0;
+        }
+        float normalized = Math.min(1f, Math.max(0f, (value - min) / extent));
+        return (short) Math.round(normalized * 65535f);
+    }
+
+    public static float dequantizeUnorm16(short value, float min, float max) {
+        return min + (value & 0xFFFF) / 65535f * (max - min);
+    }
+
+    /**
+     * Converts to an IEEE 754 half float, rounding to nearest even; values beyond the half range become infinite.
+     */
+    public static short toHalf(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = (bits >>> 23) & 0xFF;
+        int mantissa = bits & 0x7FFFFF;
+
+        if (exponent == 0xFF) {
+            // infinity stays infinity, NaN stays a quiet NaN
+            return (short) (sign | 0x7C00 | (mantissa != 0 ? 0x200 : 0));
+        }
+        int halfExponent = exponent - 127 + 15;
+        if (halfExponent >= 0x1F) {
+            return (short) (sign | 0x7C00);
+        }
+        if (halfExponent <= 0) {
+            if (halfExponent < -10) {
+                // too small even for a subnormal half
+                return (short) sign;
+            }
+            // subnormal: shift the mantissa including its implicit bit into place
+            mantissa |= 0x800000;
+            int shift = 14 - halfExponent;
+            int half = mantissa >> shift;
+            int remainder = mantissa & ((1 << shift) - 1);
+            int halfway = 1 << (shift - 1);
+            if (remainder > halfway || (remainder == halfway && (half & 1) != 0)) {
+                half++;
+            }
+            return (short) (sign | half);
+        }
+        int half = (halfExponent << 10) | (mantissa >> 13);
+        int remainder = mantissa & 0x1FFF;
+        if (remainder > 0x1000 || (remainder == 0x1000 && (half & 1) != 0)) {
+            // a carry out of the mantissa correctly bumps the exponent, up to infinity
+            half++;
+        }
+        return (short) (sign | half);
+    }
+
+    public static float fromHalf(short half) {
+        int sign = (half & 0x8000) << 16;
+        int exponent = (half >>> 10) & 0x1F;
+        int mantissa = half & 0x3FF;
+        if (exponent == 0x1F) {
+            return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+        }
+        if (exponent == 0) {
+            float value = mantissa / 16777216f;
+            return sign != 0 ? -value : value;
+        }
+        return Float.intBitsToFloat(sign | ((exponent - 15 + 127) << 23) | (mantissa << 13));
+    }
+
+    /**
+     * Packs a unit normal into signed normalized 10-bit x, y and z with w = 0, as read by
+     * {@code GL_INT_2_10_10_10_REV}.
+     */
+    public static int packNormal(float x, float y, float z) {
+        return (toSnorm10(x)) | (toSnorm10(y) << 10) | (toSnorm10(z) << 20);
+    }
+
+    private static int toSnorm10(float value) {
+        float clamped = Math.min(1f, Math.max(-1f, value));
+        return Math.round(clamped * 511f) & 0x3FF;
+    }
+
+    /**
+     * Unpacks one axis (0 = x, 1 = y, 2 = z) of a {@link #packNormal(float, float, float)} value.
+     */
+    public static float unpackNormal(int packed, int axis) {
+        // sign extend the 10-bit field
+        int value = (packed << (22 - axis * 10)) >> 22;
+        return Math.max(-1f, value / 511f);
+    }
+
+    @Override
+    public String toString() {
+        return positionFormat + "/" + textCoordFormat + "/" + normalFormat + " (" + getStride() + " bytes)";
+    }
+}
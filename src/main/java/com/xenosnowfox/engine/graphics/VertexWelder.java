@@ -0,0 +1,293 @@
+package com.xenosnowfox.engine.graphics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Builds indexed vertex arrays from parsed OBJ faces, creating exactly one output vertex for every distinct
+ * (position, texture coordinate, normal) index triple.
+ *
+ * <p>The triples are looked up in an open-addressing hash table made of plain {@code int} arrays: the table holds
+ * output vertex numbers and the keys are read back from the triple stored for that vertex, so no key objects are
+ * created however large the mesh.
+ *
+ * <p>Faces are then grouped by their {@code usemtl} material into one contiguous index range per material, in the
+ * order the materials are first used, so a whole model can be drawn from a single vertex and index buffer.
+ */
+public class VertexWelder {
+
+    private static final int EMPTY = -1;
+
+    /**
+     * Number of bytes a vertex occupies in the default position + texture coordinate + normal layout.
+     */
+    public static final int VERTEX_BYTES = (3 + 2 + 3) * Float.BYTES;
+
+    public static MeshData weld(ObjData objData) {
+        return weld(objData, null);
+    }
+
+    /**
+     * @param stats
+     * 		optional, receives the dedup figures of this run.
+     */
+    public static MeshData weld(ObjData objData, Stats stats) {
+        return new VertexWelder(objData).run(stats);
+    }
+
+    private final ObjData objData;
+
+    private int[] table;
+
+    private int mask;
+
+    /**
+     * (position, texture coordinate, normal) triple of every output vertex, also used as the table keys.
+     */
+    private int[] keys;
+
+    private int vertexCount;
+
+    private SubMesh[] subMeshes;
+
+    private VertexWelder(ObjData objData) {
+        this.objData = objData;
+    }
+
+    private MeshData run(Stats stats) {
+        int[] faces = objData.getFaces().array();
+        int cornerCount = objData.getFaceCount() * 3;
+
+        // most meshes end up close to their position count, the table grows if they don't
+        int expected = Math.max(16, Math.min(cornerCount, objData.getPositionCount() + (objData.getPositionCount() >> 2)));
+        allocateTable(expected * 2);
+        keys = new int[expected * 3];
+
+        int[] indices = new int[cornerCount];
+        for (int corner = 0; corner < cornerCount; corner++) {
+            indices[corner] = lookup(faces[corner * 3], faces[corner * 3 + 1], faces[corner * 3 + 2]);
+        }
+
+        MeshData meshData = buildVertices(groupByMaterial(indices));
+        if (stats != null) {
+            stats.record(objData.getPositionCount(), cornerCount, vertexCount);
+        }
+        return meshData;
+    }
+
+    private int lookup(int position, int textCoord, int normal) {
+        int slot = hash(position, textCoord, normal) & mask;
+        while (true) {
+            int vertex = table[slot];
+            if (vertex == EMPTY) {
+                return insert(slot, position, textCoord, normal);
+            }
+            int key = vertex * 3;
+            if (keys[key] == position && keys[key + 1] == textCoord && keys[key + 2] == normal) {
+                return vertex;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private int insert(int slot, int position, int textCoord, int normal) {
+        int vertex = vertexCount++;
+        if (vertex * 3 + 3 > keys.length) {
+            keys = Arrays.copyOf(keys, keys.length * 2);
+        }
+        keys[vertex * 3] = position;
+        keys[vertex * 3 + 1] = textCoord;
+        keys[vertex * 3 + 2] = normal;
+        table[slot] = vertex;
+
+        // keep the load factor at or below one half
+        if (vertexCount * 2 > table.length) {
+            rehash();
+        }
+        return vertex;
+    }
+
+    private void rehash() {
+        allocateTable(table.length * 2);
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            int slot = hash(keys[vertex * 3], keys[vertex * 3 + 1], keys[vertex * 3 + 2]) & mask;
+            while (table[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = vertex;
+        }
+    }
+
+    private void allocateTable(int minCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(minCapacity, 16) - 1) << 1;
+        table = new int[capacity];
+        Arrays.fill(table, EMPTY);
+        mask = capacity - 1;
+    }
+
+    private static int hash(int position, int textCoord, int normal) {
+        int h = position * 0x9E3779B1 + textCoord * 0x85EBCA77 + normal * 0xC2B2AE3D;
+        // murmur3 finalizer to spread sequential indices over the table
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private int[] groupByMaterial(int[] indices) {
+        GrowableIntArray starts = objData.getMaterialFaceStarts();
+        List<String> names = objData.getMaterialNames();
+        int faceCount = indices.length / 3;
+        if (names.isEmpty()) {
+            subMeshes = new SubMesh[]{new SubMesh(0, indices.length, null)};
+            return indices;
+        }
+
+        // split the faces into runs of one material: [rangeStart[r], rangeStart[r + 1])
+        int rangeCount = names.size() + 1;
+        int[] rangeStart = new int[rangeCount + 1];
+        String[] rangeName = new String[rangeCount];
+        for (int r = 1; r < rangeCount; r++) {
+            rangeStart[r] = starts.get(r - 1);
+            rangeName[r] = names.get(r - 1);
+        }
+        rangeStart[rangeCount] = faceCount;
+
+        Map<String, int[]> facesPerMaterial = new LinkedHashMap<>();
+        for (int r = 0; r < rangeCount; r++) {
+            int length = rangeStart[r + 1] - rangeStart[r];
+            if (length > 0) {
+                facesPerMaterial.computeIfAbsent(rangeName[r], name -> new int[2])[0] += length;
+            }
+        }
+
+        List<SubMesh> result = new ArrayList<>(facesPerMaterial.size());
+        int offset = 0;
+        for (Map.Entry<String, int[]> entry : facesPerMaterial.entrySet()) {
+            int[] counter = entry.getValue();
+            result.add(new SubMesh(offset * 3, counter[0] * 3, entry.getKey()));
+            // reuse the counter as the write cursor of the material
+            counter[1] = offset;
+            offset += counter[0];
+        }
+
+        int[] grouped = new int[indices.length];
+        for (int r = 0; r < rangeCount; r++) {
+            int length = rangeStart[r + 1] - rangeStart[r];
+            if (length > 0) {
+                int[] counter = facesPerMaterial.get(rangeName[r]);
+                System.arraycopy(indices, rangeStart[r] * 3, grouped, counter[1] * 3, length * 3);
+                counter[1] += length;
+            }
+        }
+        subMeshes = result.toArray(new SubMesh[0]);
+        return grouped;
+    }
+
+    private MeshData buildVertices(int[] indices) {
+        float[] positions = objData.getPositions().array();
+        float[] textCoords = objData.getTextCoords().array();
+        float[] normals = objData.getNormals().array();
+
+        float[] posArr = new float[vertexCount * 3];
+        float[] textCoordArr = new float[vertexCount * 2];
+        float[] normArr = new float[vertexCount * 3];
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            int position = keys[vertex * 3];
+            int textCoord = keys[vertex * 3 + 1];
+            int normal = keys[vertex * 3 + 2];
+
+            posArr[vertex * 3] = positions[position * 3];
+            posArr[vertex * 3 + 1] = positions[position * 3 + 1];
+            posArr[vertex * 3 + 2] = positions[position * 3 + 2];
+            if (textCoord >= 0) {
+                textCoordArr[vertex * 2] = textCoords[textCoord * 2];
+                textCoordArr[vertex * 2 + 1] = 1 - textCoords[textCoord * 2 + 1];
+            }
+            if (normal >= 0) {
+                normArr[vertex * 3] = normals[normal * 3];
+                normArr[vertex * 3 + 1] = normals[normal * 3 + 1];
+                normArr[vertex * 3 + 2] = normals[normal * 3 + 2];
+            }
+        }
+        return new MeshData(posArr, textCoordArr, normArr, indices, subMeshes, objData.getMaterialLibraries());
+    }
+
+    /**
+     * Figures of a welding run.
+     */
+    public static class Stats {
+
+        private int positionCount;
+
+        private int cornerCount;
+
+        private int vertexCount;
+
+        void record(int positionCount, int cornerCount, int vertexCount) {
+            this.positionCount = positionCount;
+            this.cornerCount = cornerCount;
+            this.vertexCount = vertexCount;
+        }
+
+        /**
+         * Number of positions declared in the file.
+         */
+        public int getPositionCount() {
+            return positionCount;
+        }
+
+        /**
+         * Number of face corners, i.e. the vertex count of an unindexed mesh.
+         */
+        public int getCornerCount() {
+            return cornerCount;
+        }
+
+        /**
+         * Number of unique (position, texture coordinate, normal) vertices emitted.
+         */
+        public int getVertexCount() {
+            return vertexCount;
+        }
+
+        /**
+         * Average number of face corners sharing one output vertex.
+         */
+        public double getDedupRatio() {
+            return vertexCount == 0 ? 0 : (double) cornerCount / vertexCount;
+        }
+
+        /**
+         * Vertex buffer size if every corner was exported as its own vertex.
+         */
+        public long getUnweldedBytes() {
+            return (long) cornerCount * VERTEX_BYTES;
+        }
+
+        /**
+         * Vertex buffer size after welding.
+         */
+        public long getWeldedBytes() {
+            return (long) vertexCount * VERTEX_BYTES;
+        }
+
+        public long getSavedBytes() {
+            return getUnweldedBytes() - getWeldedBytes();
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "%d corners -> %d vertices (%d positions), dedup ratio %.2f, vertex buffer %d KB -> %d KB (saved %d KB)",
+                    cornerCount, vertexCount, positionCount, getDedupRatio(),
+                    getUnweldedBytes() / 1024, getWeldedBytes() / 1024, getSavedBytes() / 1024);
+        }
+    }
+}
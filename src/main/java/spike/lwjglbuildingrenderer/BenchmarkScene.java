@@ -0,0 +1,43 @@
+package spike.lwjglbuildingrenderer;
+
+import com.xenosnowfox.engine.graphics.GameItem;
+
+import java.util.Random;
+
+/**
+ * The scene shared by the benchmarks: items scattered over a flat square world, so their numbers compare between
+ * tools.
+ */
+final class BenchmarkScene {
+
+	/**
+	 * Side of the square the items are scattered over, centred on the origin.
+	 */
+	static final float WORLD_SIZE = 2000f;
+
+	/**
+	 * Creates items without a mesh on the ground, turned and scaled at random; the same every run.
+	 *
+	 * @param maxTilt
+	 * 		largest rotation about x, in degrees; 0 keeps the items upright.
+	 */
+	static GameItem[] randomItems(final int count, final float maxTilt) {
+		final Random random = new Random(42);
+		final GameItem[] items = new GameItem[count];
+		for (int i = 0; i < count; i++) {
+			final GameItem item = new GameItem(null);
+			item.setPosition((random.nextFloat() - 0.5f) * WORLD_SIZE, 0f, (random.nextFloat() - 0.5f) * WORLD_SIZE);
+			final float tilt = maxTilt > 0f ? random.nextFloat() * maxTilt : 0f;
+			item.setRotation(tilt, random.nextFloat() * 360f, 0f);
+			final float scale = 0.5f + random.nextFloat() * 2f;
+			item.setScale(scale, scale, scale);
+			items[i] = item;
+		}
+		return items;
+	}
+
+	/**
+	 * Hidden constructor.
+	 */
+	private BenchmarkScene() { }
+}
@@ -0,0 +1,219 @@
+package spike.lwjglbuildingrenderer;
+
+import com.xenosnowfox.engine.graphics.BoundingVolumeHierarchy;
+import com.xenosnowfox.engine.graphics.Bounds;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Measures the {@link BoundingVolumeHierarchy} on a district of randomly placed building parts: SAH build,
+ * incremental inserts, updates of moving parts, and frustum, box and ray queries, next to a linear frustum scan.
+ *
+ * <p>Every size is first checked against brute force: the frustum query must find every box a linear scan finds,
+ * also after a round of removals, reinsertions and moves.
+ *
+ * <p>Usage: {@code BvhBenchmark [largest size]}; sizes go from 10^3 up by factors of ten. No OpenGL context is
+ * needed.
+ */
+public class BvhBenchmark {
+
+	private static final float DISTRICT_SIZE = 4000f;
+
+	private static final int QUERIES = 100;
+
+	private static int hits;
+
+	private static final BoundingVolumeHierarchy.Visitor COUNTER = (proxy, userData) -> {
+		hits++;
+		return true;
+	};
+
+	private static final BoundingVolumeHierarchy.RayVisitor RAY_COUNTER = (proxy, userData, maxDistance) -> {
+		hits++;
+		return maxDistance;
+	};
+
+	public static void main(String... args) {
+		final int largest = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		System.out.println("objects   build ms  insert ms  move 10% ms  height  area  frustum us  linear us  box us  ray us");
+		for (int count = 1_000; count <= largest; count *= 10) {
+			run(count);
+		}
+	}
+
+	private static void run(final int count) {
+		final Random random = new Random(count);
+		final float[] boxes = randomBoxes(random, count);
+		final int[] userData = new int[count];
+		for (int i = 0; i < count; i++) {
+			userData[i] = i;
+		}
+		final int[] proxies = new int[count];
+		final Bounds bounds = new Bounds();
+		final FrustumIntersection[] frustums = randomFrustums(random);
+
+		final BoundingVolumeHierarchy hierarchy = new BoundingVolumeHierarchy(0.5f);
+		long start = System.nanoTime();
+		hierarchy.build(boxes, userData, count, proxies);
+		final long build = System.nanoTime() - start;
+		check(hierarchy, boxes, count, frustums, "build");
+		final int height = hierarchy.getHeight();
+		final float area = hierarchy.getAreaRatio();
+
+		final BoundingVolumeHierarchy incremental = new BoundingVolumeHierarchy(0.5f);
+		start = System.nanoTime();
+		for (int i = 0; i < count; i++) {
+			proxies[i] = incremental.insert(box(boxes, i, bounds), i);
+		}
+		final long insert = System.nanoTime() - start;
+		check(incremental, boxes, count, frustums, "insert");
+
+		// churn: remove and reinsert a tenth, move another tenth a little and one in a hundred far away
+		for (int i = 0; i < count / 10; i++) {
+			final int object = random.nextInt(count);
+			incremental.remove(proxies[object]);
+			proxies[object] = incremental.insert(box(boxes, object, bounds), object);
+		}
+		start = System.nanoTime();
+		for (int i = 0; i < count / 10; i++) {
+			final int object = random.nextInt(count);
+			final float distance = random.nextInt(10) == 0 ? DISTRICT_SIZE * 0.25f : 1f;
+			move(boxes, object, (random.nextFloat() - 0.5f) * distance, (random.nextFloat() - 0.5f) * distance);
+			incremental.update(proxies[object], box(boxes, object, bounds));
+		}
+		final long move = System.nanoTime() - start;
+		check(incremental, boxes, count, frustums, "move");
+
+		start = System.nanoTime();
+		for (int query = 0; query < QUERIES; query++) {
+			hierarchy.queryFrustum(frustums[query % frustums.length], COUNTER);
+		}
+		final long frustum = (System.nanoTime() - start) / QUERIES;
+
+		start = System.nanoTime();
+		for (int query = 0; query < QUERIES; query++) {
+			linearScan(boxes, count, frustums[query % frustums.length]);
+		}
+		final long linear = (System.nanoTime() - start) / QUERIES;
+
+		start = System.nanoTime();
+		for (int query = 0; query < QUERIES; query++) {
+			final float x = (random.nextFloat() - 0.5f) * DISTRICT_SIZE;
+			final float z = (random.nextFloat() - 0.5f) * DISTRICT_SIZE;
+			hierarchy.queryAabb(bounds.set(x - 50f, 0f, z - 50f, x + 50f, 50f, z + 50f), COUNTER);
+		}
+		final long box = (System.nanoTime() - start) / QUERIES;
+
+		final Vector3f origin = new Vector3f();
+		final Vector3f direction = new Vector3f();
+		start = System.nanoTime();
+		for (int query = 0; query < QUERIES; query++) {
+			origin.set((random.nextFloat() - 0.5f) * DISTRICT_SIZE, 1.65f, (random.nextFloat() - 0.5f) * DISTRICT_SIZE);
+			direction.set(random.nextFloat() - 0.5f, -0.05f, random.nextFloat() - 0.5f).normalize();
+			hierarchy.raycast(origin, direction, 500f, RAY_COUNTER);
+		}
+		final long ray = (System.nanoTime() - start) / QUERIES;
+
+		System.out.printf(Locale.ROOT, "%7d %10.2f %10.2f %12.3f %7d %5.0f %11.1f %10.1f %7.1f %7.1f%n",
+				count, build / 1e6, insert / 1e6, move / 1e6, height, area, frustum / 1e3, linear / 1e3, box / 1e3,
+				ray / 1e3);
+	}
+
+	/**
+	 * Checks that the frustum query finds every box a linear scan finds; it may find a few more, as leaf boxes are
+	 * grown by the hierarchy margin.
+	 */
+	private static void check(final BoundingVolumeHierarchy hierarchy, final float[] boxes, final int count,
+			final FrustumIntersection[] frustums, final String phase) {
+		final boolean[] found = new boolean[count];
+		for (FrustumIntersection frustum : frustums) {
+			Arrays.fill(found, false);
+			hierarchy.queryFrustum(frustum, (proxy, userData) -> {
+				found[userData] = true;
+				return true;
+			});
+			for (int i = 0; i < count; i++) {
+				final int offset = i * 6;
+				if (!found[i] && frustum.testAab(boxes[offset], boxes[offset + 1], boxes[offset + 2],
+						boxes[offset + 3], boxes[offset + 4], boxes[offset + 5])) {
+					throw new IllegalStateException("After " + phase + " the hierarchy misses object " + i);
+				}
+			}
+		}
+	}
+
+	private static int linearScan(final float[] boxes, final int count, final FrustumIntersection frustum) {
+		int found = 0;
+		for (int i = 0; i < count; i++) {
+			final int offset = i * 6;
+			if (frustum.testAab(boxes[offset], boxes[offset + 1], boxes[offset + 2],
+					boxes[offset + 3], boxes[offset + 4], boxes[offset + 5])) {
+				found++;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Parts of 2 to 20 units wide and up to 60 high on a flat district, denser towards the centre.
+	 */
+	private static float[] randomBoxes(final Random random, final int count) {
+		final float[] boxes = new float[count * 6];
+		for (int i = 0; i < count; i++) {
+			final float spread = DISTRICT_SIZE * 0.5f * (float) Math.sqrt(random.nextFloat());
+			final double angle = random.nextDouble() * Math.PI * 2;
+			final float x = spread * (float) Math.cos(angle);
+			final float z = spread * (float) Math.sin(angle);
+			final float width = 2f + random.nextFloat() * 18f;
+			final float depth = 2f + random.nextFloat() * 18f;
+			final float height = 3f + random.nextFloat() * 57f;
+			final int offset = i * 6;
+			boxes[offset] = x;
+			boxes[offset + 1] = 0f;
+			boxes[offset + 2] = z;
+			boxes[offset + 3] = x + width;
+			boxes[offset + 4] = height;
+			boxes[offset + 5] = z + depth;
+		}
+		return boxes;
+	}
+
+	/**
+	 * Street level cameras looking in random directions.
+	 */
+	private static FrustumIntersection[] randomFrustums(final Random random) {
+		final Matrix4f projection = new Matrix4f().setPerspective((float) Math.toRadians(60.0f), 16f / 9f, 0.01f, 1000f);
+		final FrustumIntersection[] frustums = new FrustumIntersection[8];
+		for (int i = 0; i < frustums.length; i++) {
+			final Matrix4f view = new Matrix4f()
+					.rotateY((float) (random.nextDouble() * Math.PI * 2))
+					.translate((random.nextFloat() - 0.5f) * DISTRICT_SIZE, -1.65f, (random.nextFloat() - 0.5f) * DISTRICT_SIZE);
+			frustums[i] = new FrustumIntersection(new Matrix4f(projection).mul(view));
+		}
+		return frustums;
+	}
+
+	private static Bounds box(final float[] boxes, final int index, final Bounds target) {
+		final int offset = index * 6;
+		return target.set(boxes[offset], boxes[offset + 1], boxes[offset + 2],
+				boxes[offset + 3], boxes[offset + 4], boxes[offset + 5]);
+	}
+
+	private static void move(final float[] boxes, final int index, final float dx, final float dz) {
+		final int offset = index * 6;
+		boxes[offset] += dx;
+		boxes[offset + 2] += dz;
+		boxes[offset + 3] += dx;
+		boxes[offset + 5] += dz;
+	}
+
+	/**
+	 * Hidden constructor.
+	 */
+	private BvhBenchmark() { }
+}
@@ -0,0 +1,384 @@
+package spike.lwjglbuildingrenderer;
+
+import com.xenosnowfox.engine.graphics.Bounds;
+import com.xenosnowfox.engine.graphics.CellGraph;
+import com.xenosnowfox.engine.graphics.CellVisibility;
+import com.xenosnowfox.engine.graphics.FrustumCuller;
+import com.xenosnowfox.engine.graphics.PotentiallyVisibleSet;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Measures {@link CellVisibility} in a synthetic building of several floors, each a grid of rooms with a door to
+ * every neighbour and a stairwell opening to the floor above. Boxes furnish the rooms; the camera is placed at
+ * random in the rooms, looking in a random direction, and every frame counts the items submitted after frustum
+ * culling alone, after the portal walk and after a lookup in a precomputed set.
+ *
+ * <p>The graph is written both as a sidecar file and as an OBJ with cell and portal groups, and both must load to
+ * the same cells. Each item the portal walk rejects is checked by casting rays from the camera to points spread
+ * over its box: a point inside the frustum that no wall or floor blocks means a visible item was culled.
+ *
+ * <p>Usage: {@code CellVisibilityBenchmark [floors] [rooms per side] [frames] [samples per axis]}; no OpenGL context
+ * is needed.
+ */
+public class CellVisibilityBenchmark {
+
+	private static final float ROOM_SIZE = 10f;
+
+	private static final float FLOOR_HEIGHT = 3f;
+
+	private static final float DOOR_WIDTH = 1.2f;
+
+	private static final float DOOR_HEIGHT = 2.2f;
+
+	/**
+	 * Stairwell opening in the corner room of every floor but the top one, from and to in x and z.
+	 */
+	private static final float STAIRS_FROM = 1f;
+
+	private static final float STAIRS_TO = 3f;
+
+	private static final int ITEMS_PER_ROOM = 20;
+
+	/**
+	 * Points sampled per box face and axis for the check, corners included.
+	 */
+	private static final int SAMPLES = 4;
+
+	private static final float INSET = 1e-3f;
+
+	public static void main(String... args) throws IOException {
+		final int floors = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+		final int rooms = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+		final int frames = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+		final int samples = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+
+		final List<float[]> walls = new ArrayList<>();
+		final List<String> sidecar = new ArrayList<>();
+		final StringBuilder obj = new StringBuilder();
+		build(floors, rooms, walls, sidecar, obj);
+		final CellGraph graph = CellGraph.parse(sidecar);
+		if (!checkObj(graph, obj)) {
+			System.err.println("Cells declared in the OBJ differ from the sidecar file, not benchmarking.");
+			System.exit(1);
+		}
+
+		long start = System.nanoTime();
+		final PotentiallyVisibleSet pvs = PotentiallyVisibleSet.compute(graph, samples);
+		final long bakeNanos = System.nanoTime() - start;
+		final Path pvsFile = Files.createTempFile("cells", ".pvs");
+		try {
+			pvs.write(pvsFile);
+			if (!PotentiallyVisibleSet.read(pvsFile).contentEquals(pvs)) {
+				System.err.println("Potentially visible set changed when written and read back.");
+				System.exit(1);
+			}
+		} finally {
+			Files.delete(pvsFile);
+		}
+		long pvsCells = 0;
+		for (int cell = 0; cell < graph.getCellCount(); cell++) {
+			pvsCells += pvs.countVisible(cell);
+		}
+		System.out.printf(Locale.ROOT, "%d floors of %d rooms: %d cells, %d portals, %d walls%n",
+				floors, rooms * rooms, graph.getCellCount(), graph.getPortalCount(), walls.size());
+		System.out.printf(Locale.ROOT, "precomputed set: %d bytes, %.1f cells per row, baked in %.0f ms from %d samples per cell%n",
+				pvs.getByteSize(), (double) pvsCells / graph.getCellCount(), bakeNanos / 1e6, samples * samples * samples);
+
+		final Bounds[] items = furnish(floors, rooms);
+		final int[] itemCells = new int[items.length];
+		for (int i = 0; i < items.length; i++) {
+			itemCells[i] = graph.findCell(items[i]);
+		}
+
+		final CellVisibility portals = new CellVisibility(graph);
+		final CellVisibility precomputed = new CellVisibility(graph);
+		precomputed.setPotentiallyVisibleSet(pvs);
+		final FrustumCuller frustumCuller = new FrustumCuller();
+		final FrustumIntersection frustum = new FrustumIntersection();
+		final Matrix4f projectionMatrix = new Matrix4f().setPerspective((float) Math.toRadians(60.0f), 16f / 9f, 0.05f, 500f);
+		final Matrix4f viewMatrix = new Matrix4f();
+		final Matrix4f viewProjectionMatrix = new Matrix4f();
+		final Vector3f camera = new Vector3f();
+		final Random random = new Random(42);
+
+		long frustumDraws = 0;
+		long portalDraws = 0;
+		long pvsDraws = 0;
+		long pvsMissing = 0;
+		long portalNanos = 0;
+		long pvsNanos = 0;
+		int violations = 0;
+		for (int frame = 0; frame < frames; frame++) {
+			camera.set((random.nextInt(rooms) + 0.1f + random.nextFloat() * 0.8f) * ROOM_SIZE,
+					random.nextInt(floors) * FLOOR_HEIGHT + 1.65f,
+					(random.nextInt(rooms) + 0.1f + random.nextFloat() * 0.8f) * ROOM_SIZE);
+			viewMatrix.rotationX((float) Math.toRadians(random.nextFloat() * 80f - 40f))
+					.rotateY(random.nextFloat() * (float) Math.PI * 2f)
+					.translate(-camera.x, -camera.y, -camera.z);
+			frustumCuller.update(projectionMatrix, viewMatrix);
+			start = System.nanoTime();
+			portals.update(projectionMatrix, viewMatrix, camera);
+			final long portalStart = System.nanoTime();
+			precomputed.update(projectionMatrix, viewMatrix, camera);
+			pvsNanos += System.nanoTime() - portalStart;
+			portalNanos += portalStart - start;
+			frustum.set(projectionMatrix.mul(viewMatrix, viewProjectionMatrix));
+
+			for (int i = 0; i < items.length; i++) {
+				if (!frustumCuller.isVisible(items[i])) {
+					continue;
+				}
+				frustumDraws++;
+				final boolean throughPortals = portals.isVisible(itemCells[i], items[i]);
+				final boolean fromSet = precomputed.isVisible(itemCells[i], items[i]);
+				if (throughPortals) {
+					portalDraws++;
+				} else if (seen(items[i], camera, walls, frustum)) {
+					violations++;
+				}
+				if (fromSet) {
+					pvsDraws++;
+				} else if (throughPortals) {
+					pvsMissing++;
+				}
+			}
+		}
+		if (violations > 0) {
+			System.err.printf(Locale.ROOT, "%d items were culled by the portal walk while a point of them could be seen%n", violations);
+			System.exit(1);
+		}
+		System.out.printf(Locale.ROOT, "%d frames          draws/frame  visibility us/frame%n", frames);
+		System.out.printf(Locale.ROOT, "frustum only      %11.1f%n", (double) frustumDraws / frames);
+		System.out.printf(Locale.ROOT, "portal walk       %11.1f %20.1f%n", (double) portalDraws / frames, portalNanos / 1e3 / frames);
+		System.out.printf(Locale.ROOT, "precomputed set   %11.1f %20.1f  (%d draws the walk kept were missing)%n",
+				(double) pvsDraws / frames, pvsNanos / 1e3 / frames, pvsMissing);
+		System.out.println(portals);
+	}
+
+	/**
+	 * Whether any sampled point on the box is inside the frustum with no wall or floor between it and the camera.
+	 */
+	private static boolean seen(final Bounds box, final Vector3f camera, final List<float[]> walls, final FrustumIntersection frustum) {
+		final float[] from = {camera.x, camera.y, camera.z};
+		final float[] point = new float[3];
+		for (int i = 0; i < SAMPLES; i++) {
+			for (int j = 0; j < SAMPLES; j++) {
+				for (int k = 0; k < SAMPLES; k++) {
+					if (i != 0 && i != SAMPLES - 1 && j != 0 && j != SAMPLES - 1 && k != 0 && k != SAMPLES - 1) {
+						continue;
+					}
+					// just inside the box, so the bottom of an item is not seen through the floor it stands on
+					point[0] = inside(box.getMin().x, box.getMax().x, i);
+					point[1] = inside(box.getMin().y, box.getMax().y, j);
+					point[2] = inside(box.getMin().z, box.getMax().z, k);
+					if (frustum.testPoint(point[0], point[1], point[2]) && !blocked(from, point, walls)) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	private static float inside(final float min, final float max, final int sample) {
+		return min + INSET + (max - min - INSET * 2f) * sample / (SAMPLES - 1);
+	}
+
+	/**
+	 * Whether the segment between two points passes through a wall; walls are rectangles at a constant value of one
+	 * axis: axis, value, from and to along the next axis, from and to along the one after.
+	 */
+	private static boolean blocked(final float[] from, final float[] to, final List<float[]> walls) {
+		for (float[] wall : walls) {
+			final int axis = (int) wall[0];
+			final int u = (axis + 1) % 3;
+			final int v = (axis + 2) % 3;
+			final float denominator = to[axis] - from[axis];
+			if (denominator == 0f) {
+				continue;
+			}
+			final float t = (wall[1] - from[axis]) / denominator;
+			if (t <= 0f || t >= 1f) {
+				continue;
+			}
+			final float atU = from[u] + (to[u] - from[u]) * t;
+			final float atV = from[v] + (to[v] - from[v]) * t;
+			if (atU > wall[2] && atU < wall[3] && atV > wall[4] && atV < wall[5]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Declares the rooms as cells, the doors and stairwells as portals, and collects the solid parts of walls and
+	 * floors for the ray checks.
+	 */
+	private static void build(final int floors, final int rooms, final List<float[]> walls, final List<String> sidecar,
+			final StringBuilder obj) {
+		final float size = rooms * ROOM_SIZE;
+		final int[] vertexCount = {0};
+		for (int floor = 0; floor < floors; floor++) {
+			final float bottom = floor * FLOOR_HEIGHT;
+			final float top = bottom + FLOOR_HEIGHT;
+			for (int x = 0; x < rooms; x++) {
+				for (int z = 0; z < rooms; z++) {
+					final String name = room(floor, x, z);
+					sidecar.add(String.format(Locale.ROOT, "cell %s %s %s %s %s %s %s", name,
+							x * ROOM_SIZE, bottom, z * ROOM_SIZE, (x + 1) * ROOM_SIZE, top, (z + 1) * ROOM_SIZE));
+					obj.append("g ").append(CellGraph.CELL_PREFIX).append(name).append('\n');
+					quad(obj, vertexCount, new float[]{
+							x * ROOM_SIZE, bottom, z * ROOM_SIZE, (x + 1) * ROOM_SIZE, bottom, z * ROOM_SIZE,
+							(x + 1) * ROOM_SIZE, top, (z + 1) * ROOM_SIZE, x * ROOM_SIZE, top, (z + 1) * ROOM_SIZE});
+
+					// the door in the wall towards x + 1, and the one towards z + 1
+					final float doorFrom = (ROOM_SIZE - DOOR_WIDTH) / 2f;
+					if (x + 1 < rooms) {
+						final float wallX = (x + 1) * ROOM_SIZE;
+						final float from = z * ROOM_SIZE;
+						portal(sidecar, obj, vertexCount, name, room(floor, x + 1, z), new float[]{
+								wallX, bottom, from + doorFrom, wallX, bottom, from + doorFrom + DOOR_WIDTH,
+								wallX, bottom + DOOR_HEIGHT, from + doorFrom + DOOR_WIDTH, wallX, bottom + DOOR_HEIGHT, from + doorFrom});
+						walls.add(new float[]{0, wallX, bottom, top, from, from + doorFrom});
+						walls.add(new float[]{0, wallX, bottom, top, from + doorFrom + DOOR_WIDTH, from + ROOM_SIZE});
+						walls.add(new float[]{0, wallX, bottom + DOOR_HEIGHT, top, from + doorFrom, from + doorFrom + DOOR_WIDTH});
+					}
+					if (z + 1 < rooms) {
+						final float wallZ = (z + 1) * ROOM_SIZE;
+						final float from = x * ROOM_SIZE;
+						portal(sidecar, obj, vertexCount, name, room(floor, x, z + 1), new float[]{
+								from + doorFrom, bottom, wallZ, from + doorFrom + DOOR_WIDTH, bottom, wallZ,
+								from + doorFrom + DOOR_WIDTH, bottom + DOOR_HEIGHT, wallZ, from + doorFrom, bottom + DOOR_HEIGHT, wallZ});
+						walls.add(new float[]{2, wallZ, from, from + doorFrom, bottom, top});
+						walls.add(new float[]{2, wallZ, from + doorFrom + DOOR_WIDTH, from + ROOM_SIZE, bottom, top});
+						walls.add(new float[]{2, wallZ, from + doorFrom, from + doorFrom + DOOR_WIDTH, bottom + DOOR_HEIGHT, top});
+					}
+				}
+			}
+			walls.add(new float[]{0, 0f, bottom, top, 0f, size});
+			walls.add(new float[]{0, size, bottom, top, 0f, size});
+			walls.add(new float[]{2, 0f, 0f, size, bottom, top});
+			walls.add(new float[]{2, size, 0f, size, bottom, top});
+
+			// the floor, with the stairwell of the floor below cut out
+			if (floor == 0) {
+				walls.add(new float[]{1, bottom, 0f, size, 0f, size});
+			} else {
+				portal(sidecar, obj, vertexCount, room(floor - 1, 0, 0), room(floor, 0, 0), new float[]{
+						STAIRS_FROM, bottom, STAIRS_FROM, STAIRS_TO, bottom, STAIRS_FROM,
+						STAIRS_TO, bottom, STAIRS_TO, STAIRS_FROM, bottom, STAIRS_TO});
+				walls.add(new float[]{1, bottom, 0f, STAIRS_FROM, 0f, size});
+				walls.add(new float[]{1, bottom, STAIRS_TO, size, 0f, size});
+				walls.add(new float[]{1, bottom, STAIRS_FROM, STAIRS_TO, 0f, STAIRS_FROM});
+				walls.add(new float[]{1, bottom, STAIRS_FROM, STAIRS_TO, STAIRS_TO, size});
+			}
+		}
+		walls.add(new float[]{1, floors * FLOOR_HEIGHT, 0f, size, 0f, size});
+	}
+
+	private static String room(final int floor, final int x, final int z) {
+		return "floor" + floor + "_room" + x + "_" + z;
+	}
+
+	private static void portal(final List<String> sidecar, final StringBuilder obj, final int[] vertexCount,
+			final String first, final String second, final float[] corners) {
+		final StringBuilder line = new StringBuilder("portal ").append(first).append(' ').append(second);
+		for (float value : corners) {
+			line.append(' ').append(value);
+		}
+		sidecar.add(line.toString());
+		obj.append("g ").append(CellGraph.PORTAL_PREFIX).append(first).append(CellGraph.PORTAL_SEPARATOR).append(second).append('\n');
+		quad(obj, vertexCount, corners);
+	}
+
+	/**
+	 * Appends four corners and the two triangles between them.
+	 */
+	private static void quad(final StringBuilder obj, final int[] vertexCount, final float[] corners) {
+		for (int corner = 0; corner < 4; corner++) {
+			obj.append("v ").append(corners[corner * 3]).append(' ').append(corners[corner * 3 + 1]).append(' ')
+					.append(corners[corner * 3 + 2]).append('\n');
+		}
+		final int first = vertexCount[0] + 1;
+		obj.append("f ").append(first).append(' ').append(first + 1).append(' ').append(first + 2).append('\n');
+		obj.append("f ").append(first).append(' ').append(first + 2).append(' ').append(first + 3).append('\n');
+		vertexCount[0] += 4;
+	}
+
+	/**
+	 * Whether the OBJ form of the graph loads to the same cells and portals as the sidecar form.
+	 */
+	private static boolean checkObj(final CellGraph graph, final CharSequence obj) throws IOException {
+		final Path file = Files.createTempFile("cells", ".obj");
+		final CellGraph fromObj;
+		try {
+			try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+				writer.append(obj);
+			}
+			fromObj = CellGraph.load(file.toString());
+		} finally {
+			Files.delete(file);
+		}
+		if (fromObj.getCellCount() != graph.getCellCount() || fromObj.getPortalCount() != graph.getPortalCount()) {
+			return false;
+		}
+		final Bounds expected = new Bounds();
+		final Bounds actual = new Bounds();
+		for (int cell = 0; cell < graph.getCellCount(); cell++) {
+			graph.getCellBounds(cell, expected);
+			fromObj.getCellBounds(cell, actual);
+			if (!graph.getCellName(cell).equals(fromObj.getCellName(cell)) || !expected.getMin().equals(actual.getMin())
+					|| !expected.getMax().equals(actual.getMax())) {
+				return false;
+			}
+		}
+		for (int portal = 0; portal < graph.getPortalCount(); portal++) {
+			if (fromObj.getPortalPolygon(portal).length != graph.getPortalPolygon(portal).length) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Boxes of furniture size placed at random inside each room, clear of the walls.
+	 */
+	private static Bounds[] furnish(final int floors, final int rooms) {
+		final Random random = new Random(7);
+		final Bounds[] items = new Bounds[floors * rooms * rooms * ITEMS_PER_ROOM];
+		int count = 0;
+		for (int floor = 0; floor < floors; floor++) {
+			for (int x = 0; x < rooms; x++) {
+				for (int z = 0; z < rooms; z++) {
+					for (int i = 0; i < ITEMS_PER_ROOM; i++) {
+						final float sizeX = 0.4f + random.nextFloat() * 1.1f;
+						final float sizeZ = 0.4f + random.nextFloat() * 1.1f;
+						final float sizeY = 0.5f + random.nextFloat() * 1.5f;
+						final float minX = x * ROOM_SIZE + 0.2f + random.nextFloat() * (ROOM_SIZE - 0.4f - sizeX);
+						final float minZ = z * ROOM_SIZE + 0.2f + random.nextFloat() * (ROOM_SIZE - 0.4f - sizeZ);
+						final float minY = floor * FLOOR_HEIGHT;
+						items[count++] = new Bounds().set(minX, minY, minZ, minX + sizeX, minY + sizeY, minZ + sizeZ);
+					}
+				}
+			}
+		}
+		return items;
+	}
+
+	/**
+	 * Hidden constructor.
+	 */
+	private CellVisibilityBenchmark() { }
+}
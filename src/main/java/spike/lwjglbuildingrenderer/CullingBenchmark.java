@@ -0,0 +1,86 @@
+package spike.lwjglbuildingrenderer;
+
+import com.xenosnowfox.engine.graphics.Bounds;
+import com.xenosnowfox.engine.graphics.FrustumCuller;
+import com.xenosnowfox.engine.graphics.GameItem;
+import com.xenosnowfox.engine.graphics.Transformation;
+import org.joml.Matrix4f;
+
+import java.util.Locale;
+
+/**
+ * Measures frustum culling of randomly placed, rotated and scaled items: deriving each world bound from the item
+ * transformation and testing it against the frustum, as the render path does.
+ *
+ * <p>Before timing, a few items with an obvious answer are checked, so a broken frustum does not go unnoticed
+ * behind a good number.
+ *
+ * <p>Usage: {@code CullingBenchmark [items] [iterations]}; no OpenGL context is needed.
+ */
+public class CullingBenchmark {
+
+	public static void main(String... args) {
+		final int itemCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		final int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+		final Transformation transformation = new Transformation();
+		final Matrix4f projectionMatrix = new Matrix4f().setPerspective((float) Math.toRadians(60.0f), 16f / 9f, 0.01f, 1000f);
+		final Matrix4f viewMatrix = new Matrix4f();
+		final Bounds localBounds = new Bounds().set(-1f, 0f, -1f, 1f, 4f, 1f);
+		final Bounds worldBounds = new Bounds();
+		final FrustumCuller culler = new FrustumCuller();
+		culler.update(projectionMatrix, viewMatrix);
+
+		if (!selfCheck(culler, transformation, localBounds, worldBounds)) {
+			System.err.println("Self check failed, not benchmarking.");
+			System.exit(1);
+		}
+
+		final GameItem[] items = BenchmarkScene.randomItems(itemCount, 0f);
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < iterations; i++) {
+			culler.update(projectionMatrix, viewMatrix);
+			final long start = System.nanoTime();
+			for (GameItem item : items) {
+				culler.isVisible(localBounds.transform(transformation.getModelMatrix(item), worldBounds));
+			}
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		System.out.printf(Locale.ROOT, "%d items: %8.2f ms %10.0f items/ms, %d visible, %d culled%n",
+				itemCount, best / 1e6, itemCount / (best / 1e6), culler.getVisibleCount(), culler.getCulledCount());
+	}
+
+	/**
+	 * The camera sits at the origin looking down -z: an item ahead is visible; items behind, far beyond the far
+	 * plane or well off to the side are not.
+	 */
+	private static boolean selfCheck(final FrustumCuller culler, final Transformation transformation,
+			final Bounds localBounds, final Bounds worldBounds) {
+		final float[][] cases = {
+				// x, y, z, expected visible
+				{0f, 0f, -10f, 1f},
+				{0f, 0f, 10f, 0f},
+				{0f, 0f, -2000f, 0f},
+				{500f, 0f, -10f, 0f},
+				// straddling the near plane
+				{0f, 0f, 0f, 1f},
+		};
+		final GameItem item = new GameItem(null);
+		boolean passed = true;
+		for (float[] check : cases) {
+			item.setPosition(check[0], check[1], check[2]);
+			final boolean visible = culler.isVisible(localBounds.transform(transformation.getModelMatrix(item), worldBounds));
+			if (visible != (check[3] != 0f)) {
+				System.err.printf(Locale.ROOT, "Item at (%.0f, %.0f, %.0f) reported %s%n",
+						check[0], check[1], check[2], visible ? "visible" : "culled");
+				passed = false;
+			}
+		}
+		return passed;
+	}
+
+	/**
+	 * Hidden constructor.
+	 */
+	private CullingBenchmark() { }
+}
@@ -0,0 +1,181 @@
+package spike.lwjglbuildingrenderer;
+
+import com.xenosnowfox.engine.components.EntityStore;
+import com.xenosnowfox.engine.components.Transformation3f;
+import com.xenosnowfox.engine.graphics.GameItem;
+import com.xenosnowfox.engine.graphics.Transformation;
+import org.joml.Matrix4f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Compares a frame over {@link GameItem} objects with the same frame over an {@link EntityStore}: every item drifts
+ * a little, then all model-view matrices are written to an off-heap buffer. The drift is also timed on its own, as
+ * the part where only memory layout differs; the full frame is dominated by the trigonometry of the rebuilds.
+ *
+ * <p>The items are created in shuffled order, so their vectors end up scattered over the heap as in a scene that has
+ * been edited for a while. Before timing, the store is checked against game items: same matrices, handles that
+ * survive swap-removal, stale handles rejected.
+ *
+ * <p>Usage: {@code EntityStoreBenchmark [entities] [iterations]}; no OpenGL context is needed.
+ */
+public class EntityStoreBenchmark {
+
+	private static final float EPSILON = 1e-3f;
+
+	private static final EntityStore.EntitySystem DRIFT = (store, from, to) -> {
+		final float[] positions = store.getPositions();
+		for (int i = from; i < to; i++) {
+			positions[i * 3] += 0.01f;
+			store.markDirty(i);
+		}
+	};
+
+	public static void main(String... args) {
+		final int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+		final int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+		final Matrix4f viewMatrix = new Matrix4f().rotationX(0.2f).rotateY(0.7f).translate(-10f, -1.65f, 25f);
+		final FloatBuffer buffer = MemoryUtil.memAllocFloat(count * 16);
+		try {
+			if (!selfCheck(viewMatrix, buffer)) {
+				System.err.println("Self check failed, not benchmarking.");
+				System.exit(1);
+			}
+
+			final GameItem[] items = new GameItem[count];
+			final EntityStore store = new EntityStore(16);
+			fill(items, store, count);
+			final Transformation transformation = new Transformation();
+
+			final long[] itemBest = {Long.MAX_VALUE, Long.MAX_VALUE};
+			final long[] storeBest = {Long.MAX_VALUE, Long.MAX_VALUE};
+			for (int i = 0; i < iterations * 2; i++) {
+				long start = System.nanoTime();
+				for (GameItem item : items) {
+					item.movePosition(0f, 0f, 0.01f);
+				}
+				final long itemDrift = System.nanoTime() - start;
+				buffer.clear();
+				transformation.writeModelViewMatrices(items, count, viewMatrix, buffer);
+				itemBest[0] = Math.min(itemBest[0], itemDrift);
+				itemBest[1] = Math.min(itemBest[1], System.nanoTime() - start);
+
+				start = System.nanoTime();
+				store.run(DRIFT);
+				final long storeDrift = System.nanoTime() - start;
+				buffer.clear();
+				store.writeModelViewMatrices(viewMatrix, buffer);
+				storeBest[0] = Math.min(storeBest[0], storeDrift);
+				storeBest[1] = Math.min(storeBest[1], System.nanoTime() - start);
+			}
+			System.out.printf(Locale.ROOT, "%d entities, ns each   drift   frame%n", count);
+			System.out.printf(Locale.ROOT, "game items          %7.1f %7.1f%n",
+					(double) itemBest[0] / count, (double) itemBest[1] / count);
+			System.out.printf(Locale.ROOT, "entity store        %7.1f %7.1f%n",
+					(double) storeBest[0] / count, (double) storeBest[1] / count);
+		} finally {
+			MemoryUtil.memFree(buffer);
+		}
+	}
+
+	/**
+	 * Creates matching items and entities, in shuffled allocation order so the items are not laid out in sequence.
+	 */
+	private static void fill(final GameItem[] items, final EntityStore store, final int count) {
+		final Random random = new Random(42);
+		final List<Integer> order = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			order.add(i);
+		}
+		Collections.shuffle(order, random);
+		for (int i : order) {
+			items[i] = new GameItem(null);
+		}
+		for (int i = 0; i < count; i++) {
+			final float x = (random.nextFloat() - 0.5f) * BenchmarkScene.WORLD_SIZE;
+			final float z = (random.nextFloat() - 0.5f) * BenchmarkScene.WORLD_SIZE;
+			final float angle = random.nextFloat() * 360f;
+			final float scale = 0.5f + random.nextFloat() * 2f;
+			items[i].setPosition(x, 0f, z);
+			items[i].setRotation(0f, angle, 0f);
+			items[i].setScale(scale, scale, scale);
+			final int index = store.indexOf(store.create());
+			store.setPosition(index, x, 0f, z);
+			store.setRotation(index, 0f, angle, 0f);
+			store.setScale(index, scale, scale, scale);
+		}
+	}
+
+	private static boolean selfCheck(final Matrix4f viewMatrix, final FloatBuffer buffer) {
+		final int count = 1000;
+		final GameItem[] items = new GameItem[count];
+		final EntityStore store = new EntityStore(1);
+		fill(items, store, count);
+
+		// the view must behave like the game item it stands in for
+		final Transformation3f view = store.view(store.handleAt(7));
+		view.movePosition(1f, 2f, 3f);
+		view.moveRotation(0f, 15f, 0f);
+		items[7].movePosition(1f, 2f, 3f);
+		items[7].moveRotation(0f, 15f, 0f);
+		if (!view.getModelMatrix().equals(items[7].getModelMatrix(), EPSILON)) {
+			System.err.println("View of entity 7 differs from its game item");
+			return false;
+		}
+
+		buffer.clear();
+		store.writeModelViewMatrices(viewMatrix, buffer);
+		final Matrix4f expected = new Matrix4f();
+		final Matrix4f written = new Matrix4f();
+		for (int i = 0; i < count; i++) {
+			viewMatrix.mul(items[i].getModelMatrix(), expected);
+			if (!written.set(i * 16, buffer).equals(expected, EPSILON)) {
+				System.err.printf(Locale.ROOT, "Entity %d written as%n%sexpected%n%s", i, written, expected);
+				return false;
+			}
+		}
+
+		// removing every other entity moves later ones down; their handles must still find them
+		final int[] handles = new int[count];
+		for (int i = 0; i < count; i++) {
+			handles[i] = store.handleAt(i);
+		}
+		for (int i = 0; i < count; i += 2) {
+			store.remove(handles[i]);
+		}
+		if (store.size() != count / 2 || store.isAlive(handles[0]) || store.indexOf(handles[7]) >= store.size()) {
+			System.err.println("Removal left the store inconsistent");
+			return false;
+		}
+		final Matrix4f stored = new Matrix4f();
+		for (int i = 1; i < count; i += 2) {
+			if (!store.getModelMatrix(store.indexOf(handles[i]), stored).equals(items[i].getModelMatrix(), EPSILON)) {
+				System.err.printf(Locale.ROOT, "Entity %d lost its transformation after removals%n", i);
+				return false;
+			}
+		}
+		if (!view.getModelMatrix().equals(items[7].getModelMatrix(), EPSILON)) {
+			System.err.println("View of entity 7 lost its entity after removals");
+			return false;
+		}
+		// a reused slot must not revive an old handle
+		store.create();
+		if (store.isAlive(handles[0]) || store.isAlive(handles[count - 2])) {
+			System.err.println("Stale handle reported alive after its slot was reused");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Hidden constructor.
+	 */
+	private EntityStoreBenchmark() { }
+}
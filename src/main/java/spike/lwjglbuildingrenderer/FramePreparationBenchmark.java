@@ -0,0 +1,118 @@
+package spike.lwjglbuildingrenderer;
+
+import com.xenosnowfox.engine.graphics.Bounds;
+import com.xenosnowfox.engine.graphics.FramePreparation;
+import com.xenosnowfox.engine.graphics.FrustumCuller;
+import com.xenosnowfox.engine.graphics.GameItem;
+import org.joml.Matrix4f;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures how {@link FramePreparation} scales from one thread up to all cores on a synthetic district: items are
+ * culled against a street level camera and the visible ones compacted, with a tenth of the items moving every frame
+ * so their matrices have to be rebuilt.
+ *
+ * <p>Before timing each thread count, its output is checked against a single threaded {@link FrustumCuller} pass
+ * over the same scene: same visible items, in item order.
+ *
+ * <p>Usage: {@code FramePreparationBenchmark [items] [max threads] [chunk size]}; no OpenGL context is needed.
+ */
+public class FramePreparationBenchmark {
+
+	private static final int ITERATIONS = 50;
+
+	private static final Bounds BUILDING = new Bounds().set(-5f, 0f, -5f, 5f, 30f, 5f);
+
+	public static void main(String... args) {
+		final int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+		final int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		final int chunkSize = args.length > 2 ? Integer.parseInt(args[2]) : 1024;
+
+		final GameItem[] items = BenchmarkScene.randomItems(count, 0f);
+		final Matrix4f projectionMatrix = new Matrix4f().setPerspective((float) Math.toRadians(60.0f), 16f / 9f, 0.01f, 1000f);
+		final Matrix4f viewMatrix = new Matrix4f().rotationY(0.7f).translate(0f, -1.65f, 0f);
+
+		System.out.printf(Locale.ROOT, "%d items, %d visible, chunks of %d%n",
+				count, reference(items, projectionMatrix, viewMatrix).length, chunkSize);
+		System.out.println("threads   best ms  median ms  speedup");
+		double single = 0.0;
+		for (int threads = 1; threads <= maxThreads; threads = threads == maxThreads ? threads + 1 : Math.min(maxThreads, threads * 2)) {
+			final ForkJoinPool pool = new ForkJoinPool(threads);
+			final FramePreparation preparation = new FramePreparation(pool, chunkSize, gameItem -> BUILDING);
+			try {
+				preparation.prepare(items, count, projectionMatrix, viewMatrix);
+				if (!check(preparation, reference(items, projectionMatrix, viewMatrix))) {
+					System.err.println("Output on " + threads + " threads differs from the single threaded pass, not benchmarking.");
+					System.exit(1);
+				}
+				final long[] times = new long[ITERATIONS];
+				final Random random = new Random(threads);
+				for (int i = 0; i < ITERATIONS * 2; i++) {
+					move(items, random);
+					final long start = System.nanoTime();
+					preparation.prepare(items, count, projectionMatrix, viewMatrix);
+					if (i >= ITERATIONS) {
+						times[i - ITERATIONS] = System.nanoTime() - start;
+					}
+				}
+				Arrays.sort(times);
+				final double median = times[ITERATIONS / 2] / 1e6;
+				if (threads == 1) {
+					single = median;
+				}
+				System.out.printf(Locale.ROOT, "%7d %9.2f %10.2f %8.2f%n", threads, times[0] / 1e6, median, single / median);
+			} finally {
+				pool.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * Indices of the visible items, culled one by one on this thread.
+	 */
+	private static int[] reference(final GameItem[] items, final Matrix4f projectionMatrix, final Matrix4f viewMatrix) {
+		final FrustumCuller culler = new FrustumCuller();
+		final Bounds worldBounds = new Bounds();
+		culler.update(projectionMatrix, viewMatrix);
+		final int[] visible = new int[items.length];
+		int found = 0;
+		for (int i = 0; i < items.length; i++) {
+			if (culler.isVisible(BUILDING.transform(items[i].getModelMatrix(), worldBounds))) {
+				visible[found++] = i;
+			}
+		}
+		return Arrays.copyOf(visible, found);
+	}
+
+	private static boolean check(final FramePreparation preparation, final int[] expected) {
+		if (preparation.getVisibleCount() != expected.length) {
+			System.err.printf(Locale.ROOT, "%d visible, expected %d%n", preparation.getVisibleCount(), expected.length);
+			return false;
+		}
+		for (int i = 0; i < expected.length; i++) {
+			if (preparation.getVisibleItem(i) != expected[i]) {
+				System.err.printf(Locale.ROOT, "Visible item %d is %d, expected %d%n", i, preparation.getVisibleItem(i), expected[i]);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Turns a random tenth of the items a little, leaving their bounds and so the visible set nearly unchanged.
+	 */
+	private static void move(final GameItem[] items, final Random random) {
+		for (int i = 0; i < items.length / 10; i++) {
+			items[random.nextInt(items.length)].moveRotation(0f, 1f, 0f);
+		}
+	}
+
+	/**
+	 * Hidden constructor.
+	 */
+	private FramePreparationBenchmark() { }
+}
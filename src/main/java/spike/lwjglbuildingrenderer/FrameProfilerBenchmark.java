@@ -0,0 +1,149 @@
+package spike.lwjglbuildingrenderer;
+
+import com.xenosnowfox.engine.graphics.FrameProfiler;
+import com.xenosnowfox.engine.graphics.LatencyHistogram;
+import com.sun.management.ThreadMXBean;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Measures what {@link LatencyHistogram} and {@link FrameProfiler} cost per record and per frame, and checks them:
+ * percentiles of log-normally spread durations must be within 1/32 of the exact ones, recording and profiling frames
+ * must not allocate, threads recording at once must not lose counts, and an export must hold a row per histogram.
+ *
+ * <p>Usage: {@code FrameProfilerBenchmark [samples] [threads]}; times on the CPU only, so no OpenGL context is
+ * needed.
+ */
+public class FrameProfilerBenchmark {
+
+	private static final String[] PHASES = {"input", "update", "render", "postRender"};
+
+	/**
+	 * Allocation allowed in a measured loop beyond what measuring nothing allocates.
+	 */
+	private static final long ALLOCATION_SLACK = 256;
+
+	public static void main(String... args) throws Exception {
+		final int samples = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		final int threads = args.length > 1 ? Integer.parseInt(args[1]) : Math.max(2, Runtime.getRuntime().availableProcessors());
+
+		// a median of 2 ms with a long tail, as frame phases have
+		final Random random = new Random(1);
+		final long[] durations = new long[samples];
+		for (int i = 0; i < samples; i++) {
+			durations[i] = (long) (2e6 * Math.exp(random.nextGaussian() * 0.8));
+		}
+		final LatencyHistogram histogram = new LatencyHistogram();
+		for (long duration : durations) {
+			histogram.record(duration);
+		}
+		final long[] sorted = durations.clone();
+		Arrays.sort(sorted);
+		for (double fraction : new double[]{0.5, 0.95, 0.99, 1.0}) {
+			final long exact = sorted[(int) Math.ceil(fraction * samples) - 1];
+			final long reported = histogram.getPercentile(fraction);
+			if (reported < exact || reported > exact + exact / 32 + 1) {
+				System.err.printf(Locale.ROOT, "Percentile %.2f is %d ns, exactly %d ns%n", fraction, reported, exact);
+				System.exit(1);
+			}
+		}
+		if (histogram.getMax() != sorted[samples - 1]) {
+			System.err.println("Maximum is " + histogram.getMax() + " ns, exactly " + sorted[samples - 1] + " ns");
+			System.exit(1);
+		}
+		System.out.println("Percentiles of " + samples + " durations: " + histogram);
+
+		// reading the allocation counter allocates by itself
+		long baseline = allocatedBytes();
+		baseline = allocatedBytes() - baseline;
+
+		// warmed up above; now measured
+		histogram.reset();
+		long allocated = allocatedBytes();
+		long start = System.nanoTime();
+		for (long duration : durations) {
+			histogram.record(duration);
+		}
+		long nanos = System.nanoTime() - start;
+		allocated = allocatedBytes() - allocated - baseline;
+		System.out.printf(Locale.ROOT, "record: %.1f ns, %d bytes allocated%n", (double) nanos / samples, allocated);
+		if (allocated > ALLOCATION_SLACK) {
+			System.err.println("Recording allocated " + allocated + " bytes.");
+			System.exit(1);
+		}
+
+		final FrameProfiler profiler = new FrameProfiler(PHASES, false);
+		final int frames = samples / PHASES.length;
+		// the first pass warms up
+		for (int pass = 0; pass < 2; pass++) {
+			profiler.reset();
+			allocated = allocatedBytes();
+			start = System.nanoTime();
+			for (int frame = 0; frame < frames; frame++) {
+				profiler.beginFrame();
+				for (int phase = 0; phase < PHASES.length; phase++) {
+					profiler.begin(phase);
+					profiler.end(phase);
+				}
+			}
+			nanos = System.nanoTime() - start;
+			allocated = allocatedBytes() - allocated - baseline;
+		}
+		System.out.printf(Locale.ROOT, "profiled frame of %d phases: %.1f ns, %d bytes allocated%n", PHASES.length,
+				(double) nanos / frames, allocated);
+		if (allocated > ALLOCATION_SLACK || profiler.getFrames() != frames) {
+			System.err.println("Profiling allocated " + allocated + " bytes over " + profiler.getFrames() + " frames.");
+			System.exit(1);
+		}
+
+		final LatencyHistogram shared = new LatencyHistogram();
+		final Thread[] recorders = new Thread[threads];
+		for (int thread = 0; thread < threads; thread++) {
+			recorders[thread] = new Thread(() -> {
+				for (long duration : durations) {
+					shared.record(duration);
+				}
+			});
+		}
+		start = System.nanoTime();
+		for (Thread recorder : recorders) {
+			recorder.start();
+		}
+		for (Thread recorder : recorders) {
+			recorder.join();
+		}
+		nanos = System.nanoTime() - start;
+		if (shared.getCount() != (long) samples * threads || shared.getPercentile(1.0) != sorted[samples - 1]) {
+			System.err.println("Recording on " + threads + " threads lost counts: " + shared);
+			System.exit(1);
+		}
+		System.out.printf(Locale.ROOT, "record on %d threads at once: %.1f ns%n", threads,
+				(double) nanos / samples / threads);
+
+		final Path directory = Files.createTempDirectory("profile");
+		final Path csv = profiler.export(directory, "frame-profile");
+		final List<String> rows = Files.readAllLines(csv);
+		final String json = new String(Files.readAllBytes(directory.resolve("frame-profile.json")), StandardCharsets.UTF_8);
+		if (rows.size() != 2 + PHASES.length || !json.contains("\"name\": \"postRender\"")) {
+			System.err.println("Unexpected export:\n" + String.join("\n", rows) + "\n" + json);
+			System.exit(1);
+		}
+		System.out.println("Exported to " + csv + " and frame-profile.json");
+	}
+
+	private static long allocatedBytes() {
+		return ((ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Hidden constructor.
+	 */
+	private FrameProfilerBenchmark() { }
+}
@@ -0,0 +1,158 @@
+package spike.lwjglbuildingrenderer;
+
+import com.xenosnowfox.engine.graphics.LightClusters;
+import com.xenosnowfox.engine.graphics.PointLight;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures {@link LightClusters} with growing numbers of point lights scattered through a building, seen from random
+ * places inside it. For each light count the tool reports the time to assign the lights per frame, and how many
+ * lights a fragment loops over compared to the lights that actually reach it.
+ *
+ * <p>Every tenth frame, points are sampled throughout the frustum up to the farthest lit depth; each light that reaches a point must be listed in
+ * the point's cluster, and the clusters must list the same lights when assigned on a single thread.
+ *
+ * <p>Usage: {@code LightClusterBenchmark [threads] [frames] [light counts...]}; no OpenGL context is needed.
+ */
+public class LightClusterBenchmark {
+
+	private static final float BUILDING_SIZE = 100f;
+
+	private static final float BUILDING_HEIGHT = 12f;
+
+	private static final int TILES_X = 16;
+
+	private static final int TILES_Y = 9;
+
+	private static final int SLICES = 24;
+
+	private static final int MAX_LIGHTS_PER_CLUSTER = 256;
+
+	private static final int POINTS_PER_CHECK = 2000;
+
+	private static final float NEAR_SLICE = 0.5f;
+
+	private static final float FAR_SLICE = 60f;
+
+	public static void main(String... args) {
+		final int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		final int frames = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+		final int[] lightCounts = {100, 1000, 4000};
+		final int[] counts = args.length > 2 ? new int[args.length - 2] : lightCounts;
+		for (int i = 2; i < args.length; i++) {
+			counts[i - 2] = Integer.parseInt(args[i]);
+		}
+
+		final ForkJoinPool pool = new ForkJoinPool(threads);
+		final ForkJoinPool single = new ForkJoinPool(1);
+		final Matrix4f projectionMatrix = new Matrix4f().setPerspective((float) Math.toRadians(60.0f), 16f / 9f, 0.01f, 1000f);
+		System.out.printf(Locale.ROOT, "%dx%dx%d clusters on %d threads, %d frames per light count%n",
+				TILES_X, TILES_Y, SLICES, threads, frames);
+		System.out.println("  lights  assign ms/frame  assignments  lights/fragment  reaching/fragment");
+		try {
+			for (int lightCount : counts) {
+				if (!run(lightCount, frames, projectionMatrix, pool, single)) {
+					System.exit(1);
+				}
+			}
+		} finally {
+			pool.shutdown();
+			single.shutdown();
+		}
+	}
+
+	private static boolean run(final int lightCount, final int frames, final Matrix4f projectionMatrix,
+			final ForkJoinPool pool, final ForkJoinPool single) {
+		final Random random = new Random(lightCount);
+		final PointLight[] lights = new PointLight[lightCount];
+		for (int i = 0; i < lightCount; i++) {
+			lights[i] = new PointLight(new Vector3f(1f, 0.9f, 0.8f),
+					new Vector3f(random.nextFloat() * BUILDING_SIZE, random.nextFloat() * BUILDING_HEIGHT, random.nextFloat() * BUILDING_SIZE),
+					0.5f + random.nextFloat(), new PointLight.Attenuation(1f, 0f, 16f));
+		}
+		final LightClusters clusters = new LightClusters(pool, TILES_X, TILES_Y, SLICES, NEAR_SLICE, FAR_SLICE, lightCount, MAX_LIGHTS_PER_CLUSTER);
+		final LightClusters reference = new LightClusters(single, TILES_X, TILES_Y, SLICES, NEAR_SLICE, FAR_SLICE, lightCount, MAX_LIGHTS_PER_CLUSTER);
+		final Matrix4f viewMatrix = new Matrix4f();
+		final boolean[] listed = new boolean[lightCount];
+		final Vector3f lightPosition = new Vector3f();
+
+		long nanos = 0;
+		long assignments = 0;
+		long checkedPoints = 0;
+		long listedLights = 0;
+		long reachingLights = 0;
+		for (int frame = 0; frame < frames * 2; frame++) {
+			viewMatrix.rotationX((float) Math.toRadians(random.nextFloat() * 60f - 30f))
+					.rotateY(random.nextFloat() * (float) Math.PI * 2f)
+					.translate(-random.nextFloat() * BUILDING_SIZE, -1.65f - random.nextInt(4) * 3f, -random.nextFloat() * BUILDING_SIZE);
+			final long start = System.nanoTime();
+			clusters.update(projectionMatrix, viewMatrix, lights, lightCount);
+			// the first half warms up, the second is measured
+			if (frame >= frames) {
+				nanos += System.nanoTime() - start;
+				assignments += clusters.getAssignmentCount();
+			}
+			if (frame % 10 != 0) {
+				continue;
+			}
+
+			reference.update(projectionMatrix, viewMatrix, lights, lightCount);
+			for (int cluster = 0; cluster < clusters.getClusterCount(); cluster++) {
+				if (clusters.getClusterLightCount(cluster) != reference.getClusterLightCount(cluster)) {
+					System.err.printf(Locale.ROOT, "Cluster %d lists %d lights on %d threads but %d on one%n", cluster,
+							clusters.getClusterLightCount(cluster), clusters.getParallelism(), reference.getClusterLightCount(cluster));
+					return false;
+				}
+				for (int i = 0; i < clusters.getClusterLightCount(cluster); i++) {
+					if (clusters.getClusterLight(cluster, i) != reference.getClusterLight(cluster, i)) {
+						System.err.printf(Locale.ROOT, "Cluster %d lists other lights on %d threads than on one%n",
+								cluster, clusters.getParallelism());
+						return false;
+					}
+				}
+			}
+
+			for (int point = 0; point < POINTS_PER_CHECK; point++) {
+				final float ndcX = random.nextFloat() * 2f - 1f;
+				final float ndcY = random.nextFloat() * 2f - 1f;
+				final float depth = 0.01f + random.nextFloat() * FAR_SLICE;
+				final float x = (ndcX + projectionMatrix.m20()) * depth / projectionMatrix.m00();
+				final float y = (ndcY + projectionMatrix.m21()) * depth / projectionMatrix.m11();
+				final int cluster = clusters.clusterOf(ndcX, ndcY, depth);
+				for (int i = 0; i < clusters.getClusterLightCount(cluster); i++) {
+					listed[clusters.getClusterLight(cluster, i)] = true;
+				}
+				for (int light = 0; light < lightCount; light++) {
+					viewMatrix.transformPosition(lights[light].getPosition(), lightPosition);
+					final float range = lights[light].getRange(LightClusters.CUTOFF);
+					if (lightPosition.distanceSquared(x, y, -depth) <= range * range) {
+						reachingLights++;
+						if (!listed[light]) {
+							System.err.printf(Locale.ROOT, "Light %d reaches a point of cluster %d but is not listed in it%n",
+									light, cluster);
+							return false;
+						}
+					}
+				}
+				for (int i = 0; i < clusters.getClusterLightCount(cluster); i++) {
+					listed[clusters.getClusterLight(cluster, i)] = false;
+				}
+				listedLights += clusters.getClusterLightCount(cluster);
+				checkedPoints++;
+			}
+		}
+		System.out.printf(Locale.ROOT, "%8d %16.3f %12.0f %16.1f %18.2f%n", lightCount, nanos / 1e6 / frames,
+				(double) assignments / frames, (double) listedLights / checkedPoints, (double) reachingLights / checkedPoints);
+		return true;
+	}
+
+	/**
+	 * Hidden constructor.
+	 */
+	private LightClusterBenchmark() { }
+}
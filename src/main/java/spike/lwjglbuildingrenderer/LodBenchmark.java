@@ -0,0 +1,321 @@
+package spike.lwjglbuildingrenderer;
+
+import com.xenosnowfox.engine.graphics.LodSelector;
+import com.xenosnowfox.engine.graphics.MeshData;
+import com.xenosnowfox.engine.graphics.MeshSimplifier;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates levels of detail for two synthetic meshes and reports what they save on a walk through a district.
+ *
+ * <p>The meshes are a textured sphere, whose texture wraps around so the vertices along one meridian exist twice,
+ * and a finely tessellated tower with an open bottom, one normal per side and bays pressed into its sides. Every
+ * level is checked: no triangle may reach across the sphere's seam, the tower must keep its corners, its outline and
+ * its flat sides, and errors must not shrink as levels get coarser.
+ *
+ * <p>The walk then places towers along a street and moves the camera down it, stepping back and forth, and counts the
+ * triangles submitted per frame with and without levels of detail, and how often items switch level with and
+ * without hysteresis.
+ *
+ * <p>Usage: {@code LodBenchmark [levels] [ratio] [pixel error]}; no OpenGL context is needed.
+ */
+public class LodBenchmark {
+
+	private static final float MAX_RELATIVE_ERROR = 0.02f;
+
+	private static final float FOV = (float) Math.toRadians(60.0f);
+
+	private static final int VIEWPORT_HEIGHT = 720;
+
+	private static final float VIEW_DISTANCE = 1000f;
+
+	private static final int FRAMES = 600;
+
+	private static final float EPSILON = 1e-4f;
+
+	private static final int BAYS = 8;
+
+	private static final float BAY_DEPTH = 0.3f;
+
+	public static void main(String... args) {
+		final int maxLevels = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+		final float ratio = args.length > 1 ? Float.parseFloat(args[1]) : 0.5f;
+		final float pixelError = args.length > 2 ? Float.parseFloat(args[2]) : 1.0f;
+
+		final List<MeshSimplifier.Level> sphere = generate("sphere", uvSphere(128, 64), maxLevels, ratio);
+		final List<MeshSimplifier.Level> tower = generate("tower", tower(10f, 30f, 64), maxLevels, ratio);
+		if (!checkSeam(sphere) || !checkTower(tower, 10f, 30f)) {
+			System.err.println("Self check failed, not simulating.");
+			System.exit(1);
+		}
+
+		final float[] errors = new float[tower.size()];
+		final int[] triangles = new int[tower.size()];
+		for (int i = 0; i < errors.length; i++) {
+			errors[i] = tower.get(i).getError();
+			triangles[i] = tower.get(i).getMeshData().getIndexCount() / 3;
+		}
+		System.out.printf(Locale.ROOT, "walk of %d frames, %.1f pixel error   triangles/frame   switches%n",
+				FRAMES, pixelError);
+		walk("full detail", errors, triangles, false, pixelError, 0f);
+		walk("levels, no hysteresis", errors, triangles, true, pixelError, 0f);
+		walk("levels, 25% hysteresis", errors, triangles, true, pixelError, 0.25f);
+	}
+
+	private static List<MeshSimplifier.Level> generate(final String name, final MeshData meshData, final int maxLevels,
+			final float ratio) {
+		final long start = System.nanoTime();
+		final List<MeshSimplifier.Level> levels = MeshSimplifier.generateLods(meshData, maxLevels, ratio, MAX_RELATIVE_ERROR);
+		final long time = System.nanoTime() - start;
+		System.out.printf(Locale.ROOT, "%s: %d levels in %.1f ms%n", name, levels.size(), time / 1e6);
+		for (int i = 0; i < levels.size(); i++) {
+			final MeshData level = levels.get(i).getMeshData();
+			System.out.printf(Locale.ROOT, "  level %d %8d triangles %8d vertices  error %.5f%n",
+					i, level.getIndexCount() / 3, level.getVertexCount(), levels.get(i).getError());
+		}
+		return levels;
+	}
+
+	/**
+	 * Walks down a street lined with towers on both sides, counting triangles and level switches per frame.
+	 */
+	private static void walk(final String name, final float[] errors, final int[] triangles, final boolean enabled,
+			final float pixelError, final float hysteresis) {
+		final Random random = new Random(42);
+		final int count = 400;
+		final float[] x = new float[count];
+		final float[] z = new float[count];
+		final float[] scale = new float[count];
+		final int[] levels = new int[count];
+		for (int i = 0; i < count; i++) {
+			x[i] = (i % 2 == 0 ? -1f : 1f) * (20f + random.nextFloat() * 40f);
+			z[i] = -(i / 2) * 15f;
+			scale[i] = 0.5f + random.nextFloat();
+		}
+		final float pixelsPerUnit = VIEWPORT_HEIGHT / (2f * (float) Math.tan(FOV / 2f));
+		// the tower's bounding sphere, before scaling
+		final float radius = (float) Math.sqrt(5f * 5f * 2f + 15f * 15f);
+
+		long submitted = 0;
+		long switches = 0;
+		for (int frame = 0; frame < FRAMES; frame++) {
+			// forward, stepping back and forth by a few units as a player looking around would
+			final float cameraZ = -frame * 1.5f + (float) Math.sin(frame * 0.9f) * 4f;
+			for (int i = 0; i < count; i++) {
+				final float dx = x[i];
+				final float dy = 15f * scale[i] - 1.65f;
+				final float dz = z[i] - cameraZ;
+				final float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz) - radius * scale[i];
+				if (distance > VIEW_DISTANCE || dz > 0f) {
+					continue;
+				}
+				int level = 0;
+				if (enabled && distance > 0f) {
+					level = LodSelector.selectLevel(errors, levels[i], scale[i] * pixelsPerUnit / distance,
+							pixelError, hysteresis);
+				}
+				if (level != levels[i]) {
+					switches++;
+					levels[i] = level;
+				}
+				submitted += triangles[level];
+			}
+		}
+		System.out.printf(Locale.ROOT, "%-36s %17d %10d%n", name, submitted / FRAMES, switches);
+	}
+
+	/**
+	 * Whether any triangle spans more than half the texture horizontally, as one joining both sides of the seam
+	 * would.
+	 */
+	private static boolean checkSeam(final List<MeshSimplifier.Level> levels) {
+		for (int level = 1; level < levels.size(); level++) {
+			final MeshData meshData = levels.get(level).getMeshData();
+			final int[] indices = meshData.getIndices();
+			final float[] textCoords = meshData.getTextCoords();
+			for (int i = 0; i < indices.length; i += 3) {
+				float min = Float.MAX_VALUE;
+				float max = -Float.MAX_VALUE;
+				for (int corner = 0; corner < 3; corner++) {
+					final float u = textCoords[indices[i + corner] * 2];
+					min = Math.min(min, u);
+					max = Math.max(max, u);
+				}
+				if (max - min > 0.5f) {
+					System.err.printf(Locale.ROOT, "Sphere level %d: triangle %d crosses the seam%n", level, i / 3);
+					return false;
+				}
+			}
+		}
+		return checkErrors("Sphere", levels);
+	}
+
+	/**
+	 * Whether every level of the tower keeps its bounds and corners, and has no triangle across two sides.
+	 */
+	private static boolean checkTower(final List<MeshSimplifier.Level> levels, final float width, final float height) {
+		final float half = width / 2f;
+		for (int level = 1; level < levels.size(); level++) {
+			final MeshData meshData = levels.get(level).getMeshData();
+			final float[] positions = meshData.getPositions();
+			final float[] normals = meshData.getNormals();
+			final int[] indices = meshData.getIndices();
+			for (int i = 0; i < indices.length; i += 3) {
+				for (int corner = 1; corner < 3; corner++) {
+					for (int axis = 0; axis < 3; axis++) {
+						if (Math.abs(normals[indices[i] * 3 + axis] - normals[indices[i + corner] * 3 + axis]) > EPSILON) {
+							System.err.printf(Locale.ROOT, "Tower level %d: triangle %d bends over an edge%n", level, i / 3);
+							return false;
+						}
+					}
+				}
+			}
+			for (int corner = 0; corner < 8; corner++) {
+				final float cornerX = (corner & 1) == 0 ? -half : half;
+				final float cornerY = (corner & 2) == 0 ? 0f : height;
+				final float cornerZ = (corner & 4) == 0 ? -half : half;
+				boolean found = false;
+				for (int vertex = 0; vertex < positions.length && !found; vertex += 3) {
+					found = Math.abs(positions[vertex] - cornerX) < EPSILON
+							&& Math.abs(positions[vertex + 1] - cornerY) < EPSILON
+							&& Math.abs(positions[vertex + 2] - cornerZ) < EPSILON;
+				}
+				if (!found) {
+					System.err.printf(Locale.ROOT, "Tower level %d: lost the corner at %.1f %.1f %.1f%n",
+							level, cornerX, cornerY, cornerZ);
+					return false;
+				}
+			}
+			// the open bottom must stay on the ground and keep its outline
+			for (int vertex = 0; vertex < positions.length; vertex += 3) {
+				if (positions[vertex + 1] < -EPSILON || Math.abs(positions[vertex]) > half + EPSILON
+						|| Math.abs(positions[vertex + 2]) > half + EPSILON) {
+					System.err.printf(Locale.ROOT, "Tower level %d: vertex %d left the bounds%n", level, vertex / 3);
+					return false;
+				}
+			}
+		}
+		return checkErrors("Tower", levels);
+	}
+
+	private static boolean checkErrors(final String name, final List<MeshSimplifier.Level> levels) {
+		for (int level = 1; level < levels.size(); level++) {
+			if (levels.get(level).getError() < levels.get(level - 1).getError()
+					|| levels.get(level).getMeshData().getIndexCount() >= levels.get(level - 1).getMeshData().getIndexCount()) {
+				System.err.printf(Locale.ROOT, "%s level %d is not coarser than the level before%n", name, level);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * A unit sphere textured by longitude and latitude; the first and last meridian share positions but not
+	 * texture coordinates.
+	 */
+	static MeshData uvSphere(final int segments, final int rings) {
+		final int vertexCount = (segments + 1) * (rings + 1);
+		final float[] positions = new float[vertexCount * 3];
+		final float[] textCoords = new float[vertexCount * 2];
+		final float[] normals = new float[vertexCount * 3];
+		for (int ring = 0; ring <= rings; ring++) {
+			final double latitude = Math.PI * ring / rings;
+			for (int segment = 0; segment <= segments; segment++) {
+				// the seam is built from the same angle, so both sides of it are bit for bit equal
+				final double longitude = 2.0 * Math.PI * (segment % segments) / segments;
+				final int vertex = ring * (segments + 1) + segment;
+				positions[vertex * 3] = (float) (Math.sin(latitude) * Math.cos(longitude));
+				positions[vertex * 3 + 1] = (float) Math.cos(latitude);
+				positions[vertex * 3 + 2] = (float) (Math.sin(latitude) * Math.sin(longitude));
+				if (ring == 0 || ring == rings) {
+					positions[vertex * 3] = 0f;
+					positions[vertex * 3 + 2] = 0f;
+				}
+				System.arraycopy(positions, vertex * 3, normals, vertex * 3, 3);
+				textCoords[vertex * 2] = (float) segment / segments;
+				textCoords[vertex * 2 + 1] = (float) ring / rings;
+			}
+		}
+		final int[] indices = new int[segments * (rings - 1) * 6];
+		int index = 0;
+		for (int ring = 0; ring < rings; ring++) {
+			for (int segment = 0; segment < segments; segment++) {
+				final int a = ring * (segments + 1) + segment;
+				final int b = a + segments + 1;
+				if (ring != 0) {
+					indices[index++] = a;
+					indices[index++] = a + 1;
+					indices[index++] = b;
+				}
+				if (ring != rings - 1) {
+					indices[index++] = a + 1;
+					indices[index++] = b + 1;
+					indices[index++] = b;
+				}
+			}
+		}
+		return new MeshData(positions, textCoords, normals, indices);
+	}
+
+	/**
+	 * A box standing on the ground, open at the bottom, each of its five sides a grid of {@code cells} by
+	 * {@code cells} quads with its own flat normal and shallow bays pressed into it.
+	 */
+	static MeshData tower(final float width, final float height, final int cells) {
+		final int sideVertices = (cells + 1) * (cells + 1);
+		final float[] positions = new float[sideVertices * 5 * 3];
+		final float[] textCoords = new float[sideVertices * 5 * 2];
+		final float[] normals = new float[sideVertices * 5 * 3];
+		final int[] indices = new int[cells * cells * 6 * 5];
+		final float half = width / 2f;
+		// origin, u direction and v direction of each side, and its normal
+		final float[][] sides = {
+				{-half, 0f, half, width, 0f, 0f, 0f, height, 0f, 0f, 0f, 1f},
+				{half, 0f, half, 0f, 0f, -width, 0f, height, 0f, 1f, 0f, 0f},
+				{half, 0f, -half, -width, 0f, 0f, 0f, height, 0f, 0f, 0f, -1f},
+				{-half, 0f, -half, 0f, 0f, width, 0f, height, 0f, -1f, 0f, 0f},
+				{-half, height, half, width, 0f, 0f, 0f, 0f, -width, 0f, 1f, 0f},
+		};
+		int index = 0;
+		for (int side = 0; side < sides.length; side++) {
+			final float[] s = sides[side];
+			for (int v = 0; v <= cells; v++) {
+				for (int u = 0; u <= cells; u++) {
+					final int vertex = side * sideVertices + v * (cells + 1) + u;
+					final float fu = (float) u / cells;
+					final float fv = (float) v / cells;
+					// window bays, recessed into the side and flush with it along its edges
+					final float bay = (float) (Math.sin(Math.PI * BAYS * fu) * Math.sin(Math.PI * BAYS * fv));
+					final float depth = BAY_DEPTH * bay * bay;
+					for (int axis = 0; axis < 3; axis++) {
+						positions[vertex * 3 + axis] = s[axis] + s[3 + axis] * fu + s[6 + axis] * fv - s[9 + axis] * depth;
+						normals[vertex * 3 + axis] = s[9 + axis];
+					}
+					textCoords[vertex * 2] = fu;
+					textCoords[vertex * 2 + 1] = fv;
+				}
+			}
+			for (int v = 0; v < cells; v++) {
+				for (int u = 0; u < cells; u++) {
+					final int a = side * sideVertices + v * (cells + 1) + u;
+					final int b = a + cells + 1;
+					indices[index++] = a;
+					indices[index++] = a + 1;
+					indices[index++] = b + 1;
+					indices[index++] = a;
+					indices[index++] = b + 1;
+					indices[index++] = b;
+				}
+			}
+		}
+		return new MeshData(positions, textCoords, normals, indices);
+	}
+
+	/**
+	 * Hidden constructor.
+	 */
+	private LodBenchmark() { }
+}
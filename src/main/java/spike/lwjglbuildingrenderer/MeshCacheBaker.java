@@ -0,0 +1,75 @@
+package spike.lwjglbuildingrenderer;
+
+import com.xenosnowfox.engine.graphics.MeshCache;
+import com.xenosnowfox.engine.graphics.MeshData;
+import com.xenosnowfox.engine.graphics.MeshOptimizer;
+import com.xenosnowfox.engine.graphics.OBJLoader;
+import com.xenosnowfox.engine.graphics.VertexWelder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Pre-bakes the binary mesh caches of every OBJ file below the models directory, so the first start of the
+ * renderer does not have to parse and optimize them.
+ *
+ * <p>Usage: {@code MeshCacheBaker [directory] [--force]}; the directory defaults to {@code models.directory} from
+ * {@code spike.properties}. Existing caches are kept when their source is unchanged (size and content hash).
+ */
+public class MeshCacheBaker {
+
+	public static void main(String... args) throws Exception {
+		boolean force = false;
+		String directory = null;
+		for (String arg : args) {
+			if ("--force".equals(arg)) {
+				force = true;
+			} else {
+				directory = arg;
+			}
+		}
+		if (directory == null) {
+			directory = Utils.loadProperties("spike.properties").getProperty("models.directory");
+		}
+
+		final List<Path> sources;
+		try (Stream<Path> files = Files.walk(Paths.get(directory))) {
+			sources = files.filter(path -> path.toString().toLowerCase(Locale.ROOT).endsWith(".obj"))
+					.sorted()
+					.collect(Collectors.toList());
+		}
+		System.out.println("Baking " + sources.size() + " model(s) in " + directory);
+
+		int baked = 0;
+		for (Path source : sources) {
+			final String fileName = source.toString();
+			if (!force && MeshCache.open(fileName, true) != null) {
+				System.out.println("  up to date: " + fileName);
+				continue;
+			}
+
+			final long start = System.nanoTime();
+			final VertexWelder.Stats stats = new VertexWelder.Stats();
+			final MeshOptimizer.Stats optimizerStats = new MeshOptimizer.Stats();
+			final MeshData meshData = MeshOptimizer.optimize(
+					OBJLoader.loadMeshDataFile(fileName, OBJLoader.Mode.PARALLEL, stats),
+					MeshOptimizer.DEFAULT_OVERDRAW_THRESHOLD, optimizerStats);
+			MeshCache.write(fileName, meshData);
+			baked++;
+			System.out.printf(Locale.ROOT, "  baked: %s in %.1f ms (%d KB)%n    %s%n    %s%n",
+					fileName, (System.nanoTime() - start) / 1e6,
+					Files.size(MeshCache.cachePathFor(fileName)) / 1024, stats, optimizerStats);
+		}
+		System.out.println("Baked " + baked + " cache(s).");
+	}
+
+	/**
+	 * Hidden constructor.
+	 */
+	private MeshCacheBaker() { }
+}
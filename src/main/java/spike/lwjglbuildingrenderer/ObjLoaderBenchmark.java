@@ -0,0 +1,164 @@
+package spike.lwjglbuildingrenderer;
+
+import com.xenosnowfox.engine.graphics.MeshData;
+import com.xenosnowfox.engine.graphics.OBJLoader;
+import com.xenosnowfox.engine.graphics.ObjData;
+import com.xenosnowfox.engine.graphics.ObjParser;
+import com.xenosnowfox.engine.graphics.ParallelObjParser;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares the OBJ loading modes on a synthetic, multi-million face file, and reports how the parallel parser
+ * scales from one to all available cores.
+ *
+ * <p>Usage: {@code ObjLoaderBenchmark [faces] [iterations] [maxThreads]}; no OpenGL context is needed.
+ */
+public class ObjLoaderBenchmark {
+
+	public static void main(String... args) throws Exception {
+		final int faces = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+		final int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+		final int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+		final File file = generate(faces);
+		final double megabytes = file.length() / (1024.0 * 1024.0);
+		System.out.printf(Locale.ROOT, "Synthetic OBJ: %s (%.1f MB)%n", file, megabytes);
+
+		MeshData reference = null;
+		for (OBJLoader.Mode mode : OBJLoader.Mode.values()) {
+			long best = Long.MAX_VALUE;
+			MeshData meshData = null;
+			for (int i = 0; i < iterations; i++) {
+				System.gc();
+				final long start = System.nanoTime();
+				meshData = OBJLoader.loadMeshDataFile(file.getPath(), mode);
+				best = Math.min(best, System.nanoTime() - start);
+			}
+			// the legacy loader keys vertices on positions only, so only the welding modes can be compared
+			if (reference == null && mode != OBJLoader.Mode.LEGACY) {
+				reference = meshData;
+			}
+			final double seconds = best / 1e9;
+			System.out.printf(Locale.ROOT, "%-10s %8.1f ms %8.1f MB/s %12.0f faces/s %10d vertices  identical=%s%n",
+					mode, best / 1e6, megabytes / seconds, meshData.getIndexCount() / 3 / seconds,
+					meshData.getVertexCount(), reference == null ? "-" : meshData.contentEquals(reference));
+		}
+
+		System.out.println("Parallel scaling:");
+		final ObjData sequential = ObjParser.parseFile(file.getPath());
+		for (int threads = 1; threads <= maxThreads; threads++) {
+			final ForkJoinPool pool = new ForkJoinPool(threads);
+			try {
+				long best = Long.MAX_VALUE;
+				ObjData objData = null;
+				for (int i = 0; i < iterations; i++) {
+					System.gc();
+					final long start = System.nanoTime();
+					objData = ParallelObjParser.parseFile(file.getPath(), pool);
+					best = Math.min(best, System.nanoTime() - start);
+				}
+				final double seconds = best / 1e9;
+				System.out.printf(Locale.ROOT, "%3d threads %8.1f ms %8.1f MB/s %12.0f faces/s  identical=%b%n",
+						threads, best / 1e6, megabytes / seconds, objData.getFaceCount() / seconds,
+						objData.contentEquals(sequential));
+			} finally {
+				pool.shutdown();
+			}
+		}
+
+		// relative indices reach back into the previous chunk at every chunk boundary
+		final File relativeFile = generateRelative(faces);
+		final ForkJoinPool pool = new ForkJoinPool(Math.max(2, maxThreads));
+		try {
+			final ObjData expected = ObjParser.parseFile(relativeFile.getPath());
+			final ObjData actual = ParallelObjParser.parseFile(relativeFile.getPath(), pool);
+			if (!actual.contentEquals(expected)) {
+				System.err.println("Parallel parse of relative indices differs: " + relativeFile);
+				System.exit(1);
+			}
+			System.out.printf(Locale.ROOT, "Relative indices: %d faces identical=true%n", actual.getFaceCount());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Writes (or reuses) a grid shaped OBJ file with the requested number of triangles.
+	 */
+	static File generate(final int faces) throws IOException {
+		final int quadsPerSide = Math.max(1, (int) Math.sqrt(faces / 2.0));
+		final int verticesPerSide = quadsPerSide + 1;
+		final File file = new File(System.getProperty("java.io.tmpdir"), "spike-synthetic-" + quadsPerSide + ".obj");
+		if (file.exists()) {
+			return file;
+		}
+
+		final Random random = new Random(quadsPerSide);
+		try (BufferedWriter writer = Files.newBufferedWriter(file.toPath())) {
+			writer.write("# synthetic grid, " + (2L * quadsPerSide * quadsPerSide) + " faces\n");
+			for (int z = 0; z < verticesPerSide; z++) {
+				for (int x = 0; x < verticesPerSide; x++) {
+					writer.write(String.format(Locale.ROOT, "v %.6f %.6f %.6f%n",
+							x * 0.25f, random.nextFloat() * 2f, z * -0.25f));
+				}
+			}
+			for (int z = 0; z < verticesPerSide; z++) {
+				for (int x = 0; x < verticesPerSide; x++) {
+					writer.write(String.format(Locale.ROOT, "vt %.6f %.6f%n",
+							x / (float) quadsPerSide, z / (float) quadsPerSide));
+				}
+			}
+			writer.write("vn 0.0000 1.0000 0.0000\n");
+			for (int z = 0; z < quadsPerSide; z++) {
+				for (int x = 0; x < quadsPerSide; x++) {
+					final int a = z * verticesPerSide + x + 1;
+					final int b = a + 1;
+					final int c = a + verticesPerSide;
+					final int d = c + 1;
+					writer.write("f " + a + "/" + a + "/1 " + c + "/" + c + "/1 " + d + "/" + d + "/1\n");
+					writer.write("f " + a + "/" + a + "/1 " + d + "/" + d + "/1 " + b + "/" + b + "/1\n");
+				}
+			}
+		}
+		return file;
+	}
+
+	/**
+	 * Writes (or reuses) a triangle strip OBJ file whose faces only use relative indices, {@code f -1 -2 -3} style:
+	 * every new vertex and texture coordinate closes a triangle with the two before it, all sharing one normal.
+	 */
+	static File generateRelative(final int faces) throws IOException {
+		final File file = new File(System.getProperty("java.io.tmpdir"), "spike-synthetic-relative-" + faces + ".obj");
+		if (file.exists()) {
+			return file;
+		}
+
+		final Random random = new Random(faces);
+		try (BufferedWriter writer = Files.newBufferedWriter(file.toPath())) {
+			writer.write("# synthetic strip, " + faces + " faces, relative indices\n");
+			writer.write("vn 0.0000 1.0000 0.0000\n");
+			for (int vertex = 0; vertex < faces + 2; vertex++) {
+				writer.write(String.format(Locale.ROOT, "v %.6f %.6f %.6f%nvt %.6f %.6f%n",
+						(vertex >> 1) * 0.25f, random.nextFloat() * 2f, (vertex & 1) * -0.25f,
+						(vertex >> 1) / (float) faces, (float) (vertex & 1)));
+				if (vertex >= 2) {
+					// keep the strip's winding
+					writer.write((vertex & 1) == 0 ? "f -1/-1/-1 -2/-2/-1 -3/-3/-1\n" : "f -2/-2/-1 -1/-1/-1 -3/-3/-1\n");
+				}
+			}
+		}
+		return file;
+	}
+
+	/**
+	 * Hidden constructor.
+	 */
+	private ObjLoaderBenchmark() { }
+}
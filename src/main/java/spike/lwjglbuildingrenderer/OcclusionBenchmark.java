@@ -0,0 +1,255 @@
+package spike.lwjglbuildingrenderer;
+
+import com.xenosnowfox.engine.graphics.Bounds;
+import com.xenosnowfox.engine.graphics.FrustumCuller;
+import com.xenosnowfox.engine.graphics.OcclusionCuller;
+import com.xenosnowfox.engine.graphics.Occluder;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures {@link OcclusionCuller} inside a synthetic building: a floor of rooms separated by walls with one door
+ * each, furnished with boxes, seen by a camera turning on the spot in one of the rooms. Every item inside the frustum
+ * is tested against the walls; the tool reports how many are occluded and what rasterizing and testing cost.
+ *
+ * <p>Each item the culler hides is checked by casting rays from the camera to points spread over its box: a point
+ * inside the frustum that no wall blocks means the item was culled while visible. The buffer only resolves gaps of a
+ * texel or more, so a point counts as seen when rays one texel beside it on screen pass as well.
+ *
+ * <p>Usage: {@code OcclusionBenchmark [rooms per side] [threads] [buffer width] [buffer height]}; no OpenGL context
+ * is needed.
+ */
+public class OcclusionBenchmark {
+
+	private static final float ROOM_SIZE = 10f;
+
+	private static final float WALL_HEIGHT = 3f;
+
+	private static final float DOOR_WIDTH = 1.2f;
+
+	private static final float DOOR_HEIGHT = 2.2f;
+
+	private static final int ITEMS_PER_ROOM = 20;
+
+	private static final int FRAMES = 360;
+
+	/**
+	 * Points sampled per box face and axis for the check, corners included.
+	 */
+	private static final int SAMPLES = 4;
+
+	public static void main(String... args) {
+		final int rooms = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		final int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		final int width = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+		final int height = args.length > 3 ? Integer.parseInt(args[3]) : 128;
+
+		// walls as x or z = constant rectangles: axis, constant, from, to along the other axis, from, to in y
+		final float[][] walls = walls(rooms);
+		final Occluder occluder = occluder(walls);
+		final Bounds[] items = furnish(rooms);
+		System.out.printf(Locale.ROOT, "%d rooms, %d walls (%d triangles), %d items, %dx%d buffer on %d threads%n",
+				rooms * rooms, walls.length, occluder.getTriangleCount(), items.length, width, height, threads);
+
+		final ForkJoinPool pool = new ForkJoinPool(threads);
+		final OcclusionCuller occlusionCuller = new OcclusionCuller(pool, width, height);
+		occlusionCuller.addOccluder(occluder);
+		final FrustumCuller frustumCuller = new FrustumCuller();
+		final FrustumIntersection frustum = new FrustumIntersection();
+		final Matrix4f projectionMatrix = new Matrix4f().setPerspective((float) Math.toRadians(60.0f), 16f / 9f, 0.05f, 200f);
+		final Matrix4f viewMatrix = new Matrix4f();
+		final Matrix4f viewProjectionMatrix = new Matrix4f();
+		final boolean[] hidden = new boolean[items.length];
+		final float[] camera = {(rooms / 2 + 0.3f) * ROOM_SIZE, 1.65f, (rooms / 2 + 0.6f) * ROOM_SIZE};
+
+		long inFrustum = 0;
+		long occluded = 0;
+		long testNanos = 0;
+		int violations = 0;
+		try {
+			for (int frame = 0; frame < FRAMES * 2; frame++) {
+				viewMatrix.rotationY((float) Math.toRadians(frame)).translate(-camera[0], -camera[1], -camera[2]);
+				frustumCuller.update(projectionMatrix, viewMatrix);
+				occlusionCuller.render(projectionMatrix, viewMatrix);
+				final long start = System.nanoTime();
+				for (int i = 0; i < items.length; i++) {
+					hidden[i] = frustumCuller.isVisible(items[i]) && !occlusionCuller.isVisible(items[i]);
+				}
+				// the first turn warms up, the second is measured
+				if (frame >= FRAMES) {
+					testNanos += System.nanoTime() - start;
+					inFrustum += frustumCuller.getVisibleCount();
+					occluded += occlusionCuller.getOccludedCount();
+				}
+
+				frustum.set(projectionMatrix.mul(viewMatrix, viewProjectionMatrix));
+				for (int i = 0; i < items.length; i++) {
+					if (hidden[i] && seen(items[i], camera, walls, frustum, viewProjectionMatrix, width, height)) {
+						violations++;
+					}
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+		if (violations > 0) {
+			System.err.printf(Locale.ROOT, "%d items were culled while a point of them could be seen%n", violations);
+			System.exit(1);
+		}
+		System.out.printf(Locale.ROOT, "per frame: %.1f items in the frustum, %.1f occluded (%.1f%%)%n",
+				(double) inFrustum / FRAMES, (double) occluded / FRAMES, 100.0 * occluded / Math.max(1, inFrustum));
+		System.out.printf(Locale.ROOT, "rasterize %.3f ms, test %.3f ms per frame (%.0f ns per item)%n",
+				occlusionCuller.getAverageRenderNanos() / 1e6, testNanos / 1e6 / FRAMES,
+				(double) testNanos / Math.max(1, inFrustum));
+		System.out.println(occlusionCuller);
+	}
+
+	/**
+	 * Whether any sampled point on the box is inside the frustum with no wall between it and the camera, nor between
+	 * the camera and the points a texel away from it diagonally on screen.
+	 */
+	private static boolean seen(final Bounds box, final float[] camera, final float[][] walls, final FrustumIntersection frustum,
+			final Matrix4f viewProjectionMatrix, final int width, final int height) {
+		final float[] point = new float[3];
+		final int[] viewport = {0, 0, width, height};
+		final Vector3f window = new Vector3f();
+		final Vector3f beside = new Vector3f();
+		for (int i = 0; i < SAMPLES; i++) {
+			for (int j = 0; j < SAMPLES; j++) {
+				for (int k = 0; k < SAMPLES; k++) {
+					// points on the surface only: at least one coordinate on a face
+					if (i != 0 && i != SAMPLES - 1 && j != 0 && j != SAMPLES - 1 && k != 0 && k != SAMPLES - 1) {
+						continue;
+					}
+					point[0] = lerp(box.getMin().x, box.getMax().x, (float) i / (SAMPLES - 1));
+					point[1] = lerp(box.getMin().y, box.getMax().y, (float) j / (SAMPLES - 1));
+					point[2] = lerp(box.getMin().z, box.getMax().z, (float) k / (SAMPLES - 1));
+					if (!frustum.testPoint(point[0], point[1], point[2]) || blocked(camera, point, walls)) {
+						continue;
+					}
+					viewProjectionMatrix.project(point[0], point[1], point[2], viewport, window);
+					boolean clear = true;
+					for (int corner = 0; corner < 4 && clear; corner++) {
+						viewProjectionMatrix.unproject(window.x + ((corner & 1) == 0 ? -1f : 1f),
+								window.y + ((corner & 2) == 0 ? -1f : 1f), window.z, viewport, beside);
+						clear = !blocked(camera, new float[]{beside.x, beside.y, beside.z}, walls);
+					}
+					if (clear) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	private static boolean blocked(final float[] from, final float[] to, final float[][] walls) {
+		for (float[] wall : walls) {
+			final int axis = (int) wall[0];
+			final int other = 2 - axis;
+			final float denominator = to[axis] - from[axis];
+			if (denominator == 0f) {
+				continue;
+			}
+			final float t = (wall[1] - from[axis]) / denominator;
+			if (t <= 0f || t >= 1f) {
+				continue;
+			}
+			final float along = from[other] + (to[other] - from[other]) * t;
+			final float y = from[1] + (to[1] - from[1]) * t;
+			if (along > wall[2] && along < wall[3] && y > wall[4] && y < wall[5]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static float lerp(final float from, final float to, final float t) {
+		return from + (to - from) * t;
+	}
+
+	/**
+	 * The outer walls, and a wall with a door in the middle between every two neighbouring rooms.
+	 */
+	private static float[][] walls(final int rooms) {
+		final float size = rooms * ROOM_SIZE;
+		final float[][] walls = new float[4 + (rooms - 1) * rooms * 2 * 3][];
+		int count = 0;
+		walls[count++] = new float[]{0, 0f, 0f, size, 0f, WALL_HEIGHT};
+		walls[count++] = new float[]{0, size, 0f, size, 0f, WALL_HEIGHT};
+		walls[count++] = new float[]{2, 0f, 0f, size, 0f, WALL_HEIGHT};
+		walls[count++] = new float[]{2, size, 0f, size, 0f, WALL_HEIGHT};
+		for (int axis = 0; axis <= 2; axis += 2) {
+			for (int line = 1; line < rooms; line++) {
+				for (int room = 0; room < rooms; room++) {
+					final float from = room * ROOM_SIZE;
+					final float doorFrom = from + (ROOM_SIZE - DOOR_WIDTH) / 2f;
+					final float doorTo = doorFrom + DOOR_WIDTH;
+					walls[count++] = new float[]{axis, line * ROOM_SIZE, from, doorFrom, 0f, WALL_HEIGHT};
+					walls[count++] = new float[]{axis, line * ROOM_SIZE, doorTo, from + ROOM_SIZE, 0f, WALL_HEIGHT};
+					walls[count++] = new float[]{axis, line * ROOM_SIZE, doorFrom, doorTo, DOOR_HEIGHT, WALL_HEIGHT};
+				}
+			}
+		}
+		return walls;
+	}
+
+	/**
+	 * One occluder with two triangles per wall.
+	 */
+	private static Occluder occluder(final float[][] walls) {
+		final float[] positions = new float[walls.length * 4 * 3];
+		final int[] indices = new int[walls.length * 6];
+		for (int i = 0; i < walls.length; i++) {
+			final float[] wall = walls[i];
+			final int axis = (int) wall[0];
+			final int other = 2 - axis;
+			for (int corner = 0; corner < 4; corner++) {
+				final int vertex = (i * 4 + corner) * 3;
+				positions[vertex + axis] = wall[1];
+				positions[vertex + other] = (corner & 1) == 0 ? wall[2] : wall[3];
+				positions[vertex + 1] = (corner & 2) == 0 ? wall[4] : wall[5];
+			}
+			final int base = i * 4;
+			indices[i * 6] = base;
+			indices[i * 6 + 1] = base + 1;
+			indices[i * 6 + 2] = base + 3;
+			indices[i * 6 + 3] = base;
+			indices[i * 6 + 4] = base + 3;
+			indices[i * 6 + 5] = base + 2;
+		}
+		return new Occluder(positions, indices);
+	}
+
+	/**
+	 * Boxes of furniture size placed at random inside each room, clear of the walls.
+	 */
+	private static Bounds[] furnish(final int rooms) {
+		final Random random = new Random(42);
+		final Bounds[] items = new Bounds[rooms * rooms * ITEMS_PER_ROOM];
+		int count = 0;
+		for (int roomX = 0; roomX < rooms; roomX++) {
+			for (int roomZ = 0; roomZ < rooms; roomZ++) {
+				for (int i = 0; i < ITEMS_PER_ROOM; i++) {
+					final float sizeX = 0.4f + random.nextFloat() * 1.1f;
+					final float sizeZ = 0.4f + random.nextFloat() * 1.1f;
+					final float sizeY = 0.5f + random.nextFloat() * 1.5f;
+					final float x = roomX * ROOM_SIZE + 0.2f + random.nextFloat() * (ROOM_SIZE - 0.4f - sizeX);
+					final float z = roomZ * ROOM_SIZE + 0.2f + random.nextFloat() * (ROOM_SIZE - 0.4f - sizeZ);
+					items[count++] = new Bounds().set(x, 0f, z, x + sizeX, sizeY, z + sizeZ);
+				}
+			}
+		}
+		return items;
+	}
+
+	/**
+	 * Hidden constructor.
+	 */
+	private OcclusionBenchmark() { }
+}
@@ -0,0 +1,119 @@
+package spike.lwjglbuildingrenderer;
+
+import com.xenosnowfox.engine.graphics.ProgramCache;
+import org.lwjgl.glfw.GLFW;
+import org.lwjgl.glfw.GLFWErrorCallback;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GL46;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Links the Spike shader program through a {@link ProgramCache} as repeated starts would, each with a new cache on
+ * the same directory, and reports compile and load times. Then it corrupts the cached binary: the next start must
+ * reject it, compile again, and the one after that load the new binary.
+ *
+ * <p>Runs in a hidden window, so it works headless with a software driver, e.g.
+ * {@code LIBGL_ALWAYS_SOFTWARE=1 xvfb-run}; a driver without binary formats must compile every time.
+ *
+ * <p>Usage: {@code ProgramCacheBenchmark [cache directory] [starts]}; a new temporary directory by default.
+ */
+public class ProgramCacheBenchmark {
+
+	public static void main(String... args) throws Exception {
+		final Path directory = args.length > 0 ? Paths.get(args[0]) : Files.createTempDirectory("programs");
+		final int starts = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		GLFWErrorCallback.createPrint(System.err).set();
+		if (!GLFW.glfwInit()) {
+			System.err.println("Unable to initialize GLFW.");
+			System.exit(1);
+		}
+		GLFW.glfwDefaultWindowHints();
+		GLFW.glfwWindowHint(GLFW.GLFW_VISIBLE, GLFW.GLFW_FALSE);
+		GLFW.glfwWindowHint(GLFW.GLFW_CONTEXT_VERSION_MAJOR, 4);
+		GLFW.glfwWindowHint(GLFW.GLFW_CONTEXT_VERSION_MINOR, 3);
+		final long window = GLFW.glfwCreateWindow(64, 64, "ProgramCacheBenchmark", MemoryUtil.NULL, MemoryUtil.NULL);
+		if (window == MemoryUtil.NULL) {
+			System.err.println("Unable to create an OpenGL 4.3 context.");
+			System.exit(1);
+		}
+		GLFW.glfwMakeContextCurrent(window);
+		GL.createCapabilities();
+
+		final boolean binaries = GL46.glGetInteger(GL46.GL_NUM_PROGRAM_BINARY_FORMATS) > 0;
+		System.out.println(GL46.glGetString(GL46.GL_RENDERER) + ", " + GL46.glGetString(GL46.GL_VERSION)
+				+ (binaries ? "" : ", no program binary formats"));
+		final boolean cold = listBinaries(directory).isEmpty();
+		try {
+			for (int start = 0; start < starts; start++) {
+				final boolean hit = link(directory);
+				if (hit != (binaries && (start > 0 || !cold))) {
+					System.err.println("Start " + start + (hit ? " loaded a binary" : " compiled") + " unexpectedly.");
+					System.exit(1);
+				}
+			}
+			if (binaries) {
+				for (Path binary : listBinaries(directory)) {
+					final byte[] garbage = new byte[(int) Files.size(binary) - 16];
+					Arrays.fill(garbage, (byte) 0x5A);
+					try (FileChannel channel = FileChannel.open(binary, StandardOpenOption.WRITE)) {
+						channel.write(ByteBuffer.wrap(garbage), 16);
+					}
+				}
+				System.out.println("Corrupted the cached binaries.");
+				if (link(directory) || !link(directory)) {
+					System.err.println("A corrupted binary was not replaced by a compiled one.");
+					System.exit(1);
+				}
+			}
+		} finally {
+			GLFW.glfwDestroyWindow(window);
+			GLFW.glfwTerminate();
+		}
+	}
+
+	/**
+	 * Links the program as a new start would.
+	 *
+	 * @return whether it was loaded from a cached binary.
+	 */
+	private static boolean link(final Path directory) throws Exception {
+		final ProgramCache programCache = new ProgramCache(directory);
+		final int program = programCache.link("default",
+				new int[]{GL46.GL_VERTEX_SHADER, GL46.GL_FRAGMENT_SHADER},
+				new String[]{Utils.loadResource("/shaders/vertex.vs"), Utils.loadResource("/shaders/fragment.fs")},
+				Collections.emptyList(),
+				Arrays.asList("FrameBlock", "MeshBlock", "MaterialBlock", "texture_sampler",
+						"LightBlock", "ClusterBlock", "LightIndexBlock"));
+		GL46.glDeleteProgram(program);
+		System.out.println(programCache);
+		return programCache.getHits() > 0;
+	}
+
+	private static List<Path> listBinaries(final Path directory) throws IOException {
+		if (!Files.isDirectory(directory)) {
+			return Collections.emptyList();
+		}
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.filter(file -> file.toString().endsWith(ProgramCache.EXTENSION)).collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * Hidden constructor.
+	 */
+	private ProgramCacheBenchmark() { }
+}
@@ -0,0 +1,50 @@
+package spike.lwjglbuildingrenderer;
+
+import com.xenosnowfox.engine.graphics.CellGraph;
+import com.xenosnowfox.engine.graphics.PotentiallyVisibleSet;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+/**
+ * Precomputes the {@link PotentiallyVisibleSet} of a cell graph, for {@code render.cells.pvs}.
+ *
+ * <p>Usage: {@code PvsBaker <cell graph> <output file> [samples per axis]}; no OpenGL context is needed.
+ */
+public class PvsBaker {
+
+	public static void main(String... args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: PvsBaker <cell graph> <output file> [samples per axis]");
+			System.exit(1);
+		}
+		final CellGraph graph = CellGraph.load(args[0]);
+		final Path output = Paths.get(args[1]);
+		final int samples = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+
+		final long start = System.nanoTime();
+		final PotentiallyVisibleSet set = PotentiallyVisibleSet.compute(graph, samples);
+		final long nanos = System.nanoTime() - start;
+		set.write(output);
+		if (!PotentiallyVisibleSet.read(output).contentEquals(set)) {
+			System.err.println("Potentially visible set changed when written and read back: " + output);
+			System.exit(1);
+		}
+
+		long visible = 0;
+		for (int cell = 0; cell < graph.getCellCount(); cell++) {
+			visible += set.countVisible(cell);
+		}
+		System.out.printf(Locale.ROOT, "%d cells, %d portals: %.1f cells visible per cell on average%n",
+				graph.getCellCount(), graph.getPortalCount(), (double) visible / Math.max(1, graph.getCellCount()));
+		System.out.printf(Locale.ROOT, "baked in %.0f ms from %d samples per cell, %d bytes written to %s%n",
+				nanos / 1e6, samples * samples * samples, set.getByteSize(), output);
+	}
+
+	/**
+	 * Hidden constructor.
+	 */
+	private PvsBaker() { }
+}
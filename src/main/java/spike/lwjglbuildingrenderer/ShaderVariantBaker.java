@@ -0,0 +1,181 @@
+package spike.lwjglbuildingrenderer;
+
+import com.xenosnowfox.engine.graphics.ShaderFeature;
+import com.xenosnowfox.engine.graphics.ShaderPermutations;
+import com.xenosnowfox.engine.graphics.SpirvCompiler;
+import org.lwjgl.opengl.GL46;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compiles every variant of the Spike shaders into SPIR-V modules, for {@code shaders.spirv.directory}; bake again
+ * after editing the shaders.
+ *
+ * <p>Each module must start with the SPIR-V magic number, and the fragment modules of any two feature sets must
+ * differ, or a define did not reach the source. Modules are linked by location alone, so every input of a fragment
+ * module must also be an output of its vertex module, at the same location and of the same type.
+ *
+ * <p>Usage: {@code ShaderVariantBaker [output directory]}, {@code data/shaders/} by default; no OpenGL context is
+ * needed.
+ */
+public class ShaderVariantBaker {
+
+	private static final int SPIRV_MAGIC = 0x07230203;
+
+	private static final int OP_TYPE_INT = 21;
+
+	private static final int OP_TYPE_FLOAT = 22;
+
+	private static final int OP_TYPE_VECTOR = 23;
+
+	private static final int OP_TYPE_MATRIX = 24;
+
+	private static final int OP_TYPE_POINTER = 32;
+
+	private static final int OP_VARIABLE = 59;
+
+	private static final int OP_DECORATE = 71;
+
+	private static final int DECORATION_LOCATION = 30;
+
+	private static final int STORAGE_INPUT = 1;
+
+	private static final int STORAGE_OUTPUT = 3;
+
+	private static final String NAME = "default";
+
+	public static void main(String... args) throws Exception {
+		final Path output = Paths.get(args.length > 0 ? args[0] : "data/shaders/");
+		final int[] stageTypes = {GL46.GL_VERTEX_SHADER, GL46.GL_FRAGMENT_SHADER};
+		final String[] sources = {Utils.loadResource("/shaders/vertex.vs"), Utils.loadResource("/shaders/fragment.fs")};
+		final String[] fileNames = {"vertex.vs", "fragment.fs"};
+		Files.createDirectories(output);
+
+		final byte[][] vertexModules = new byte[ShaderFeature.PERMUTATIONS][];
+		final byte[][] fragmentModules = new byte[ShaderFeature.PERMUTATIONS][];
+		long bytes = 0;
+		final long start = System.nanoTime();
+		try (SpirvCompiler compiler = new SpirvCompiler()) {
+			for (int features = 0; features < ShaderFeature.PERMUTATIONS; features++) {
+				for (int stage = 0; stage < stageTypes.length; stage++) {
+					final byte[] module = compiler.compile(fileNames[stage], stageTypes[stage], sources[stage],
+							ShaderFeature.defines(features));
+					if (module.length < Integer.BYTES
+							|| ByteBuffer.wrap(module).order(ByteOrder.LITTLE_ENDIAN).getInt(0) != SPIRV_MAGIC) {
+						System.err.println("Not a SPIR-V module: " + ShaderFeature.variantName(NAME, features) + " "
+								+ fileNames[stage]);
+						System.exit(1);
+					}
+					if (stageTypes[stage] == GL46.GL_VERTEX_SHADER) {
+						vertexModules[features] = module;
+					} else {
+						fragmentModules[features] = module;
+					}
+					final Path file = output.resolve(ShaderPermutations.spirvFileName(NAME, features, stageTypes[stage]));
+					final Path temporary = Files.createTempFile(output, file.getFileName().toString(), ".tmp");
+					Files.write(temporary, module);
+					Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+					bytes += module.length;
+				}
+			}
+		}
+		final long nanos = System.nanoTime() - start;
+
+		for (int features = 0; features < ShaderFeature.PERMUTATIONS; features++) {
+			final Map<Integer, String> outputs = interfaceOf(vertexModules[features], STORAGE_OUTPUT);
+			final Map<Integer, String> inputs = interfaceOf(fragmentModules[features], STORAGE_INPUT);
+			for (Map.Entry<Integer, String> input : inputs.entrySet()) {
+				if (!input.getValue().equals(outputs.get(input.getKey()))) {
+					System.err.println("Variant " + ShaderFeature.variantName(NAME, features) + " reads a "
+							+ input.getValue() + " at location " + input.getKey() + ", its vertex stage writes "
+							+ outputs.get(input.getKey()) + ".");
+					System.exit(1);
+				}
+			}
+		}
+		for (int features = 0; features < ShaderFeature.PERMUTATIONS; features++) {
+			for (int other = features + 1; other < ShaderFeature.PERMUTATIONS; other++) {
+				if (Arrays.equals(fragmentModules[features], fragmentModules[other])) {
+					System.err.println("Variants " + ShaderFeature.variantName(NAME, features) + " and "
+							+ ShaderFeature.variantName(NAME, other) + " compiled to the same fragment module.");
+					System.exit(1);
+				}
+			}
+		}
+		System.out.printf(Locale.ROOT, "%d variants of `%s` compiled in %.0f ms, stage interfaces match, %d bytes written to %s%n",
+				ShaderFeature.PERMUTATIONS, NAME, nanos / 1e6, bytes, output);
+	}
+
+	/**
+	 * The inputs or outputs of a module with a location, and their types, e.g. {@code vec3 float32}; built-ins have
+	 * no location and are left out.
+	 */
+	private static Map<Integer, String> interfaceOf(final byte[] module, final int storageClass) {
+		final ByteBuffer words = ByteBuffer.wrap(module).order(ByteOrder.LITTLE_ENDIAN);
+		final Map<Integer, String> types = new HashMap<>();
+		final Map<Integer, Integer> locations = new HashMap<>();
+		final Map<Integer, String> variables = new HashMap<>();
+		// the header is five words
+		for (int offset = 5 * Integer.BYTES; offset < module.length; ) {
+			final int instruction = words.getInt(offset);
+			final int wordCount = instruction >>> 16;
+			final int opcode = instruction & 0xFFFF;
+			if (wordCount == 0) {
+				break;
+			}
+			final int operand = offset + Integer.BYTES;
+			switch (opcode) {
+				case OP_TYPE_INT:
+					types.put(words.getInt(operand), (words.getInt(operand + 8) != 0 ? "int" : "uint") + words.getInt(operand + 4));
+					break;
+				case OP_TYPE_FLOAT:
+					types.put(words.getInt(operand), "float" + words.getInt(operand + 4));
+					break;
+				case OP_TYPE_VECTOR:
+					types.put(words.getInt(operand), "vec" + words.getInt(operand + 8) + " " + types.get(words.getInt(operand + 4)));
+					break;
+				case OP_TYPE_MATRIX:
+					types.put(words.getInt(operand), words.getInt(operand + 8) + " columns " + types.get(words.getInt(operand + 4)));
+					break;
+				case OP_TYPE_POINTER:
+					types.put(words.getInt(operand), types.get(words.getInt(operand + 8)));
+					break;
+				case OP_VARIABLE:
+					if (words.getInt(operand + 8) == storageClass) {
+						variables.put(words.getInt(operand + 4), String.valueOf(types.get(words.getInt(operand))));
+					}
+					break;
+				case OP_DECORATE:
+					if (words.getInt(operand + 4) == DECORATION_LOCATION) {
+						locations.put(words.getInt(operand), words.getInt(operand + 8));
+					}
+					break;
+				default:
+					break;
+			}
+			offset += wordCount * Integer.BYTES;
+		}
+		final Map<Integer, String> result = new HashMap<>();
+		for (Map.Entry<Integer, String> variable : variables.entrySet()) {
+			final Integer location = locations.get(variable.getKey());
+			if (location != null) {
+				result.put(location, variable.getValue());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Hidden constructor.
+	 */
+	private ShaderVariantBaker() { }
+}
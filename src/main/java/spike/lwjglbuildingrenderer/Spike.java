@@ -1,33 +1,63 @@
 package spike.lwjglbuildingrenderer;
 
+import com.xenosnowfox.engine.graphics.AssetLoader;
+import com.xenosnowfox.engine.graphics.BoundingVolumeHierarchy;
+import com.xenosnowfox.engine.graphics.Bounds;
+import com.xenosnowfox.engine.graphics.CellGraph;
+import com.xenosnowfox.engine.graphics.CellVisibility;
+import com.xenosnowfox.engine.graphics.FramePreparation;
+import com.xenosnowfox.engine.graphics.FrustumCuller;
 import com.xenosnowfox.engine.graphics.GameItem;
+import com.xenosnowfox.engine.graphics.LightBuffers;
+import com.xenosnowfox.engine.graphics.LightClusters;
 import com.xenosnowfox.engine.graphics.Material;
+import com.xenosnowfox.engine.graphics.LodGroup;
+import com.xenosnowfox.engine.graphics.LodSelector;
 import com.xenosnowfox.engine.graphics.Mesh;
+import com.xenosnowfox.engine.graphics.OcclusionCuller;
 import com.xenosnowfox.engine.graphics.MouseInput;
-import com.xenosnowfox.engine.graphics.OBJLoader;
 import com.xenosnowfox.engine.graphics.PointLight;
+import com.xenosnowfox.engine.graphics.PotentiallyVisibleSet;
+import com.xenosnowfox.engine.graphics.ProfiledGameLogic;
+import com.xenosnowfox.engine.graphics.ProfilerOverlay;
+import com.xenosnowfox.engine.graphics.ProgramCache;
+import com.xenosnowfox.engine.graphics.RenderQueue;
+import com.xenosnowfox.engine.graphics.ShaderFeature;
+import com.xenosnowfox.engine.graphics.ShaderPermutations;
+import com.xenosnowfox.engine.graphics.StaticMeshBatch;
 import com.xenosnowfox.engine.graphics.Texture;
+import com.xenosnowfox.engine.graphics.TextureCache;
 import com.xenosnowfox.engine.graphics.Transformation;
+import com.xenosnowfox.engine.graphics.UniformBlocks;
+import com.xenosnowfox.engine.graphics.VertexLayout;
 import com.xenosnowfox.lwjglengine.GameLogic;
 import com.xenosnowfox.lwjglengine.GameLoop;
 import com.xenosnowfox.lwjglengine.Viewport;
 import com.xenosnowfox.lwjglengine.display.Monitor;
 import com.xenosnowfox.lwjglengine.display.Window;
 import com.xenosnowfox.lwjglengine.projection.Camera;
-import com.xenosnowfox.lwjglengine.shader.ShaderProgram;
-import com.xenosnowfox.lwjglengine.shader.ShaderType;
 import org.joml.Matrix4f;
 import org.joml.Vector2f;
 import org.joml.Vector3f;
-import org.joml.Vector4f;
 import org.lwjgl.glfw.GLFW;
 import org.lwjgl.glfw.GLFWErrorCallback;
 import org.lwjgl.opengl.GL;
 import org.lwjgl.opengl.GL46;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 
 /**
  * Main Spike Entrypoint.
@@ -40,6 +70,8 @@ public class Spike extends GameLoop implements GameLogic {
 	private final static int KEY_RIGHT = GLFW.GLFW_KEY_D;
 	private final static int KEY_UP = GLFW.GLFW_KEY_Q;
 	private final static int KEY_DOWN = GLFW.GLFW_KEY_E;
+	private final static int KEY_PROFILE_EXPORT = GLFW.GLFW_KEY_F12;
+	private final static int KEY_PROFILE_OVERLAY = GLFW.GLFW_KEY_F3;
 
 	private static final float CAMERA_POS_STEP = 0.05f;
 	private static final float MOUSE_SENSITIVITY = 0.2f;
@@ -70,17 +102,121 @@ public class Spike extends GameLoop implements GameLogic {
 
 	private final MouseInput mouseInput;
 
+	/**
+	 * Times the phases of every frame, when enabled.
+	 */
+	private ProfiledGameLogic profiledLogic;
+
+	private boolean profileExportPressed;
+
+	private boolean profileOverlayPressed;
+
 	private Texture texture;
 
 	private Material material;
 
 	private Mesh mesh;
 
+	private Mesh placeholderMesh;
+
+	/**
+	 * Levels of detail of the loaded mesh, when they are generated; {@link #mesh} is then the first level.
+	 */
+	private LodGroup lodGroup;
+
+	private LodSelector lodSelector;
+
+	private TextureCache textureCache;
+
+	private AssetLoader assetLoader;
+
 	private GameItem[] gameItems;
 
-	private ShaderProgram shaderProgram;
+	private RenderQueue renderQueue;
+
+	private UniformBlocks uniformBlocks;
+
+	private StaticMeshBatch staticBatch;
+
+	private final FrustumCuller frustumCuller = new FrustumCuller();
 
-	private float specularPower = 5f;
+	/**
+	 * Tests the items the frustum culler lets through against the occluders, when enabled.
+	 */
+	private OcclusionCuller occlusionCuller;
+
+	/**
+	 * Skips the items in cells the camera cannot see through any portal, when a cell graph is given.
+	 */
+	private CellVisibility cellVisibility;
+
+	/**
+	 * The cell of each gameItem, kept up to date with the scene index.
+	 */
+	private int[] itemCells;
+
+	/**
+	 * The gameItems by world bounds; the user data of each object is its index in gameItems.
+	 */
+	private final BoundingVolumeHierarchy sceneIndex = new BoundingVolumeHierarchy(0f);
+
+	private int[] itemProxies;
+
+	private final Bounds itemBounds = new Bounds();
+
+	/**
+	 * Culls every gameItem on all cores instead of walking the scene index, when enabled.
+	 */
+	private FramePreparation framePreparation;
+
+	/**
+	 * Queues a gameItem found visible in the scene index.
+	 */
+	private final BoundingVolumeHierarchy.Visitor itemSubmitter = this::submitItem;
+
+	/**
+	 * A program per set of shader features, from SPIR-V modules or linked from GLSL through a program cache.
+	 */
+	private ShaderPermutations shaderPermutations;
+
+	/**
+	 * Features every draw needs; the material of a draw adds its own.
+	 */
+	private int shaderFeatures;
+
+	/**
+	 * Variant last bound with glUseProgram.
+	 */
+	private int boundProgram;
+
+	/**
+	 * Whether the frame block was already written this frame.
+	 */
+	private boolean frameBound;
+
+	/**
+	 * Uploads the uniforms of a material whenever a mesh switches to it.
+	 */
+	private final Consumer<Material> materialBinder = this::bindMaterial;
+
+	/**
+	 * Switches to the shader variant of a static batch's material and uploads its uniforms.
+	 */
+	private final Consumer<Material> batchMaterialBinder = this::bindBatchMaterial;
+
+	/**
+	 * Uploads the position decoding of a mesh before its instances are drawn.
+	 */
+	private final Consumer<Mesh> meshBinder = this::bindMesh;
+
+	/**
+	 * Binds a shader variant and uploads the per-frame uniforms.
+	 */
+	private final IntConsumer shaderBinder = this::bindShader;
+
+	private Matrix4f projectionMatrix;
+
+	private Matrix4f viewMatrix;
 
 	/**
 	 * Field of View in Radians
@@ -99,6 +235,18 @@ public class Spike extends GameLoop implements GameLogic {
 
 	private PointLight pointLight;
 
+	/**
+	 * The point light followed by the scattered lights, when lights are clustered.
+	 */
+	private PointLight[] lights;
+
+	/**
+	 * Assigns the lights to clusters of the view frustum, when enabled.
+	 */
+	private LightClusters lightClusters;
+
+	private LightBuffers lightBuffers;
+
 	private final Vector3f cameraInc = new Vector3f();
 
 
@@ -150,7 +298,15 @@ public class Spike extends GameLoop implements GameLogic {
 		GL46.glEnableClientState(GL46.GL_VERTEX_ARRAY);
 
 		// create a viewport
-		this.viewport = new Viewport(this.window, this.camera, this);
+		GameLogic gameLogic = this;
+		if (Boolean.parseBoolean(spikeProperties.getProperty("profiler.enabled", "false"))) {
+			this.profiledLogic = new ProfiledGameLogic(this, this.window,
+					Boolean.parseBoolean(spikeProperties.getProperty("profiler.gpu", "true")),
+					new ProfilerOverlay(TimeUnit.SECONDS.toNanos(1) / 60, 200));
+			this.profiledLogic.setOverlayVisible(Boolean.parseBoolean(spikeProperties.getProperty("profiler.overlay", "false")));
+			gameLogic = this.profiledLogic;
+		}
+		this.viewport = new Viewport(this.window, this.camera, gameLogic);
 		this.addViewport(this.viewport);
 	}
 
@@ -161,78 +317,145 @@ public class Spike extends GameLoop implements GameLogic {
 		this.mouseInput.init(this.window);
 		this.mouseInput.centerOnWindow(this.window);
 
-		// load a texture
-		final String textureFileName = spikeProperties.getProperty("textures.directory") + "bricks.png";
-		System.out.println("Loading texture: " + textureFileName);
-		this.texture = new Texture(textureFileName);
+		// share textures between models within the video memory budget
+		this.textureCache = new TextureCache(
+				Long.parseLong(spikeProperties.getProperty("textures.budget.mb", "256")) * 1024 * 1024);
 
-		// load a material
+		// start the background asset loader
+		this.assetLoader = new AssetLoader(
+				Integer.parseInt(spikeProperties.getProperty("assets.loader.threads", "2")),
+				TimeUnit.MILLISECONDS.toNanos(Long.parseLong(spikeProperties.getProperty("assets.upload.budget.ms", "2"))),
+				Long.parseLong(spikeProperties.getProperty("assets.upload.budget.kb", "8192")) * 1024,
+				this.textureCache);
+		this.placeholderMesh = AssetLoader.createPlaceholderMesh();
+
+		// load a material; it draws untextured until its texture has streamed in
 		System.out.println("Creating Material");
 		float reflectance = 1f;
-		this.material = new Material(this.texture, reflectance);
+		this.material = new Material((Texture) null, reflectance);
 
-		// load a mesh
-		final String meshFileName = spikeProperties.getProperty("models.directory") + "arch.obj";
-		System.out.println("Loading mesh: " + meshFileName);
-		this.mesh = OBJLoader.loadMeshFile(meshFileName);
-		this.mesh.setMaterial(this.material);
+		// load a texture
+		final String textureFileName = spikeProperties.getProperty("textures.directory") + "bricks.png";
+		System.out.println("Loading texture: " + textureFileName);
+		this.assetLoader.loadTexture(textureFileName).onReady(loadedTexture -> {
+			this.texture = loadedTexture;
+			this.material.setTexture(loadedTexture);
+		});
 
-		// load mesh into a game object
+		// load mesh into game objects, showing the placeholder until it is ready
 		System.out.println("Converting mesh into game item.");
-		GameItem gameItem = new GameItem(mesh);
+		GameItem gameItem = new GameItem(placeholderMesh);
 		gameItem.setScale(1f, 1f, 1f);
 		gameItem.setPosition(1f, 0, 0);
 
-		GameItem gameItem2 = new GameItem(mesh);
+		GameItem gameItem2 = new GameItem(placeholderMesh);
 		gameItem2.setScale(1f, 1f, 1f);
 		gameItem2.setPosition(1f, 0, 0);
 		gameItem2.setRotation(0f, 90f, 0f);
 
-		GameItem gameItem3 = new GameItem(mesh);
+		GameItem gameItem3 = new GameItem(placeholderMesh);
 		gameItem3.setScale(1f, 1f, 1f);
 		gameItem3.setPosition(0.5f, 0, 0);
 
 		gameItems = new GameItem[]{gameItem, gameItem2, gameItem3};
+		itemProxies = new int[gameItems.length];
+		for (int index = 0; index < gameItems.length; index++) {
+			itemProxies[index] = sceneIndex.insert(gameItems[index].getWorldBounds(transformation, itemBounds), index);
+		}
+		renderQueue = new RenderQueue(Z_FAR);
+		// draw every submesh with the shader variant of its material
+		renderQueue.setMaterialShaders(ShaderFeature::of);
+		uniformBlocks = new UniformBlocks(16 * 1024);
+		if (Boolean.parseBoolean(spikeProperties.getProperty("render.prepare.parallel", "false"))) {
+			framePreparation = new FramePreparation(ForkJoinPool.commonPool(),
+					Integer.parseInt(spikeProperties.getProperty("render.prepare.chunk", "1024")));
+		}
 
-		// load shader program
-		System.out.println("Loading shader program.");
-		this.shaderProgram = ShaderProgram.builder()
-				// shaders
-				.shader(builder -> {
-					try {
-						builder.type(ShaderType.VERTEX).fromResourceFile("/shaders/vertex.vs");
-					} catch (Exception exception) {
-						throw new RuntimeException(exception);
-					}
-				})
-				.shader(builder -> {
-					try {
-						builder.type(ShaderType.FRAGMENT).fromResourceFile("/shaders/fragment.fs");
-					} catch (Exception exception) {
-						throw new RuntimeException(exception);
-					}
-				})
-				// Create uniforms for modelView and projection matrices and texture
-				.uniform("projectionMatrix")
-				.uniform("modelViewMatrix")
-				.uniform("texture_sampler")
-				// Create uniform for material
-				.uniform("material.ambient")
-				.uniform("material.diffuse")
-				.uniform("material.specular")
-				.uniform("material.hasTexture")
-				.uniform("material.reflectance")
-				.uniform("specularPower")
-				.uniform("ambientLight")
-				// Create lighting related uniforms
-				.uniform("pointLight.colour")
-				.uniform("pointLight.position")
-				.uniform("pointLight.intensity")
-				.uniform("pointLight.att.constant")
-				.uniform("pointLight.att.linear")
-				.uniform("pointLight.att.exponent")
-				// build
-				.build();
+		if (Boolean.parseBoolean(spikeProperties.getProperty("render.occlusion", "false"))) {
+			occlusionCuller = new OcclusionCuller(ForkJoinPool.commonPool(),
+					Integer.parseInt(spikeProperties.getProperty("render.occlusion.width", "256")),
+					Integer.parseInt(spikeProperties.getProperty("render.occlusion.height", "128")));
+			for (String occluderFile : spikeProperties.getProperty("render.occlusion.occluders", "").split(",")) {
+				if (!occluderFile.trim().isEmpty()) {
+					assetLoader.loadOccluder(spikeProperties.getProperty("models.directory") + occluderFile.trim())
+							.onReady(occlusionCuller::addOccluder);
+				}
+			}
+		}
+
+		final String cellsFile = spikeProperties.getProperty("render.cells", "").trim();
+		if (!cellsFile.isEmpty()) {
+			System.out.println("Loading cells: " + cellsFile);
+			final CellGraph cellGraph = CellGraph.load(spikeProperties.getProperty("models.directory") + cellsFile);
+			cellVisibility = new CellVisibility(cellGraph);
+			final String pvsFile = spikeProperties.getProperty("render.cells.pvs", "").trim();
+			if (!pvsFile.isEmpty()) {
+				cellVisibility.setPotentiallyVisibleSet(
+						PotentiallyVisibleSet.read(Paths.get(spikeProperties.getProperty("models.directory") + pvsFile)));
+			}
+			itemCells = new int[gameItems.length];
+			for (int index = 0; index < gameItems.length; index++) {
+				updateItemBounds(index);
+			}
+		}
+
+		// load a mesh
+		final String meshFileName = spikeProperties.getProperty("models.directory") + "arch.obj";
+		System.out.println("Loading mesh: " + meshFileName);
+		final VertexLayout vertexLayout = VertexLayout.valueOf(spikeProperties.getProperty("models.vertex.layout", "standard"));
+		if (Boolean.parseBoolean(spikeProperties.getProperty("render.static.batch", "false"))) {
+			if (vertexLayout.isQuantized()) {
+				System.err.println("Static batching is not available for quantized vertices.");
+			} else {
+				this.staticBatch = new StaticMeshBatch(vertexLayout);
+			}
+		}
+		if (Boolean.parseBoolean(spikeProperties.getProperty("render.lod", "false"))) {
+			this.lodSelector = new LodSelector(
+					Float.parseFloat(spikeProperties.getProperty("render.lod.pixels", "1.0")),
+					Float.parseFloat(spikeProperties.getProperty("render.lod.hysteresis", "0.25")));
+			this.assetLoader.loadMeshLods(meshFileName, vertexLayout,
+					Integer.parseInt(spikeProperties.getProperty("render.lod.levels", "4")),
+					Float.parseFloat(spikeProperties.getProperty("render.lod.ratio", "0.5")),
+					Float.parseFloat(spikeProperties.getProperty("render.lod.error", "0.02"))).onReady(loadedGroup -> {
+				this.lodGroup = loadedGroup;
+				this.mesh = loadedGroup.getMesh(0);
+				// used by any part of the mesh that has no MTL material of its own
+				this.lodGroup.setMaterial(this.material);
+				for (int level = 0; this.staticBatch != null && level < loadedGroup.getLevelCount(); level++) {
+					this.staticBatch.add(loadedGroup.getMesh(level));
+				}
+				for (int index = 0; index < gameItems.length; index++) {
+					gameItems[index].setLodGroup(loadedGroup);
+					updateItemBounds(index);
+				}
+			});
+		} else {
+			this.assetLoader.loadMesh(meshFileName, vertexLayout).onReady(loadedMesh -> {
+				this.mesh = loadedMesh;
+				// used by any part of the mesh that has no MTL material of its own
+				this.mesh.setMaterial(this.material);
+				if (this.staticBatch != null) {
+					this.staticBatch.add(loadedMesh);
+				}
+				for (int index = 0; index < gameItems.length; index++) {
+					gameItems[index].setMesh(loadedMesh);
+					updateItemBounds(index);
+				}
+			});
+		}
+
+		// shader variants are built on first use, from SPIR-V modules when baked or else from GLSL
+		final String programCacheDirectory = spikeProperties.getProperty("shaders.cache.directory", "").trim();
+		final String spirvDirectory = spikeProperties.getProperty("shaders.spirv.directory", "").trim();
+		this.shaderPermutations = new ShaderPermutations("default",
+				new int[]{GL46.GL_VERTEX_SHADER, GL46.GL_FRAGMENT_SHADER},
+				new String[]{Utils.loadResource("/shaders/vertex.vs"), Utils.loadResource("/shaders/fragment.fs")},
+				// uniforms come from the blocks of UniformBlocks and LightBuffers
+				Arrays.asList("FrameBlock", "MeshBlock", "MaterialBlock", "texture_sampler",
+						"LightBlock", "ClusterBlock", "LightIndexBlock"),
+				new ProgramCache(programCacheDirectory.isEmpty() ? null : Paths.get(programCacheDirectory)),
+				spirvDirectory.isEmpty() ? null : Paths.get(spirvDirectory));
 
 		// ambient light source
 		ambientLight = new Vector3f(1f, 1f, 1f);
@@ -243,6 +466,34 @@ public class Spike extends GameLoop implements GameLogic {
 		pointLight = new PointLight(lightColour, lightPosition, lightIntensity);
 		PointLight.Attenuation att = new PointLight.Attenuation(0.0f, 0.0f, 1.0f);
 		pointLight.setAttenuation(att);
+
+		if (Boolean.parseBoolean(spikeProperties.getProperty("render.lights.clustered", "false"))) {
+			final String[] grid = spikeProperties.getProperty("render.lights.grid", "16,9,24").split(",");
+			final int lightCount = Integer.parseInt(spikeProperties.getProperty("render.lights.count", "512"));
+			final float spread = Float.parseFloat(spikeProperties.getProperty("render.lights.spread", "40"));
+			lights = new PointLight[lightCount + 1];
+			lights[0] = pointLight;
+			final Random random = new Random(1);
+			for (int i = 1; i < lights.length; i++) {
+				lights[i] = new PointLight(
+						new Vector3f(random.nextFloat(), random.nextFloat(), random.nextFloat()),
+						new Vector3f((random.nextFloat() - 0.5f) * spread, random.nextFloat() * 3f, (random.nextFloat() - 0.5f) * spread),
+						1.0f, new PointLight.Attenuation(1.0f, 0.0f, 16.0f));
+			}
+			lightClusters = new LightClusters(ForkJoinPool.commonPool(),
+					Integer.parseInt(grid[0].trim()), Integer.parseInt(grid[1].trim()), Integer.parseInt(grid[2].trim()),
+					Float.parseFloat(spikeProperties.getProperty("render.lights.near", "0.5")),
+					Float.parseFloat(spikeProperties.getProperty("render.lights.far", "100")),
+					lights.length, Integer.parseInt(spikeProperties.getProperty("render.lights.per.cluster", "128")));
+			lightBuffers = new LightBuffers(64 * 1024);
+			shaderFeatures |= ShaderFeature.CLUSTERED_LIGHTS.bit();
+		}
+
+		// build the variants the materials can ask for now rather than in the first frames
+		System.out.println("Loading shader programs.");
+		this.shaderPermutations.getProgram(shaderFeatures);
+		this.shaderPermutations.getProgram(shaderFeatures | ShaderFeature.TEXTURED.bit());
+		System.out.println("Shader programs: " + this.shaderPermutations);
 	}
 
 	@Override
@@ -260,6 +511,9 @@ public class Spike extends GameLoop implements GameLogic {
 			suffixParts.add("Y:" + vector3f.y);
 			suffixParts.add("Z:" + vector3f.z);
 		});
+		if (lodSelector != null) {
+			suffixParts.add("Triangles:" + lodSelector.getTriangleCount() + "/" + lodSelector.getFullTriangleCount());
+		}
 		this.window.setTitle(spikeProperties.getProperty("window.title", "Spike") + " [" + String.join(", ", suffixParts) + "]");
 
 		cameraInc.set(0f, 0f, 0f);
@@ -279,6 +533,33 @@ public class Spike extends GameLoop implements GameLogic {
 		} else if (window.isKeyPressed(KEY_DOWN)) {
 			cameraInc.y = -1;
 		}
+
+		if (profiledLogic != null) {
+			// act once per key press, not on every frame the key is held
+			final boolean exportPressed = window.isKeyPressed(KEY_PROFILE_EXPORT);
+			if (exportPressed && !profileExportPressed) {
+				exportProfile();
+			}
+			profileExportPressed = exportPressed;
+			final boolean overlayPressed = window.isKeyPressed(KEY_PROFILE_OVERLAY);
+			if (overlayPressed && !profileOverlayPressed) {
+				profiledLogic.setOverlayVisible(!profiledLogic.isOverlayVisible());
+			}
+			profileOverlayPressed = overlayPressed;
+		}
+	}
+
+	/**
+	 * Writes the frame times recorded so far as CSV and JSON.
+	 */
+	private void exportProfile() {
+		final Path directory = Paths.get(spikeProperties.getProperty("profiler.export.directory", "profiles/"));
+		final String prefix = "frame-profile-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+		try {
+			System.out.println("Frame profile written to " + profiledLogic.getProfiler().export(directory, prefix));
+		} catch (IOException exception) {
+			System.err.println("Unable to write frame profile: " + exception.getMessage());
+		}
 	}
 
 	@Override
@@ -334,55 +615,116 @@ public class Spike extends GameLoop implements GameLogic {
 		// Poll for window events. The key callback above will only be invoked during this call.
 		GLFW.glfwPollEvents();
 
+		// upload whatever the background loader has finished, within the frame budget
+		textureCache.beginFrame();
+		assetLoader.processUploads();
+
 		// update scene
-		shaderProgram.bind();
-
-		// Update projection Matrix
-		Matrix4f projectionMatrix = transformation.getProjectionMatrix(FOV, window.getWidth(), window.getHeight(), Z_NEAR, Z_FAR);
-		shaderProgram.uniform("projectionMatrix", projectionMatrix);
-
-		// Update view Matrix
-		Matrix4f viewMatrix = transformation.getViewMatrix(this.camera);
-
-		// Update Light Uniforms
-		shaderProgram.uniform("ambientLight", ambientLight);
-		shaderProgram.uniform("specularPower", specularPower);
-
-		// Get a copy of the light object and transform its position to view coordinates
-		PointLight currPointLight = new PointLight(pointLight);
-		Vector3f lightPos = currPointLight.getPosition();
-		Vector4f aux = new Vector4f(lightPos, 1f);
-		aux.mul(viewMatrix);
-		lightPos.x = aux.x;
-		lightPos.y = aux.y;
-		lightPos.z = aux.z;
-		shaderProgram.uniform("pointLight.colour", pointLight.getColor());
-		shaderProgram.uniform("pointLight.position", pointLight.getPosition());
-		shaderProgram.uniform("pointLight.intensity", pointLight.getIntensity());
-		PointLight.Attenuation att = pointLight.getAttenuation();
-		shaderProgram.uniform("pointLight.att.constant", att.getConstant());
-		shaderProgram.uniform("pointLight.att.linear", att.getLinear());
-		shaderProgram.uniform("pointLight.att.exponent", att.getExponent());
-
-		shaderProgram.uniform("texture_sampler", 0);
-
-		// Render each gameItem
-		for (GameItem gameItem : gameItems) {
-			Mesh mesh = gameItem.getMesh();
-			// Set model view matrix for this item
-			Matrix4f modelViewMatrix = transformation.getModelViewMatrix(gameItem, viewMatrix);
-			shaderProgram.uniform("modelViewMatrix", modelViewMatrix);
-
-			// Render the mesh for this game item
-			shaderProgram.uniform("material.ambient", material.getAmbientColour());
-			shaderProgram.uniform("material.diffuse", material.getDiffuseColour());
-			shaderProgram.uniform("material.specular", material.getSpecularColour());
-			shaderProgram.uniform("material.hasTexture", material.isTextured() ? 1 : 0);
-			shaderProgram.uniform("material.reflectance", material.getReflectance());
-			mesh.render();
-		}
-
-		shaderProgram.unbind();
+		projectionMatrix = transformation.getProjectionMatrix(FOV, window.getWidth(), window.getHeight(), Z_NEAR, Z_FAR);
+		viewMatrix = transformation.getViewMatrix(this.camera);
+
+		// queue the visible gameItems: batched static meshes go to the multi-draw path, the rest are drawn sorted,
+		// one instanced draw per mesh and material
+		if (occlusionCuller != null) {
+			occlusionCuller.render(projectionMatrix, viewMatrix);
+		}
+		if (lodSelector != null) {
+			lodSelector.update(FOV, window.getHeight(), camera.position());
+		}
+		if (cellVisibility != null) {
+			cellVisibility.update(projectionMatrix, viewMatrix, camera.position());
+		}
+		if (lightClusters != null) {
+			lightClusters.update(projectionMatrix, viewMatrix, lights, lights.length);
+			lightBuffers.write(lightClusters, lights);
+		}
+		renderQueue.begin(viewMatrix);
+		frameBound = false;
+		if (staticBatch != null) {
+			staticBatch.begin(gameItems.length);
+		}
+		if (framePreparation != null) {
+			framePreparation.prepare(gameItems, gameItems.length, projectionMatrix, viewMatrix);
+			for (int i = 0; i < framePreparation.getVisibleCount(); i++) {
+				submitItem(i, framePreparation.getVisibleItem(i));
+			}
+		} else {
+			frustumCuller.update(projectionMatrix, viewMatrix);
+			frustumCuller.cull(sceneIndex, itemSubmitter);
+		}
+		// at most one mesh and one material block per packet, plus the batch's
+		int batchBlocks = staticBatch != null ? staticBatch.getSubMeshCount() : 0;
+		uniformBlocks.beginFrame(renderQueue.getPacketCount() + 1, renderQueue.getPacketCount() + batchBlocks);
+		renderQueue.flush(shaderBinder, meshBinder, materialBinder);
+		if (staticBatch != null && staticBatch.getInstanceCount() > 0) {
+			// the batch switches variants by material; a draw without one uses the plain variant
+			bindShader(shaderFeatures);
+			uniformBlocks.bindPositionDecoding(staticBatch.getPositionOffset(), staticBatch.getPositionScale());
+			staticBatch.flush(batchMaterialBinder);
+		}
+		uniformBlocks.endFrame();
+		if (lightBuffers != null) {
+			lightBuffers.endFrame();
+		}
+
+		GL46.glUseProgram(0);
+		boundProgram = 0;
+	}
+
+	private boolean submitItem(final int proxy, final int index) {
+		final GameItem gameItem = gameItems[index];
+		if (cellVisibility != null && !cellVisibility.isVisible(itemCells[index], gameItem.getWorldBounds(transformation, itemBounds))) {
+			return true;
+		}
+		if (occlusionCuller != null && !occlusionCuller.isVisible(gameItem.getWorldBounds(transformation, itemBounds))) {
+			return true;
+		}
+		if (lodSelector != null) {
+			lodSelector.select(gameItem);
+		}
+		if (staticBatch != null && staticBatch.contains(gameItem.getMesh())) {
+			staticBatch.submit(gameItem);
+		} else {
+			renderQueue.submit(gameItem, shaderFeatures);
+		}
+		return true;
+	}
+
+	/**
+	 * Moves a gameItem in the scene index, and into the cell now holding it.
+	 */
+	private void updateItemBounds(final int index) {
+		gameItems[index].getWorldBounds(transformation, itemBounds);
+		sceneIndex.update(itemProxies[index], itemBounds);
+		if (cellVisibility != null) {
+			itemCells[index] = cellVisibility.getGraph().findCell(itemBounds);
+		}
+	}
+
+	private void bindShader(final int features) {
+		final int program = shaderPermutations.getProgram(features);
+		if (program != boundProgram) {
+			GL46.glUseProgram(program);
+			boundProgram = program;
+		}
+		// blocks stay bound across programs, so the frame block is written once
+		if (!frameBound) {
+			uniformBlocks.bindFrame(projectionMatrix, viewMatrix, ambientLight, pointLight);
+			frameBound = true;
+		}
+	}
+
+	private void bindMesh(final Mesh mesh) {
+		uniformBlocks.bindMesh(mesh);
+	}
+
+	private void bindMaterial(final Material material) {
+		uniformBlocks.bindMaterial(material);
+	}
+
+	private void bindBatchMaterial(final Material material) {
+		bindShader(shaderFeatures | ShaderFeature.of(material));
+		uniformBlocks.bindMaterial(material);
 	}
 
 	@Override
@@ -395,9 +737,56 @@ public class Spike extends GameLoop implements GameLogic {
 	@Override
 	public void destroy() {
 		GL46.glDisableClientState(GL46.GL_VERTEX_ARRAY);
-		this.shaderProgram.destroy();
-		this.mesh.cleanUp();
-		this.texture.destroy();
+		try {
+			this.assetLoader.shutdown();
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+		}
+		System.out.println("Shader programs: " + this.shaderPermutations);
+		this.shaderPermutations.cleanUp();
+		this.placeholderMesh.cleanUp();
+		if (this.lodGroup != null) {
+			this.lodGroup.cleanUp();
+		} else if (this.mesh != null) {
+			this.mesh.cleanUp();
+		}
+		if (this.texture != null) {
+			this.texture.release();
+		}
+		// the unloaded assets keep their ids; a queue that lives on numbers the next ones afresh
+		this.renderQueue.resetIds();
+		System.out.println("Frustum culling: " + this.frustumCuller);
+		if (this.occlusionCuller != null) {
+			System.out.println("Occlusion culling: " + this.occlusionCuller);
+		}
+		if (this.cellVisibility != null) {
+			System.out.println("Cell visibility: " + this.cellVisibility);
+		}
+		if (this.lodSelector != null) {
+			System.out.println("Levels of detail: " + this.lodSelector);
+		}
+		if (this.framePreparation != null) {
+			System.out.println("Frame preparation: " + this.framePreparation);
+		}
+		System.out.println("Render queue: " + this.renderQueue);
+		this.renderQueue.cleanUp();
+		if (this.staticBatch != null) {
+			System.out.println("Static batch: " + this.staticBatch);
+			this.staticBatch.cleanUp();
+		}
+		System.out.println("Uniform blocks: " + this.uniformBlocks);
+		this.uniformBlocks.cleanUp();
+		if (this.lightClusters != null) {
+			System.out.println("Light clusters: " + this.lightClusters);
+			System.out.println("Light buffers: " + this.lightBuffers);
+			this.lightBuffers.cleanUp();
+		}
+		System.out.println("Texture cache: " + this.textureCache);
+		this.textureCache.destroy();
+		if (this.profiledLogic != null) {
+			System.out.println("Frame profile: " + this.profiledLogic.getProfiler());
+			exportProfile();
+		}
 	}
 
 }
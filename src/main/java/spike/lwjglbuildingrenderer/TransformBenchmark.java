@@ -0,0 +1,136 @@
+package spike.lwjglbuildingrenderer;
+
+import com.xenosnowfox.engine.graphics.GameItem;
+import com.xenosnowfox.engine.graphics.Transformation;
+import org.joml.Matrix4f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.lang.management.ManagementFactory;
+import java.nio.FloatBuffer;
+import java.util.Locale;
+
+/**
+ * Compares building model-view matrices the old way, with a fresh matrix per item and a full rebuild from Euler
+ * angles every frame, against the cached model matrices written in one batch into an off-heap buffer.
+ *
+ * <p>Each path runs for a scene where no item moves and one where a tenth of the items move every frame. Time is the
+ * best frame out of all iterations; allocations are the bytes the benchmark thread allocated per frame.
+ *
+ * <p>Before timing, both paths are checked to write the same matrices.
+ *
+ * <p>Usage: {@code TransformBenchmark [items] [iterations]}; no OpenGL context is needed.
+ */
+public class TransformBenchmark {
+
+	private static final float EPSILON = 1e-3f;
+
+	private static float sink;
+
+	public static void main(String... args) {
+		final int itemCount = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+		final int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+		final GameItem[] items = BenchmarkScene.randomItems(itemCount, 10f);
+		final Matrix4f viewMatrix = new Matrix4f().rotationX(0.2f).rotateY(0.7f).translate(-10f, -1.65f, 25f);
+		final Transformation transformation = new Transformation();
+		final FloatBuffer buffer = MemoryUtil.memAllocFloat(itemCount * 16);
+		try {
+			if (!selfCheck(items, viewMatrix, transformation, buffer)) {
+				System.err.println("Self check failed, not benchmarking.");
+				System.exit(1);
+			}
+			System.out.println("path     moving  ns/item  bytes/frame");
+			for (int moving : new int[] {0, itemCount / 10}) {
+				run("legacy", items, moving, iterations, () -> legacy(items, viewMatrix));
+				run("cached", items, moving, iterations, () -> {
+					buffer.clear();
+					transformation.writeModelViewMatrices(items, items.length, viewMatrix, buffer);
+					sink += buffer.get(0);
+				});
+			}
+		} finally {
+			MemoryUtil.memFree(buffer);
+		}
+	}
+
+	private static void run(final String name, final GameItem[] items, final int moving, final int iterations,
+			final Runnable frame) {
+		// warm up
+		for (int i = 0; i < iterations; i++) {
+			move(items, moving);
+			frame.run();
+		}
+		long best = Long.MAX_VALUE;
+		final long allocatedBefore = allocatedBytes();
+		for (int i = 0; i < iterations; i++) {
+			move(items, moving);
+			final long start = System.nanoTime();
+			frame.run();
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		final long allocated = allocatedBytes() - allocatedBefore;
+		System.out.printf(Locale.ROOT, "%-8s %6d %8.1f %12d%n",
+				name, moving, (double) best / items.length, allocated / iterations);
+	}
+
+	/**
+	 * The model-view matrices as they were built before matrices were cached: a fresh matrix for every item, rebuilt
+	 * from scratch every frame.
+	 */
+	private static void legacy(final GameItem[] items, final Matrix4f viewMatrix) {
+		for (GameItem item : items) {
+			final Matrix4f modelMatrix = new Matrix4f().identity().translate(item.getPosition())
+					.rotateX((float) Math.toRadians(-item.getRotation().x))
+					.rotateY((float) Math.toRadians(-item.getRotation().y))
+					.rotateZ((float) Math.toRadians(-item.getRotation().z))
+					.scale(item.getScale());
+			final Matrix4f modelViewMatrix = new Matrix4f(viewMatrix).mul(modelMatrix);
+			sink += modelViewMatrix.m30();
+		}
+	}
+
+	private static boolean selfCheck(final GameItem[] items, final Matrix4f viewMatrix,
+			final Transformation transformation, final FloatBuffer buffer) {
+		move(items, items.length / 10);
+		buffer.clear();
+		transformation.writeModelViewMatrices(items, items.length, viewMatrix, buffer);
+		if (buffer.position() != items.length * 16) {
+			System.err.printf(Locale.ROOT, "Buffer at %d after writing %d items%n", buffer.position(), items.length);
+			return false;
+		}
+		final Matrix4f written = new Matrix4f();
+		for (int i = 0; i < items.length; i++) {
+			final GameItem item = items[i];
+			final Matrix4f expected = new Matrix4f(viewMatrix).translate(item.getPosition())
+					.rotateX((float) Math.toRadians(-item.getRotation().x))
+					.rotateY((float) Math.toRadians(-item.getRotation().y))
+					.rotateZ((float) Math.toRadians(-item.getRotation().z))
+					.scale(item.getScale());
+			if (!written.set(i * 16, buffer).equals(expected, EPSILON)) {
+				System.err.printf(Locale.ROOT, "Item %d written as%n%sexpected%n%s", i, written, expected);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Moves and turns the first {@code count} items a little, through the setters that mark them dirty.
+	 */
+	private static void move(final GameItem[] items, final int count) {
+		for (int i = 0; i < count; i++) {
+			items[i].movePosition(0.01f, 0f, 0.01f);
+			items[i].moveRotation(0f, 0.5f, 0f);
+		}
+	}
+
+	private static long allocatedBytes() {
+		return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+				.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Hidden constructor.
+	 */
+	private TransformBenchmark() { }
+}
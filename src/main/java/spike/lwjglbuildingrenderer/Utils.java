@@ -52,6 +52,15 @@ public class Utils {
 		return list;
 	}
 
+	public static byte[] readAllBytes(String resourceName) throws Exception {
+		try (InputStream in = Utils.class.getResourceAsStream(resourceName)) {
+			if (in == null) {
+				throw new IOException("Resource `" + resourceName + "` does not exist.");
+			}
+			return in.readAllBytes();
+		}
+	}
+
 	public static List<String> readAllFileLines(String fileName) throws Exception {
 		List<String> list = new ArrayList<>();
 		File file = new File(fileName);
@@ -0,0 +1,112 @@
+package spike.lwjglbuildingrenderer;
+
+import com.xenosnowfox.engine.graphics.GrowableFloatArray;
+import com.xenosnowfox.engine.graphics.GrowableIntArray;
+import com.xenosnowfox.engine.graphics.MeshData;
+import com.xenosnowfox.engine.graphics.ObjData;
+import com.xenosnowfox.engine.graphics.VertexWelder;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Measures vertex welding on a large, flat shaded grid where every position is shared by faces with different
+ * normals, and compares it with a boxed {@link HashMap} based implementation.
+ *
+ * <p>Usage: {@code WeldBenchmark [faces] [iterations]}; no OpenGL context is needed.
+ */
+public class WeldBenchmark {
+
+	public static void main(String... args) {
+		final int faces = args.length > 0 ? Integer.parseInt(args[0]) : 4_000_000;
+		final int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+		final ObjData objData = flatShadedGrid(faces);
+		System.out.printf(Locale.ROOT, "Synthetic mesh: %d positions, %d faces%n",
+				objData.getPositionCount(), objData.getFaceCount());
+
+		VertexWelder.Stats stats = new VertexWelder.Stats();
+		long best = Long.MAX_VALUE;
+		MeshData welded = null;
+		for (int i = 0; i < iterations; i++) {
+			System.gc();
+			final long start = System.nanoTime();
+			welded = VertexWelder.weld(objData, stats);
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		System.out.printf(Locale.ROOT, "open addressing %8.1f ms %12.0f corners/s%n",
+				best / 1e6, stats.getCornerCount() / (best / 1e9));
+		System.out.println("  " + stats);
+
+		best = Long.MAX_VALUE;
+		int boxedVertices = 0;
+		for (int i = 0; i < iterations; i++) {
+			System.gc();
+			final long start = System.nanoTime();
+			boxedVertices = weldBoxed(objData);
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		System.out.printf(Locale.ROOT, "boxed HashMap   %8.1f ms %12.0f corners/s  same vertex count=%b%n",
+				best / 1e6, stats.getCornerCount() / (best / 1e9), boxedVertices == welded.getVertexCount());
+	}
+
+	/**
+	 * Baseline that keys a {@link HashMap} on the triple packed into a boxed {@code Long}; only counts vertices.
+	 */
+	private static int weldBoxed(final ObjData objData) {
+		final int[] faces = objData.getFaces().array();
+		final int corners = objData.getFaceCount() * 3;
+		final Map<Long, Integer> vertices = new HashMap<>();
+		final int[] indices = new int[corners];
+		for (int corner = 0; corner < corners; corner++) {
+			final long key = ((long) faces[corner * 3] << 42)
+					| ((long) (faces[corner * 3 + 1] & 0x1FFFFF) << 21)
+					| (faces[corner * 3 + 2] & 0x1FFFFF);
+			indices[corner] = vertices.computeIfAbsent(key, k -> vertices.size());
+		}
+		return vertices.size();
+	}
+
+	/**
+	 * A grid of quads with one normal per quad, so each inner position is used by six faces and four normals.
+	 */
+	static ObjData flatShadedGrid(final int faces) {
+		final int quadsPerSide = Math.max(1, (int) Math.sqrt(faces / 2.0));
+		final int verticesPerSide = quadsPerSide + 1;
+
+		final GrowableFloatArray positions = new GrowableFloatArray(verticesPerSide * verticesPerSide * 3);
+		final GrowableFloatArray textCoords = new GrowableFloatArray(verticesPerSide * verticesPerSide * 2);
+		for (int z = 0; z < verticesPerSide; z++) {
+			for (int x = 0; x < verticesPerSide; x++) {
+				positions.add(x * 0.25f, (float) Math.sin(x * 0.1) * (float) Math.cos(z * 0.1), z * -0.25f);
+				textCoords.add(x / (float) quadsPerSide, z / (float) quadsPerSide);
+			}
+		}
+
+		final GrowableFloatArray normals = new GrowableFloatArray(quadsPerSide * quadsPerSide * 3);
+		final GrowableIntArray faceIndices = new GrowableIntArray(quadsPerSide * quadsPerSide * 2 * ObjData.FACE_STRIDE);
+		for (int z = 0; z < quadsPerSide; z++) {
+			for (int x = 0; x < quadsPerSide; x++) {
+				final int normal = normals.size() / 3;
+				normals.add(0f, 1f, 0f);
+				final int a = z * verticesPerSide + x;
+				final int b = a + 1;
+				final int c = a + verticesPerSide;
+				final int d = c + 1;
+				faceIndices.add(a, a, normal);
+				faceIndices.add(c, c, normal);
+				faceIndices.add(d, d, normal);
+				faceIndices.add(a, a, normal);
+				faceIndices.add(d, d, normal);
+				faceIndices.add(b, b, normal);
+			}
+		}
+		return new ObjData(positions, textCoords, normals, faceIndices);
+	}
+
+	/**
+	 * Hidden constructor.
+	 */
+	private WeldBenchmark() { }
+}
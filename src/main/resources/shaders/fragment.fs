@@ -1,10 +1,12 @@
-#version 330
+#version 430
 
-in vec2 outTexCoord;
-in vec3 mvVertexNormal;
-in vec3 mvVertexPos;
+// variants are compiled with a #define per ShaderFeature: HAS_TEXTURE, CLUSTERED_LIGHTS
 
-out vec4 fragColor;
+layout (location=0) in vec2 outTexCoord;
+layout (location=1) in vec3 mvVertexNormal;
+layout (location=2) in vec3 mvVertexPos;
+
+layout (location=0) out vec4 fragColor;
 
 struct Attenuation
 {
@@ -22,39 +24,73 @@ struct PointLight
     Attenuation att;
 };
 
-struct Material
+// std140 blocks written by UniformBlocks
+layout (std140, binding = 0) uniform FrameBlock
+{
+    mat4 projectionMatrix;
+    mat4 viewMatrix;
+    vec3 ambientLight;
+    PointLight pointLight;
+};
+
+layout (std140, binding = 2) uniform MaterialBlock
 {
     vec4 ambient;
     vec4 diffuse;
     vec4 specular;
-    int hasTexture;
     float reflectance;
+    float specularPower;
+} material;
+
+#ifdef CLUSTERED_LIGHTS
+// std430 blocks written by LightBuffers, lights in view coordinates
+struct ClusterLight
+{
+    vec4 positionIntensity;
+    vec4 colourRange;
+    vec4 attenuation;
+};
+
+layout (std430, binding = 0) readonly buffer LightBlock
+{
+    ClusterLight lights[];
+};
+
+layout (std430, binding = 1) readonly buffer ClusterBlock
+{
+    // tiles in x and y, slices, light count
+    uvec4 clusterGrid;
+    // slice of a depth d is 0 below nearSlice, else 1 + floor(log(d) * scale - bias)
+    vec4 sliceScaleBiasNear;
+    // offset into lightIndices and count of each cluster's lights
+    uvec2 clusters[];
+};
+
+layout (std430, binding = 2) readonly buffer LightIndexBlock
+{
+    uint lightIndices[];
 };
+#endif
 
-uniform sampler2D texture_sampler;
-uniform vec3 ambientLight;
-uniform float specularPower;
-uniform Material material;
-uniform PointLight pointLight;
+#ifdef HAS_TEXTURE
+layout (binding = 0) uniform sampler2D texture_sampler;
+#endif
 
 vec4 ambientC;
 vec4 diffuseC;
 vec4 speculrC;
 
-void setupColours(Material material, vec2 textCoord)
+void setupColours(vec2 textCoord)
 {
-    if (material.hasTexture == 1)
-    {
-        ambientC = texture(texture_sampler, textCoord);
-        diffuseC = ambientC;
-        speculrC = ambientC;
-    }
-    else
-    {
-        ambientC = material.ambient;
-        diffuseC = material.diffuse;
-        speculrC = material.specular;
-    }
+#ifdef HAS_TEXTURE
+    ambientC = texture(texture_sampler, textCoord);
+    diffuseC = ambientC;
+    speculrC = ambientC;
+#else
+    ambientC = material.ambient;
+    diffuseC = material.diffuse;
+    speculrC = material.specular;
+#endif
 }
 
 vec4 calcPointLight(PointLight light, vec3 position, vec3 normal)
@@ -73,7 +109,7 @@ vec4 calcPointLight(PointLight light, vec3 position, vec3 normal)
     vec3 from_light_source = -to_light_source;
     vec3 reflected_light = normalize(reflect(from_light_source, normal));
     float specularFactor = max( dot(camera_direction, reflected_light), 0.0);
-    specularFactor = pow(specularFactor, specularPower);
+    specularFactor = pow(specularFactor, material.specularPower);
     specColour = speculrC * specularFactor * material.reflectance * vec4(light.colour, 1.0);
 
     // Attenuation
@@ -83,11 +119,49 @@ vec4 calcPointLight(PointLight light, vec3 position, vec3 normal)
     return (diffuseColour + specColour) / attenuationInv;
 }
 
+#ifdef CLUSTERED_LIGHTS
+// Same cluster as LightClusters.clusterOf
+uint clusterOf(vec3 position)
+{
+    vec4 clip = projectionMatrix * vec4(position, 1.0);
+    vec2 ndc = clip.xy / clip.w;
+    uvec2 tile = uvec2(clamp(floor((ndc + 1.0) * 0.5 * vec2(clusterGrid.xy)), vec2(0.0), vec2(clusterGrid.xy) - 1.0));
+    float depth = -position.z;
+    uint slice = depth < sliceScaleBiasNear.z
+        ? 0
+        : uint(clamp(1.0 + floor(log(depth) * sliceScaleBiasNear.x - sliceScaleBiasNear.y), 1.0, float(clusterGrid.z) - 1.0));
+    return (slice * clusterGrid.y + tile.y) * clusterGrid.x + tile.x;
+}
+
+vec4 calcClusterLights(vec3 position, vec3 normal)
+{
+    vec4 total = vec4(0, 0, 0, 0);
+    uvec2 cluster = clusters[clusterOf(position)];
+    for (uint i = 0; i < cluster.y; i++)
+    {
+        ClusterLight clusterLight = lights[lightIndices[cluster.x + i]];
+        PointLight light;
+        light.colour = clusterLight.colourRange.xyz;
+        light.position = clusterLight.positionIntensity.xyz;
+        light.intensity = clusterLight.positionIntensity.w;
+        light.att.constant = clusterLight.attenuation.x;
+        light.att.linear = clusterLight.attenuation.y;
+        light.att.exponent = clusterLight.attenuation.z;
+        total += calcPointLight(light, position, normal);
+    }
+    return total;
+}
+#endif
+
 void main()
 {
-    setupColours(material, outTexCoord);
+    setupColours(outTexCoord);
 
+#ifdef CLUSTERED_LIGHTS
+    vec4 diffuseSpecularComp = calcClusterLights(mvVertexPos, mvVertexNormal);
+#else
     vec4 diffuseSpecularComp = calcPointLight(pointLight, mvVertexPos, mvVertexNormal);
-    
+#endif
+
     fragColor = ambientC * vec4(ambientLight, 1) + diffuseSpecularComp;
 }
\ No newline at end of file
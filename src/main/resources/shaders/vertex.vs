@@ -1,19 +1,52 @@
-#version 330
+#version 420
 
 layout (location=0) in vec3 position;
 layout (location=1) in vec2 texCoord;
 layout (location=2) in vec3 vertexNormal;
+// per instance, see InstanceBuffer
+layout (location=3) in mat4 modelMatrix;
 
-out vec2 outTexCoord;
-out vec3 mvVertexNormal;
-out vec3 mvVertexPos;
+// explicit locations, as SPIR-V matches stages by location
+layout (location=0) out vec2 outTexCoord;
+layout (location=1) out vec3 mvVertexNormal;
+layout (location=2) out vec3 mvVertexPos;
 
-uniform mat4 modelViewMatrix;
-uniform mat4 projectionMatrix;
+struct Attenuation
+{
+    float constant;
+    float linear;
+    float exponent;
+};
+
+struct PointLight
+{
+    vec3 colour;
+    // Light position is assumed to be in view coordinates
+    vec3 position;
+    float intensity;
+    Attenuation att;
+};
+
+// std140 blocks written by UniformBlocks
+layout (std140, binding = 0) uniform FrameBlock
+{
+    mat4 projectionMatrix;
+    mat4 viewMatrix;
+    vec3 ambientLight;
+    PointLight pointLight;
+};
+
+layout (std140, binding = 1) uniform MeshBlock
+{
+    // decodes positions quantized to the mesh bounds; offset 0 and scale 1 for float positions
+    vec3 positionOffset;
+    vec3 positionScale;
+};
 
 void main()
 {
-    vec4 mvPos = modelViewMatrix * vec4(position, 1.0);
+    mat4 modelViewMatrix = viewMatrix * modelMatrix;
+    vec4 mvPos = modelViewMatrix * vec4(position * positionScale + positionOffset, 1.0);
     gl_Position = projectionMatrix * mvPos;
     outTexCoord = texCoord;
     mvVertexNormal = normalize(modelViewMatrix * vec4(vertexNormal, 0.0)).xyz;
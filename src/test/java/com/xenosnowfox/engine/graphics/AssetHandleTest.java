@@ -0,0 +1,47 @@
+package com.xenosnowfox.engine.graphics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AssetHandleTest {
+
+    @Test
+    void completeRunsCallbacks() {
+        AssetHandle<String> handle = new AssetHandle<>("asset");
+        List<String> received = new ArrayList<>();
+        handle.onReady(received::add);
+        handle.complete("loaded");
+        handle.onReady(received::add);
+        assertEquals(List.of("loaded", "loaded"), received);
+        assertTrue(handle.isReady());
+    }
+
+    @Test
+    void failDropsCallbacks() {
+        AssetHandle<String> handle = new AssetHandle<>("asset");
+        List<String> received = new ArrayList<>();
+        handle.onReady(received::add);
+        handle.fail(new Exception("broken"));
+        assertTrue(handle.isFailed());
+        assertFalse(handle.isReady());
+        assertEquals(List.of(), received);
+    }
+
+    @Test
+    void failAfterCompleteIsIgnored() {
+        AssetHandle<String> handle = new AssetHandle<>("asset");
+        handle.complete("loaded");
+        handle.fail(new Exception("texture broken"));
+        assertTrue(handle.isReady());
+        assertFalse(handle.isFailed());
+        assertNull(handle.getFailure());
+        assertEquals("loaded", handle.get());
+    }
+}
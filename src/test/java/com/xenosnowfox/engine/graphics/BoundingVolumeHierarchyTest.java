@@ -0,0 +1,154 @@
+package com.xenosnowfox.engine.graphics;
+
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BoundingVolumeHierarchyTest {
+
+    private final BoundingVolumeHierarchy hierarchy = new BoundingVolumeHierarchy(0f);
+
+    private final List<Integer> hits = new ArrayList<>();
+
+    private final BoundingVolumeHierarchy.RayVisitor collect = (proxy, userData, maxDistance) -> {
+        hits.add(userData);
+        return maxDistance;
+    };
+
+    @Test
+    void axisParallelRayOnABoxFace() {
+        hierarchy.insert(new Bounds().set(0f, 0f, 0f, 1f, 1f, 1f), 7);
+
+        // along z, with x and y on the min and max faces
+        hierarchy.raycast(new Vector3f(0f, 1f, -5f), new Vector3f(0f, 0f, 1f), 100f, collect);
+        assertEquals(List.of(7), hits);
+        hits.clear();
+        hierarchy.raycast(new Vector3f(1f, 0f, -5f), new Vector3f(-0f, -0f, 1f), 100f, collect);
+        assertEquals(List.of(7), hits);
+        hits.clear();
+
+        // just beside the box, or not reaching it
+        hierarchy.raycast(new Vector3f(-0.001f, 0.5f, -5f), new Vector3f(0f, 0f, 1f), 100f, collect);
+        hierarchy.raycast(new Vector3f(0.5f, 1.001f, -5f), new Vector3f(0f, 0f, 1f), 100f, collect);
+        hierarchy.raycast(new Vector3f(0f, 0f, -5f), new Vector3f(0f, 0f, 1f), 4.9f, collect);
+        assertEquals(List.of(), hits);
+    }
+
+    @Test
+    void rayStartingInsideABox() {
+        hierarchy.insert(new Bounds().set(0f, 0f, 0f, 1f, 1f, 1f), 7);
+        hierarchy.raycast(new Vector3f(0.5f, 0.5f, 0.5f), new Vector3f(1f, 0f, 0f), 0.1f, collect);
+        assertEquals(List.of(7), hits);
+    }
+
+    @Test
+    void nearestFirst() {
+        // a row of boxes along x, given out of order
+        int count = 32;
+        float[] boxes = new float[count * 6];
+        int[] userData = new int[count];
+        for (int i = 0; i < count; i++) {
+            int position = (i * 13) % count;
+            userData[i] = position;
+            setBox(boxes, i, position * 10f, 0f, 0f);
+        }
+        hierarchy.build(boxes, userData, count, new int[count]);
+
+        hierarchy.raycast(new Vector3f(-5f, 0.5f, 0.5f), new Vector3f(1f, 0f, 0f), 1000f, collect);
+        assertEquals(count, hits.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, hits.get(i));
+        }
+
+        hits.clear();
+        hierarchy.raycast(new Vector3f(1000f, 0.5f, 0.5f), new Vector3f(-1f, 0f, 0f), 1000f, collect);
+        for (int i = 0; i < count; i++) {
+            assertEquals(count - 1 - i, hits.get(i));
+        }
+    }
+
+    @Test
+    void exactHitPrunesFartherBoxes() {
+        int count = 32;
+        float[] boxes = new float[count * 6];
+        int[] userData = new int[count];
+        for (int i = 0; i < count; i++) {
+            userData[i] = i;
+            setBox(boxes, i, i * 10f, 0f, 0f);
+        }
+        hierarchy.build(boxes, userData, count, new int[count]);
+
+        // every box is an exact hit at its near face
+        hierarchy.raycast(new Vector3f(95f, 0.5f, 0.5f), new Vector3f(1f, 0f, 0f), 1000f,
+                (proxy, data, maxDistance) -> {
+                    hits.add(data);
+                    return data * 10f - 95f;
+                });
+        assertEquals(List.of(10), hits);
+    }
+
+    @Test
+    void sameBoxesAsALinearScan() {
+        Random random = new Random(3);
+        int count = 500;
+        float[] boxes = new float[count * 6];
+        int[] userData = new int[count];
+        for (int i = 0; i < count; i++) {
+            userData[i] = i;
+            setBox(boxes, i, random.nextFloat() * 200f, random.nextFloat() * 20f, random.nextFloat() * 200f);
+        }
+        hierarchy.build(boxes, userData, count, new int[count]);
+
+        for (int query = 0; query < 100; query++) {
+            Vector3f origin = new Vector3f(random.nextFloat() * 200f, random.nextFloat() * 20f, random.nextFloat() * 200f);
+            Vector3f direction = new Vector3f(random.nextFloat() - 0.5f, random.nextFloat() - 0.5f,
+                    random.nextFloat() - 0.5f);
+            hits.clear();
+            hierarchy.raycast(origin, direction, 50f, collect);
+            Set<Integer> expected = new HashSet<>();
+            for (int i = 0; i < count; i++) {
+                if (crosses(boxes, i, origin, direction, 50f)) {
+                    expected.add(i);
+                }
+            }
+            assertEquals(expected.size(), hits.size(), "query " + query);
+            assertEquals(expected, new HashSet<>(hits), "query " + query);
+        }
+    }
+
+    /**
+     * A unit box with its min corner at the given position.
+     */
+    private static void setBox(float[] boxes, int index, float x, float y, float z) {
+        int offset = index * 6;
+        boxes[offset] = x;
+        boxes[offset + 1] = y;
+        boxes[offset + 2] = z;
+        boxes[offset + 3] = x + 1f;
+        boxes[offset + 4] = y + 1f;
+        boxes[offset + 5] = z + 1f;
+    }
+
+    /**
+     * Linear slab test, for rays with no zero component.
+     */
+    private static boolean crosses(float[] boxes, int index, Vector3f origin, Vector3f direction, float length) {
+        int offset = index * 6;
+        float entry = 0f;
+        float exit = length;
+        for (int axis = 0; axis < 3; axis++) {
+            float near = (boxes[offset + axis] - origin.get(axis)) / direction.get(axis);
+            float far = (boxes[offset + 3 + axis] - origin.get(axis)) / direction.get(axis);
+            entry = Math.max(entry, Math.min(near, far));
+            exit = Math.min(exit, Math.max(near, far));
+        }
+        return entry <= exit;
+    }
+}
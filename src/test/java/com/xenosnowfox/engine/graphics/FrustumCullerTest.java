@@ -0,0 +1,118 @@
+package com.xenosnowfox.engine.graphics;
+
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FrustumCullerTest {
+
+    private static final float EPSILON = 1e-4f;
+
+    /**
+     * Camera at the origin looking down -z, 60 degrees high, 16:9, from 0.01 to 1000.
+     */
+    private final Matrix4f projection = new Matrix4f().setPerspective((float) Math.toRadians(60), 16f / 9f, 0.01f, 1000f);
+
+    private final FrustumIntersection frustum = new FrustumIntersection(projection);
+
+    @Test
+    void boundsSphereThroughCorners() {
+        Bounds bounds = new Bounds().set(-1f, 0f, -2f, 3f, 4f, 2f);
+        assertEquals(new Vector3f(1f, 2f, 0f), bounds.getCenter());
+        assertEquals((float) Math.sqrt(2 * 2 + 2 * 2 + 2 * 2), bounds.getRadius(), EPSILON);
+    }
+
+    @Test
+    void boundsFollowTranslationAndScale() {
+        Bounds local = new Bounds().set(-1f, -1f, -1f, 1f, 1f, 1f);
+        Bounds world = local.transform(new Matrix4f().translation(10f, 0f, -5f).scale(1f, 3f, 1f), new Bounds());
+        assertTrue(world.getMin().equals(new Vector3f(9f, -3f, -6f), EPSILON));
+        assertTrue(world.getMax().equals(new Vector3f(11f, 3f, -4f), EPSILON));
+        assertTrue(world.getCenter().equals(new Vector3f(10f, 0f, -5f), EPSILON));
+        // grown by the largest scale, so it still holds the stretched box
+        assertEquals(3f * local.getRadius(), world.getRadius(), EPSILON);
+    }
+
+    @Test
+    void rotatedBoxGrows() {
+        Bounds local = new Bounds().set(-1f, 0f, -1f, 1f, 1f, 1f);
+        Bounds world = local.transform(new Matrix4f().rotationY((float) Math.toRadians(45)), new Bounds());
+        float halfDiagonal = (float) Math.sqrt(2);
+        assertEquals(-halfDiagonal, world.getMin().x, EPSILON);
+        assertEquals(halfDiagonal, world.getMax().z, EPSILON);
+        assertEquals(local.getRadius(), world.getRadius(), EPSILON);
+    }
+
+    @Test
+    void ahead() {
+        assertTrue(FrustumCuller.intersects(frustum, box(0f, 0f, -10f, 1f)));
+    }
+
+    @Test
+    void behind() {
+        assertFalse(FrustumCuller.intersects(frustum, box(0f, 0f, 10f, 1f)));
+    }
+
+    @Test
+    void beyondFarPlane() {
+        assertFalse(FrustumCuller.intersects(frustum, box(0f, 0f, -1100f, 1f)));
+        assertTrue(FrustumCuller.intersects(frustum, box(0f, 0f, -999f, 1f)));
+    }
+
+    @Test
+    void besidePlanes() {
+        // at 11 ahead, the right plane is about 11.3 to the side and the top plane about 6.4 up
+        assertFalse(FrustumCuller.intersects(frustum, box(13f, 0f, -10f, 1f)));
+        assertTrue(FrustumCuller.intersects(frustum, box(10.8f, 0f, -10f, 1f)));
+        assertFalse(FrustumCuller.intersects(frustum, box(0f, 7.5f, -10f, 1f)));
+        assertTrue(FrustumCuller.intersects(frustum, box(0f, 6.3f, -10f, 1f)));
+    }
+
+    @Test
+    void straddlingNearPlane() {
+        assertTrue(FrustumCuller.intersects(frustum, box(0f, 0f, 0f, 1f)));
+    }
+
+    @Test
+    void enclosingTheFrustum() {
+        assertTrue(FrustumCuller.intersects(frustum, box(0f, 0f, 0f, 5000f)));
+    }
+
+    @Test
+    void boxDecidesWhenSphereStraddles() {
+        // a flat plate up and to the right: its sphere reaches into the frustum, the box does not
+        Bounds plate = new Bounds().set(15f, 15f, -10f, 200f, 200f, -9f);
+        Vector3f center = plate.getCenter();
+        assertEquals(FrustumIntersection.INTERSECT, frustum.intersectSphere(center.x, center.y, center.z, plate.getRadius()));
+        assertFalse(FrustumCuller.intersects(frustum, plate));
+    }
+
+    @Test
+    void countsPerFrame() {
+        FrustumCuller culler = new FrustumCuller();
+        culler.update(new Matrix4f(projection), new Matrix4f());
+        culler.isVisible(box(0f, 0f, -10f, 1f));
+        culler.isVisible(box(0f, 0f, 10f, 1f));
+        culler.isVisible(box(0f, 0f, 20f, 1f));
+        assertEquals(1, culler.getVisibleCount());
+        assertEquals(2, culler.getCulledCount());
+
+        // looking the other way swaps them
+        culler.update(new Matrix4f(projection), new Matrix4f().rotationY((float) Math.PI));
+        culler.isVisible(box(0f, 0f, -10f, 1f));
+        culler.isVisible(box(0f, 0f, 10f, 1f));
+        assertEquals(1, culler.getVisibleCount());
+        assertEquals(1, culler.getCulledCount());
+        assertEquals(2, culler.getTotalVisibleCount());
+        assertEquals(3, culler.getTotalCulledCount());
+    }
+
+    private static Bounds box(float x, float y, float z, float halfSize) {
+        return new Bounds().set(x - halfSize, y - halfSize, z - halfSize, x + halfSize, y + halfSize, z + halfSize);
+    }
+}
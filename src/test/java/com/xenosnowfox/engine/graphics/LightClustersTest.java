@@ -0,0 +1,168 @@
+package com.xenosnowfox.engine.graphics;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LightClustersTest {
+
+    private static final int MAX_LIGHTS_PER_CLUSTER = 4;
+
+    /**
+     * Camera at the origin looking down -z, 90 degrees high and wide, from 0.1 to 200.
+     */
+    private final Matrix4f projection = new Matrix4f().setPerspective((float) Math.toRadians(90), 1f, 0.1f, 200f);
+
+    private final Matrix4f view = new Matrix4f();
+
+    private ForkJoinPool pool;
+
+    private LightClusters clusters;
+
+    @BeforeEach
+    void createClusters() {
+        pool = new ForkJoinPool(2);
+        // slices start at 0.1, 1, then 100^(1/7) = 1.93, 3.73, 7.20, ...
+        clusters = new LightClusters(pool, 4, 4, 8, 1f, 100f, 64, MAX_LIGHTS_PER_CLUSTER);
+    }
+
+    @AfterEach
+    void shutDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    void lightSpanningASliceBoundary() {
+        float boundary = (float) Math.pow(100, 1 / 7.0);
+        assertEquals(1, sliceOf(boundary - 0.01f));
+        assertEquals(2, sliceOf(boundary + 0.01f));
+
+        update(light(0f, 0f, -boundary, 0.5f));
+        assertTrue(contains(clusters.clusterOf(0.1f, 0.1f, boundary - 0.4f), 0));
+        assertTrue(contains(clusters.clusterOf(0.1f, 0.1f, boundary + 0.4f), 0));
+        // beyond its range in depth and to the side
+        assertFalse(contains(clusters.clusterOf(0.1f, 0.1f, 5f), 0));
+        assertFalse(contains(clusters.clusterOf(0.1f, 0.1f, 0.5f), 0));
+        assertFalse(contains(clusters.clusterOf(-0.9f, 0.1f, boundary), 0));
+    }
+
+    @Test
+    void lightBehindTheCamera() {
+        update(light(0f, 0f, 10f, 5f));
+        assertEquals(0, clusters.getAssignmentCount());
+    }
+
+    @Test
+    void lightBehindTheCameraReachingIntoView() {
+        update(light(0f, 0f, 1f, 3f));
+        // touches every tile near the camera, however wide the view
+        assertTrue(contains(clusters.clusterOf(-0.9f, -0.9f, 0.5f), 0));
+        assertTrue(contains(clusters.clusterOf(0.9f, 0.9f, 0.5f), 0));
+        assertTrue(contains(clusters.clusterOf(0.1f, 0.1f, 1.5f), 0));
+        assertFalse(contains(clusters.clusterOf(0.1f, 0.1f, 5f), 0));
+    }
+
+    @Test
+    void lightBeyondTheLastSlice() {
+        update(light(0f, 0f, -150f, 10f));
+        assertEquals(0, clusters.getAssignmentCount());
+    }
+
+    @Test
+    void overflowingClusterKeepsTheFirstLights() {
+        PointLight[] lights = new PointLight[MAX_LIGHTS_PER_CLUSTER + 2];
+        for (int i = 0; i < lights.length; i++) {
+            lights[i] = light(0.1f * i, 0f, -2.5f, 0.2f);
+        }
+        update(lights);
+
+        int cluster = clusters.clusterOf(0.1f, 0.1f, 2.5f);
+        assertEquals(MAX_LIGHTS_PER_CLUSTER, clusters.getClusterLightCount(cluster));
+        for (int i = 0; i < MAX_LIGHTS_PER_CLUSTER; i++) {
+            assertEquals(i, clusters.getClusterLight(cluster, i));
+        }
+        int listed = 0;
+        for (int i = 0; i < clusters.getClusterCount(); i++) {
+            assertTrue(clusters.getClusterLightCount(i) <= MAX_LIGHTS_PER_CLUSTER);
+            listed += clusters.getClusterLightCount(i);
+        }
+        assertEquals(listed, clusters.getAssignmentCount());
+    }
+
+    @Test
+    void lightsBeyondTheCapAreDropped() {
+        LightClusters small = new LightClusters(pool, 4, 4, 8, 1f, 100f, 2, MAX_LIGHTS_PER_CLUSTER);
+        small.update(projection, view, new PointLight[]{
+                light(0f, 0f, -5f, 1f), light(0f, 0f, -5f, 1f), light(0f, 0f, -5f, 1f)}, 3);
+        assertEquals(2, small.getLightCount());
+        assertEquals(2, small.getClusterLightCount(small.clusterOf(0.1f, 0.1f, 5f)));
+    }
+
+    @Test
+    void sameListsOnOneThread() {
+        // more lights than one chunk binds, and more per cluster than fit
+        Random random = new Random(7);
+        PointLight[] lights = new PointLight[600];
+        for (int i = 0; i < lights.length; i++) {
+            lights[i] = light(random.nextFloat() * 40f - 20f, random.nextFloat() * 40f - 20f,
+                    -random.nextFloat() * 60f, 1f + random.nextFloat() * 4f);
+        }
+        LightClusters parallel = new LightClusters(pool, 4, 4, 8, 1f, 100f, 1024, MAX_LIGHTS_PER_CLUSTER);
+        parallel.update(projection, view, lights, lights.length);
+
+        ForkJoinPool single = new ForkJoinPool(1);
+        try {
+            LightClusters sequential = new LightClusters(single, 4, 4, 8, 1f, 100f, 1024, MAX_LIGHTS_PER_CLUSTER);
+            sequential.update(projection, view, lights, lights.length);
+            assertEquals(parallel.getAssignmentCount(), sequential.getAssignmentCount());
+            for (int cluster = 0; cluster < parallel.getClusterCount(); cluster++) {
+                assertArrayEquals(lightsOf(parallel, cluster), lightsOf(sequential, cluster), "cluster " + cluster);
+            }
+        } finally {
+            single.shutdown();
+        }
+    }
+
+    private void update(PointLight... lights) {
+        clusters.update(projection, view, lights, lights.length);
+    }
+
+    private int sliceOf(float depth) {
+        return clusters.clusterOf(0f, 0f, depth) / (clusters.getTilesX() * clusters.getTilesY());
+    }
+
+    private boolean contains(int cluster, int light) {
+        for (int i = 0; i < clusters.getClusterLightCount(cluster); i++) {
+            if (clusters.getClusterLight(cluster, i) == light) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int[] lightsOf(LightClusters clusters, int cluster) {
+        int[] lights = new int[clusters.getClusterLightCount(cluster)];
+        for (int i = 0; i < lights.length; i++) {
+            lights[i] = clusters.getClusterLight(cluster, i);
+        }
+        return lights;
+    }
+
+    /**
+     * A light fading with the square of the distance that reaches exactly {@code range}.
+     */
+    private static PointLight light(float x, float y, float z, float range) {
+        return new PointLight(new Vector3f(1f), new Vector3f(x, y, z), range * range * LightClusters.CUTOFF,
+                new PointLight.Attenuation(0f, 0f, 1f));
+    }
+}
@@ -0,0 +1,141 @@
+package com.xenosnowfox.engine.graphics;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class MeshCacheTest {
+
+    @TempDir
+    Path directory;
+
+    private String source;
+
+    private Path cache;
+
+    @BeforeEach
+    void writeCache() throws IOException {
+        Path model = directory.resolve("triangle.obj");
+        Files.write(model, "v 0 0 0\nv 1 0 0\nv 0 1 0\nf 1 2 3\n".getBytes(StandardCharsets.UTF_8));
+        source = model.toString();
+        cache = MeshCache.cachePathFor(source);
+        MeshData meshData = new MeshData(
+                new float[]{0, 0, 0, 1, 0, 0, 0, 1, 0},
+                new float[6],
+                new float[]{0, 0, 1, 0, 0, 1, 0, 0, 1},
+                new int[]{0, 1, 2},
+                new SubMesh[]{new SubMesh(0, 3, "brick")},
+                Collections.singletonList("triangle.mtl"));
+        MeshCache.write(source, meshData);
+    }
+
+    @Test
+    void hit() throws IOException {
+        MeshCache.CachedMesh mesh = MeshCache.open(source, true);
+        assertNotNull(mesh);
+        assertEquals(3, mesh.getVertexCount());
+        assertEquals(3, mesh.getIndexCount());
+        assertEquals(3 * MeshCache.VERTEX_STRIDE, mesh.getVertices().remaining());
+        assertEquals(2, mesh.getIndices().getInt(2 * Integer.BYTES));
+        assertEquals("brick", mesh.getSubMeshes()[0].getMaterialName());
+        assertEquals(Collections.singletonList("triangle.mtl"), mesh.getMaterialLibraries());
+        assertArrayEquals(new float[]{0, 0, 0, 1, 1, 0}, mesh.getBounds());
+    }
+
+    @Test
+    void missing() throws IOException {
+        Files.delete(cache);
+        assertNull(MeshCache.open(source, false));
+    }
+
+    @Test
+    void shorterThanHeader() throws IOException {
+        truncate(40);
+        assertNull(MeshCache.open(source, false));
+    }
+
+    @Test
+    void truncatedBlocks() throws IOException {
+        truncate(Files.size(cache) - 1);
+        assertNull(MeshCache.open(source, false));
+    }
+
+    @Test
+    void wrongMagic() throws IOException {
+        putInt(0, 0);
+        assertNull(MeshCache.open(source, false));
+    }
+
+    @Test
+    void wrongStride() throws IOException {
+        putInt(40, MeshCache.VERTEX_STRIDE / 2);
+        assertNull(MeshCache.open(source, false));
+    }
+
+    @Test
+    void countsBeyondTheFile() throws IOException {
+        putInt(32, Integer.MAX_VALUE);
+        assertNull(MeshCache.open(source, false));
+        writeCache();
+        putInt(36, -3);
+        assertNull(MeshCache.open(source, false));
+    }
+
+    @Test
+    void stringBeyondItsBlock() throws IOException {
+        // the first string, the material library, follows the only submesh
+        putInt(80 + 8, 1000);
+        assertNull(MeshCache.open(source, false));
+    }
+
+    @Test
+    void submeshBeyondTheIndices() throws IOException {
+        putInt(80 + Integer.BYTES, 4);
+        assertNull(MeshCache.open(source, false));
+    }
+
+    @Test
+    void indexBeyondTheVertices() throws IOException {
+        // the index block ends the file
+        long lastIndex = Files.size(cache) - Integer.BYTES;
+        putInt((int) lastIndex, 3);
+        assertNull(MeshCache.open(source, false));
+        writeCache();
+        putInt((int) lastIndex, -1);
+        assertNull(MeshCache.open(source, false));
+    }
+
+    @Test
+    void staleSource() throws IOException {
+        Files.write(Path.of(source), "v 0 0 0\n".getBytes(StandardCharsets.UTF_8));
+        assertNull(MeshCache.open(source, false));
+    }
+
+    private void truncate(long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        }
+    }
+
+    private void putInt(int offset, int value) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).putInt(0, value);
+        try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.WRITE)) {
+            channel.write(buffer, offset);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.xenosnowfox.engine.graphics;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OcclusionCullerTest {
+
+    private static final int WIDTH = 64;
+
+    private static final int HEIGHT = 48;
+
+    /**
+     * Camera at the origin looking down -z, 90 degrees high, from 0.1 to 100.
+     */
+    private final Matrix4f projection = new Matrix4f().setPerspective((float) Math.toRadians(90), 4f / 3f, 0.1f, 100f);
+
+    private final Matrix4f view = new Matrix4f();
+
+    private ForkJoinPool pool;
+
+    private OcclusionCuller culler;
+
+    @BeforeEach
+    void createCuller() {
+        // several bands, so they are filled in parallel
+        pool = new ForkJoinPool(2);
+        culler = new OcclusionCuller(pool, WIDTH, HEIGHT);
+    }
+
+    @AfterEach
+    void shutDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    void emptyBufferHidesNothing() {
+        culler.render(projection, view);
+        assertEquals(0, culler.getTriangleCount());
+        assertEquals(1f, culler.getDepth(0, WIDTH / 2, HEIGHT / 2));
+        assertTrue(culler.isVisible(box(0f, 0f, -20f, 1f)));
+    }
+
+    @Test
+    void wallFillsTheBufferAtItsDepth() {
+        culler.addOccluder(wall(-50f, 50f, -10f));
+        culler.render(projection, view);
+        assertEquals(2, culler.getTriangleCount());
+
+        float expected = projection.transformProject(new Vector3f(0f, 0f, -10f)).z * 0.5f + 0.5f;
+        for (int level = 0; level < culler.getLevelCount(); level++) {
+            assertEquals(expected, culler.getDepth(level, 0, 0), 1e-4f, "level " + level);
+        }
+        assertEquals(expected, culler.getDepth(0, WIDTH - 1, HEIGHT - 1), 1e-4f);
+    }
+
+    @Test
+    void fullyHiddenBox() {
+        culler.addOccluder(wall(-50f, 50f, -10f));
+        culler.render(projection, view);
+        assertFalse(culler.isVisible(box(0f, 0f, -20f, 1f)));
+        assertFalse(culler.isVisible(box(5f, -3f, -40f, 4f)));
+        assertEquals(0, culler.getVisibleCount());
+        assertEquals(2, culler.getOccludedCount());
+    }
+
+    @Test
+    void boxInFrontOfTheWall() {
+        culler.addOccluder(wall(-50f, 50f, -10f));
+        culler.render(projection, view);
+        assertTrue(culler.isVisible(box(0f, 0f, -5f, 1f)));
+        // reaching through the wall
+        assertTrue(culler.isVisible(box(0f, 0f, -10f, 1f)));
+    }
+
+    @Test
+    void partlyHiddenBox() {
+        // the wall only covers the left half of the view
+        culler.addOccluder(wall(-50f, 0f, -10f));
+        culler.render(projection, view);
+        assertTrue(culler.getDepth(0, WIDTH / 4, HEIGHT / 2) < 1f);
+        assertEquals(1f, culler.getDepth(0, WIDTH * 3 / 4, HEIGHT / 2));
+
+        assertFalse(culler.isVisible(box(-10f, 0f, -20f, 1f)));
+        assertTrue(culler.isVisible(box(0f, 0f, -20f, 1f)));
+        assertTrue(culler.isVisible(box(10f, 0f, -20f, 1f)));
+    }
+
+    @Test
+    void boxBehindTheNearPlane() {
+        culler.addOccluder(wall(-50f, 50f, -10f));
+        culler.render(projection, view);
+        // entirely behind the camera
+        assertTrue(culler.isVisible(box(0f, 0f, 5f, 1f)));
+        // reaching from behind the wall to behind the camera
+        assertTrue(culler.isVisible(new Bounds().set(-1f, -1f, -20f, 1f, 1f, 1f)));
+    }
+
+    @Test
+    void occluderCrossingTheNearPlaneIsLeftOut() {
+        // a floor running from behind the camera into the distance
+        culler.addOccluder(new Occluder(
+                new float[]{-50f, -1f, 10f, 50f, -1f, 10f, 50f, -1f, -90f, -50f, -1f, -90f},
+                new int[]{0, 1, 2, 0, 2, 3}));
+        culler.render(projection, view);
+        assertEquals(0, culler.getTriangleCount());
+        assertTrue(culler.isVisible(box(0f, -3f, -20f, 1f)));
+    }
+
+    @Test
+    void occluderFollowsItsModelMatrix() {
+        Occluder wall = wall(-50f, 50f, -10f);
+        culler.addOccluder(wall);
+        culler.render(projection, view);
+        assertFalse(culler.isVisible(box(0f, 0f, -20f, 1f)));
+
+        // moved behind the box
+        wall.setModelMatrix(new Matrix4f().translation(0f, 0f, -20f));
+        culler.render(projection, view);
+        assertTrue(culler.isVisible(box(0f, 0f, -20f, 1f)));
+        assertEquals(1, culler.getVisibleCount());
+        assertEquals(0, culler.getOccludedCount());
+    }
+
+    /**
+     * A wall facing the camera at depth {@code z}, from {@code left} to {@code right} and from -50 to 50 high.
+     */
+    private static Occluder wall(float left, float right, float z) {
+        return new Occluder(
+                new float[]{left, -50f, z, right, -50f, z, right, 50f, z, left, 50f, z},
+                new int[]{0, 1, 2, 0, 2, 3});
+    }
+
+    private static Bounds box(float x, float y, float z, float halfSize) {
+        return new Bounds().set(x - halfSize, y - halfSize, z - halfSize, x + halfSize, y + halfSize, z + halfSize);
+    }
+}
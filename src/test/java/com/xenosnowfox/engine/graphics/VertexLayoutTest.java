@@ -0,0 +1,119 @@
+package com.xenosnowfox.engine.graphics;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VertexLayoutTest {
+
+    @Test
+    void halfRoundTripsEveryHalf() {
+        for (int bits = 0; bits <= 0xFFFF; bits++) {
+            short half = (short) bits;
+            float value = VertexLayout.fromHalf(half);
+            if (Float.isNaN(value)) {
+                assertTrue(Float.isNaN(VertexLayout.fromHalf(VertexLayout.toHalf(value))), "NaN " + bits);
+            } else {
+                assertEquals(half, VertexLayout.toHalf(value), "half " + Integer.toHexString(bits));
+            }
+        }
+    }
+
+    @Test
+    void halfKeepsSignedZero() {
+        assertEquals((short) 0x0000, VertexLayout.toHalf(0f));
+        assertEquals((short) 0x8000, VertexLayout.toHalf(-0f));
+        assertEquals(Float.floatToRawIntBits(-0f), Float.floatToRawIntBits(VertexLayout.fromHalf((short) 0x8000)));
+    }
+
+    @Test
+    void halfSubnormals() {
+        float smallest = (float) Math.pow(2, -24);
+        assertEquals((short) 0x0001, VertexLayout.toHalf(smallest));
+        assertEquals(smallest, VertexLayout.fromHalf((short) 0x0001));
+        assertEquals((short) 0x03FF, VertexLayout.toHalf(VertexLayout.fromHalf((short) 0x03FF)));
+        // half of the smallest subnormal rounds to even, i.e. zero; a bit more rounds up
+        assertEquals((short) 0x0000, VertexLayout.toHalf(smallest / 2));
+        assertEquals((short) 0x0001, VertexLayout.toHalf(smallest * 0.75f));
+        assertEquals((short) 0x0000, VertexLayout.toHalf(Float.MIN_VALUE));
+    }
+
+    @Test
+    void halfInfinitiesAndNaN() {
+        assertEquals((short) 0x7C00, VertexLayout.toHalf(Float.POSITIVE_INFINITY));
+        assertEquals((short) 0xFC00, VertexLayout.toHalf(Float.NEGATIVE_INFINITY));
+        assertEquals(Float.POSITIVE_INFINITY, VertexLayout.fromHalf((short) 0x7C00));
+        assertEquals(Float.NEGATIVE_INFINITY, VertexLayout.fromHalf((short) 0xFC00));
+        assertTrue(Float.isNaN(VertexLayout.fromHalf(VertexLayout.toHalf(Float.NaN))));
+    }
+
+    @Test
+    void halfAboveMaxBecomesInfinite() {
+        assertEquals((short) 0x7BFF, VertexLayout.toHalf(65504f));
+        // 65520 is halfway to the next exponent and rounds to even, i.e. up to infinity
+        assertEquals((short) 0x7BFF, VertexLayout.toHalf(65519f));
+        assertEquals((short) 0x7C00, VertexLayout.toHalf(65520f));
+        assertEquals((short) 0x7C00, VertexLayout.toHalf(1e6f));
+        assertEquals((short) 0xFC00, VertexLayout.toHalf(-Float.MAX_VALUE));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 2})
+    void normalAxes(int axis) {
+        for (float sign : new float[]{1f, -1f}) {
+            float[] normal = new float[3];
+            normal[axis] = sign;
+            int packed = VertexLayout.packNormal(normal[0], normal[1], normal[2]);
+            for (int component = 0; component < 3; component++) {
+                assertEquals(normal[component], VertexLayout.unpackNormal(packed, component), 0f);
+            }
+            // w stays 0
+            assertEquals(0, packed >>> 30);
+        }
+    }
+
+    @Test
+    void normalDiagonals() {
+        float d = (float) (1 / Math.sqrt(3));
+        for (int signs = 0; signs < 8; signs++) {
+            float x = (signs & 1) != 0 ? -d : d;
+            float y = (signs & 2) != 0 ? -d : d;
+            float z = (signs & 4) != 0 ? -d : d;
+            int packed = VertexLayout.packNormal(x, y, z);
+            assertEquals(x, VertexLayout.unpackNormal(packed, 0), 0.5f / 511f);
+            assertEquals(y, VertexLayout.unpackNormal(packed, 1), 0.5f / 511f);
+            assertEquals(z, VertexLayout.unpackNormal(packed, 2), 0.5f / 511f);
+        }
+    }
+
+    @Test
+    void unorm16Ends() {
+        assertEquals((short) 0, VertexLayout.quantizeUnorm16(-2f, -2f, 6f));
+        assertEquals((short) 0xFFFF, VertexLayout.quantizeUnorm16(6f, -2f, 6f));
+        assertEquals(-2f, VertexLayout.dequantizeUnorm16((short) 0, -2f, 6f), 0f);
+        assertEquals(6f, VertexLayout.dequantizeUnorm16((short) 0xFFFF, -2f, 6f), 0f);
+    }
+
+    @Test
+    void unorm16RoundTripWithinHalfAStep() {
+        float min = -3f;
+        float max = 5f;
+        float tolerance = (max - min) / 131070f * 1.01f;
+        for (int i = 0; i <= 1000; i++) {
+            float value = min + (max - min) * i / 1000f;
+            float decoded = VertexLayout.dequantizeUnorm16(VertexLayout.quantizeUnorm16(value, min, max), min, max);
+            assertEquals(value, decoded, tolerance);
+        }
+    }
+
+    @Test
+    void unorm16ClampsOutOfRange() {
+        assertEquals((short) 0, VertexLayout.quantizeUnorm16(-10f, 0f, 1f));
+        assertEquals((short) 0xFFFF, VertexLayout.quantizeUnorm16(10f, 0f, 1f));
+        // empty bounds have nothing to encode
+        assertEquals((short) 0, VertexLayout.quantizeUnorm16(1f, 1f, 1f));
+    }
+}